@@ -0,0 +1,24 @@
+package it.agilelab.witboost.provisioning.adlsop.fake;
+
+import java.util.Map;
+import lombok.Getter;
+
+/** Error answered by a {@link JsonFakeServer}, with the status and the error code of the real service */
+@Getter
+public class FakeError extends RuntimeException {
+
+    private final int status;
+    private final String code;
+    private final Map<String, String> headers;
+
+    public FakeError(int status, String code, String message) {
+        this(status, code, message, Map.of());
+    }
+
+    public FakeError(int status, String code, String message, Map<String, String> headers) {
+        super(message);
+        this.status = status;
+        this.code = code;
+        this.headers = headers;
+    }
+}
@@ -0,0 +1,312 @@
+package it.agilelab.witboost.provisioning.adlsop.fake;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Plumbing shared by the local stand-ins of the JSON APIs of Azure, like Microsoft Graph and Resource Graph: a
+ * loopback HTTP server with a thread per request, a fixed latency added to every request, request counters and
+ * throttling.
+ *
+ * <p>Requests are throttled with a {@code 429 Too Many Requests} and a {@code Retry-After} header, like the real
+ * services do, either at a random rate (see {@link #setThrottlingRate(double)}) or above a number of requests per
+ * second (see {@link #setRequestsPerSecond(int)}). The SDK clients retry them after the advertised delay.
+ *
+ * @param <S> The type of the fake, returned by the setters
+ */
+@Slf4j
+public abstract class JsonFakeServer<S extends JsonFakeServer<S>> implements AutoCloseable {
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String name;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder throttledRequests = new LongAdder();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double throttlingRate = 0;
+    private volatile Duration retryAfter = Duration.ofSeconds(1);
+    private volatile int requestsPerSecond = 0;
+    // Fixed one-second window of the requests per second limit, guarded by this
+    private long window;
+    private int windowRequests;
+
+    /** Binds the server on a port of the loopback interface, or a random free one if {@code 0}, without starting it */
+    protected JsonFakeServer(String name, int port) {
+        this.name = name;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var threads = new AtomicInteger();
+        // Requests sleep through the configured latency, so each one gets its own thread
+        executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "fake-" + name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /** Starts serving the requests, once the fake is initialized */
+    protected S serve() {
+        server.start();
+        log.info("Fake {} listening on {}", name, endpoint());
+        return self();
+    }
+
+    /** Base URL of the fake, as expected by the setting of the provisioner pointing at the real service */
+    public abstract String endpoint();
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** Delay added to every request */
+    public S setLatency(Duration latency) {
+        this.latency = latency;
+        return self();
+    }
+
+    /** Share of the requests throttled at random, between 0 and 1 */
+    public S setThrottlingRate(double throttlingRate) {
+        if (throttlingRate < 0 || throttlingRate > 1)
+            throw new IllegalArgumentException("The throttling rate must be between 0 and 1");
+        this.throttlingRate = throttlingRate;
+        return self();
+    }
+
+    /** Delay advertised by the {@code Retry-After} header of the requests throttled at random, in whole seconds */
+    public S setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+        return self();
+    }
+
+    /**
+     * Requests served in each second, the following ones being throttled until the next second, or {@code 0} for no
+     * limit
+     */
+    public S setRequestsPerSecond(int requestsPerSecond) {
+        if (requestsPerSecond < 0) throw new IllegalArgumentException("The requests per second can't be negative");
+        this.requestsPerSecond = requestsPerSecond;
+        return self();
+    }
+
+    /**
+     * Applies the latency and throttling settings found in the system properties {@code <prefix>.latency} and
+     * {@code <prefix>.retryAfter} (ISO-8601 durations), {@code <prefix>.throttlingRate} and
+     * {@code <prefix>.requestsPerSecond}, to run a standalone fake
+     */
+    protected S configure(String prefix) {
+        Optional.ofNullable(System.getProperty(prefix + ".latency"))
+                .map(Duration::parse)
+                .ifPresent(this::setLatency);
+        Optional.ofNullable(System.getProperty(prefix + ".retryAfter"))
+                .map(Duration::parse)
+                .ifPresent(this::setRetryAfter);
+        Optional.ofNullable(System.getProperty(prefix + ".throttlingRate"))
+                .map(Double::parseDouble)
+                .ifPresent(this::setThrottlingRate);
+        Optional.ofNullable(Integer.getInteger(prefix + ".requestsPerSecond")).ifPresent(this::setRequestsPerSecond);
+        return self();
+    }
+
+    /** Requests served for an operation, the throttled ones excluded */
+    public long requests(String operation) {
+        return Optional.ofNullable(requests.get(operation)).map(LongAdder::sum).orElse(0L);
+    }
+
+    /** Requests answered with {@code 429 Too Many Requests} */
+    public long throttledRequests() {
+        return throttledRequests.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * A request to the fake
+     *
+     * @param path The decoded path
+     * @param query The decoded query parameters
+     * @param headers The headers, with lower case names
+     */
+    public record Request(
+            String method, String path, Map<String, String> query, Map<String, String> headers, JsonNode body) {
+
+        public String query(String name) {
+            return query.get(name);
+        }
+
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        public int intQuery(String name, int defaultValue) {
+            var value = query(name);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+    }
+
+    /** A response of the fake, whose body is serialized as JSON, if any */
+    public record Response(int status, Map<String, String> headers, Object body) {
+
+        public static Response ok(Object body) {
+            return new Response(200, Map.of(), body);
+        }
+    }
+
+    /** Serves a request that passed the latency and throttling */
+    protected abstract Response dispatch(Request request);
+
+    /** Whether a request is subject to throttling, e.g. not the envelopes of batches whose parts are throttled */
+    protected boolean throttles(Request request) {
+        return true;
+    }
+
+    /** Error code of the throttled requests */
+    protected String throttlingCode() {
+        return "TooManyRequests";
+    }
+
+    /** Throttles the current request or part of batch, if the rate or the requests per second limit say so */
+    protected void throttle() {
+        Duration delay = null;
+        int limit = requestsPerSecond;
+        if (limit > 0 && overLimit(limit)) delay = Duration.ofSeconds(1);
+        else if (throttlingRate > 0 && ThreadLocalRandom.current().nextDouble() < throttlingRate) delay = retryAfter;
+        if (delay == null) return;
+        throttledRequests.increment();
+        throw new FakeError(
+                429,
+                throttlingCode(),
+                "Too many requests, retry after the delay of the Retry-After header.",
+                Map.of("Retry-After", String.valueOf((delay.toMillis() + 999) / 1000)));
+    }
+
+    protected void count(String operation) {
+        requests.computeIfAbsent(operation, k -> new LongAdder()).increment();
+    }
+
+    /** Body of an error, in the shape shared by Microsoft Graph and Azure Resource Manager */
+    protected Map<String, Object> errorBody(FakeError error) {
+        var body = new LinkedHashMap<String, Object>();
+        body.put("code", error.getCode());
+        body.put("message", error.getMessage());
+        return Map.of("error", body);
+    }
+
+    /** Decodes a raw query string */
+    protected static Map<String, String> parseQuery(String rawQuery) {
+        var query = new HashMap<String, String>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (var parameter : rawQuery.split("&")) {
+            var pair = parameter.split("=", 2);
+            query.put(decode(pair[0]), pair.length > 1 ? decode(pair[1]) : "");
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        // '+' is a literal in the query strings of the SDK clients, which encode spaces as %20
+        return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private synchronized boolean overLimit(int limit) {
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        if (second != window) {
+            window = second;
+            windowRequests = 0;
+        }
+        return ++windowRequests > limit;
+    }
+
+    @SuppressWarnings("unchecked")
+    private S self() {
+        return (S) this;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var content = exchange.getRequestBody().readAllBytes();
+            Response response;
+            try {
+                var headers = new HashMap<String, String>();
+                exchange.getRequestHeaders()
+                        .forEach((header, values) -> headers.put(header.toLowerCase(Locale.ROOT), values.get(0)));
+                var request = new Request(
+                        exchange.getRequestMethod(),
+                        exchange.getRequestURI().getPath(),
+                        parseQuery(exchange.getRequestURI().getRawQuery()),
+                        headers,
+                        content.length == 0 ? null : objectMapper.readTree(content));
+                delay();
+                if (throttles(request)) throttle();
+                response = dispatch(request);
+            } catch (FakeError e) {
+                response = new Response(e.getStatus(), e.getHeaders(), errorBody(e));
+            } catch (IOException e) {
+                response = new Response(400, Map.of(), errorBody(new FakeError(400, "BadRequest", e.getMessage())));
+            } catch (RuntimeException e) {
+                log.warn(
+                        "Fake {} request {} {} failed", name, exchange.getRequestMethod(), exchange.getRequestURI(), e);
+                var error = new FakeError(500, "InternalServerError", String.valueOf(e.getMessage()));
+                response = new Response(500, Map.of(), errorBody(error));
+            }
+            write(exchange, response);
+        }
+    }
+
+    private void delay() {
+        var delay = latency;
+        if (delay.isZero()) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(HttpExchange exchange, Response response) throws IOException {
+        var headers = exchange.getResponseHeaders();
+        headers.set("x-ms-request-id", UUID.randomUUID().toString());
+        response.headers().forEach(headers::set);
+        if (response.body() == null) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+        var body = objectMapper.writeValueAsBytes(response.body());
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
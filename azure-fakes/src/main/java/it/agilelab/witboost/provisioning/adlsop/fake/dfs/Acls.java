@@ -0,0 +1,112 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.dfs;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * ACLs in the short form of the DFS REST API, e.g. {@code user::rwx,group::r-x,other::---,user:<oid>:r-x}.
+ *
+ * <p>ACLs are kept as strings and interned, so that the millions of paths of a large tree share the few distinct ACLs
+ * they have.
+ */
+final class Acls {
+
+    /** ACL of the paths created under a directory without default entries */
+    static final String DEFAULT = "user::rwx,group::r-x,other::---";
+
+    private static final String DEFAULT_SCOPE = "default:";
+    private static final Pattern PERMISSIONS = Pattern.compile("[r-][w-][xXtT-]");
+    private static final Map<String, String> interned = new ConcurrentHashMap<>();
+
+    private Acls() {}
+
+    static String intern(String acl) {
+        return interned.computeIfAbsent(acl, key -> key);
+    }
+
+    /** Replaces the ACL of a path. Files have no default entries, so they are dropped */
+    static String set(String requested, boolean directory) {
+        return intern(directory ? requested : access(requested));
+    }
+
+    /** Adds the requested entries to an ACL, replacing the ones for the same scope, type and entity */
+    static String modify(String current, String requested, boolean directory) {
+        var entries = entries(current);
+        for (var entry : split(requested)) entries.put(key(entry), entry);
+        return set(String.join(",", entries.values()), directory);
+    }
+
+    /** Removes the entries matching the requested scope, type and entity from an ACL */
+    static String remove(String current, String requested) {
+        var entries = entries(current);
+        for (var entry : split(requested)) entries.remove(key(entry));
+        return intern(String.join(",", entries.values()));
+    }
+
+    /** ACL of a new path, inherited from the default entries of its parent directory like the real service does */
+    static String inherited(String parent, boolean directory) {
+        var defaults = Arrays.stream(split(parent))
+                .filter(entry -> entry.startsWith(DEFAULT_SCOPE))
+                .toList();
+        if (defaults.isEmpty()) return intern(DEFAULT);
+        var access = defaults.stream()
+                .map(entry -> entry.substring(DEFAULT_SCOPE.length()))
+                .collect(Collectors.joining(","));
+        return intern(directory ? access + "," + String.join(",", defaults) : access);
+    }
+
+    /** Symbolic permissions of a path, with a trailing {@code +} when it has named entries */
+    static String permissions(String acl) {
+        String owner = "rwx", group = "r-x", other = "---", mask = null;
+        boolean extended = false;
+        for (var entry : split(acl)) {
+            if (entry.startsWith(DEFAULT_SCOPE)) continue;
+            var parts = entry.split(":", -1);
+            if (parts.length != 3) continue;
+            if (!parts[1].isEmpty()) extended = true;
+            else
+                switch (parts[0]) {
+                    case "user" -> owner = parts[2];
+                    case "group" -> group = parts[2];
+                    case "mask" -> mask = parts[2];
+                    case "other" -> other = parts[2];
+                    default -> {}
+                }
+        }
+        return owner + (mask != null ? mask : group) + other + (extended ? "+" : "");
+    }
+
+    private static String access(String acl) {
+        return Arrays.stream(split(acl))
+                .filter(entry -> !entry.startsWith(DEFAULT_SCOPE))
+                .collect(Collectors.joining(","));
+    }
+
+    private static LinkedHashMap<String, String> entries(String acl) {
+        var entries = new LinkedHashMap<String, String>();
+        for (var entry : split(acl)) entries.put(key(entry), entry);
+        return entries;
+    }
+
+    /** Scope, type and entity of an entry. Entries to be removed come without permissions */
+    private static String key(String entry) {
+        int last = entry.lastIndexOf(':');
+        if (last < 0) return entry;
+        var tail = entry.substring(last + 1);
+        boolean hasPermissions = PERMISSIONS.matcher(tail).matches()
+                && entry.split(":", -1).length >= (entry.startsWith(DEFAULT_SCOPE) ? 4 : 3);
+        return hasPermissions ? entry.substring(0, last) : entry;
+    }
+
+    private static String[] split(String acl) {
+        if (acl == null || acl.isBlank()) return new String[0];
+        return Arrays.stream(acl.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .toArray(String[]::new);
+    }
+}
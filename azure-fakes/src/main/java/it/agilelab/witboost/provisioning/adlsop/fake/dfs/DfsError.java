@@ -0,0 +1,21 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.dfs;
+
+import lombok.Getter;
+
+/** Error answered by the fake, with the status and the {@code x-ms-error-code} of the real service */
+@Getter
+class DfsError extends RuntimeException {
+
+    private final int status;
+    private final String code;
+
+    DfsError(int status, String code, String message) {
+        super(message);
+        this.status = status;
+        this.code = code;
+    }
+
+    static DfsError pathNotFound() {
+        return new DfsError(404, "PathNotFound", "The specified path does not exist.");
+    }
+}
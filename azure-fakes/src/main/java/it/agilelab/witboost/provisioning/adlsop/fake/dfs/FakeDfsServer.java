@@ -0,0 +1,576 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.dfs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local HTTP stand-in of the ADLS Gen2 storage accounts, implementing the DFS and Blob operations used by the
+ * provisioner on an in-memory {@link PathTree} per file system: file system existence and listing, directory creation,
+ * access control, recursive ACL updates with continuation, listing, rename and deletion.
+ *
+ * <p>Accounts are addressed in path style, like Azurite does, so the SDK clients are pointed at it with an endpoint
+ * like {@code http://127.0.0.1:<port>/<account>} (see {@link #endpoint()}). The fake doesn't authenticate. As the SDK
+ * clients can't be anonymous and token credentials require https, they are built with a placeholder SAS like
+ * {@link #SAS_TOKEN}, which is ignored.
+ *
+ * <p>Every request can be delayed by a fixed latency and answered with a {@code 503 ServerBusy} at a given rate, to
+ * measure how the provisioner copes with a slow or throttling service.
+ */
+@Slf4j
+public final class FakeDfsServer implements AutoCloseable {
+
+    /** SAS accepted by the fake, as it accepts any */
+    public static final String SAS_TOKEN = "sv=fake";
+
+    /** Paths changed by each recursive ACL call that doesn't set {@code maxRecords}, like the real service */
+    static final int DEFAULT_MAX_RECORDS = 2000;
+    /** Paths returned by each listing call that doesn't set {@code maxResults}, like the real service */
+    static final int DEFAULT_MAX_RESULTS = 5000;
+
+    private static final String API_VERSION = "2021-06-08";
+    private static final DateTimeFormatter RFC_1123 = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, PathTree> fileSystems = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder throttledRequests = new LongAdder();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double failureRate = 0;
+    private volatile boolean autoCreateFileSystems = false;
+
+    private FakeDfsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /** Starts a fake on a random free port of the loopback interface */
+    public static FakeDfsServer start() {
+        return start(0);
+    }
+
+    /** Starts a fake on the given port of the loopback interface, or on a random free one if {@code 0} */
+    public static FakeDfsServer start(int port) {
+        try {
+            var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+            var threads = new AtomicInteger();
+            // Requests sleep through the configured latency, so each one gets its own thread
+            var executor = Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "fake-dfs-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            var fake = new FakeDfsServer(server, executor);
+            server.createContext("/", fake::handle);
+            server.setExecutor(executor);
+            server.start();
+            log.info("Fake DFS service listening on {}", fake.endpoint());
+            return fake;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Endpoint template of the storage accounts of the fake, where {@code %s} is replaced by the account name, as
+     * expected by the {@code adlsgen2.endpoint} setting of the provisioner
+     */
+    public String endpoint() {
+        return String.format("http://127.0.0.1:%d/%%s", port());
+    }
+
+    /** Endpoint of a storage account of the fake */
+    public String accountEndpoint(String account) {
+        return String.format(endpoint(), account);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /** Delay added to every request */
+    public FakeDfsServer setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /** Share of the requests answered with {@code 503 ServerBusy}, between 0 and 1 */
+    public FakeDfsServer setFailureRate(double failureRate) {
+        if (failureRate < 0 || failureRate > 1)
+            throw new IllegalArgumentException("The failure rate must be between 0 and 1");
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /** Whether file systems that don't exist are created on first use, instead of being reported as not found */
+    public FakeDfsServer setAutoCreateFileSystems(boolean autoCreateFileSystems) {
+        this.autoCreateFileSystems = autoCreateFileSystems;
+        return this;
+    }
+
+    public FakeDfsServer createFileSystem(String account, String fileSystem) {
+        fileSystems.computeIfAbsent(key(account, fileSystem), k -> new PathTree());
+        return this;
+    }
+
+    public boolean fileSystemExists(String account, String fileSystem) {
+        return fileSystems.containsKey(key(account, fileSystem));
+    }
+
+    /**
+     * Builds a synthetic tree under a directory, creating the file system if needed: each directory holds
+     * {@code filesPerDirectory} files and, up to {@code depth} levels below the directory, {@code fanOut}
+     * subdirectories. A depth of 4 with a fan-out of 10 and 90 files per directory gives about a million paths
+     * @return The paths created, the directory included
+     */
+    public long populate(
+            String account, String fileSystem, String directory, int depth, int fanOut, int filesPerDirectory) {
+        createFileSystem(account, fileSystem);
+        return tree(account, fileSystem, false).populate(directory, depth, fanOut, filesPerDirectory);
+    }
+
+    public boolean exists(String account, String fileSystem, String path) {
+        return Optional.ofNullable(fileSystems.get(key(account, fileSystem)))
+                .map(tree -> tree.find(path) != null)
+                .orElse(false);
+    }
+
+    /** ACL of a path, in the short form of the REST API */
+    public Optional<String> acl(String account, String fileSystem, String path) {
+        return Optional.ofNullable(fileSystems.get(key(account, fileSystem)))
+                .map(tree -> tree.find(path))
+                .map(node -> node.acl);
+    }
+
+    /** Paths of a file system, its root excluded */
+    public long size(String account, String fileSystem) {
+        return Optional.ofNullable(fileSystems.get(key(account, fileSystem)))
+                .map(PathTree::size)
+                .orElse(0L);
+    }
+
+    /** Requests served for an operation, e.g. {@code setAccessControlRecursive}, the throttled ones excluded */
+    public long requests(String operation) {
+        return Optional.ofNullable(requests.get(operation)).map(LongAdder::sum).orElse(0L);
+    }
+
+    /** Requests answered with {@code 503 ServerBusy} */
+    public long throttledRequests() {
+        return throttledRequests.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a standalone fake until the process is stopped. It's configured with the system properties
+     * {@code fake.dfs.port} (default {@code 10000}), {@code fake.dfs.latency} (an ISO-8601 duration, default none)
+     * and {@code fake.dfs.failureRate} (default {@code 0}). File systems are created on first use
+     */
+    public static void main(String[] args) throws InterruptedException {
+        var fake = start(Integer.getInteger("fake.dfs.port", 10000))
+                .setLatency(Duration.parse(System.getProperty("fake.dfs.latency", "PT0S")))
+                .setFailureRate(Double.parseDouble(System.getProperty("fake.dfs.failureRate", "0")))
+                .setAutoCreateFileSystems(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(fake::close));
+        Thread.currentThread().join();
+    }
+
+    private record Request(
+            String method, String account, String fileSystem, String path, Map<String, String> query, Headers headers) {
+
+        String query(String name) {
+            return query.get(name);
+        }
+
+        String header(String name) {
+            return headers.getFirst(name);
+        }
+
+        int intQuery(String name, int defaultValue) {
+            var value = query(name);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+    }
+
+    private record Response(int status, Map<String, String> headers, byte[] body, String contentType) {
+
+        static Response empty(int status) {
+            return new Response(status, Map.of(), null, null);
+        }
+
+        static Response withHeaders(int status, Map<String, String> headers) {
+            return new Response(status, headers, null, null);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            Response response;
+            try {
+                var request = parse(exchange);
+                delay();
+                if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                    throttledRequests.increment();
+                    throw new DfsError(503, "ServerBusy", "Operations per second is over the account limit.");
+                }
+                response = dispatch(request);
+            } catch (DfsError e) {
+                response = error(e);
+            } catch (RuntimeException e) {
+                log.warn("Fake DFS request {} {} failed", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+                response = error(new DfsError(500, "InternalError", String.valueOf(e.getMessage())));
+            }
+            write(exchange, response);
+        }
+    }
+
+    private void delay() {
+        var delay = latency;
+        if (delay.isZero()) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Response dispatch(Request request) {
+        if (request.fileSystem() == null) {
+            if (request.method().equals("GET") && "list".equals(request.query("comp"))) return listFileSystems(request);
+        } else if (request.path().isEmpty() && request.query("action") == null) {
+            boolean fileSystemResource =
+                    "container".equals(request.query("restype")) || "filesystem".equals(request.query("resource"));
+            switch (request.method()) {
+                case "HEAD" -> {
+                    if (fileSystemResource) return fileSystemProperties(request);
+                }
+                case "GET" -> {
+                    if ("container".equals(request.query("restype")) && request.query("comp") == null)
+                        return fileSystemProperties(request);
+                    if ("filesystem".equals(request.query("resource"))) return listPaths(request);
+                }
+                case "PUT" -> {
+                    if (fileSystemResource) return createFileSystem(request);
+                }
+                case "DELETE" -> {
+                    if (fileSystemResource) return deleteFileSystem(request);
+                }
+                default -> {}
+            }
+        } else {
+            switch (request.method()) {
+                case "PUT" -> {
+                    if (request.header("x-ms-rename-source") != null) return rename(request);
+                    if ("directory".equals(request.query("resource"))) return createPath(request, true);
+                    if ("file".equals(request.query("resource"))) return createPath(request, false);
+                }
+                case "HEAD" -> {
+                    if ("getAccessControl".equals(request.query("action"))) return getAccessControl(request);
+                    return pathProperties(request);
+                }
+                case "PATCH" -> {
+                    if ("setAccessControl".equals(request.query("action"))) return setAccessControl(request);
+                    if ("setAccessControlRecursive".equals(request.query("action")))
+                        return setAccessControlRecursive(request);
+                }
+                case "DELETE" -> {
+                    return deletePath(request);
+                }
+                default -> {}
+            }
+        }
+        throw new DfsError(
+                400,
+                "UnsupportedOperation",
+                String.format("The fake doesn't implement %s with %s.", request.method(), request.query()));
+    }
+
+    private Response listFileSystems(Request request) {
+        count("listFileSystems");
+        var prefix = request.account() + "/";
+        var xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?><EnumerationResults><Containers>");
+        fileSystems.keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .map(key -> key.substring(prefix.length()))
+                .sorted()
+                .forEach(name -> xml.append("<Container><Name>")
+                        .append(name)
+                        .append("</Name><Properties><Last-Modified>")
+                        .append(RFC_1123.format(Instant.now()))
+                        .append("</Last-Modified><Etag>\"0x0\"</Etag></Properties></Container>"));
+        xml.append("</Containers><NextMarker /></EnumerationResults>");
+        return new Response(200, Map.of(), xml.toString().getBytes(StandardCharsets.UTF_8), "application/xml");
+    }
+
+    private Response fileSystemProperties(Request request) {
+        count("getFileSystemProperties");
+        if (!fileSystems.containsKey(key(request.account(), request.fileSystem())) && !autoCreateFileSystems)
+            throw new DfsError(404, "ContainerNotFound", "The specified container does not exist.");
+        return Response.withHeaders(200, Map.of("ETag", "\"0x0\"", "Last-Modified", RFC_1123.format(Instant.now())));
+    }
+
+    private Response createFileSystem(Request request) {
+        count("createFileSystem");
+        if (fileSystems.putIfAbsent(key(request.account(), request.fileSystem()), new PathTree()) != null)
+            throw new DfsError(409, "ContainerAlreadyExists", "The specified container already exists.");
+        return Response.withHeaders(201, Map.of("ETag", "\"0x0\"", "Last-Modified", RFC_1123.format(Instant.now())));
+    }
+
+    private Response deleteFileSystem(Request request) {
+        count("deleteFileSystem");
+        if (fileSystems.remove(key(request.account(), request.fileSystem())) == null)
+            throw new DfsError(404, "ContainerNotFound", "The specified container does not exist.");
+        return Response.empty(202);
+    }
+
+    private Response createPath(Request request, boolean directory) {
+        count(directory ? "createDirectory" : "createFile");
+        var tree = tree(request.account(), request.fileSystem(), false);
+        var created = tree.create(request.path(), directory);
+        if (created == null) {
+            if ("*".equals(request.header("If-None-Match")))
+                throw new DfsError(409, "PathAlreadyExists", "The specified path already exists.");
+            created = tree.get(request.path());
+        }
+        return Response.withHeaders(201, properties(created));
+    }
+
+    private Response pathProperties(Request request) {
+        count("getProperties");
+        var node = tree(request.account(), request.fileSystem(), true).get(request.path());
+        var headers = new HashMap<>(properties(node));
+        headers.put("x-ms-resource-type", node.isDirectory() ? "directory" : "file");
+        headers.put("x-ms-blob-type", "BlockBlob");
+        if (node.isDirectory()) headers.put("x-ms-meta-hdi_isfolder", "true");
+        headers.put("x-ms-owner", node.owner);
+        headers.put("x-ms-group", node.group);
+        headers.put("x-ms-permissions", Acls.permissions(node.acl));
+        return Response.withHeaders(200, headers);
+    }
+
+    private Response getAccessControl(Request request) {
+        count("getAccessControl");
+        var node = tree(request.account(), request.fileSystem(), false).get(request.path());
+        var headers = new HashMap<>(properties(node));
+        headers.put("x-ms-owner", node.owner);
+        headers.put("x-ms-group", node.group);
+        headers.put("x-ms-permissions", Acls.permissions(node.acl));
+        headers.put("x-ms-acl", node.acl);
+        return Response.withHeaders(200, headers);
+    }
+
+    private Response setAccessControl(Request request) {
+        count("setAccessControl");
+        var node = tree(request.account(), request.fileSystem(), false).get(request.path());
+        var acl = request.header("x-ms-acl");
+        if (acl != null) node.acl = Acls.set(acl, node.isDirectory());
+        if (request.header("x-ms-owner") != null) node.owner = request.header("x-ms-owner");
+        if (request.header("x-ms-group") != null) node.group = request.header("x-ms-group");
+        node.touch();
+        return Response.withHeaders(200, properties(node));
+    }
+
+    private Response setAccessControlRecursive(Request request) {
+        count("setAccessControlRecursive");
+        var tree = tree(request.account(), request.fileSystem(), false);
+        var requested = request.header("x-ms-acl");
+        if (requested == null) throw new DfsError(400, "MissingRequiredHeader", "The x-ms-acl header is required.");
+        var mode = request.query("mode");
+        // Most paths of a tree share the same few ACLs, so each of them is computed once per call
+        Map<String, String> directoryAcls = new HashMap<>();
+        Map<String, String> fileAcls = new HashMap<>();
+        UnaryOperator<String> forDirectory;
+        UnaryOperator<String> forFile;
+        switch (mode == null ? "" : mode) {
+            case "set" -> {
+                var directoryAcl = Acls.set(requested, true);
+                var fileAcl = Acls.set(requested, false);
+                forDirectory = current -> directoryAcl;
+                forFile = current -> fileAcl;
+            }
+            case "modify" -> {
+                forDirectory =
+                        current -> directoryAcls.computeIfAbsent(current, acl -> Acls.modify(acl, requested, true));
+                forFile = current -> fileAcls.computeIfAbsent(current, acl -> Acls.modify(acl, requested, false));
+            }
+            case "remove" -> {
+                forDirectory = current -> directoryAcls.computeIfAbsent(current, acl -> Acls.remove(acl, requested));
+                forFile = forDirectory;
+            }
+            default -> throw new DfsError(
+                    400, "InvalidQueryParameterValue", "The mode must be one of set, modify or remove.");
+        }
+        var walk = tree.walk(
+                request.path(),
+                request.query("continuation"),
+                request.intQuery("maxRecords", DEFAULT_MAX_RECORDS),
+                true,
+                (path, node) -> node.acl = (node.isDirectory() ? forDirectory : forFile).apply(node.acl));
+
+        var body = new LinkedHashMap<String, Object>();
+        body.put("directoriesSuccessful", walk.directories());
+        body.put("filesSuccessful", walk.files());
+        body.put("failureCount", 0);
+        body.put("failedEntries", List.of());
+        return json(walk.continuation(), body);
+    }
+
+    private Response listPaths(Request request) {
+        count("listPaths");
+        var tree = tree(request.account(), request.fileSystem(), false);
+        var page = tree.list(
+                request.query("directory"),
+                Boolean.parseBoolean(request.query("recursive")),
+                request.query("continuation"),
+                request.intQuery("maxResults", DEFAULT_MAX_RESULTS));
+        var paths = page.paths().stream()
+                .map(entry -> {
+                    var node = entry.getValue();
+                    var path = new LinkedHashMap<String, Object>();
+                    path.put("name", entry.getKey());
+                    if (node.isDirectory()) path.put("isDirectory", "true");
+                    path.put("contentLength", "0");
+                    path.put("lastModified", RFC_1123.format(Instant.ofEpochMilli(node.lastModified)));
+                    path.put("etag", etag(node));
+                    path.put("owner", node.owner);
+                    path.put("group", node.group);
+                    path.put("permissions", Acls.permissions(node.acl));
+                    return path;
+                })
+                .toList();
+        return json(page.continuation(), Map.of("paths", paths));
+    }
+
+    private Response rename(Request request) {
+        count("rename");
+        // The source is /<file system>/<path>, possibly followed by a SAS
+        var source = URLDecoder.decode(request.header("x-ms-rename-source").split("\\?", 2)[0], StandardCharsets.UTF_8);
+        var names = source.replaceFirst("^/", "").split("/", 2);
+        var sourceTree = tree(request.account(), names[0], false);
+        var target = tree(request.account(), request.fileSystem(), false);
+        sourceTree.rename(names.length > 1 ? names[1] : "", target, request.path());
+        return Response.withHeaders(201, properties(target.get(request.path())));
+    }
+
+    private Response deletePath(Request request) {
+        count("delete");
+        tree(request.account(), request.fileSystem(), false)
+                .delete(request.path(), Boolean.parseBoolean(request.query("recursive")));
+        return Response.empty(200);
+    }
+
+    private PathTree tree(String account, String fileSystem, boolean blob) {
+        if (autoCreateFileSystems) return fileSystems.computeIfAbsent(key(account, fileSystem), k -> new PathTree());
+        var tree = fileSystems.get(key(account, fileSystem));
+        if (tree != null) return tree;
+        if (blob) throw new DfsError(404, "ContainerNotFound", "The specified container does not exist.");
+        throw new DfsError(404, "FilesystemNotFound", "The specified filesystem does not exist.");
+    }
+
+    private void count(String operation) {
+        requests.computeIfAbsent(operation, k -> new LongAdder()).increment();
+    }
+
+    private Response json(String continuation, Object body) {
+        try {
+            var headers = continuation == null ? Map.<String, String>of() : Map.of("x-ms-continuation", continuation);
+            return new Response(200, headers, objectMapper.writeValueAsBytes(body), "application/json");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Response error(DfsError error) {
+        var body = Map.of("error", Map.of("code", error.getCode(), "message", error.getMessage()));
+        try {
+            return new Response(
+                    error.getStatus(),
+                    Map.of("x-ms-error-code", error.getCode()),
+                    objectMapper.writeValueAsBytes(body),
+                    "application/json");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, String> properties(PathTree.Node node) {
+        return Map.of("ETag", etag(node), "Last-Modified", RFC_1123.format(Instant.ofEpochMilli(node.lastModified)));
+    }
+
+    private static String etag(PathTree.Node node) {
+        return "\"0x" + Long.toHexString(node.lastModified).toUpperCase() + "\"";
+    }
+
+    private static void write(HttpExchange exchange, Response response) throws IOException {
+        var headers = exchange.getResponseHeaders();
+        headers.set("x-ms-request-id", UUID.randomUUID().toString());
+        headers.set("x-ms-version", API_VERSION);
+        response.headers().forEach(headers::set);
+        boolean head = exchange.getRequestMethod().equals("HEAD");
+        if (response.body() == null || head) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+        headers.set("Content-Type", response.contentType());
+        exchange.sendResponseHeaders(response.status(), response.body().length);
+        exchange.getResponseBody().write(response.body());
+    }
+
+    private static Request parse(HttpExchange exchange) {
+        var segments = exchange.getRequestURI().getPath().replaceFirst("^/", "").split("/", 3);
+        if (segments[0].isEmpty()) throw new DfsError(400, "InvalidUri", "The request URI has no account.");
+        var query = new HashMap<String, String>();
+        var rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null)
+            for (var parameter : rawQuery.split("&")) {
+                var pair = parameter.split("=", 2);
+                query.put(
+                        URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                        pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+            }
+        return new Request(
+                exchange.getRequestMethod(),
+                segments[0],
+                segments.length > 1 && !segments[1].isEmpty() ? segments[1] : null,
+                segments.length > 2 ? segments[2] : "",
+                query,
+                exchange.getRequestHeaders());
+    }
+
+    private static String key(String account, String fileSystem) {
+        return account + "/" + fileSystem;
+    }
+}
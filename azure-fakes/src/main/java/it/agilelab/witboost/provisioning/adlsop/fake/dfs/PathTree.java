@@ -0,0 +1,311 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.dfs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Hierarchical namespace of a file system of the fake, kept in memory.
+ *
+ * <p>Children are sorted by name in concurrent skip lists, so that a walk over the tree is weakly consistent with the
+ * changes made while it runs and can be resumed from the name of the next path to visit, which is what the
+ * continuation tokens carry. A path costs around a hundred bytes, so a tree of millions of paths fits in the heap of a
+ * laptop.
+ */
+final class PathTree {
+
+    static final String SUPERUSER = "$superuser";
+
+    /** A directory or a file. Files have no children */
+    static final class Node {
+        final ConcurrentSkipListMap<String, Node> children;
+        volatile String acl;
+        volatile String owner = SUPERUSER;
+        volatile String group = SUPERUSER;
+        volatile long lastModified = System.currentTimeMillis();
+
+        private Node(boolean directory, String acl) {
+            this.children = directory ? new ConcurrentSkipListMap<>() : null;
+            this.acl = acl;
+        }
+
+        boolean isDirectory() {
+            return children != null;
+        }
+
+        void touch() {
+            lastModified = System.currentTimeMillis();
+        }
+    }
+
+    /** Paths visited by a walk, with the token to resume it if it stopped before the end of the tree */
+    record Walk(long directories, long files, String continuation) {}
+
+    /** A page of a listing */
+    record Page(List<Map.Entry<String, Node>> paths, String continuation) {}
+
+    private final Node root = new Node(true, Acls.DEFAULT);
+
+    Node find(String path) {
+        var node = root;
+        for (var name : names(path)) {
+            if (!node.isDirectory()) return null;
+            node = node.children.get(name);
+            if (node == null) return null;
+        }
+        return node;
+    }
+
+    Node get(String path) {
+        var node = find(path);
+        if (node == null) throw DfsError.pathNotFound();
+        return node;
+    }
+
+    /**
+     * Creates a path along with its missing parent directories, which inherit the default ACL of their parent
+     * @return The created path, or {@code null} if it already existed
+     */
+    Node create(String path, boolean directory) {
+        var names = names(path);
+        if (names.length == 0) return null;
+        var parent = root;
+        for (int i = 0; i < names.length - 1; i++) parent = child(parent, names[i], true);
+        var existing = parent.children.get(names[names.length - 1]);
+        if (existing != null) return existingOrConflict(existing, directory);
+        var created = new Node(directory, Acls.inherited(parent.acl, directory));
+        existing = parent.children.putIfAbsent(names[names.length - 1], created);
+        if (existing != null) return existingOrConflict(existing, directory);
+        parent.touch();
+        return created;
+    }
+
+    void delete(String path, boolean recursive) {
+        var names = names(path);
+        if (names.length == 0) throw new DfsError(400, "InvalidUri", "The root of a file system can't be deleted.");
+        var parent = get(parentOf(names));
+        var node = parent.isDirectory() ? parent.children.get(names[names.length - 1]) : null;
+        if (node == null) throw DfsError.pathNotFound();
+        if (!recursive && node.isDirectory() && !node.children.isEmpty())
+            throw new DfsError(409, "DirectoryNotEmpty", "The recursive query parameter value must be true.");
+        parent.children.remove(names[names.length - 1], node);
+        parent.touch();
+    }
+
+    /** Moves a path, with its subtree, to another tree, that can be this one */
+    void rename(String source, PathTree target, String destination) {
+        var sourceNames = names(source);
+        var destinationNames = names(destination);
+        if (sourceNames.length == 0 || destinationNames.length == 0)
+            throw new DfsError(400, "InvalidRenameSourcePath", "The root of a file system can't be renamed.");
+        var sourceParent = find(parentOf(sourceNames));
+        var node = sourceParent != null && sourceParent.isDirectory()
+                ? sourceParent.children.get(sourceNames[sourceNames.length - 1])
+                : null;
+        if (node == null)
+            throw new DfsError(404, "SourcePathNotFound", "The source path for a rename operation does not exist.");
+        var destinationParent = target.find(parentOf(destinationNames));
+        if (destinationParent == null || !destinationParent.isDirectory())
+            throw new DfsError(
+                    404,
+                    "RenameDestinationParentPathNotFound",
+                    "The parent directory of the destination path does not exist.");
+        if (destinationParent.children.putIfAbsent(destinationNames[destinationNames.length - 1], node) != null)
+            throw new DfsError(409, "PathAlreadyExists", "The specified path already exists.");
+        sourceParent.children.remove(sourceNames[sourceNames.length - 1], node);
+        sourceParent.touch();
+        destinationParent.touch();
+    }
+
+    /**
+     * Visits the subtree of a directory in pre-order, the directory first
+     * @param path Directory, or file, where the walk starts
+     * @param continuation Token returned by a previous walk from the same path, or {@code null} to start
+     * @param maxPaths Paths visited before stopping
+     * @param includeStart Whether the starting path is visited too
+     * @param visitor Called with the full path and the node of each visited path
+     */
+    Walk walk(String path, String continuation, int maxPaths, boolean includeStart, PathVisitor visitor) {
+        var start = get(path);
+        var startPath = String.join("/", names(path));
+        long directories = 0, files = 0;
+        Deque<Frame> stack = new ArrayDeque<>();
+        if (continuation == null) {
+            if (includeStart) {
+                visitor.visit(startPath, start);
+                if (start.isDirectory()) directories++;
+                else files++;
+            }
+            if (start.isDirectory())
+                stack.push(new Frame(startPath, start.children.entrySet().iterator()));
+        } else resume(stack, start, startPath, decode(continuation));
+
+        while (true) {
+            var next = next(stack);
+            if (next == null) return new Walk(directories, files, null);
+            if (directories + files >= maxPaths) return new Walk(directories, files, encode(next.path()));
+            visitor.visit(next.path(), next.node());
+            if (next.node().isDirectory()) {
+                directories++;
+                stack.push(
+                        new Frame(next.path(), next.node().children.entrySet().iterator()));
+            } else files++;
+        }
+    }
+
+    /** Lists the children of a directory, or its whole subtree */
+    Page list(String path, boolean recursive, String continuation, int maxResults) {
+        var paths = new ArrayList<Map.Entry<String, Node>>();
+        if (recursive) {
+            var walk = walk(path, continuation, maxResults, false, (name, node) -> paths.add(Map.entry(name, node)));
+            return new Page(paths, walk.continuation());
+        }
+        var directory = get(path);
+        if (!directory.isDirectory()) throw DfsError.pathNotFound();
+        var prefix = prefix(String.join("/", names(path)));
+        var children = continuation == null
+                ? directory.children
+                : directory.children.tailMap(lastName(decode(continuation)), true);
+        for (var child : children.entrySet()) {
+            if (paths.size() == maxResults) return new Page(paths, encode(prefix + child.getKey()));
+            paths.add(Map.entry(prefix + child.getKey(), child.getValue()));
+        }
+        return new Page(paths, null);
+    }
+
+    /**
+     * Builds a synthetic subtree under a directory: each directory holds {@code filesPerDirectory} files and, up to
+     * {@code depth} levels below the root, {@code fanOut} subdirectories
+     * @return The paths created, the root included
+     */
+    long populate(String path, int depth, int fanOut, int filesPerDirectory) {
+        var directory = create(path, true);
+        if (directory == null) directory = get(path);
+        return 1 + populate(directory, depth, fanOut, filesPerDirectory);
+    }
+
+    /** Paths of the tree, the root of the file system excluded */
+    long size() {
+        var size = new long[] {0};
+        walk("", null, Integer.MAX_VALUE, false, (name, node) -> size[0]++);
+        return size[0];
+    }
+
+    @FunctionalInterface
+    interface PathVisitor {
+        void visit(String path, Node node);
+    }
+
+    private record Frame(String path, Iterator<Map.Entry<String, Node>> children) {}
+
+    private record Entry(String path, Node node) {}
+
+    private long populate(Node directory, int depth, int fanOut, int filesPerDirectory) {
+        long created = 0;
+        var fileAcl = Acls.inherited(directory.acl, false);
+        for (int i = 0; i < filesPerDirectory; i++) {
+            directory.children.putIfAbsent(String.format("file-%06d", i), new Node(false, fileAcl));
+            created++;
+        }
+        if (depth == 0) return created;
+        var directoryAcl = Acls.inherited(directory.acl, true);
+        for (int i = 0; i < fanOut; i++) {
+            var child = directory.children.computeIfAbsent(
+                    String.format("dir-%06d", i), name -> new Node(true, directoryAcl));
+            created += 1 + populate(child, depth - 1, fanOut, filesPerDirectory);
+        }
+        return created;
+    }
+
+    /**
+     * Rebuilds the stack of a walk stopped before {@code next}: for each ancestor, the siblings following it, then
+     * {@code next} and its following siblings. Ancestors removed in the meantime are skipped with their subtree
+     */
+    private void resume(Deque<Frame> stack, Node start, String startPath, String next) {
+        var prefix = prefix(startPath);
+        if (!next.startsWith(prefix) || !start.isDirectory())
+            throw new DfsError(400, "InvalidQueryParameterValue", "The continuation token is not valid for this path.");
+        var names = names(next.substring(prefix.length()));
+        var node = start;
+        var path = startPath;
+        for (int i = 0; i < names.length; i++) {
+            boolean last = i == names.length - 1;
+            stack.push(new Frame(
+                    path, node.children.tailMap(names[i], last).entrySet().iterator()));
+            if (last) return;
+            node = node.children.get(names[i]);
+            if (node == null || !node.isDirectory()) return;
+            path = prefix(path) + names[i];
+        }
+    }
+
+    private static Entry next(Deque<Frame> stack) {
+        while (!stack.isEmpty()) {
+            var frame = stack.peek();
+            if (frame.children().hasNext()) {
+                var child = frame.children().next();
+                return new Entry(prefix(frame.path()) + child.getKey(), child.getValue());
+            }
+            stack.pop();
+        }
+        return null;
+    }
+
+    private Node child(Node parent, String name, boolean directory) {
+        if (!parent.isDirectory()) throw new DfsError(409, "PathConflict", "A parent of the path is a file.");
+        var child = parent.children.get(name);
+        if (child == null) {
+            var created = new Node(directory, Acls.inherited(parent.acl, directory));
+            child = parent.children.putIfAbsent(name, created);
+            if (child == null) {
+                parent.touch();
+                return created;
+            }
+        }
+        if (!child.isDirectory()) throw new DfsError(409, "PathConflict", "A parent of the path is a file.");
+        return child;
+    }
+
+    private static Node existingOrConflict(Node existing, boolean directory) {
+        if (existing.isDirectory() != directory)
+            throw new DfsError(409, "PathConflict", "The path already exists with a different resource type.");
+        return null;
+    }
+
+    static String[] names(String path) {
+        if (path == null) return new String[0];
+        return Arrays.stream(path.split("/")).filter(name -> !name.isEmpty()).toArray(String[]::new);
+    }
+
+    private static String parentOf(String[] names) {
+        return String.join("/", Arrays.copyOf(names, names.length - 1));
+    }
+
+    private static String lastName(String path) {
+        var names = names(path);
+        return names.length == 0 ? "" : names[names.length - 1];
+    }
+
+    private static String prefix(String path) {
+        return path.isEmpty() ? "" : path + "/";
+    }
+
+    private static String encode(String path) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String continuation) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(continuation), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new DfsError(400, "InvalidQueryParameterValue", "The continuation token is not valid.");
+        }
+    }
+}
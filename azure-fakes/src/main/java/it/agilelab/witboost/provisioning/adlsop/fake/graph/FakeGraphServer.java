@@ -0,0 +1,278 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.graph;
+
+import it.agilelab.witboost.provisioning.adlsop.fake.FakeError;
+import it.agilelab.witboost.provisioning.adlsop.fake.JsonFakeServer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP stand-in of Microsoft Graph, serving the users and groups of an in-memory tenant: lookups with
+ * {@code $filter} equality clauses like the ones of the provisioner, e.g. {@code mail eq 'john.doe@example.com'},
+ * retrieval by object ID, paginated listing and JSON batches of up to 20 requests.
+ *
+ * <p>The Graph client is pointed at it with a base URL like {@code http://127.0.0.1:<port>/v1.0} (see
+ * {@link #endpoint()}). The fake doesn't authenticate, so the client is built with an anonymous authentication
+ * provider. Large tenants are built with {@link #populate(int, int)}, or principals are created on first lookup with
+ * {@link #setAutoCreatePrincipals(boolean)}. The requests of a batch are throttled one by one, like on the real
+ * service, while the batch itself never is.
+ */
+public final class FakeGraphServer extends JsonFakeServer<FakeGraphServer> {
+
+    /** Domain of the mails of the users created by {@link #populate(int, int)} */
+    public static final String DOMAIN = "example.com";
+
+    /** Requests of a JSON batch accepted by Microsoft Graph */
+    static final int MAX_BATCH_REQUESTS = 20;
+    /** Principals of a listing page that doesn't set {@code $top}, like the real service */
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    static final int MAX_PAGE_SIZE = 999;
+
+    private static final String VERSION = "/v1.0/";
+    // An equality clause, followed by 'or' or the end of the filter. Quotes are escaped by doubling them
+    private static final Pattern CLAUSE = Pattern.compile("\\s*(\\w+)\\s+eq\\s+'((?:[^']|'')*)'\\s*(?:or\\s+|$)");
+
+    private final Tenant users = new Tenant("user");
+    private final Tenant groups = new Tenant("group");
+    private volatile boolean autoCreatePrincipals = false;
+
+    private FakeGraphServer(int port) {
+        super("graph", port);
+    }
+
+    /** Starts a fake on a random free port of the loopback interface */
+    public static FakeGraphServer start() {
+        return start(0);
+    }
+
+    /** Starts a fake on the given port of the loopback interface, or on a random free one if {@code 0} */
+    public static FakeGraphServer start(int port) {
+        return new FakeGraphServer(port).serve();
+    }
+
+    /** Base URL of the fake, as expected by the {@code azure.permissions.graphEndpoint} setting of the provisioner */
+    @Override
+    public String endpoint() {
+        return String.format("http://127.0.0.1:%d/v1.0", port());
+    }
+
+    /** Whether users and groups looked up by name and missing from the tenant are created, instead of not found */
+    public FakeGraphServer setAutoCreatePrincipals(boolean autoCreatePrincipals) {
+        this.autoCreatePrincipals = autoCreatePrincipals;
+        return this;
+    }
+
+    /** Adds a user with a mail and user principal name, returning its object ID */
+    public String addUser(String mail) {
+        return users.add(mail).id();
+    }
+
+    /** Adds a group with a display name, returning its object ID */
+    public String addGroup(String displayName) {
+        return groups.add(displayName).id();
+    }
+
+    /**
+     * Adds synthetic users, whose mails are like {@code user-0000042@example.com}, and groups, whose display names are
+     * like {@code group-0000042}. A tenant of a million principals takes a few hundred megabytes of heap
+     */
+    public FakeGraphServer populate(int userCount, int groupCount) {
+        for (int i = 0; i < userCount; i++) users.add(String.format("user-%07d@%s", i, DOMAIN));
+        for (int i = 0; i < groupCount; i++) groups.add(String.format("group-%07d", i));
+        return this;
+    }
+
+    public int userCount() {
+        return users.size();
+    }
+
+    public int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * Runs a standalone fake until the process is stopped, creating the principals on first lookup. It's configured
+     * with the system properties {@code fake.graph.port} (default {@code 10001}), {@code fake.graph.users} and
+     * {@code fake.graph.groups} (principals created upfront, default {@code 0}), and the latency and throttling
+     * properties with the {@code fake.graph} prefix, like {@code fake.graph.latency} (see
+     * {@link JsonFakeServer#configure(String)})
+     */
+    public static void main(String[] args) throws InterruptedException {
+        var fake = start(Integer.getInteger("fake.graph.port", 10001))
+                .configure("fake.graph")
+                .populate(Integer.getInteger("fake.graph.users", 0), Integer.getInteger("fake.graph.groups", 0))
+                .setAutoCreatePrincipals(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(fake::close));
+        Thread.currentThread().join();
+    }
+
+    @Override
+    protected boolean throttles(Request request) {
+        return !isBatch(request);
+    }
+
+    @Override
+    protected Response dispatch(Request request) {
+        if (isBatch(request)) {
+            if (!request.method().equals("POST")) throw unsupported(request.method(), request.path());
+            return batch(request);
+        }
+        if (!request.path().startsWith(VERSION)) throw notFound(request.path());
+        return route(request.method(), request.path().substring(VERSION.length()), request.query());
+    }
+
+    private static boolean isBatch(Request request) {
+        return request.path().equals(VERSION + "$batch");
+    }
+
+    /** Serves a request, whose path is relative to the version, on its own or as part of a batch */
+    private Response route(String method, String path, Map<String, String> query) {
+        var segments = path.split("/");
+        var tenant =
+                switch (segments[0]) {
+                    case "users" -> users;
+                    case "groups" -> groups;
+                    default -> throw notFound(path);
+                };
+        boolean isUsers = tenant == users;
+        if (!method.equals("GET") || segments.length > 2) throw unsupported(method, path);
+        if (segments.length == 2) {
+            count(isUsers ? "getUser" : "getGroup");
+            var principal = tenant.byId(segments[1]);
+            // Users are also addressed by user principal name
+            if (principal == null && isUsers) principal = users.byName(segments[1]);
+            if (principal == null) throw notFound(path);
+            return Response.ok(json(principal, isUsers));
+        }
+        count(isUsers ? "listUsers" : "listGroups");
+        var filter = query.get("$filter");
+        var body = new LinkedHashMap<String, Object>();
+        body.put("@odata.context", endpoint() + "/$metadata#" + segments[0]);
+        if (filter != null) {
+            body.put(
+                    "value",
+                    filter(tenant, isUsers, filter).stream()
+                            .map(principal -> json(principal, isUsers))
+                            .toList());
+            return Response.ok(body);
+        }
+        int top = Math.min(
+                Integer.parseInt(query.getOrDefault("$top", String.valueOf(DEFAULT_PAGE_SIZE))), MAX_PAGE_SIZE);
+        var skipToken = query.get("$skiptoken");
+        var page = tenant.page(skipToken == null ? null : decodeToken(skipToken), top);
+        body.put(
+                "value",
+                page.stream().map(principal -> json(principal, isUsers)).toList());
+        if (page.size() == top && !tenant.page(page.get(top - 1).id(), 1).isEmpty())
+            body.put(
+                    "@odata.nextLink",
+                    String.format(
+                            "%s/%s?$top=%d&$skiptoken=%s",
+                            endpoint(),
+                            segments[0],
+                            top,
+                            encodeToken(page.get(top - 1).id())));
+        return Response.ok(body);
+    }
+
+    /** Principals matching a filter made of equality clauses joined by {@code or} */
+    private List<Tenant.Principal> filter(Tenant tenant, boolean isUsers, String filter) {
+        var matcher = CLAUSE.matcher(filter);
+        var principals = new ArrayList<Tenant.Principal>();
+        int end = 0;
+        while (end < filter.length() && matcher.find(end) && matcher.start() == end) {
+            end = matcher.end();
+            var property = matcher.group(1);
+            var value = matcher.group(2).replace("''", "'");
+            Tenant.Principal principal;
+            if (property.equals("id")) principal = tenant.byId(value);
+            else if (isUsers && (property.equals("mail") || property.equals("userPrincipalName")))
+                principal = lookup(tenant, value);
+            else if (!isUsers && property.equals("displayName")) principal = lookup(tenant, value);
+            else throw unsupportedFilter(filter);
+            if (principal != null && !principals.contains(principal)) principals.add(principal);
+        }
+        if (end != filter.length()) throw unsupportedFilter(filter);
+        return principals;
+    }
+
+    private Tenant.Principal lookup(Tenant tenant, String name) {
+        return autoCreatePrincipals ? tenant.add(name) : tenant.byName(name);
+    }
+
+    private Response batch(Request request) {
+        count("batch");
+        var requests = request.body() == null ? null : request.body().get("requests");
+        if (requests == null || !requests.isArray())
+            throw new FakeError(400, "BadRequest", "The batch has no requests.");
+        if (requests.size() > MAX_BATCH_REQUESTS)
+            throw new FakeError(400, "BadRequest", "The batch has more than " + MAX_BATCH_REQUESTS + " requests.");
+        var responses = new ArrayList<Map<String, Object>>();
+        for (var part : requests) {
+            var headers = new HashMap<String, String>();
+            headers.put("Content-Type", "application/json");
+            Response response;
+            try {
+                throttle();
+                // The URLs of the requests are relative to the version, with or without a leading slash
+                var url = URI.create(part.path("url").asText().replaceFirst("^/", ""));
+                response = route(part.path("method").asText("GET"), url.getPath(), parseQuery(url.getRawQuery()));
+            } catch (FakeError e) {
+                headers.putAll(e.getHeaders());
+                response = new Response(e.getStatus(), Map.of(), errorBody(e));
+            } catch (IllegalArgumentException e) {
+                var error = new FakeError(400, "BadRequest", "Invalid request URL: " + e.getMessage());
+                response = new Response(400, Map.of(), errorBody(error));
+            }
+            var body = new LinkedHashMap<String, Object>();
+            body.put("id", part.path("id").asText());
+            body.put("status", response.status());
+            body.put("headers", headers);
+            body.put("body", response.body());
+            responses.add(body);
+        }
+        return Response.ok(Map.of("responses", responses));
+    }
+
+    private static Map<String, Object> json(Tenant.Principal principal, boolean isUser) {
+        var json = new LinkedHashMap<String, Object>();
+        json.put("id", principal.id());
+        json.put("displayName", isUser ? principal.name().split("@")[0] : principal.name());
+        json.put("mail", isUser ? principal.name() : null);
+        if (isUser) json.put("userPrincipalName", principal.name());
+        return json;
+    }
+
+    private static String encodeToken(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeToken(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new FakeError(400, "BadRequest", "Invalid $skiptoken.");
+        }
+    }
+
+    private static FakeError notFound(String path) {
+        return new FakeError(404, "Request_ResourceNotFound", String.format("Resource '%s' does not exist.", path));
+    }
+
+    private static FakeError unsupported(String method, String path) {
+        return new FakeError(
+                405, "Request_BadRequest", String.format("The fake doesn't implement %s %s.", method, path));
+    }
+
+    private static FakeError unsupportedFilter(String filter) {
+        return new FakeError(
+                400, "Request_UnsupportedQuery", String.format("The fake doesn't support the filter %s.", filter));
+    }
+}
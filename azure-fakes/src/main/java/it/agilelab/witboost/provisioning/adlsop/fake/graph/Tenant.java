@@ -0,0 +1,66 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory users or groups of a tenant, looked up by object ID or by name, i.e. the mail of the users or the display
+ * name of the groups, and listed in pages ordered by object ID like the real Graph does
+ */
+final class Tenant {
+
+    /** A user or group, whose object ID is derived from its name so that it's stable across runs */
+    record Principal(String id, String name) {}
+
+    private final String kind;
+    private final ConcurrentSkipListMap<String, Principal> byId = new ConcurrentSkipListMap<>();
+    private final Map<String, Principal> byName = new ConcurrentHashMap<>();
+
+    Tenant(String kind) {
+        this.kind = kind;
+    }
+
+    /** Adds a principal, or returns the existing one with the same name, which is case-insensitive */
+    Principal add(String name) {
+        return byName.computeIfAbsent(key(name), k -> {
+            var id = UUID.nameUUIDFromBytes((kind + ":" + k).getBytes(StandardCharsets.UTF_8))
+                    .toString();
+            var principal = new Principal(id, name);
+            byId.put(id, principal);
+            return principal;
+        });
+    }
+
+    Principal byId(String id) {
+        return byId.get(id);
+    }
+
+    Principal byName(String name) {
+        return byName.get(key(name));
+    }
+
+    /** Principals following an object ID, or from the first one if {@code null} */
+    List<Principal> page(String after, int max) {
+        var tail = after == null ? byId : byId.tailMap(after, false);
+        var page = new ArrayList<Principal>(Math.min(max, 1024));
+        for (var principal : tail.values()) {
+            if (page.size() == max) break;
+            page.add(principal);
+        }
+        return page;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
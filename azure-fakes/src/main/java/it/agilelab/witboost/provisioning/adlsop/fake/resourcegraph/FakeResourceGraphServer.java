@@ -0,0 +1,216 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.resourcegraph;
+
+import it.agilelab.witboost.provisioning.adlsop.fake.FakeError;
+import it.agilelab.witboost.provisioning.adlsop.fake.JsonFakeServer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP stand-in of Azure Resource Graph, answering {@code resources} queries on an in-memory set of storage
+ * accounts. Queries are made of the {@code Resources} table followed by {@code where} clauses comparing a column with
+ * a string, case-sensitively with {@code ==} or not with {@code =~}, and an optional {@code limit}, like the ones of
+ * the provisioner: {@code Resources | where type =~ 'Microsoft.Storage/storageAccounts' | where name == 'account'}.
+ * Results are paginated with {@code $top}, {@code $skip} and {@code $skipToken}, in the object array format.
+ *
+ * <p>The Resource Graph manager is pointed at it with a resource manager endpoint like {@code http://127.0.0.1:<port>}
+ * (see {@link #endpoint()}). The fake doesn't authenticate, so the manager is built without the Azure credentials,
+ * whose bearer tokens require https. Storage accounts are added with {@link #addStorageAccount(String)} and
+ * {@link #populate(int)}, or created when a query looks them up by name with
+ * {@link #setAutoCreateStorageAccounts(boolean)}.
+ */
+public final class FakeResourceGraphServer extends JsonFakeServer<FakeResourceGraphServer> {
+
+    public static final String TENANT_ID = "00000000-0000-0000-0000-00000000000a";
+    public static final String SUBSCRIPTION_ID = "00000000-0000-0000-0000-00000000000b";
+    public static final String RESOURCE_GROUP = "fake-resource-group";
+
+    static final String STORAGE_ACCOUNT_TYPE = "microsoft.storage/storageaccounts";
+    /** Rows of a page when the query doesn't set {@code $top}, like the real service */
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String PATH = "/providers/Microsoft.ResourceGraph/resources";
+    private static final Pattern WHERE = Pattern.compile("where\\s+(\\w+)\\s*(==|=~)\\s*'((?:[^'\\\\]|\\\\.)*)'");
+    private static final Pattern LIMIT = Pattern.compile("(?:limit|take)\\s+(\\d+)");
+
+    private final Map<String, Map<String, Object>> resources = new ConcurrentSkipListMap<>();
+    private volatile boolean autoCreateStorageAccounts = false;
+
+    private FakeResourceGraphServer(int port) {
+        super("resource-graph", port);
+    }
+
+    /** Starts a fake on a random free port of the loopback interface */
+    public static FakeResourceGraphServer start() {
+        return start(0);
+    }
+
+    /** Starts a fake on the given port of the loopback interface, or on a random free one if {@code 0} */
+    public static FakeResourceGraphServer start(int port) {
+        return new FakeResourceGraphServer(port).serve();
+    }
+
+    /**
+     * Resource manager endpoint of the fake, as expected by the {@code azure.resourceGraph.endpoint} setting of the
+     * provisioner
+     */
+    @Override
+    public String endpoint() {
+        return String.format("http://127.0.0.1:%d", port());
+    }
+
+    /** Whether storage accounts looked up by name and missing are created, instead of returning no rows */
+    public FakeResourceGraphServer setAutoCreateStorageAccounts(boolean autoCreateStorageAccounts) {
+        this.autoCreateStorageAccounts = autoCreateStorageAccounts;
+        return this;
+    }
+
+    /** Adds a storage account with a hierarchical namespace, returning its resource ID */
+    public String addStorageAccount(String name) {
+        var id = String.format(
+                "/subscriptions/%s/resourceGroups/%s/providers/Microsoft.Storage/storageAccounts/%s",
+                SUBSCRIPTION_ID, RESOURCE_GROUP, name);
+        resources.computeIfAbsent(id.toLowerCase(Locale.ROOT), key -> {
+            var row = new LinkedHashMap<String, Object>();
+            row.put("id", id);
+            row.put("name", name);
+            row.put("type", STORAGE_ACCOUNT_TYPE);
+            row.put("tenantId", TENANT_ID);
+            row.put("kind", "StorageV2");
+            row.put("location", "westeurope");
+            row.put("resourceGroup", RESOURCE_GROUP);
+            row.put("subscriptionId", SUBSCRIPTION_ID);
+            row.put("properties", Map.of("isHnsEnabled", true));
+            return row;
+        });
+        return id;
+    }
+
+    /** Adds synthetic storage accounts, whose names are like {@code account000042} */
+    public FakeResourceGraphServer populate(int count) {
+        for (int i = 0; i < count; i++) addStorageAccount(String.format("account%06d", i));
+        return this;
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    /**
+     * Runs a standalone fake until the process is stopped, creating the storage accounts on first lookup. It's
+     * configured with the system property {@code fake.resourceGraph.port} (default {@code 10002}), and the latency and
+     * throttling properties with the {@code fake.resourceGraph} prefix, like {@code fake.resourceGraph.latency} (see
+     * {@link JsonFakeServer#configure(String)})
+     */
+    public static void main(String[] args) throws InterruptedException {
+        var fake = start(Integer.getInteger("fake.resourceGraph.port", 10002))
+                .configure("fake.resourceGraph")
+                .setAutoCreateStorageAccounts(true);
+        Runtime.getRuntime().addShutdownHook(new Thread(fake::close));
+        Thread.currentThread().join();
+    }
+
+    @Override
+    protected String throttlingCode() {
+        return "RateLimiting";
+    }
+
+    @Override
+    protected Response dispatch(Request request) {
+        if (!request.path().equalsIgnoreCase(PATH))
+            throw new FakeError(
+                    404, "InvalidResourceType", String.format("The fake doesn't implement %s.", request.path()));
+        if (!request.method().equals("POST"))
+            throw new FakeError(
+                    405, "MethodNotAllowed", String.format("The fake doesn't implement %s.", request.method()));
+        if (request.query("api-version") == null)
+            throw new FakeError(400, "MissingApiVersionParameter", "The api-version query parameter is required.");
+        count("resources");
+        var body = request.body();
+        if (body == null || !body.path("query").isTextual())
+            throw new FakeError(400, "BadRequest", "The request has no query.");
+        var options = body.path("options");
+        if (!options.path("resultFormat").asText("objectArray").equals("objectArray"))
+            throw new FakeError(400, "BadRequest", "The fake only returns results in the objectArray format.");
+
+        var rows = query(body.path("query").asText());
+        int top = Math.min(options.path("$top").asInt(DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        int skip = options.hasNonNull("$skipToken")
+                ? decodeToken(options.path("$skipToken").asText())
+                : options.path("$skip").asInt(0);
+        var page = rows.subList(Math.min(skip, rows.size()), Math.min(skip + top, rows.size()));
+
+        var response = new LinkedHashMap<String, Object>();
+        response.put("totalRecords", rows.size());
+        response.put("count", page.size());
+        response.put("resultTruncated", "false");
+        if (skip + top < rows.size()) response.put("$skipToken", encodeToken(skip + top));
+        response.put("data", page);
+        response.put("facets", List.of());
+        return Response.ok(response);
+    }
+
+    private List<Map<String, Object>> query(String query) {
+        var operators = query.split("\\|");
+        if (!operators[0].trim().equalsIgnoreCase("Resources")) throw invalidQuery(query);
+        Predicate<Map<String, Object>> filter = row -> true;
+        String name = null;
+        boolean storageAccounts = true;
+        int limit = Integer.MAX_VALUE;
+        for (int i = 1; i < operators.length; i++) {
+            var operator = operators[i].trim();
+            var where = WHERE.matcher(operator);
+            var limitMatcher = LIMIT.matcher(operator);
+            if (where.matches()) {
+                var column = where.group(1);
+                boolean caseSensitive = where.group(2).equals("==");
+                var value = where.group(3).replaceAll("\\\\(.)", "$1");
+                if (column.equals("name")) name = value;
+                if (column.equals("type")) storageAccounts = value.equalsIgnoreCase(STORAGE_ACCOUNT_TYPE);
+                filter = filter.and(row -> {
+                    var actual = row.get(column);
+                    return actual instanceof String string
+                            && (caseSensitive ? string.equals(value) : string.equalsIgnoreCase(value));
+                });
+            } else if (limitMatcher.matches()) {
+                limit = Math.min(limit, Integer.parseInt(limitMatcher.group(1)));
+            } else {
+                throw invalidQuery(query);
+            }
+        }
+        if (autoCreateStorageAccounts && name != null && storageAccounts) addStorageAccount(name);
+        var rows = new ArrayList<Map<String, Object>>();
+        for (var row : resources.values()) {
+            if (rows.size() == limit) break;
+            if (filter.test(row)) rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String encodeToken(int offset) {
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(String.valueOf(offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeToken(String token) {
+        try {
+            return Integer.parseInt(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new FakeError(400, "BadRequest", "Invalid $skipToken.");
+        }
+    }
+
+    private static FakeError invalidQuery(String query) {
+        return new FakeError(400, "BadRequest", String.format("The fake doesn't support the query %s.", query));
+    }
+}
@@ -0,0 +1,52 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.dfs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class AclsTest {
+
+    @Test
+    void modifyReplacesTheEntriesOfTheSameEntity() {
+        assertEquals(
+                "user::rwx,group::r-x,other::---,user:oid:r-x,user:new:--x",
+                Acls.modify("user::rwx,group::r-x,other::---,user:oid:--x", "user:oid:r-x,user:new:--x", true));
+    }
+
+    @Test
+    void defaultEntriesApplyOnlyToDirectories() {
+        var requested = "user::rwx,user:oid:r-x,default:user:oid:r-x";
+
+        assertEquals(requested, Acls.set(requested, true));
+        assertEquals("user::rwx,user:oid:r-x", Acls.set(requested, false));
+        assertEquals("user::rwx,user:oid:r-x", Acls.modify("user::rwx", "user:oid:r-x,default:user:oid:r-x", false));
+    }
+
+    @Test
+    void removeDropsTheEntriesOfTheEntity() {
+        assertEquals(
+                "user::rwx,default:user:oid:r-x",
+                Acls.remove("user::rwx,user:oid:r-x,default:user:oid:r-x", "user:oid"));
+        assertEquals(
+                "user::rwx,user:oid:r-x",
+                Acls.remove("user::rwx,user:oid:r-x,default:user:oid:r-x", "default:user:oid"));
+    }
+
+    @Test
+    void newPathsInheritTheDefaultEntries() {
+        assertEquals(Acls.DEFAULT, Acls.inherited("user::rwx,group::r-x,other::---", true));
+        assertEquals("user:oid:r-x,default:user:oid:r-x", Acls.inherited("user::rwx,default:user:oid:r-x", true));
+        assertEquals("user:oid:r-x", Acls.inherited("user::rwx,default:user:oid:r-x", false));
+    }
+
+    @Test
+    void permissionsAreDerivedFromTheAcl() {
+        assertEquals("rwxr-x---", Acls.permissions(Acls.DEFAULT));
+        assertEquals("rwxr-----+", Acls.permissions("user::rwx,group::r-x,mask::r--,other::---,user:oid:r-x"));
+    }
+
+    @Test
+    void equalAclsAreShared() {
+        assertSame(Acls.set(new String("user::rwx"), true), Acls.set(new String("user::rwx"), true));
+    }
+}
@@ -0,0 +1,309 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.dfs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.azure.storage.file.datalake.DataLakeFileSystemClient;
+import com.azure.storage.file.datalake.DataLakeServiceClient;
+import com.azure.storage.file.datalake.DataLakeServiceClientBuilder;
+import com.azure.storage.file.datalake.models.DataLakeStorageException;
+import com.azure.storage.file.datalake.models.ListPathsOptions;
+import com.azure.storage.file.datalake.models.PathAccessControlEntry;
+import com.azure.storage.file.datalake.models.PathItem;
+import com.azure.storage.file.datalake.models.PathPermissions;
+import com.azure.storage.file.datalake.models.PathRemoveAccessControlEntry;
+import com.azure.storage.file.datalake.options.PathSetAccessControlRecursiveOptions;
+import com.azure.storage.file.datalake.options.PathUpdateAccessControlRecursiveOptions;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class FakeDfsServerTest {
+
+    private static final String ACCOUNT = "account";
+    private static final String CONTAINER = "container";
+
+    private final FakeDfsServer fake = FakeDfsServer.start().createFileSystem(ACCOUNT, CONTAINER);
+    private final DataLakeServiceClient serviceClient = new DataLakeServiceClientBuilder()
+            .endpoint(fake.accountEndpoint(ACCOUNT))
+            .sasToken(FakeDfsServer.SAS_TOKEN)
+            .buildClient();
+    private final DataLakeFileSystemClient fileSystemClient = serviceClient.getFileSystemClient(CONTAINER);
+
+    @AfterEach
+    void close() {
+        fake.close();
+    }
+
+    @Test
+    void fileSystemExistence() {
+        assertTrue(fileSystemClient.exists());
+        assertFalse(serviceClient.getFileSystemClient("missing").exists());
+    }
+
+    @Test
+    void fileSystemsAreListed() {
+        fake.createFileSystem(ACCOUNT, "other").createFileSystem("another-account", "hidden");
+
+        var names = new ArrayList<String>();
+        serviceClient.listFileSystems().forEach(fileSystem -> names.add(fileSystem.getName()));
+
+        assertEquals(List.of(CONTAINER, "other"), names);
+    }
+
+    @Test
+    void directoriesAreCreatedWithTheirParents() {
+        var directory = fileSystemClient.createDirectoryIfNotExists("path/to/folder");
+
+        assertTrue(directory.exists());
+        assertTrue(fake.exists(ACCOUNT, CONTAINER, "path/to"));
+        assertTrue(directory.getDirectoryUrl().startsWith(fake.accountEndpoint(ACCOUNT) + "/container/path"));
+        // Creating it again is not an error
+        assertTrue(fileSystemClient.createDirectoryIfNotExists("path/to/folder").exists());
+        assertFalse(fileSystemClient.getDirectoryClient("path/to/other").exists());
+    }
+
+    @Test
+    void operationsOnMissingFileSystemsFail() {
+        var e = assertThrows(
+                DataLakeStorageException.class,
+                () -> serviceClient.getFileSystemClient("missing").createDirectory("folder"));
+
+        assertEquals(404, e.getStatusCode());
+        assertEquals("FilesystemNotFound", e.getErrorCode());
+    }
+
+    @Test
+    void accessControlIsSetAndRead() {
+        var directory = fileSystemClient.createDirectory("folder");
+        var acl = PathAccessControlEntry.parseList("user::rwx,group::r-x,other::---,user:oid:r-x,default:user:oid:r-x");
+
+        directory.setAccessControlList(acl, "group", "owner");
+
+        var accessControl = directory.getAccessControl();
+        assertEquals(acl, accessControl.getAccessControlList());
+        assertEquals("owner", accessControl.getOwner());
+        assertEquals("group", accessControl.getGroup());
+        assertEquals(PathPermissions.parseSymbolic("rwxr-x---+"), accessControl.getPermissions());
+        assertTrue(accessControl.getPermissions().isExtendedInfoInAcl());
+    }
+
+    @Test
+    void newPathsInheritTheDefaultAcl() {
+        fileSystemClient
+                .createDirectory("folder")
+                .setAccessControlList(
+                        PathAccessControlEntry.parseList("user::rwx,group::r-x,other::---,default:user:oid:r-x"),
+                        null,
+                        null);
+
+        fileSystemClient.createDirectory("folder/child");
+        fileSystemClient.createFile("folder/child/file");
+
+        assertEquals(
+                "user:oid:r-x,default:user:oid:r-x",
+                fake.acl(ACCOUNT, CONTAINER, "folder/child").orElseThrow());
+        assertEquals(
+                "user:oid:r-x",
+                fake.acl(ACCOUNT, CONTAINER, "folder/child/file").orElseThrow());
+    }
+
+    @Test
+    void recursiveAclUpdatesFollowTheContinuation() {
+        long paths = fake.populate(ACCOUNT, CONTAINER, "data", 2, 3, 4);
+        var directory = fileSystemClient.getDirectoryClient("data");
+        var batches = new AtomicLong();
+
+        var result = directory
+                .updateAccessControlRecursiveWithResponse(
+                        new PathUpdateAccessControlRecursiveOptions(PathAccessControlEntry.parseList("user:oid:r-x"))
+                                .setBatchSize(10)
+                                .setProgressHandler(response -> batches.incrementAndGet()),
+                        null,
+                        null)
+                .getValue();
+
+        var counters = result.getCounters();
+        assertEquals(paths, counters.getChangedDirectoriesCount() + counters.getChangedFilesCount());
+        assertEquals(13, counters.getChangedDirectoriesCount());
+        assertEquals((paths + 9) / 10, batches.get());
+        assertEquals((paths + 9) / 10, fake.requests("setAccessControlRecursive"));
+        assertNull(result.getContinuationToken());
+        assertEquals(
+                "user::rwx,group::r-x,other::---,user:oid:r-x",
+                fake.acl(ACCOUNT, CONTAINER, "data/dir-000002/dir-000001/file-000003")
+                        .orElseThrow());
+    }
+
+    @Test
+    void recursiveAclUpdatesStopAfterTheMaximumBatchesAndResume() {
+        long paths = fake.populate(ACCOUNT, CONTAINER, "data", 2, 3, 4);
+        var directory = fileSystemClient.getDirectoryClient("data");
+        var acl = PathAccessControlEntry.parseList("user::rwx,group::r-x,other::---,default:user:oid:r-x");
+
+        var first = directory
+                .setAccessControlRecursiveWithResponse(
+                        new PathSetAccessControlRecursiveOptions(acl)
+                                .setBatchSize(5)
+                                .setMaxBatches(2),
+                        null,
+                        null)
+                .getValue();
+        assertNotNull(first.getContinuationToken());
+        var changed = first.getCounters().getChangedDirectoriesCount()
+                + first.getCounters().getChangedFilesCount();
+        assertEquals(10, changed);
+
+        var second = directory
+                .setAccessControlRecursiveWithResponse(
+                        new PathSetAccessControlRecursiveOptions(acl)
+                                .setContinuationToken(first.getContinuationToken()),
+                        null,
+                        null)
+                .getValue();
+        assertNull(second.getContinuationToken());
+        assertEquals(
+                paths - changed,
+                second.getCounters().getChangedDirectoriesCount()
+                        + second.getCounters().getChangedFilesCount());
+        // Files get no default entries
+        assertEquals(
+                "user::rwx,group::r-x,other::---",
+                fake.acl(ACCOUNT, CONTAINER, "data/dir-000002/file-000000").orElseThrow());
+        assertEquals(
+                "user::rwx,group::r-x,other::---,default:user:oid:r-x",
+                fake.acl(ACCOUNT, CONTAINER, "data/dir-000002").orElseThrow());
+    }
+
+    @Test
+    void recursiveAclEntriesAreRemoved() {
+        fake.populate(ACCOUNT, CONTAINER, "data", 1, 2, 2);
+        var directory = fileSystemClient.getDirectoryClient("data");
+        directory.setAccessControlRecursive(
+                PathAccessControlEntry.parseList("user::rwx,group::r-x,other::---,user:oid:r-x,user:other:--x"));
+
+        directory.removeAccessControlRecursive(PathRemoveAccessControlEntry.parseList("user:oid"));
+
+        assertEquals(
+                "user::rwx,group::r-x,other::---,user:other:--x",
+                fake.acl(ACCOUNT, CONTAINER, "data/dir-000001/file-000001").orElseThrow());
+    }
+
+    @Test
+    void directoriesAreDeletedRecursively() {
+        fake.populate(ACCOUNT, CONTAINER, "data", 2, 2, 2);
+
+        fileSystemClient.deleteDirectoryWithResponse("data", true, null, null, null);
+
+        assertFalse(fake.exists(ACCOUNT, CONTAINER, "data"));
+        assertEquals(0, fake.size(ACCOUNT, CONTAINER));
+        var e = assertThrows(DataLakeStorageException.class, () -> fileSystemClient.deleteDirectory("data"));
+        assertEquals("PathNotFound", e.getErrorCode());
+        assertFalse(fileSystemClient.deleteDirectoryIfExists("data"));
+    }
+
+    @Test
+    void nonEmptyDirectoriesAreNotDeletedWithoutRecursion() {
+        fake.populate(ACCOUNT, CONTAINER, "data", 0, 0, 1);
+
+        var e = assertThrows(
+                DataLakeStorageException.class,
+                () -> fileSystemClient.deleteDirectoryWithResponse("data", false, null, null, null));
+
+        assertEquals("DirectoryNotEmpty", e.getErrorCode());
+        assertTrue(fake.exists(ACCOUNT, CONTAINER, "data/file-000000"));
+    }
+
+    @Test
+    void directoriesAreRenamed() {
+        fake.populate(ACCOUNT, CONTAINER, "data", 1, 1, 1);
+        fileSystemClient.createDirectory(".trash");
+
+        fileSystemClient.getDirectoryClient("data").rename(null, ".trash/data-1");
+
+        assertFalse(fake.exists(ACCOUNT, CONTAINER, "data"));
+        assertTrue(fake.exists(ACCOUNT, CONTAINER, ".trash/data-1/dir-000000/file-000000"));
+    }
+
+    @Test
+    void pathsAreListedByPage() {
+        fake.populate(ACCOUNT, CONTAINER, "data", 1, 2, 3);
+
+        var pages = new ArrayList<List<PathItem>>();
+        fileSystemClient
+                .listPaths(new ListPathsOptions().setPath("data").setMaxResults(2), null)
+                .iterableByPage()
+                .forEach(page -> pages.add(page.getValue()));
+
+        assertEquals(3, pages.size());
+        var first = pages.get(0);
+        assertEquals("data/dir-000000", first.get(0).getName());
+        assertTrue(first.get(0).isDirectory());
+        assertEquals("data/dir-000001", first.get(1).getName());
+        assertFalse(pages.get(2).get(0).isDirectory());
+        assertEquals("data/file-000002", pages.get(2).get(0).getName());
+    }
+
+    @Test
+    void pathsAreListedRecursively() {
+        long paths = fake.populate(ACCOUNT, CONTAINER, "data", 2, 2, 2);
+
+        var listed = fileSystemClient.listPaths(new ListPathsOptions().setRecursive(true), null).stream()
+                .count();
+
+        assertEquals(paths, listed);
+    }
+
+    @Test
+    void requestsAreThrottledAtTheFailureRate() throws Exception {
+        fake.setFailureRate(1);
+        var client = HttpClient.newHttpClient();
+        var request = HttpRequest.newBuilder(
+                        URI.create(fake.accountEndpoint(ACCOUNT) + "/" + CONTAINER + "?restype=container"))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+
+        var throttled = client.send(request, HttpResponse.BodyHandlers.discarding());
+
+        assertEquals(503, throttled.statusCode());
+        assertEquals(
+                "ServerBusy", throttled.headers().firstValue("x-ms-error-code").orElseThrow());
+        assertEquals(1, fake.throttledRequests());
+        assertEquals(0, fake.requests("getFileSystemProperties"));
+
+        fake.setFailureRate(0);
+        assertEquals(
+                200,
+                client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void requestsAreDelayedByTheLatency() {
+        fake.setLatency(Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        assertTrue(fileSystemClient.exists());
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(200)) >= 0);
+    }
+
+    @Test
+    void fileSystemsAreCreatedOnFirstUseWhenEnabled() {
+        fake.setAutoCreateFileSystems(true);
+
+        serviceClient.getFileSystemClient("new").createDirectory("folder");
+
+        assertTrue(fake.exists(ACCOUNT, "new", "folder"));
+    }
+
+    @Test
+    void failureRateMustBeAShare() {
+        assertThrows(IllegalArgumentException.class, () -> fake.setFailureRate(1.5));
+    }
+}
@@ -0,0 +1,130 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.dfs;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PathTreeTest {
+
+    private final PathTree tree = new PathTree();
+
+    private List<String> walkAll(String path, int batch) {
+        var visited = new ArrayList<String>();
+        String continuation = null;
+        do {
+            continuation = tree.walk(path, continuation, batch, true, (name, node) -> visited.add(name))
+                    .continuation();
+        } while (continuation != null);
+        return visited;
+    }
+
+    @Test
+    void populateBuildsTheRequestedTree() {
+        long created = tree.populate("data", 2, 3, 4);
+
+        // 1 + 3 + 9 directories, each with 4 files
+        assertEquals(13 * 5, created);
+        assertEquals(created + 0, tree.size());
+        assertNotNull(tree.find("data/dir-000002/dir-000002/file-000003"));
+        assertNull(tree.find("data/dir-000002/dir-000002/dir-000000"));
+    }
+
+    @Test
+    void walksVisitTheTreeInPreOrder() {
+        tree.populate("data", 1, 2, 1);
+
+        assertEquals(
+                List.of(
+                        "data",
+                        "data/dir-000000",
+                        "data/dir-000000/file-000000",
+                        "data/dir-000001",
+                        "data/dir-000001/file-000000",
+                        "data/file-000000"),
+                walkAll("data", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void resumedWalksVisitEveryPathOnce() {
+        tree.populate("data", 3, 3, 2);
+        var expected = walkAll("data", Integer.MAX_VALUE);
+
+        for (int batch : new int[] {1, 2, 7, 50}) assertEquals(expected, walkAll("data", batch), "batch " + batch);
+    }
+
+    @Test
+    void resumedWalksSkipTheRemovedSubtrees() {
+        tree.populate("data", 2, 2, 0);
+        var first = tree.walk("data", null, 3, true, (name, node) -> {});
+        assertEquals(3, first.directories());
+
+        // The walk stopped before data/dir-000000/dir-000001
+        tree.delete("data/dir-000000", true);
+        var visited = new ArrayList<String>();
+        tree.walk("data", first.continuation(), 100, true, (name, node) -> visited.add(name));
+
+        assertEquals(List.of("data/dir-000001", "data/dir-000001/dir-000000", "data/dir-000001/dir-000001"), visited);
+    }
+
+    @Test
+    void continuationsOfOtherPathsAreRejected() {
+        tree.populate("data", 1, 2, 0);
+        tree.populate("other", 1, 2, 0);
+        var continuation = tree.walk("data", null, 1, true, (name, node) -> {}).continuation();
+
+        var e = assertThrows(DfsError.class, () -> tree.walk("other", continuation, 1, true, (name, node) -> {}));
+        assertEquals("InvalidQueryParameterValue", e.getCode());
+        assertThrows(DfsError.class, () -> tree.walk("data", "not base64!", 1, true, (name, node) -> {}));
+    }
+
+    @Test
+    void createReportsExistingPaths() {
+        assertNotNull(tree.create("a/b", true));
+        assertNull(tree.create("a/b", true));
+        assertEquals(
+                "PathConflict",
+                assertThrows(DfsError.class, () -> tree.create("a/b", false)).getCode());
+        tree.create("a/file", false);
+        assertEquals(
+                "PathConflict",
+                assertThrows(DfsError.class, () -> tree.create("a/file/c", true))
+                        .getCode());
+    }
+
+    @Test
+    void renameMovesTheSubtree() {
+        tree.populate("data", 1, 1, 1);
+        tree.create("trash", true);
+
+        tree.rename("data", tree, "trash/data");
+
+        assertNull(tree.find("data"));
+        assertNotNull(tree.find("trash/data/dir-000000/file-000000"));
+        assertEquals(
+                "SourcePathNotFound",
+                assertThrows(DfsError.class, () -> tree.rename("data", tree, "trash/again"))
+                        .getCode());
+        assertEquals(
+                "RenameDestinationParentPathNotFound",
+                assertThrows(DfsError.class, () -> tree.rename("trash/data", tree, "missing/data"))
+                        .getCode());
+    }
+
+    @Test
+    void listingPagesFollowTheContinuation() {
+        tree.populate("data", 1, 3, 2);
+
+        var first = tree.list("data", false, null, 4);
+        var second = tree.list("data", false, first.continuation(), 4);
+
+        assertEquals(
+                List.of("data/dir-000000", "data/dir-000001", "data/dir-000002", "data/file-000000"),
+                first.paths().stream().map(entry -> entry.getKey()).toList());
+        assertEquals(
+                List.of("data/file-000001"),
+                second.paths().stream().map(entry -> entry.getKey()).toList());
+        assertNull(second.continuation());
+    }
+}
@@ -0,0 +1,191 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.graph;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.microsoft.graph.core.content.BatchRequestContent;
+import com.microsoft.graph.models.UserCollectionResponse;
+import com.microsoft.graph.models.odataerrors.ODataError;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.kiota.authentication.AnonymousAuthenticationProvider;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class FakeGraphServerTest {
+
+    private final FakeGraphServer fake = FakeGraphServer.start().setRetryAfter(Duration.ZERO);
+    private final GraphServiceClient client = new GraphServiceClient(new AnonymousAuthenticationProvider());
+
+    FakeGraphServerTest() {
+        client.getRequestAdapter().setBaseUrl(fake.endpoint());
+    }
+
+    @AfterEach
+    void close() {
+        fake.close();
+    }
+
+    private List<String> userIds(String filter) {
+        return client.users().get(r -> r.queryParameters.filter = filter).getValue().stream()
+                .map(user -> user.getId())
+                .toList();
+    }
+
+    @Test
+    void usersAndGroupsAreLookedUpByName() {
+        var userId = fake.addUser("john.doe@example.com");
+        var groupId = fake.addGroup("developers");
+
+        assertEquals(List.of(userId), userIds("mail eq 'John.Doe@example.com'"));
+        assertEquals(List.of(userId), userIds("userPrincipalName eq 'john.doe@example.com'"));
+        assertEquals(List.of(), userIds("mail eq 'jane.doe@example.com'"));
+        var groups = client.groups()
+                .get(r -> r.queryParameters.filter = "displayName eq 'developers'")
+                .getValue();
+        assertEquals(groupId, groups.get(0).getId());
+        assertEquals("developers", groups.get(0).getDisplayName());
+    }
+
+    @Test
+    void filtersCanJoinSeveralClauses() {
+        var first = fake.addUser("o'neil@example.com");
+        var second = fake.addUser("smith@example.com");
+
+        assertEquals(
+                List.of(first, second),
+                userIds(
+                        "mail eq 'o''neil@example.com' or mail eq 'smith@example.com' or mail eq 'missing@example.com'"));
+    }
+
+    @Test
+    void unsupportedFiltersAreRejected() {
+        var e = assertThrows(ODataError.class, () -> userIds("startswith(mail, 'john')"));
+
+        assertEquals(400, e.getResponseStatusCode());
+        assertEquals("Request_UnsupportedQuery", e.getError().getCode());
+    }
+
+    @Test
+    void principalsAreRetrievedByObjectId() {
+        var userId = fake.addUser("john.doe@example.com");
+
+        assertEquals(
+                "john.doe@example.com", client.users().byUserId(userId).get().getMail());
+        assertEquals(
+                userId, client.users().byUserId("john.doe@example.com").get().getId());
+        var e = assertThrows(
+                ODataError.class, () -> client.groups().byGroupId(userId).get());
+        assertEquals(404, e.getResponseStatusCode());
+    }
+
+    @Test
+    void largeTenantsAreListedPageByPage() {
+        fake.populate(2500, 10);
+        var ids = new HashSet<String>();
+
+        var page = client.users().get(r -> r.queryParameters.top = 999);
+        int pages = 1;
+        ids.addAll(page.getValue().stream().map(user -> user.getId()).toList());
+        while (page.getOdataNextLink() != null) {
+            page = client.users().withUrl(page.getOdataNextLink()).get();
+            ids.addAll(page.getValue().stream().map(user -> user.getId()).toList());
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(2500, ids.size());
+        assertEquals(10, client.groups().get().getValue().size());
+    }
+
+    @Test
+    void principalsCanBeCreatedOnFirstLookup() {
+        fake.setAutoCreatePrincipals(true);
+
+        var ids = userIds("mail eq 'new.user@example.com'");
+
+        assertEquals(1, ids.size());
+        assertEquals(ids, userIds("mail eq 'new.user@example.com'"));
+        assertEquals(1, fake.userCount());
+    }
+
+    @Test
+    void batchesAnswerEachRequest() throws Exception {
+        fake.populate(3, 0);
+        var batch = new BatchRequestContent(client);
+        var steps = IntStream.range(0, 3)
+                .mapToObj(i -> batch.addBatchRequestStep(client.users()
+                        .toGetRequestInformation(
+                                r -> r.queryParameters.filter = String.format("mail eq 'user-%07d@example.com'", i))))
+                .toList();
+
+        var responses = client.getBatchRequestBuilder().post(batch, null);
+
+        for (int i = 0; i < steps.size(); i++) {
+            UserCollectionResponse users =
+                    responses.getResponseById(steps.get(i), UserCollectionResponse::createFromDiscriminatorValue);
+            assertEquals(
+                    String.format("user-%07d@example.com", i),
+                    users.getValue().get(0).getMail());
+        }
+        assertEquals(1, fake.requests("batch"));
+        assertEquals(3, fake.requests("listUsers"));
+    }
+
+    @Test
+    void requestsOfBatchesAreThrottledOneByOne() throws Exception {
+        fake.setThrottlingRate(1);
+        var batch = new BatchRequestContent(client);
+        var step = batch.addBatchRequestStep(client.groups().toGetRequestInformation());
+
+        var responses = client.getBatchRequestBuilder().post(batch, null);
+
+        assertEquals(429, responses.getResponsesStatusCode().get(step));
+        assertEquals("0", responses.getResponseById(step).header("Retry-After"));
+        assertEquals(1, fake.throttledRequests());
+    }
+
+    @Test
+    void batchesOfMoreThanTwentyRequestsAreRejected() throws Exception {
+        var requests = IntStream.range(0, 21)
+                .mapToObj(i -> String.format("{\"id\":\"%d\",\"method\":\"GET\",\"url\":\"/groups\"}", i))
+                .toList();
+        var request = HttpRequest.newBuilder(URI.create(fake.endpoint() + "/$batch"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"requests\":[" + String.join(",", requests) + "]}"))
+                .build();
+
+        var response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(400, response.statusCode());
+        assertEquals(0, fake.requests("listGroups"));
+    }
+
+    @Test
+    void throttledRequestsAreRetriedByTheClient() {
+        fake.setThrottlingRate(1);
+
+        var e = assertThrows(ODataError.class, () -> userIds("mail eq 'john.doe@example.com'"));
+
+        assertEquals(429, e.getResponseStatusCode());
+        // The first attempt and the three retries of the client
+        assertEquals(4, fake.throttledRequests());
+        assertEquals(0, fake.requests("listUsers"));
+    }
+
+    @Test
+    void requestsAboveTheLimitWaitForTheNextSecond() {
+        var userId = fake.setRequestsPerSecond(1).addUser("john.doe@example.com");
+
+        for (int i = 0; i < 3; i++) assertEquals(List.of(userId), userIds("mail eq 'john.doe@example.com'"));
+
+        assertTrue(fake.throttledRequests() >= 1);
+        assertEquals(3, fake.requests("listUsers"));
+    }
+}
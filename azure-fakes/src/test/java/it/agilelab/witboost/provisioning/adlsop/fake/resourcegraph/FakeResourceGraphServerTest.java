@@ -0,0 +1,126 @@
+package it.agilelab.witboost.provisioning.adlsop.fake.resourcegraph;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.policy.RetryPolicy;
+import com.azure.core.management.AzureEnvironment;
+import com.azure.core.management.exception.ManagementException;
+import com.azure.core.management.profile.AzureProfile;
+import com.azure.resourcemanager.resourcegraph.ResourceGraphManager;
+import com.azure.resourcemanager.resourcegraph.models.QueryRequest;
+import com.azure.resourcemanager.resourcegraph.models.QueryRequestOptions;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class FakeResourceGraphServerTest {
+
+    private static final String STORAGE_ACCOUNT_QUERY =
+            "Resources | where type =~ 'Microsoft.Storage/storageAccounts' | where name == '%s'";
+
+    private final FakeResourceGraphServer fake = FakeResourceGraphServer.start().setRetryAfter(Duration.ZERO);
+    private final ResourceGraphManager manager = ResourceGraphManager.authenticate(
+            new HttpPipelineBuilder().policies(new RetryPolicy()).build(),
+            new AzureProfile(null, null, new AzureEnvironment(Map.of("resourceManagerEndpointUrl", fake.endpoint()))));
+
+    @AfterEach
+    void close() {
+        fake.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> rows(String query) {
+        return (List<Map<String, Object>>) manager.resourceProviders()
+                .resources(new QueryRequest().withQuery(query))
+                .data();
+    }
+
+    @Test
+    void storageAccountsAreFoundByName() {
+        var id = fake.addStorageAccount("account");
+        fake.populate(10);
+
+        var rows = rows(String.format(STORAGE_ACCOUNT_QUERY, "account"));
+
+        assertEquals(1, rows.size());
+        assertEquals(id, rows.get(0).get("id"));
+        assertEquals("account", rows.get(0).get("name"));
+        assertEquals(FakeResourceGraphServer.RESOURCE_GROUP, rows.get(0).get("resourceGroup"));
+        assertEquals(FakeResourceGraphServer.SUBSCRIPTION_ID, rows.get(0).get("subscriptionId"));
+        assertEquals(List.of(), rows(String.format(STORAGE_ACCOUNT_QUERY, "missing")));
+    }
+
+    @Test
+    void comparisonsFollowTheirCaseSensitivity() {
+        fake.addStorageAccount("account");
+
+        assertEquals(0, rows("Resources | where name == 'ACCOUNT'").size());
+        assertEquals(1, rows("Resources | where name =~ 'ACCOUNT'").size());
+        assertEquals(
+                0,
+                rows("Resources | where type =~ 'Microsoft.Compute/virtualMachines'")
+                        .size());
+    }
+
+    @Test
+    void resultsArePaginated() {
+        fake.populate(250);
+        var names = new HashSet<Object>();
+        var request = new QueryRequest()
+                .withQuery("Resources | where type =~ 'Microsoft.Storage/storageAccounts'")
+                .withOptions(new QueryRequestOptions().withTop(100));
+
+        var response = manager.resourceProviders().resources(request);
+        int pages = 1;
+        ((List<Map<String, Object>>) response.data()).forEach(row -> names.add(row.get("name")));
+        while (response.skipToken() != null) {
+            request.options().withSkipToken(response.skipToken());
+            response = manager.resourceProviders().resources(request);
+            ((List<Map<String, Object>>) response.data()).forEach(row -> names.add(row.get("name")));
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(250, response.totalRecords());
+        assertEquals(250, names.size());
+        assertEquals(5, rows("Resources | limit 5").size());
+    }
+
+    @Test
+    void storageAccountsCanBeCreatedOnFirstLookup() {
+        fake.setAutoCreateStorageAccounts(true);
+
+        assertEquals(1, rows(String.format(STORAGE_ACCOUNT_QUERY, "account")).size());
+        assertEquals(
+                0,
+                rows("Resources | where type =~ 'Microsoft.Compute/virtualMachines' | where name == 'vm'")
+                        .size());
+        assertEquals(1, fake.size());
+    }
+
+    @Test
+    void unsupportedQueriesAreRejected() {
+        var e = assertThrows(
+                ManagementException.class, () -> rows("Resources | project name | where name contains 'a'"));
+
+        assertEquals(400, e.getResponse().getStatusCode());
+        assertEquals("BadRequest", e.getValue().getCode());
+    }
+
+    @Test
+    void throttledRequestsAreRetriedByTheClient() {
+        fake.setThrottlingRate(1);
+
+        var e = assertThrows(ManagementException.class, () -> rows("Resources"));
+
+        assertEquals(429, e.getResponse().getStatusCode());
+        assertEquals("RateLimiting", e.getValue().getCode());
+        // The first attempt and the three retries of the client
+        assertEquals(4, fake.throttledRequests());
+        assertEquals(0, fake.requests("resources"));
+    }
+}
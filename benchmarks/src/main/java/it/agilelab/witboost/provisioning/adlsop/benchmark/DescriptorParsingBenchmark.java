@@ -0,0 +1,50 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.model.Component;
+import it.agilelab.witboost.provisioning.adlsop.model.Descriptor;
+import it.agilelab.witboost.provisioning.adlsop.model.OutputPortSpecific;
+import it.agilelab.witboost.provisioning.adlsop.parser.Parser;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the parsing of a YAML descriptor and of the component to provision as the number of components of the
+ * descriptor grows, see {@link SyntheticDescriptors}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescriptorParsingBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int outputPorts;
+
+    private String descriptor;
+    private JsonNode componentToProvision;
+
+    @Setup
+    public void setup() {
+        descriptor = SyntheticDescriptors.yaml(outputPorts);
+        componentToProvision = Parser.parseDescriptor(descriptor)
+                .get()
+                .getDataProduct()
+                .getComponentToProvision(SyntheticDescriptors.componentToProvision(outputPorts))
+                .get();
+    }
+
+    @Benchmark
+    public Either<FailedOperation, Descriptor> parseDescriptor() {
+        return Parser.parseDescriptor(descriptor);
+    }
+
+    @Benchmark
+    public Either<FailedOperation, Component<OutputPortSpecific>> parseComponent() {
+        return Parser.parseComponent(componentToProvision, OutputPortSpecific.class);
+    }
+}
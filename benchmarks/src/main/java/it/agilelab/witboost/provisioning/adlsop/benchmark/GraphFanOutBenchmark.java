@@ -0,0 +1,94 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.ThreadFactories;
+import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureClient;
+import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureMapper;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures how long it takes to resolve a large set of subjects through the {@link AzureMapper} when every Microsoft
+ * Graph lookup blocks for a fixed latency. The {@code caller} executor runs the lookups one after the other on the
+ * calling thread, like the provisioner does on platform threads, and {@code virtual} runs each on its own virtual
+ * thread, like it does with {@code spring.threads.virtual.enabled}. {@code platform-200} is a pool as large as the
+ * Tomcat one, for reference. The {@code virtual} executor requires running the benchmark on Java 21 or later, see
+ * {@code jmh.java} in the module POM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphFanOutBenchmark {
+
+    @Param({"caller", "platform-200", "virtual"})
+    public String executor;
+
+    @Param({"100"})
+    public int subjects;
+
+    @Param({"20"})
+    public long latencyMillis;
+
+    private ExecutorService executorService;
+    private AzureMapper mapper;
+    private Set<String> refs;
+
+    @Setup
+    public void setup() {
+        executorService = switch (executor) {
+            case "caller" -> null;
+            case "platform-200" -> Executors.newFixedThreadPool(200, ThreadFactories.createDaemon("lookup-", false));
+            case "virtual" -> {
+                if (Runtime.version().feature() < 21)
+                    throw new IllegalStateException("The virtual executor requires Java 21, run with -Djmh.java");
+                yield Executors.newCachedThreadPool(ThreadFactories.create("lookup-", true));
+            }
+            default -> throw new IllegalArgumentException("Unknown executor " + executor);};
+        var client = new SlowAzureClient(latencyMillis);
+        mapper = executorService == null ? new AzureMapper(client) : new AzureMapper(client, executorService);
+        refs = IntStream.range(0, subjects)
+                .mapToObj(i -> "user:user" + i + "_example.com")
+                .collect(Collectors.toSet());
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executorService != null) executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public Object map() {
+        return mapper.map(refs);
+    }
+
+    private record SlowAzureClient(long latencyMillis) implements AzureClient {
+
+        @Override
+        public Either<Throwable, String> getUserId(String mail) {
+            return lookup(mail);
+        }
+
+        @Override
+        public Either<Throwable, String> getGroupId(String group) {
+            return lookup(group);
+        }
+
+        private Either<Throwable, String> lookup(String name) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Either.left(e);
+            }
+            return Either.right(name);
+        }
+    }
+}
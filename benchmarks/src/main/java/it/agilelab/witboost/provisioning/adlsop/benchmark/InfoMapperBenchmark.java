@@ -0,0 +1,30 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import it.agilelab.witboost.provisioning.adlsop.api.InfoMapper;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.Info;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/** Measures the mapping of a provisioned directory to the deploy info returned to the platform */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InfoMapperBenchmark {
+
+    private final AdlsGen2DirectoryInfo directoryInfo = new AdlsGen2DirectoryInfo(
+            SyntheticDescriptors.STORAGE_ACCOUNT,
+            "container",
+            "path/to/folder/",
+            "abfss://container@storageaccount.dfs.core.windows.net/path/to/folder/",
+            "https://portal.azure.com/#blade/Microsoft_Azure_Storage/ContainerMenuBlade/overview",
+            "CSV");
+
+    @Benchmark
+    public Info createDeployInfo() {
+        return InfoMapper.createDeployInfo(directoryInfo);
+    }
+}
@@ -0,0 +1,55 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.model.Descriptor;
+import it.agilelab.witboost.provisioning.adlsop.parser.Parser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the parsing of the same descriptor when it is received as YAML and as JSON. The
+ * {@code jsonDescriptorWithYamlParser} benchmark reproduces the behaviour before the JSON fast-path was introduced in
+ * {@link Parser}, where every input was tokenized by the YAML parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserFormatBenchmark {
+
+    private final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory()).registerModule(new Jdk8Module());
+
+    private String yamlDescriptor;
+    private String jsonDescriptor;
+
+    @Setup
+    public void setup() throws IOException {
+        try (var in = ParserFormatBenchmark.class.getResourceAsStream("/pr_descriptor_outputport.yml")) {
+            yamlDescriptor = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        jsonDescriptor = new ObjectMapper().writeValueAsString(yamlMapper.readTree(yamlDescriptor));
+    }
+
+    @Benchmark
+    public Either<FailedOperation, Descriptor> yamlDescriptor() {
+        return Parser.parseDescriptor(yamlDescriptor);
+    }
+
+    @Benchmark
+    public Either<FailedOperation, Descriptor> jsonDescriptor() {
+        return Parser.parseDescriptor(jsonDescriptor);
+    }
+
+    @Benchmark
+    public Descriptor jsonDescriptorWithYamlParser() throws IOException {
+        return yamlMapper.readValue(jsonDescriptor, Descriptor.class);
+    }
+}
@@ -0,0 +1,80 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import com.azure.core.credential.TokenCredential;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.fake.dfs.FakeDfsServer;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AclUpdateProgress;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2ServiceImpl;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.ContainerExistenceCache;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.ContainerInventory;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures a recursive ACL update of a whole directory, as done when provisioning an output port, against the fake DFS
+ * service of the {@code azure-fakes} module. The directory holds 1,111 directories over three levels with the same
+ * number of files each, so that it has about the requested number of paths. Each DFS call can be delayed, to see how
+ * the round trips of the 2,000-path batches bound the update of a large tree.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RecursiveAclBenchmark {
+
+    private static final String CONTAINER = "container";
+    private static final String DIRECTORY = "path/to/folder";
+    private static final List<String> USERS = List.of("00000000-0000-0000-0000-000000000001");
+
+    @Param({"10000", "100000", "1000000"})
+    public int paths;
+
+    @Param({"0", "20"})
+    public int latencyMillis;
+
+    private FakeDfsServer fake;
+    private AdlsGen2ServiceImpl service;
+
+    @Setup
+    public void setup() {
+        fake = FakeDfsServer.start();
+        fake.populate(SyntheticDescriptors.STORAGE_ACCOUNT, CONTAINER, DIRECTORY, 3, 10, Math.max(0, paths / 1111 - 1));
+        fake.setLatency(Duration.ofMillis(latencyMillis));
+        var config = new AdlsGen2Config();
+        config.setEndpoint(fake.endpoint());
+        config.setLocalEmulator(true);
+        config.getAclUpdates().setMaxBatchesPerCall(0);
+        TokenCredential unused = request -> {
+            throw new UnsupportedOperationException("The fake doesn't authenticate");
+        };
+        service = new AdlsGen2ServiceImpl(
+                unused,
+                null,
+                new ContainerExistenceCache(config),
+                new ContainerInventory(config),
+                config,
+                new AzureCallMetrics(new AzureMetricsConfig(), new SimpleMeterRegistry()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        fake.close();
+    }
+
+    @Benchmark
+    public Either<FailedOperation, Void> updateAcl() {
+        var result = service.updateAcl(
+                SyntheticDescriptors.STORAGE_ACCOUNT, CONTAINER, DIRECTORY, USERS, AclUpdateProgress.noop());
+        if (result.isLeft()) throw new IllegalStateException("The ACL update failed: " + result.getLeft());
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds descriptors of growing size from {@code pr_descriptor_outputport.yml}: its storage component, with the deploy
+ * info of a provisioned storage account, followed by the requested number of output ports depending on it. The last
+ * output port is the component to provision, so looking it up scans the whole list.
+ */
+final class SyntheticDescriptors {
+
+    static final String STORAGE_ACCOUNT = "storageaccount";
+
+    private static final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+
+    private SyntheticDescriptors() {}
+
+    /**
+     * @param outputPorts Number of output ports of the descriptor, at least one
+     * @return The YAML descriptor
+     */
+    static String yaml(int outputPorts) {
+        try {
+            return yamlMapper.writeValueAsString(descriptor(outputPorts));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Id of the component to provision of a descriptor with the given number of output ports */
+    static String componentToProvision(int outputPorts) {
+        return outputPortId(outputPorts - 1);
+    }
+
+    private static ObjectNode descriptor(int outputPorts) {
+        if (outputPorts < 1) throw new IllegalArgumentException("A descriptor needs at least one output port");
+        ObjectNode template;
+        try (var in = SyntheticDescriptors.class.getResourceAsStream("/pr_descriptor_outputport.yml")) {
+            template = (ObjectNode) yamlMapper.readTree(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var components = (ArrayNode) template.get("dataProduct").get("components");
+        var storage = (ObjectNode) components.get(0);
+        var outputPort = (ObjectNode) components.get(1);
+        storage.putObject("info")
+                .putObject("privateInfo")
+                .putObject("outputs")
+                .putObject("storage_account_name")
+                .put("value", STORAGE_ACCOUNT);
+        components.removeAll();
+        components.add(storage);
+        for (int i = 0; i < outputPorts; i++) {
+            var copy = outputPort.deepCopy();
+            copy.put("id", outputPortId(i));
+            copy.put("name", "Output Port " + i);
+            ((ObjectNode) copy.get("specific")).put("path", "path/to/folder/" + i + "/");
+            components.add(copy);
+        }
+        template.put("componentIdToProvision", componentToProvision(outputPorts));
+        return template;
+    }
+
+    private static String outputPortId(int index) {
+        return "urn:dmb:cmp:healthcare:vaccinations:0:output-port-" + index;
+    }
+}
@@ -0,0 +1,60 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import it.agilelab.witboost.provisioning.adlsop.service.task.FileTaskStore;
+import it.agilelab.witboost.provisioning.adlsop.service.task.Task;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of persisting a task status change in the {@link FileTaskStore} journal, including the periodic
+ * compaction, with and without flushing every append to the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskJournalBenchmark {
+
+    @Param({"false", "true"})
+    public boolean fsync;
+
+    private Path directory;
+    private FileTaskStore taskStore;
+    private ObjectNode request;
+    private int counter;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("task-journal-benchmark");
+        taskStore = new FileTaskStore(directory, Duration.ofHours(1), 10000, fsync, Clock.systemUTC());
+        request = JsonNodeFactory.instance.objectNode();
+        request.put("descriptorKind", "COMPONENT_DESCRIPTOR");
+        request.put("descriptor", "x".repeat(4096));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        taskStore.destroy();
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void save() {
+        // Reuse a bounded set of ids, like tasks moving from running to completed
+        String id = new UUID(0, counter++ % 1000).toString();
+        taskStore.save(Task.running(id, "provision", request, Instant.now()));
+    }
+}
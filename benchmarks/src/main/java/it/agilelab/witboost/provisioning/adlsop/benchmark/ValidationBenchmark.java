@@ -0,0 +1,59 @@
+package it.agilelab.witboost.provisioning.adlsop.benchmark;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import io.micrometer.observation.ObservationRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.model.ProvisionRequest;
+import it.agilelab.witboost.provisioning.adlsop.model.Specific;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.DescriptorKind;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
+import it.agilelab.witboost.provisioning.adlsop.service.validation.OutputPortValidator;
+import it.agilelab.witboost.provisioning.adlsop.service.validation.ValidationServiceImpl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the validation of a provisioning request as the number of components of the descriptor grows, see
+ * {@link SyntheticDescriptors}. The storage checks are run against a Mockito stub reporting that every container
+ * exists, so that only the work done by the provisioner is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int outputPorts;
+
+    private ValidationServiceImpl validationService;
+    private ProvisioningRequest request;
+
+    @Setup
+    public void setup() {
+        // Every container exists, the only call made by the validation. Stub-only, so that the calls aren't recorded
+        var adlsGen2Service = mock(AdlsGen2Service.class, withSettings().stubOnly());
+        when(adlsGen2Service.containerExists(anyString(), anyString())).thenReturn(Either.right(true));
+        validationService = new ValidationServiceImpl(
+                new OutputPortValidator(adlsGen2Service), new ProvisioningPhases(ObservationRegistry.NOOP));
+        request = new ProvisioningRequest(
+                DescriptorKind.COMPONENT_DESCRIPTOR, SyntheticDescriptors.yaml(outputPorts), false);
+        var result = validate();
+        if (result.isLeft())
+            throw new IllegalStateException("The synthetic descriptor is not valid: " + result.getLeft());
+    }
+
+    @Benchmark
+    public Either<FailedOperation, ProvisionRequest<? extends Specific>> validate() {
+        return validationService.validate(request, true);
+    }
+}
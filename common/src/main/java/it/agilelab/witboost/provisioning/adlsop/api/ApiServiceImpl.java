@@ -1,5 +1,6 @@
 package it.agilelab.witboost.provisioning.adlsop.api;
 
+import io.micrometer.common.KeyValues;
 import io.vavr.control.Either;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
@@ -8,16 +9,31 @@ import it.agilelab.witboost.provisioning.adlsop.model.ProvisionRequest;
 import it.agilelab.witboost.provisioning.adlsop.model.ProvisioningResult;
 import it.agilelab.witboost.provisioning.adlsop.model.Specific;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.DescriptorKind;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.Info;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.Log;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningStatus;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.UpdateAclRequest;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationError;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationInfo;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationResult;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationStatus;
 import it.agilelab.witboost.provisioning.adlsop.parser.Parser;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AclUpdateProgress;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.CallAccounting;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
 import it.agilelab.witboost.provisioning.adlsop.service.provision.OutputPortHandler;
+import it.agilelab.witboost.provisioning.adlsop.service.removal.DataRemovalPipeline;
+import it.agilelab.witboost.provisioning.adlsop.service.task.Task;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskContext;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskEngine;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskStatus;
 import it.agilelab.witboost.provisioning.adlsop.service.validation.ValidationService;
 import jakarta.validation.ConstraintViolationException;
+import java.time.ZoneOffset;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -28,12 +44,37 @@ public class ApiServiceImpl {
 
     private final ValidationService validationService;
     private final OutputPortHandler outputPortHandler;
+    private final TaskEngine taskEngine;
+    private final ProvisioningPhases provisioningPhases;
+    private final CallAccounting callAccounting;
 
     private final String OUTPUTPORT_KIND = "outputport";
+    private static final String VALIDATE_OPERATION = "validate";
+    private static final String PROVISION_OPERATION = "provision";
+    private static final String UNPROVISION_OPERATION = "unprovision";
+    private static final String UPDATE_ACL_OPERATION = "updateacl";
 
-    public ApiServiceImpl(ValidationService validationService, OutputPortHandler outputPortHandler) {
+    public ApiServiceImpl(
+            ValidationService validationService,
+            OutputPortHandler outputPortHandler,
+            TaskEngine taskEngine,
+            ProvisioningPhases provisioningPhases,
+            CallAccounting callAccounting) {
         this.validationService = validationService;
         this.outputPortHandler = outputPortHandler;
+        this.taskEngine = taskEngine;
+        this.provisioningPhases = provisioningPhases;
+        this.callAccounting = callAccounting;
+        taskEngine.register(VALIDATE_OPERATION, ProvisioningRequest.class, (request, context) -> validate(request));
+        taskEngine.register(PROVISION_OPERATION, ProvisioningRequest.class, (request, context) -> callAccounting
+                .account(PROVISION_OPERATION, () -> provision(request))
+                .result());
+        taskEngine.register(UNPROVISION_OPERATION, ProvisioningRequest.class, (request, context) -> callAccounting
+                .account(UNPROVISION_OPERATION, () -> unprovision(request))
+                .result());
+        taskEngine.register(UPDATE_ACL_OPERATION, UpdateAclRequest.class, (request, context) -> callAccounting
+                .account(UPDATE_ACL_OPERATION, () -> updateAcl(request, context))
+                .result());
     }
 
     public ValidationResult validate(ProvisioningRequest provisioningRequest) {
@@ -55,6 +96,30 @@ public class ApiServiceImpl {
         }
     }
 
+    /**
+     * Enqueues the validation of a provisioning request
+     * @param provisioningRequest Request to be validated
+     * @return The token to be used to poll the validation status
+     */
+    public String asyncValidate(ProvisioningRequest provisioningRequest) {
+        return taskEngine.submit(VALIDATE_OPERATION, provisioningRequest);
+    }
+
+    public ValidationStatus getValidationStatus(String token) {
+        var task = taskEngine
+                .getTask(token, VALIDATE_OPERATION)
+                .orElseThrow(() -> new SpecificProvisionerValidationException(unknownToken(token)));
+        return switch (task.status()) {
+            case RUNNING -> new ValidationStatus(ValidationStatus.StatusEnum.RUNNING);
+            case COMPLETED -> new ValidationStatus(ValidationStatus.StatusEnum.COMPLETED)
+                    .info(new ValidationInfo(taskEngine.getResult(task, ValidationResult.class)));
+            case FAILED, CANCELLED -> {
+                log.error("Validation task {} failed: {}", token, task.errors());
+                yield new ValidationStatus(ValidationStatus.StatusEnum.FAILED);
+            }
+        };
+    }
+
     public ProvisioningStatus provision(ProvisioningRequest provisioningRequest) {
         Either<FailedOperation, ProvisionRequest<? extends Specific>> eitherValidation =
                 validationService.validate(provisioningRequest, true);
@@ -65,8 +130,13 @@ public class ApiServiceImpl {
                 var eitherDirectoryInfo = outputPortHandler.create(provisionRequest);
                 if (eitherDirectoryInfo.isLeft())
                     throw new SpecificProvisionerValidationException(eitherDirectoryInfo.getLeft());
-                return new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, "")
-                        .info(InfoMapper.createDeployInfo(eitherDirectoryInfo.get()));
+                var directoryInfo = eitherDirectoryInfo.get();
+                var info = provisioningPhases.observeCall(
+                        ProvisioningPhases.INFO,
+                        "createDeployInfo",
+                        KeyValues.of(ProvisioningPhases.pathDepth(directoryInfo.getPath())),
+                        () -> InfoMapper.createDeployInfo(directoryInfo));
+                return new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, "").info(info);
             }
             default:
                 throw new SpecificProvisionerValidationException(
@@ -83,7 +153,14 @@ public class ApiServiceImpl {
             case OUTPUTPORT_KIND: {
                 var outcome = outputPortHandler.destroy(provisionRequest);
                 if (outcome.isLeft()) throw new SpecificProvisionerValidationException(outcome.getLeft());
-                return new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, "");
+                return outcome.get()
+                        .map(removalToken -> new ProvisioningStatus(
+                                        ProvisioningStatus.StatusEnum.COMPLETED,
+                                        String.format(
+                                                "The data is being removed in the background, its status can be polled with the token '%s'",
+                                                removalToken))
+                                .info(new Info(Map.of(), Map.of("dataRemovalToken", removalToken))))
+                        .orElseGet(() -> new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, ""));
             }
             default:
                 throw new SpecificProvisionerValidationException(
@@ -92,6 +169,45 @@ public class ApiServiceImpl {
     }
 
     public ProvisioningStatus updateAcl(UpdateAclRequest updateAclRequest) {
+        return updateAcl(updateAclRequest, AclUpdateProgress.noop());
+    }
+
+    /**
+     * Enqueues the update of the Access Control Lists. The progress of the recursive update is reported while polling
+     * its status
+     * @param updateAclRequest Request with the identities to be granted access
+     * @return The token to be used to poll the update status
+     */
+    public String asyncUpdateAcl(UpdateAclRequest updateAclRequest) {
+        return taskEngine.submit(UPDATE_ACL_OPERATION, updateAclRequest);
+    }
+
+    /**
+     * Runs the update of the Access Control Lists as a task, publishing the progress of the recursive update and
+     * checkpointing it so that it resumes from the last processed batch after a restart
+     */
+    private ProvisioningStatus updateAcl(UpdateAclRequest updateAclRequest, TaskContext context) {
+        var progress = new AclUpdateProgress(new AclUpdateProgress.Listener() {
+                    @Override
+                    public void onProgress(AclUpdateProgress.Snapshot snapshot) {
+                        context.reportProgress(snapshot);
+                    }
+
+                    @Override
+                    public void onCheckpoint(AclUpdateProgress.Snapshot snapshot, String continuationToken) {
+                        context.reportProgress(snapshot, continuationToken);
+                    }
+
+                    @Override
+                    public boolean isCancellationRequested() {
+                        return context.isCancellationRequested();
+                    }
+                })
+                .resumeFrom(context.getCheckpoint(String.class).orElse(null));
+        return updateAcl(updateAclRequest, progress);
+    }
+
+    private ProvisioningStatus updateAcl(UpdateAclRequest updateAclRequest, AclUpdateProgress progress) {
         log.info("Starting updating Access Control Lists");
         // Converting the ProvisionInfo.request to a ProvisioningRequest, to exploit validation methods already in place
         ProvisioningRequest provisioningRequest = new ProvisioningRequest(
@@ -111,7 +227,7 @@ public class ApiServiceImpl {
                         Parser.parseObject(updateAclRequest.getProvisionInfo().getResult(), ProvisioningResult.class);
                 if (eitherStorageInfo.isRight()) {
                     return outputPortHandler
-                            .updateAcl(updateAclRequest.getRefs(), provisionRequest, eitherStorageInfo.get())
+                            .updateAcl(updateAclRequest.getRefs(), provisionRequest, eitherStorageInfo.get(), progress)
                             .getOrElseThrow(failedOperation -> {
                                 throw new SpecificProvisionerValidationException(failedOperation);
                             });
@@ -127,6 +243,118 @@ public class ApiServiceImpl {
         }
     }
 
+    /**
+     * Enqueues the provisioning of a component
+     * @param provisioningRequest Request to be provisioned
+     * @return The token to be used to poll the provisioning status
+     */
+    public String asyncProvision(ProvisioningRequest provisioningRequest) {
+        return taskEngine.submit(PROVISION_OPERATION, provisioningRequest);
+    }
+
+    /**
+     * Enqueues the unprovisioning of a component
+     * @param provisioningRequest Request to be unprovisioned
+     * @return The token to be used to poll the unprovisioning status
+     */
+    public String asyncUnprovision(ProvisioningRequest provisioningRequest) {
+        return taskEngine.submit(UNPROVISION_OPERATION, provisioningRequest);
+    }
+
+    public ProvisioningStatus getStatus(String token) {
+        var task = taskEngine
+                .getTask(token, PROVISION_OPERATION)
+                .or(() -> taskEngine.getTask(token, UNPROVISION_OPERATION))
+                .or(() -> taskEngine.getTask(token, UPDATE_ACL_OPERATION))
+                .or(() -> taskEngine.getTask(token, DataRemovalPipeline.OPERATION))
+                .orElseThrow(() -> new SpecificProvisionerValidationException(unknownToken(token)));
+        return status(task);
+    }
+
+    /**
+     * Requests the cancellation of a provisioning, unprovisioning, ACL update or data removal task
+     * @param token Token of the task
+     * @return The status of the task, which is still running until the task stops at its next checkpoint
+     */
+    public ProvisioningStatus cancel(String token) {
+        var task = taskEngine
+                .cancel(token, PROVISION_OPERATION)
+                .or(() -> taskEngine.cancel(token, UNPROVISION_OPERATION))
+                .or(() -> taskEngine.cancel(token, UPDATE_ACL_OPERATION))
+                .or(() -> taskEngine.cancel(token, DataRemovalPipeline.OPERATION))
+                .orElseThrow(() -> new SpecificProvisionerValidationException(unknownToken(token)));
+        return status(task);
+    }
+
+    private ProvisioningStatus status(Task task) {
+        return switch (task.status()) {
+            case RUNNING -> runningStatus(task);
+            case COMPLETED -> taskEngine.getResult(task, ProvisioningStatus.class);
+            case FAILED -> new ProvisioningStatus(
+                            ProvisioningStatus.StatusEnum.FAILED, String.join("\n", task.errors()))
+                    .logs(errorLogs(task));
+            case CANCELLED -> cancelledStatus(task);
+        };
+    }
+
+    /**
+     * Checks whether the token of a provisioning task can be returned again to a duplicate request
+     * @param token Token of the task
+     * @return true if the task is running or has completed successfully, and its status can still be polled
+     */
+    public boolean isReplayableToken(String token) {
+        return taskEngine
+                .getTask(token, PROVISION_OPERATION)
+                .or(() -> taskEngine.getTask(token, UNPROVISION_OPERATION))
+                .or(() -> taskEngine.getTask(token, UPDATE_ACL_OPERATION))
+                .filter(task -> task.status() == TaskStatus.RUNNING || task.status() == TaskStatus.COMPLETED)
+                .isPresent();
+    }
+
+    private ProvisioningStatus runningStatus(Task task) {
+        var status = new ProvisioningStatus(ProvisioningStatus.StatusEnum.RUNNING, "");
+        if (UPDATE_ACL_OPERATION.equals(task.operation()))
+            return taskEngine
+                    .getProgress(task, AclUpdateProgress.Snapshot.class)
+                    .map(progress -> withProgress(status, task, progress, progress.describe()))
+                    .orElse(status);
+        if (DataRemovalPipeline.OPERATION.equals(task.operation()))
+            return taskEngine
+                    .getProgress(task, DataRemovalPipeline.Progress.class)
+                    .map(progress -> withProgress(status, task, progress, progress.describe()))
+                    .orElse(status);
+        return status;
+    }
+
+    private ProvisioningStatus withProgress(ProvisioningStatus status, Task task, Object progress, String description) {
+        return status.info(new Info(Map.of(), Map.of("progress", progress)))
+                .logs(List.of(new Log(task.updatedAt().atOffset(ZoneOffset.UTC), Log.LevelEnum.INFO, description)));
+    }
+
+    /** A cancelled task is reported as failed, with the progress it made before stopping */
+    private ProvisioningStatus cancelledStatus(Task task) {
+        var status = new ProvisioningStatus(ProvisioningStatus.StatusEnum.FAILED, String.join("\n", task.errors()))
+                .logs(errorLogs(task));
+        if (!UPDATE_ACL_OPERATION.equals(task.operation())) return status;
+        return taskEngine
+                .getProgress(task, AclUpdateProgress.Snapshot.class)
+                .map(progress -> status.info(new Info(Map.of(), Map.of("progress", progress))))
+                .orElse(status);
+    }
+
+    private List<Log> errorLogs(Task task) {
+        var timestamp = task.updatedAt().atOffset(ZoneOffset.UTC);
+        return task.errors().stream()
+                .map(error -> new Log(timestamp, Log.LevelEnum.ERROR, error))
+                .collect(Collectors.toList());
+    }
+
+    private FailedOperation unknownToken(String token) {
+        return new FailedOperation(Collections.singletonList(new Problem(String.format(
+                "The token '%s' doesn't identify any running or recently completed task. It may be wrong or expired",
+                token))));
+    }
+
     private FailedOperation unsupportedKind(String kind) {
         return new FailedOperation(Collections.singletonList(new Problem(
                 String.format("The kind '%s' of the component is not supported by this Specific Provisioner", kind))));
@@ -0,0 +1,36 @@
+package it.agilelab.witboost.provisioning.adlsop.bean;
+
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2ServiceImpl;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsRequestScheduler;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.InstrumentedAdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.ScheduledAdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.SerializedAclAdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+@Configuration
+public class AdlsGen2ServiceConfig {
+
+    @Bean
+    @Primary
+    public AdlsGen2Service adlsGen2Service(
+            AdlsGen2ServiceImpl adlsGen2ServiceImpl,
+            AdlsRequestScheduler scheduler,
+            AdlsGen2Config adlsGen2Config,
+            AzureCallMetrics azureCallMetrics,
+            ProvisioningPhases provisioningPhases) {
+        // Metrics are recorded inside the scheduler, so the time spent waiting for a slot is not blamed on Azure
+        AdlsGen2Service service =
+                new InstrumentedAdlsGen2Service(adlsGen2ServiceImpl, azureCallMetrics, provisioningPhases);
+        service = new ScheduledAdlsGen2Service(service, scheduler);
+        // Superseded ACL updates wait outside the scheduler, so they don't hold a place in its queues
+        if (adlsGen2Config.getAclUpdates().isSerialize()) service = new SerializedAclAdlsGen2Service(service);
+        adlsGen2ServiceImpl.listContainersThrough(service);
+        return service;
+    }
+}
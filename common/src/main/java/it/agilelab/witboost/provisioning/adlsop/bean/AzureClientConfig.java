@@ -3,9 +3,12 @@ package it.agilelab.witboost.provisioning.adlsop.bean;
 import com.azure.identity.ClientSecretCredential;
 import com.azure.identity.ClientSecretCredentialBuilder;
 import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.kiota.authentication.AnonymousAuthenticationProvider;
 import it.agilelab.witboost.provisioning.adlsop.config.AzurePermissionsConfig;
 import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureClient;
 import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureGraphClient;
+import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.InstrumentedAzureClient;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -15,22 +18,36 @@ import org.springframework.context.annotation.Configuration;
 public class AzureClientConfig {
 
     @Bean
-    public AzureClient azureClient(AzurePermissionsConfig azurePermissionsConfig) {
+    public AzureClient azureClient(AzurePermissionsConfig azurePermissionsConfig, AzureCallMetrics azureCallMetrics) {
 
-        String clientId = azurePermissionsConfig.getClientId();
-        String tenantId = azurePermissionsConfig.getTenantId();
-        String clientSecret = azurePermissionsConfig.getClientSecret();
+        String graphEndpoint = azurePermissionsConfig.getGraphEndpoint();
 
-        String[] scopes = new String[] {"https://graph.microsoft.com/.default"};
+        if (graphEndpoint.startsWith("http://") && !azurePermissionsConfig.isLocalEmulator())
+            throw new IllegalStateException(String.format(
+                    "The Graph endpoint %s isn't secure. Set azure.permissions.localEmulator to run against a local emulator",
+                    graphEndpoint));
 
-        ClientSecretCredential credential = new ClientSecretCredentialBuilder()
-                .clientId(clientId)
-                .tenantId(tenantId)
-                .clientSecret(clientSecret)
-                .build();
+        GraphServiceClient graphServiceClient;
+        if (azurePermissionsConfig.isLocalEmulator()) {
+            // Token credentials require https, and the local stand-ins of the Graph don't check them
+            graphServiceClient = new GraphServiceClient(new AnonymousAuthenticationProvider());
+        } else {
+            String clientId = azurePermissionsConfig.getClientId();
+            String tenantId = azurePermissionsConfig.getTenantId();
+            String clientSecret = azurePermissionsConfig.getClientSecret();
 
-        GraphServiceClient graphServiceClient = new GraphServiceClient(credential, scopes);
+            String[] scopes = new String[] {"https://graph.microsoft.com/.default"};
 
-        return new AzureGraphClient(graphServiceClient);
+            ClientSecretCredential credential = new ClientSecretCredentialBuilder()
+                    .clientId(clientId)
+                    .tenantId(tenantId)
+                    .clientSecret(clientSecret)
+                    .build();
+
+            graphServiceClient = new GraphServiceClient(credential, scopes);
+        }
+        graphServiceClient.getRequestAdapter().setBaseUrl(graphEndpoint);
+
+        return new InstrumentedAzureClient(new AzureGraphClient(graphServiceClient), azureCallMetrics);
     }
 }
@@ -1,15 +1,32 @@
 package it.agilelab.witboost.provisioning.adlsop.bean;
 
+import it.agilelab.witboost.provisioning.adlsop.common.ThreadFactories;
 import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureClient;
 import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureMapper;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.CallAccounting;
+import java.util.concurrent.Executor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 
 @Configuration
 public class AzureMapperConfig {
 
     @Bean
-    public AzureMapper azureMapper(AzureClient azureClient) {
-        return new AzureMapper(azureClient);
+    public AzureMapper azureMapper(AzureClient azureClient, Environment environment, CallAccounting callAccounting) {
+        // The lookups are accounted to the request resolving its subjects
+        return new AzureMapper(azureClient, callAccounting.propagating(graphLookupExecutor(environment)));
+    }
+
+    /**
+     * Runs the Microsoft Graph lookups of the subjects of a request. With virtual threads every lookup gets its own
+     * thread, otherwise they run one after the other on the thread of the request, so that the lookups of concurrent
+     * requests aren't funneled through a shared pool. It is not exposed as a bean, since an {@link Executor} bean would
+     * replace the application task executor of Spring Boot
+     */
+    private static Executor graphLookupExecutor(Environment environment) {
+        if (ThreadFactories.virtualThreadsEnabled(environment)) return new VirtualThreadTaskExecutor("graph-lookup-");
+        return Runnable::run;
     }
 }
@@ -1,18 +1,43 @@
 package it.agilelab.witboost.provisioning.adlsop.bean;
 
 import com.azure.core.credential.TokenCredential;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.policy.RetryPolicy;
 import com.azure.core.management.AzureEnvironment;
 import com.azure.core.management.profile.AzureProfile;
 import com.azure.resourcemanager.resourcegraph.ResourceGraphManager;
+import it.agilelab.witboost.provisioning.adlsop.config.ResourceGraphConfig;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import java.util.HashMap;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@EnableConfigurationProperties(ResourceGraphConfig.class)
 public class ResourceGraphManagerBean {
 
     @Bean
-    public ResourceGraphManager resourceGraphManager(TokenCredential tokenCredential) {
-        AzureProfile profile = new AzureProfile(AzureEnvironment.AZURE);
-        return ResourceGraphManager.authenticate(tokenCredential, profile);
+    public ResourceGraphManager resourceGraphManager(
+            TokenCredential tokenCredential,
+            AzureCallMetrics azureCallMetrics,
+            ResourceGraphConfig resourceGraphConfig) {
+        var endpoints = new HashMap<>(AzureEnvironment.AZURE.getEndpoints());
+        endpoints.put("resourceManagerEndpointUrl", resourceGraphConfig.getEndpoint());
+        AzureProfile profile = new AzureProfile(new AzureEnvironment(endpoints));
+        if (resourceGraphConfig.getEndpoint().startsWith("http://") && !resourceGraphConfig.isLocalEmulator())
+            throw new IllegalStateException(String.format(
+                    "The Resource Graph endpoint %s isn't secure. Set azure.resourceGraph.localEmulator to run against a local emulator",
+                    resourceGraphConfig.getEndpoint()));
+        if (resourceGraphConfig.isLocalEmulator()) {
+            // Bearer tokens require https, and the local stand-ins of the service don't check them
+            var pipeline = new HttpPipelineBuilder()
+                    .policies(new RetryPolicy(), azureCallMetrics.httpPolicy(AzureCallMetrics.RESOURCE_GRAPH))
+                    .build();
+            return ResourceGraphManager.authenticate(pipeline, profile);
+        }
+        return ResourceGraphManager.configure()
+                .withPolicy(azureCallMetrics.httpPolicy(AzureCallMetrics.RESOURCE_GRAPH))
+                .authenticate(tokenCredential, profile);
     }
 }
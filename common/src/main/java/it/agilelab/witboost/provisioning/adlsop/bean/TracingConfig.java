@@ -0,0 +1,22 @@
+package it.agilelab.witboost.provisioning.adlsop.bean;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TracingConfig {
+
+    /**
+     * When the OpenTelemetry agent is attached, the spans created through Micrometer Tracing are handed to it instead of
+     * an SDK of our own, so that they are exported with the ones of the automatic instrumentation and nested in the
+     * span of the HTTP request
+     */
+    @Bean
+    @ConditionalOnClass(name = "io.opentelemetry.javaagent.OpenTelemetryAgent")
+    public OpenTelemetry agentOpenTelemetry() {
+        return GlobalOpenTelemetry.get();
+    }
+}
@@ -0,0 +1,9 @@
+package it.agilelab.witboost.provisioning.adlsop.common;
+
+/** Thrown by a long-running operation that stopped early because its cancellation was requested */
+public class OperationCancelledException extends RuntimeException {
+
+    public OperationCancelledException(String message) {
+        super(message);
+    }
+}
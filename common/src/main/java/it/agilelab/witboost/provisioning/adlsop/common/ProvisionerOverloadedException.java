@@ -0,0 +1,27 @@
+package it.agilelab.witboost.provisioning.adlsop.common;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/** Thrown when the provisioner cannot accept more work and the caller should retry later */
+public class ProvisionerOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ProvisionerOverloadedException(String message) {
+        this(message, null);
+    }
+
+    /**
+     * @param message Error message
+     * @param retryAfter Suggested delay before retrying, returned in the {@code Retry-After} header
+     */
+    public ProvisionerOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Optional<Duration> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
+    }
+}
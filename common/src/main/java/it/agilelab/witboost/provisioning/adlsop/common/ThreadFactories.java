@@ -0,0 +1,48 @@
+package it.agilelab.witboost.provisioning.adlsop.common;
+
+import java.util.concurrent.ThreadFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Creates the threads used for blocking Azure I/O. When virtual threads are enabled with
+ * {@code spring.threads.virtual.enabled} and the provisioner runs on Java 21 or later, the same setting that moves
+ * Tomcat request handling to virtual threads also moves the background workers and fan-out executors to them.
+ */
+public final class ThreadFactories {
+
+    private ThreadFactories() {}
+
+    /**
+     * @return true if {@code spring.threads.virtual.enabled} is set and the runtime supports virtual threads
+     */
+    public static boolean virtualThreadsEnabled(Environment environment) {
+        return Threading.VIRTUAL.isActive(environment);
+    }
+
+    /**
+     * Creates a thread factory naming its threads with the prefix followed by a counter
+     * @param prefix Prefix of the thread names
+     * @param virtual Whether to create virtual threads, requires Java 21 or later
+     * @return The thread factory
+     */
+    public static ThreadFactory create(String prefix, boolean virtual) {
+        if (virtual) return new VirtualThreadTaskExecutor(prefix).getVirtualThreadFactory();
+        return new CustomizableThreadFactory(prefix);
+    }
+
+    /**
+     * Creates a thread factory of daemon platform threads, or of virtual threads that never block the JVM shutdown
+     * @param prefix Prefix of the thread names
+     * @param virtual Whether to create virtual threads, requires Java 21 or later
+     * @return The thread factory
+     */
+    public static ThreadFactory createDaemon(String prefix, boolean virtual) {
+        if (virtual) return create(prefix, true);
+        var threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -0,0 +1,131 @@
+package it.agilelab.witboost.provisioning.adlsop.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "adlsgen2")
+public class AdlsGen2Config {
+    /** DFS endpoint of a storage account, where %s is replaced by the account name */
+    private String endpoint = "https://%s.dfs.core.windows.net";
+
+    /**
+     * Whether the endpoint is a local emulator of the DFS service, called with a placeholder SAS instead of the Azure
+     * credentials. Required for http endpoints, which are rejected otherwise
+     */
+    private boolean localEmulator = false;
+
+    /** How long a successful container existence check is trusted. A zero duration disables the cache */
+    private Duration containerExistsCacheTtl = Duration.ofSeconds(30);
+
+    private Inventory inventory = new Inventory();
+
+    private Scheduler scheduler = new Scheduler();
+
+    private AclUpdates aclUpdates = new AclUpdates();
+
+    private DataRemoval dataRemoval = new DataRemoval();
+
+    @Data
+    public static class Inventory {
+        /** Whether to keep a snapshot of the containers of each storage account used by the provisioner */
+        private boolean enabled = false;
+        /** How often the snapshot of each storage account is refreshed in the background */
+        private Duration refreshInterval = Duration.ofMinutes(1);
+        /** Storage accounts that are not queried for this long are dropped from the inventory */
+        private Duration idleTimeout = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Scheduler {
+        /** Whether ADLS operations are queued and dispatched fairly across storage accounts */
+        private boolean enabled = true;
+        /** How long an operation can wait in the queue before failing */
+        private Duration maxWait = Duration.ofMinutes(5);
+        /**
+         * Operations per second started on each storage account. An operation may send several HTTP requests, like the
+         * pages of a listing or the batches of a recursive ACL update
+         */
+        private double operationsPerSecond = 20;
+        /** Operations that can be started at once on an idle storage account */
+        private int burst = 40;
+        /** Share of the capacity of each storage account, relative to the default weight of 1 */
+        private Map<String, Double> weights = new HashMap<>();
+        /** Limits of cheap operations, like checking a container or creating a directory */
+        private Lane light = new Lane(32, 8, 1);
+        /** Limits of expensive operations, like recursive ACL updates and deletions */
+        private Lane heavy = new Lane(8, 2, 10);
+    }
+
+    @Data
+    public static class AclUpdates {
+        /**
+         * Whether ACL updates on the same directory run one at a time, skipping the waiting requests superseded by
+         * newer ones
+         */
+        private boolean serialize = true;
+        /**
+         * Batches processed by each SDK call of a recursive ACL update, before checking whether the update was
+         * cancelled. Zero processes the whole tree in a single call, that can't be cancelled
+         */
+        private int maxBatchesPerCall = 10;
+    }
+
+    @Data
+    public static class DataRemoval {
+        /**
+         * Whether the data of unprovisioned components is moved to the trash and deleted in the background, instead of
+         * being deleted during the unprovisioning
+         */
+        private boolean background = true;
+        /** Directory of each container where the data to be removed is moved, relative to the container root */
+        private String trashDirectory = ".trash";
+        /** Files and directories removed by each deletion call */
+        private int pageSize = 500;
+        /** Attempts of each deletion call before the removal fails */
+        private int maxAttempts = 5;
+        /** Wait before retrying a failed deletion call, doubled at each attempt */
+        private Duration retryBackoff = Duration.ofSeconds(10);
+        /** Removals running at the same time */
+        private int workers = 2;
+        /**
+         * Interval between the sweeps of the trash directories for data left behind by failed or cancelled removals.
+         * Zero disables the sweeps
+         */
+        private Duration orphanSweepInterval = Duration.ofHours(1);
+        /** Time a directory in the trash must be left unmodified, with no removal running, to be swept */
+        private Duration orphanAge = Duration.ofHours(1);
+        /**
+         * Containers whose trash is always swept, in addition to the ones where data was moved to the trash since the
+         * start of the provisioner
+         */
+        private List<Container> orphanSweepContainers = new ArrayList<>();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Container {
+        private String storageAccount;
+        private String containerName;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Lane {
+        /** Operations of the lane running at the same time across all storage accounts */
+        private int maxConcurrency;
+        /** Operations of the lane running at the same time on a single storage account */
+        private int maxConcurrencyPerAccount;
+        /** Cost of an operation of the lane when sharing the capacity fairly across storage accounts */
+        private double cost;
+    }
+}
@@ -0,0 +1,28 @@
+package it.agilelab.witboost.provisioning.adlsop.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionConfig {
+    /** Whether the number of provisioning operations running at the same time is limited */
+    private boolean enabled = true;
+    /** Operations admitted at the same time before the limit has adapted to the observed latency */
+    private int initialLimit = 20;
+    /** Lowest value the adaptive limit can shrink to */
+    private int minLimit = 4;
+    /** Highest value the adaptive limit can grow to */
+    private int maxLimit = 200;
+    /** Operations waiting for the limit to free up before new ones are rejected */
+    private int queueCapacity = 50;
+    /** How long an operation can wait for the limit to free up before being rejected */
+    private Duration maxQueueWait = Duration.ofSeconds(30);
+    /** How much slower than the long-term average latency an operation can be before the limit shrinks */
+    private double latencyTolerance = 1.5;
+    /** Fraction of the new limit estimate applied at each sample, smoothing out the changes of the limit */
+    private double smoothing = 0.2;
+    /** Number of samples averaged by the long-term latency */
+    private int longWindow = 100;
+}
@@ -0,0 +1,56 @@
+package it.agilelab.witboost.provisioning.adlsop.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "async")
+public class AsyncConfig {
+    /** Number of worker threads running asynchronous tasks */
+    private int workers = 8;
+    /** Maximum number of tasks waiting for a free worker before new submissions are rejected */
+    private int queueCapacity = 1000;
+    /** How long the status of a completed or failed task is kept available for polling */
+    private Duration statusTtl = Duration.ofHours(1);
+
+    private Provisioning provisioning = new Provisioning();
+
+    private UpdateAcl updateAcl = new UpdateAcl();
+
+    private Store store = new Store();
+
+    @Data
+    public static class Provisioning {
+        /**
+         * Whether provision and unprovision requests are acknowledged with a token and run asynchronously instead of
+         * keeping the HTTP connection open until they complete
+         */
+        private boolean enabled = false;
+    }
+
+    @Data
+    public static class UpdateAcl {
+        /**
+         * Whether update ACL requests are acknowledged with a token and run asynchronously, reporting the progress of
+         * the recursive update while polling their status
+         */
+        private boolean enabled = false;
+    }
+
+    @Data
+    public static class Store {
+        /**
+         * Where the status of the tasks is kept: {@code memory} loses it on restart, {@code file} persists it in a
+         * local journal so that running tasks are resumed after a restart. The journal needs a writable, persistent
+         * directory, so it must be opted into
+         */
+        private String type = "memory";
+        /** Directory of the task journal, when the store type is {@code file} */
+        private String directory = "data/tasks";
+        /** Number of records appended to the journal after which it's compacted */
+        private int compactionThreshold = 10000;
+        /** Whether every append is flushed to the disk, trading throughput for durability on power loss */
+        private boolean fsync = false;
+    }
+}
@@ -0,0 +1,36 @@
+package it.agilelab.witboost.provisioning.adlsop.config;
+
+import java.time.Duration;
+import java.util.List;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "metrics.azure")
+public class AzureMetricsConfig {
+    /** Whether the calls to the Azure backends are timed and counted */
+    private boolean enabled = true;
+    /**
+     * Whether every HTTP request sent to the Data Lake Storage and Resource Graph, including the retries of the SDK,
+     * is timed and traced
+     */
+    private boolean httpRequests = true;
+    /** Whether the Azure calls of each provisioning request are accounted, logged and returned in a response header */
+    private boolean accounting = true;
+    /**
+     * Storage accounts tagged by name. Calls to further accounts are tagged as {@code other}, keeping the number of
+     * time series bounded
+     */
+    private int maxStorageAccountTags = 100;
+    /** Latency buckets of the call histograms */
+    private List<Duration> slo = List.of(
+            Duration.ofMillis(50),
+            Duration.ofMillis(100),
+            Duration.ofMillis(250),
+            Duration.ofMillis(500),
+            Duration.ofSeconds(1),
+            Duration.ofMillis(2500),
+            Duration.ofSeconds(5),
+            Duration.ofSeconds(10),
+            Duration.ofSeconds(30));
+}
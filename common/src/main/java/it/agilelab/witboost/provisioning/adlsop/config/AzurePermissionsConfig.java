@@ -9,4 +9,11 @@ public class AzurePermissionsConfig {
     private String clientId;
     private String tenantId;
     private String clientSecret;
+    /** Base URL of Microsoft Graph */
+    private String graphEndpoint = "https://graph.microsoft.com/v1.0";
+    /**
+     * Whether the Graph endpoint is a local emulator of Microsoft Graph, called without the Azure credentials.
+     * Required for http endpoints, which are rejected otherwise
+     */
+    private boolean localEmulator = false;
 }
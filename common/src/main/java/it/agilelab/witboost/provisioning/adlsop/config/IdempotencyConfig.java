@@ -0,0 +1,16 @@
+package it.agilelab.witboost.provisioning.adlsop.config;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "idempotency")
+public class IdempotencyConfig {
+    /** Whether duplicate provisioning requests are attached to the running one and replayed once completed */
+    private boolean enabled = true;
+    /** How long the outcome of a completed request is replayed to its duplicates */
+    private Duration replayTtl = Duration.ofMinutes(5);
+    /** Completed requests kept for replay before the oldest ones are dropped */
+    private int maxEntries = 1000;
+}
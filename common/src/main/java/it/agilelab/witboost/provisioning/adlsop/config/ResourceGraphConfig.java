@@ -0,0 +1,16 @@
+package it.agilelab.witboost.provisioning.adlsop.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "azure.resource-graph")
+public class ResourceGraphConfig {
+    /** Resource manager endpoint serving the Resource Graph queries */
+    private String endpoint = "https://management.azure.com/";
+    /**
+     * Whether the endpoint is a local emulator of Resource Graph, called without the Azure credentials. Required for
+     * http endpoints, which are rejected otherwise
+     */
+    private boolean localEmulator = false;
+}
@@ -1,47 +1,217 @@
 package it.agilelab.witboost.provisioning.adlsop.controller;
 
 import it.agilelab.witboost.provisioning.adlsop.api.ApiServiceImpl;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
+import it.agilelab.witboost.provisioning.adlsop.config.AsyncConfig;
 import it.agilelab.witboost.provisioning.adlsop.openapi.controller.V1ApiDelegate;
+import it.agilelab.witboost.provisioning.adlsop.openapi.controller.V2ApiDelegate;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningStatus;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.UpdateAclRequest;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationResult;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationStatus;
+import it.agilelab.witboost.provisioning.adlsop.service.admission.AdaptiveConcurrencyLimiter;
+import it.agilelab.witboost.provisioning.adlsop.service.idempotency.RequestCoalescer;
+import it.agilelab.witboost.provisioning.adlsop.service.idempotency.RequestKey;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.CallAccounting;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcProperties;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.NativeWebRequest;
 
 /**
  * API Controller for the Java Specific Provisioner which implements the autogenerated {@link
- * V1ApiDelegate} interface. The interface defaults the endpoints to throw 501 Not Implemented
+ * V1ApiDelegate} and {@link V2ApiDelegate} interfaces. The interfaces default the endpoints to throw 501 Not Implemented
  * unless overridden in this class.
  *
+ * <p>Endpoints return a {@link CompletableFuture}, so that Spring MVC releases the servlet thread while the provisioning
+ * operations run on the application task executor and wait for Azure. Status and token endpoints only read local state
+ * and complete immediately. Validation and synchronous provisioning operations are admitted by the {@link
+ * AdaptiveConcurrencyLimiter}, which rejects them with 429 when the provisioner is saturated, as does the bounded queue
+ * of the application task executor. Operations that are still waiting when their request times out are not started,
+ * as their caller has already been answered. Duplicate provisioning requests, like the retries sent
+ * on timeouts, are coalesced by the {@link RequestCoalescer}. The Azure calls made by synchronous provisioning operations
+ * are returned in the {@value CallAccounting#HEADER} header.
+ *
  * <p>Exceptions thrown will be handled by {@link SpecificProvisionerExceptionHandler}
  */
 @Service
-public class SpecificProvisionerController implements V1ApiDelegate {
+public class SpecificProvisionerController implements V1ApiDelegate, V2ApiDelegate {
 
     private final ApiServiceImpl apiService;
+    private final AsyncConfig asyncConfig;
+    private final Executor executor;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final RequestCoalescer coalescer;
+    private final CallAccounting callAccounting;
+    private final WebMvcProperties webMvcProperties;
 
-    public SpecificProvisionerController(ApiServiceImpl apiService) {
+    public SpecificProvisionerController(
+            ApiServiceImpl apiService,
+            AsyncConfig asyncConfig,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor executor,
+            AdaptiveConcurrencyLimiter limiter,
+            RequestCoalescer coalescer,
+            CallAccounting callAccounting,
+            WebMvcProperties webMvcProperties) {
         this.apiService = apiService;
+        this.asyncConfig = asyncConfig;
+        this.executor = executor;
+        this.limiter = limiter;
+        this.coalescer = coalescer;
+        this.callAccounting = callAccounting;
+        this.webMvcProperties = webMvcProperties;
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<ProvisioningStatus>> provision(ProvisioningRequest provisioningRequest) {
+        var key = RequestKey.of("provision", provisioningRequest);
+        if (asyncConfig.getProvisioning().isEnabled())
+            return coalescer
+                    .execute(
+                            key,
+                            () -> completed(() -> apiService.asyncProvision(provisioningRequest)),
+                            apiService::isReplayableToken)
+                    .thenApply(SpecificProvisionerController::accepted);
+        return coalescer.execute(
+                key, () -> admit(() -> accounted("provision", () -> apiService.provision(provisioningRequest))));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<ProvisioningStatus>> getStatus(String token) {
+        return completed(() -> ResponseEntity.ok(apiService.getStatus(token)));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<ProvisioningStatus>> cancel(String token) {
+        return completed(() -> ResponseEntity.ok(apiService.cancel(token)));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<ProvisioningStatus>> unprovision(ProvisioningRequest provisioningRequest) {
+        var key = RequestKey.of("unprovision", provisioningRequest);
+        if (asyncConfig.getProvisioning().isEnabled())
+            return coalescer
+                    .execute(
+                            key,
+                            () -> completed(() -> apiService.asyncUnprovision(provisioningRequest)),
+                            apiService::isReplayableToken)
+                    .thenApply(SpecificProvisionerController::accepted);
+        return coalescer.execute(
+                key, () -> admit(() -> accounted("unprovision", () -> apiService.unprovision(provisioningRequest))));
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<ValidationResult>> validate(ProvisioningRequest provisioningRequest) {
+        return admit(() -> ResponseEntity.ok(apiService.validate(provisioningRequest)));
     }
 
     @Override
-    public ResponseEntity<ProvisioningStatus> provision(ProvisioningRequest provisioningRequest) {
-        return ResponseEntity.ok(apiService.provision(provisioningRequest));
+    public CompletableFuture<ResponseEntity<ProvisioningStatus>> updateacl(UpdateAclRequest updateAclRequest) {
+        var key = RequestKey.of("updateacl", updateAclRequest);
+        if (asyncConfig.getUpdateAcl().isEnabled())
+            return coalescer
+                    .execute(
+                            key,
+                            () -> completed(() -> apiService.asyncUpdateAcl(updateAclRequest)),
+                            apiService::isReplayableToken)
+                    .thenApply(SpecificProvisionerController::accepted);
+        return coalescer.execute(
+                key, () -> admit(() -> accounted("updateacl", () -> apiService.updateAcl(updateAclRequest))));
     }
 
     @Override
-    public ResponseEntity<ProvisioningStatus> unprovision(ProvisioningRequest provisioningRequest) {
-        return ResponseEntity.ok(apiService.unprovision(provisioningRequest));
+    public CompletableFuture<ResponseEntity<String>> asyncValidate(ProvisioningRequest provisioningRequest) {
+        return completed(
+                () -> ResponseEntity.status(HttpStatus.ACCEPTED).body(apiService.asyncValidate(provisioningRequest)));
     }
 
     @Override
-    public ResponseEntity<ValidationResult> validate(ProvisioningRequest provisioningRequest) {
-        return ResponseEntity.ok(apiService.validate(provisioningRequest));
+    public CompletableFuture<ResponseEntity<ValidationStatus>> getValidationStatus(String token) {
+        return completed(() -> ResponseEntity.ok(apiService.getValidationStatus(token)));
     }
 
     @Override
-    public ResponseEntity<ProvisioningStatus> updateacl(UpdateAclRequest updateAclRequest) {
-        return ResponseEntity.ok(apiService.updateAcl(updateAclRequest));
+    public Optional<NativeWebRequest> getRequest() {
+        return Optional.empty();
+    }
+
+    /**
+     * Runs a blocking operation on the application task executor once the limiter admits it. The operation is skipped
+     * if it is still waiting for the limiter or the executor when the request times out
+     */
+    private <T> CompletableFuture<T> admit(Supplier<T> operation) {
+        long deadline = deadline();
+        return limiter.acquire().thenCompose(permit -> {
+            try {
+                return CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                if (System.nanoTime() - deadline > 0) throw timedOut();
+                                return operation.get();
+                            } finally {
+                                permit.release();
+                            }
+                        },
+                        executor);
+            } catch (RejectedExecutionException e) {
+                permit.release();
+                String errorMessage =
+                        "Too many operations are being processed, the request cannot be accepted right now. Please try again later";
+                throw new ProvisionerOverloadedException(errorMessage);
+            }
+        });
+    }
+
+    /** When the request times out, in {@link System#nanoTime()} units, or the far future if it never times out */
+    private long deadline() {
+        Duration timeout = webMvcProperties.getAsync().getRequestTimeout();
+        if (timeout == null || timeout.compareTo(Duration.ZERO) <= 0) return System.nanoTime() + Long.MAX_VALUE / 2;
+        return System.nanoTime() + timeout.toNanos();
+    }
+
+    private static ProvisionerOverloadedException timedOut() {
+        String errorMessage =
+                "The request timed out before the operation could start, as too many operations are being processed. Please try again later";
+        return new ProvisionerOverloadedException(errorMessage);
+    }
+
+    /** Runs a provisioning operation accounting its Azure calls, which are returned in the usage header */
+    private <T> ResponseEntity<T> accounted(String operation, Supplier<T> call) {
+        var accounted = callAccounting.account(operation, call);
+        var response = ResponseEntity.ok();
+        accounted.usage().ifPresent(usage -> response.header(CallAccounting.HEADER, usage.toHeader()));
+        return response.body(accounted.result());
+    }
+
+    /**
+     * Runs a non-blocking operation on the request thread. Exceptions complete the future exceptionally like for
+     * {@link #supply}, so that they reach the exception handler the same way
+     */
+    private static <T> CompletableFuture<T> completed(Supplier<T> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Builds the 202 response once the token is known, after the coalescing, which shares and replays the token itself.
+     * The generated interface types the 202 response as {@link ProvisioningStatus}, while the specification defines its
+     * body as the plain token string, so the response is only handed over to Spring MVC to be serialized
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ResponseEntity<ProvisioningStatus> accepted(String token) {
+        return (ResponseEntity) ResponseEntity.status(HttpStatus.ACCEPTED).body(token);
     }
 }
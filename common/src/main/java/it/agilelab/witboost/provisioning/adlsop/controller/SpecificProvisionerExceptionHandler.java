@@ -1,6 +1,7 @@
 package it.agilelab.witboost.provisioning.adlsop.controller;
 
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
 import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ErrorMoreInfo;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.RequestValidationError;
@@ -12,10 +13,13 @@ import java.util.List;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 /**
  * Exception handler for the API layer.
@@ -58,6 +62,29 @@ public class SpecificProvisionerExceptionHandler {
         return error.errors(problems).moreInfo(new ErrorMoreInfo(problems, Collections.EMPTY_LIST));
     }
 
+    @ExceptionHandler({ProvisionerOverloadedException.class})
+    protected ResponseEntity<SystemError> handleOverloadedException(ProvisionerOverloadedException ex) {
+        logger.warn(ex.getMessage());
+        var response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+        ex.getRetryAfter()
+                .ifPresent(retryAfter ->
+                        response.header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfter.toMillis() + 999) / 1000)));
+        return response.body(new SystemError(ex.getMessage()));
+    }
+
+    /**
+     * A synchronous operation ran longer than {@code spring.mvc.async.request-timeout}. It keeps running, and an
+     * identical request sent as a retry is attached to it, so the caller is told to retry rather than that it failed
+     */
+    @ExceptionHandler({AsyncRequestTimeoutException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    protected SystemError handleAsyncRequestTimeout(AsyncRequestTimeoutException ex) {
+        String errorMessage =
+                "The operation didn't complete within the request timeout and is still running. Retry the same request to wait for its outcome";
+        logger.warn(errorMessage);
+        return new SystemError(errorMessage);
+    }
+
     @ExceptionHandler({RuntimeException.class})
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     protected SystemError handleSystemError(RuntimeException ex) {
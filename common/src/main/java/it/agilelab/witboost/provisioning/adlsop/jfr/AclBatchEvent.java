@@ -0,0 +1,61 @@
+package it.agilelab.witboost.provisioning.adlsop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Batch of a recursive ACL update, lasting from the end of the previous batch, or the start of the update, to the moment
+ * the SDK reports it
+ */
+@Name(AclBatchEvent.NAME)
+@Label("Recursive ACL Batch")
+@Category({"Witboost", "ADLS Provisioner"})
+@Description("Batch of paths processed by a recursive ACL update")
+@StackTrace(false)
+public class AclBatchEvent extends Event {
+
+    public static final String NAME = "it.agilelab.witboost.adlsop.AclBatch";
+
+    @Label("Path")
+    String path;
+
+    @Label("Batch")
+    @Description("Number of the batch within the update, starting from 1")
+    long batch;
+
+    @Label("Changed Directories")
+    @Description("Directories updated since the start of the update")
+    long changedDirectories;
+
+    @Label("Changed Files")
+    @Description("Files updated since the start of the update")
+    long changedFiles;
+
+    @Label("Failed Changes")
+    @Description("Paths that could not be updated since the start of the update")
+    long failedChanges;
+
+    /** Starts timing the next batch */
+    public static AclBatchEvent begin(String path) {
+        var event = new AclBatchEvent();
+        event.begin();
+        event.path = path;
+        return event;
+    }
+
+    /** Ends the batch and commits it, if the event is enabled and above its threshold */
+    public void end(long batch, long changedDirectories, long changedFiles, long failedChanges) {
+        end();
+        if (shouldCommit()) {
+            this.batch = batch;
+            this.changedDirectories = changedDirectories;
+            this.changedFiles = changedFiles;
+            this.failedChanges = failedChanges;
+            commit();
+        }
+    }
+}
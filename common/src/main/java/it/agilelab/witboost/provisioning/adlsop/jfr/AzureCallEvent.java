@@ -0,0 +1,52 @@
+package it.agilelab.witboost.provisioning.adlsop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Call to an Azure backend, from the moment it leaves the request scheduler to its outcome */
+@Name(AzureCallEvent.NAME)
+@Label("Azure Call")
+@Category({"Witboost", "ADLS Provisioner"})
+@Description("Call to the Data Lake Storage, Microsoft Graph or Resource Graph")
+@StackTrace(false)
+public class AzureCallEvent extends Event {
+
+    public static final String NAME = "it.agilelab.witboost.adlsop.AzureCall";
+
+    @Label("Backend")
+    @Description("dfs, graph or resourcegraph")
+    String backend;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Storage Account")
+    String storageAccount;
+
+    @Label("Outcome")
+    @Description("success, failure, throttled or error")
+    String outcome;
+
+    /** Starts timing a call */
+    public static AzureCallEvent begin(String backend, String operation, String storageAccount) {
+        var event = new AzureCallEvent();
+        event.begin();
+        event.backend = backend;
+        event.operation = operation;
+        event.storageAccount = storageAccount;
+        return event;
+    }
+
+    /** Ends the call and commits it, if the event is enabled and above its threshold */
+    public void end(String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package it.agilelab.witboost.provisioning.adlsop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Deserialization of a descriptor received in a request */
+@Name(DescriptorParseEvent.NAME)
+@Label("Descriptor Parse")
+@Category({"Witboost", "ADLS Provisioner"})
+@Description("Deserialization of a descriptor")
+@StackTrace(false)
+public class DescriptorParseEvent extends Event {
+
+    public static final String NAME = "it.agilelab.witboost.adlsop.DescriptorParse";
+
+    @Label("Length")
+    @Description("Characters of the descriptor")
+    long length;
+
+    @Label("JSON")
+    @Description("Whether the descriptor was routed to the JSON parser rather than the YAML one")
+    boolean json;
+
+    @Label("Success")
+    boolean success;
+
+    /** Starts timing the parsing of a descriptor */
+    public static DescriptorParseEvent begin(String descriptor, boolean json) {
+        var event = new DescriptorParseEvent();
+        event.begin();
+        event.length = descriptor == null ? 0 : descriptor.length();
+        event.json = json;
+        return event;
+    }
+
+    /** Ends the parsing and commits it, if the event is enabled and above its threshold */
+    public void end(boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.success = success;
+            commit();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package it.agilelab.witboost.provisioning.adlsop.parser;
 
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -9,9 +10,11 @@ import io.vavr.control.Either;
 import io.vavr.control.Try;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.jfr.DescriptorParseEvent;
 import it.agilelab.witboost.provisioning.adlsop.model.Component;
 import it.agilelab.witboost.provisioning.adlsop.model.Descriptor;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import org.slf4j.Logger;
@@ -23,14 +26,24 @@ public class Parser {
 
     private static final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
 
+    /**
+     * Descriptors and provisioning results often arrive as JSON, which Jackson's JSON parser tokenizes several times
+     * faster than the YAML one. Since YAML is a superset of JSON, JSON-shaped input is routed to this mapper and YAML
+     * is kept for genuine YAML documents.
+     */
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
     static {
         mapper.registerModule(new Jdk8Module());
+        jsonMapper.registerModule(new Jdk8Module());
     }
 
     public static Either<FailedOperation, Descriptor> parseDescriptor(String yamlDescriptor) {
-
-        return Try.of(() -> mapper.readValue(yamlDescriptor, Descriptor.class))
+        var event = DescriptorParseEvent.begin(yamlDescriptor, isJsonShaped(yamlDescriptor));
+        return Try.of(() -> readValue(yamlDescriptor, Descriptor.class))
                 .toEither()
+                .peek(descriptor -> event.end(true))
+                .peekLeft(throwable -> event.end(false))
                 .mapLeft(throwable -> {
                     String errorMessage =
                             "Failed to deserialize the Yaml Descriptor. Details: " + throwable.getMessage();
@@ -41,8 +54,9 @@ public class Parser {
 
     public static <U> Either<FailedOperation, Component<U>> parseComponent(JsonNode node, Class<U> specificClass) {
         return Try.of(() -> {
-                    JavaType javaType = mapper.getTypeFactory().constructParametricType(Component.class, specificClass);
-                    return mapper.<Component<U>>readValue(node.toString(), javaType);
+                    JavaType javaType =
+                            jsonMapper.getTypeFactory().constructParametricType(Component.class, specificClass);
+                    return jsonMapper.readerFor(javaType).<Component<U>>readValue(node);
                 })
                 .toEither()
                 .mapLeft(throwable -> {
@@ -55,8 +69,8 @@ public class Parser {
     public static Either<FailedOperation, List<StorageAccountInfo>> parseStorageAccountInfoList(Object node) {
         return Try.of(() -> {
                     JavaType javaType =
-                            mapper.getTypeFactory().constructParametricType(List.class, StorageAccountInfo.class);
-                    return mapper.<List<StorageAccountInfo>>convertValue(node, javaType);
+                            jsonMapper.getTypeFactory().constructParametricType(List.class, StorageAccountInfo.class);
+                    return jsonMapper.<List<StorageAccountInfo>>convertValue(node, javaType);
                 })
                 .toEither()
                 .mapLeft(throwable -> {
@@ -67,7 +81,7 @@ public class Parser {
     }
 
     public static <T> Either<FailedOperation, T> parseObject(String object, Class<T> clazz) {
-        return Try.of(() -> mapper.readTree(object))
+        return Try.of(() -> readTree(object))
                 .toEither()
                 .mapLeft(throwable -> {
                     String errorMessage = "Failed to deserialize object. Details: " + throwable.getMessage();
@@ -79,8 +93,8 @@ public class Parser {
 
     public static <T> Either<FailedOperation, T> parseObject(JsonNode node, Class<T> clazz) {
         return Try.of(() -> {
-                    JavaType javaType = mapper.getTypeFactory().constructType(clazz);
-                    return mapper.<T>treeToValue(node, javaType);
+                    JavaType javaType = jsonMapper.getTypeFactory().constructType(clazz);
+                    return jsonMapper.<T>treeToValue(node, javaType);
                 })
                 .toEither()
                 .mapLeft(throwable -> {
@@ -89,4 +103,43 @@ public class Parser {
                     return new FailedOperation(Collections.singletonList(new Problem(errorMessage, throwable)));
                 });
     }
+
+    /**
+     * Checks whether the content looks like a JSON document, i.e. its first non-whitespace character opens an object
+     * or an array
+     * @param content Content to be sniffed
+     * @return true if the content should be handled by the JSON parser
+     */
+    public static boolean isJsonShaped(String content) {
+        if (content == null) return false;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '{' || c == '[') return true;
+            if (!Character.isWhitespace(c) && c != '\uFEFF') return false;
+        }
+        return false;
+    }
+
+    private static <T> T readValue(String content, Class<T> clazz) throws IOException {
+        if (isJsonShaped(content)) {
+            try {
+                return jsonMapper.readValue(content, clazz);
+            } catch (JsonParseException e) {
+                // Flow-style YAML (e.g. "{key: value}") looks like JSON but is not, let the YAML parser handle it
+                logger.debug("Content is not valid JSON, falling back to the YAML parser", e);
+            }
+        }
+        return mapper.readValue(content, clazz);
+    }
+
+    private static JsonNode readTree(String content) throws IOException {
+        if (isJsonShaped(content)) {
+            try {
+                return jsonMapper.readTree(content);
+            } catch (JsonParseException e) {
+                logger.debug("Content is not valid JSON, falling back to the YAML parser", e);
+            }
+        }
+        return mapper.readTree(content);
+    }
 }
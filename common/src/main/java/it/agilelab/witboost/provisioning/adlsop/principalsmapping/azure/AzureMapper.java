@@ -4,6 +4,8 @@ import io.vavr.control.Either;
 import it.agilelab.witboost.provisioning.adlsop.principalsmapping.Mapper;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,25 +16,41 @@ public class AzureMapper implements Mapper {
     private static final Logger logger = LoggerFactory.getLogger(AzureMapper.class);
 
     private final AzureClient client;
+    private final Executor executor;
 
-    @Autowired
     public AzureMapper(AzureClient client) {
+        this(client, Runnable::run);
+    }
+
+    /**
+     * @param client Client used to look up the subjects
+     * @param executor Executor running the lookups, so that the subjects of a request are resolved concurrently
+     */
+    @Autowired
+    public AzureMapper(AzureClient client, Executor executor) {
         this.client = client;
+        this.executor = executor;
     }
 
     @Override
     public Map<String, Either<Throwable, String>> map(Set<String> subjects) {
-        return subjects.stream().collect(Collectors.toMap(ref -> ref, ref -> {
-            if (ref.startsWith("user:")) {
-                return getAndMapUser(ref.substring(5));
-            } else if (ref.startsWith("group:")) {
-                return getAndMapGroup(ref.substring(6));
-            } else {
-                String errorMessage = String.format("The subject %s is neither a Witboost user nor a group", ref);
-                logger.error(errorMessage);
-                return Either.left(new Throwable(errorMessage));
-            }
-        }));
+        Map<String, CompletableFuture<Either<Throwable, String>>> lookups = subjects.stream()
+                .collect(Collectors.toMap(
+                        ref -> ref, ref -> CompletableFuture.supplyAsync(() -> mapSubject(ref), executor)));
+        return lookups.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue()
+                .join()));
+    }
+
+    private Either<Throwable, String> mapSubject(String ref) {
+        if (ref.startsWith("user:")) {
+            return getAndMapUser(ref.substring(5));
+        } else if (ref.startsWith("group:")) {
+            return getAndMapGroup(ref.substring(6));
+        } else {
+            String errorMessage = String.format("The subject %s is neither a Witboost user nor a group", ref);
+            logger.error(errorMessage);
+            return Either.left(new Throwable(errorMessage));
+        }
     }
 
     private Either<Throwable, String> getAndMapUser(String user) {
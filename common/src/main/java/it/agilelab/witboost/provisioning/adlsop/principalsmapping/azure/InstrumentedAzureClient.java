@@ -0,0 +1,26 @@
+package it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure;
+
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+
+/** Records the latency and outcome of the Microsoft Graph lookups of the wrapped client in {@link AzureCallMetrics} */
+public class InstrumentedAzureClient implements AzureClient {
+
+    private final AzureClient delegate;
+    private final AzureCallMetrics metrics;
+
+    public InstrumentedAzureClient(AzureClient delegate, AzureCallMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Either<Throwable, String> getUserId(String mail) {
+        return metrics.record(AzureCallMetrics.GRAPH, "getUserId", null, () -> delegate.getUserId(mail));
+    }
+
+    @Override
+    public Either<Throwable, String> getGroupId(String group) {
+        return metrics.record(AzureCallMetrics.GRAPH, "getGroupId", null, () -> delegate.getGroupId(group));
+    }
+}
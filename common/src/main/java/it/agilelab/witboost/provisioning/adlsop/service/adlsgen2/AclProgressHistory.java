@@ -0,0 +1,34 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers how many paths the last recursive ACL update of each directory processed, so that the next update of the
+ * same directory can estimate its time to completion. Only the most recently updated directories are kept.
+ */
+class AclProgressHistory {
+
+    private final Map<String, Long> totals;
+
+    AclProgressHistory(int maxEntries) {
+        this.totals = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized Long get(String storageAccount, String containerName, String path) {
+        return totals.get(key(storageAccount, containerName, path));
+    }
+
+    synchronized void record(String storageAccount, String containerName, String path, long processedPaths) {
+        totals.put(key(storageAccount, containerName, path), processedPaths);
+    }
+
+    private static String key(String storageAccount, String containerName, String path) {
+        return storageAccount + "/" + containerName + "/" + path;
+    }
+}
@@ -0,0 +1,235 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import com.azure.storage.file.datalake.models.AccessControlChangeCounters;
+import com.azure.storage.file.datalake.models.AccessControlChanges;
+import it.agilelab.witboost.provisioning.adlsop.jfr.AclBatchEvent;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.function.LongConsumer;
+
+/**
+ * Tracks the progress of a recursive ACL update, fed by the batches reported by the Azure SDK progress handler. When
+ * the number of paths of the directory is known from a previous update, an estimated time to completion is computed
+ * from the current throughput.
+ *
+ * <p>After each batch the SDK returns a continuation token, which is handed to the listener as a checkpoint: an update
+ * interrupted midway can be resumed from it with {@link #resumeFrom(String)} instead of starting over.
+ *
+ * <p>The update may be split in several SDK calls, each processing a limited number of batches, so that it can stop
+ * between them when {@link #isCancellationRequested()}. Counters are summed across the calls.
+ *
+ * <p>Each batch is also emitted to the flight recorder as an {@link AclBatchEvent}, and the paths it processed are
+ * handed to the observer set with {@link #observePaths(LongConsumer)}.
+ */
+public class AclUpdateProgress {
+
+    /**
+     * Point-in-time view of the progress
+     * @param path Directory whose ACLs are being updated recursively
+     * @param changedDirectories Number of directories updated so far
+     * @param changedFiles Number of files updated so far
+     * @param failedChanges Number of paths that couldn't be updated so far
+     * @param batches Number of batches processed so far
+     * @param pathsPerSecond Paths processed per second since the update started
+     * @param expectedPaths Number of paths processed by the previous update of the same directory, if any
+     * @param etaSeconds Estimated seconds to completion, if it can be estimated
+     */
+    public record Snapshot(
+            String path,
+            long changedDirectories,
+            long changedFiles,
+            long failedChanges,
+            long batches,
+            double pathsPerSecond,
+            Long expectedPaths,
+            Long etaSeconds) {
+
+        public long processedPaths() {
+            return changedDirectories + changedFiles + failedChanges;
+        }
+
+        public String describe() {
+            return String.format(
+                    Locale.ROOT,
+                    "Updating ACLs recursively on path '%s': %d directories and %d files updated, %d failures, %.1f paths/s, ETA %s",
+                    path,
+                    changedDirectories,
+                    changedFiles,
+                    failedChanges,
+                    pathsPerSecond,
+                    etaSeconds == null ? "unknown" : etaSeconds + "s");
+        }
+    }
+
+    /** Receives the progress of the update */
+    @FunctionalInterface
+    public interface Listener {
+
+        void onProgress(Snapshot snapshot);
+
+        /**
+         * Called instead of {@link #onProgress(Snapshot)} after each batch followed by more batches, so that the
+         * progress and the token to resume the update from the next batch can be saved together
+         * @param snapshot Progress after the batch
+         * @param continuationToken Continuation token returned by the SDK
+         */
+        default void onCheckpoint(Snapshot snapshot, String continuationToken) {
+            onProgress(snapshot);
+        }
+
+        /** Whether the update should stop at the next checkpoint */
+        default boolean isCancellationRequested() {
+            return false;
+        }
+    }
+
+    private final Listener listener;
+    private final Clock clock;
+
+    private String continuationToken;
+
+    private String path;
+    private Long expectedPaths;
+    private Instant startedAt;
+    private AccessControlChangeCounters counters = new AccessControlChangeCounters();
+    private long previousDirectories;
+    private long previousFiles;
+    private long previousFailures;
+    private long batches;
+    private AclBatchEvent batchEvent;
+    private LongConsumer pathsObserver = paths -> {};
+    private long observedPaths;
+
+    public AclUpdateProgress(Listener listener) {
+        this(listener, Clock.systemUTC());
+    }
+
+    public AclUpdateProgress(Listener listener, Clock clock) {
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /**
+     * Makes the update resume from a previously saved checkpoint
+     * @param continuationToken Continuation token received by {@link Listener#onCheckpoint(Snapshot, String)}, or null to start
+     *                          from the beginning
+     * @return This progress
+     */
+    public synchronized AclUpdateProgress resumeFrom(String continuationToken) {
+        this.continuationToken = continuationToken;
+        return this;
+    }
+
+    /**
+     * Sets the observer of the paths processed by each batch, e.g. to measure the throughput of the updates
+     * @param pathsObserver Receives the number of paths processed since the previous batch
+     * @return This progress
+     */
+    public synchronized AclUpdateProgress observePaths(LongConsumer pathsObserver) {
+        this.pathsObserver = pathsObserver;
+        return this;
+    }
+
+    /** Token to resume the update from, or null if it starts from the beginning */
+    public synchronized String continuationToken() {
+        return continuationToken;
+    }
+
+    /** Progress that isn't reported anywhere, for callers not interested in it */
+    public static AclUpdateProgress noop() {
+        return new AclUpdateProgress(snapshot -> {});
+    }
+
+    /**
+     * Marks the start of a recursive update
+     * @param path Directory being updated
+     * @param expectedPaths Number of paths the directory is expected to contain, or null if unknown
+     */
+    public void start(String path, Long expectedPaths) {
+        Snapshot snapshot;
+        synchronized (this) {
+            this.path = path;
+            this.expectedPaths = expectedPaths;
+            this.startedAt = clock.instant();
+            this.counters = new AccessControlChangeCounters();
+            this.previousDirectories = 0;
+            this.previousFiles = 0;
+            this.previousFailures = 0;
+            this.batches = 0;
+            this.observedPaths = 0;
+            this.batchEvent = AclBatchEvent.begin(path);
+            snapshot = snapshot();
+        }
+        listener.onProgress(snapshot);
+    }
+
+    /**
+     * Records a processed batch
+     * @param changes Changes reported by the SDK, with the counters aggregated since the start of the update
+     */
+    public void onBatch(AccessControlChanges changes) {
+        if (changes == null || changes.getAggregateCounters() == null) return;
+        Snapshot snapshot;
+        String token;
+        AclBatchEvent event;
+        LongConsumer observer;
+        long paths;
+        synchronized (this) {
+            this.counters = changes.getAggregateCounters();
+            this.batches++;
+            this.continuationToken = changes.getContinuationToken();
+            snapshot = snapshot();
+            token = continuationToken;
+            event = batchEvent != null ? batchEvent : AclBatchEvent.begin(path);
+            batchEvent = AclBatchEvent.begin(path);
+            observer = pathsObserver;
+            paths = snapshot.processedPaths() - observedPaths;
+            observedPaths = snapshot.processedPaths();
+        }
+        observer.accept(paths);
+        event.end(snapshot.batches(), snapshot.changedDirectories(), snapshot.changedFiles(), snapshot.failedChanges());
+        if (token != null) listener.onCheckpoint(snapshot, token);
+        else listener.onProgress(snapshot);
+    }
+
+    /**
+     * Records the end of an SDK call. The aggregate counters reported by the SDK restart at each call, so the ones of
+     * the completed call are added to the totals
+     */
+    public synchronized void onCallCompleted() {
+        previousDirectories += counters.getChangedDirectoriesCount();
+        previousFiles += counters.getChangedFilesCount();
+        previousFailures += counters.getFailedChangesCount();
+        counters = new AccessControlChangeCounters();
+    }
+
+    /** Whether the update should stop at the next checkpoint, as its cancellation was requested */
+    public boolean isCancellationRequested() {
+        return listener.isCancellationRequested();
+    }
+
+    public synchronized Snapshot snapshot() {
+        long changedDirectories = previousDirectories + counters.getChangedDirectoriesCount();
+        long changedFiles = previousFiles + counters.getChangedFilesCount();
+        long failedChanges = previousFailures + counters.getFailedChangesCount();
+        long processed = changedDirectories + changedFiles + failedChanges;
+        double elapsedSeconds = startedAt == null
+                ? 0
+                : Duration.between(startedAt, clock.instant()).toMillis() / 1000.0;
+        double pathsPerSecond = elapsedSeconds > 0 ? processed / elapsedSeconds : 0;
+        Long etaSeconds = null;
+        if (expectedPaths != null && pathsPerSecond > 0 && processed < expectedPaths)
+            etaSeconds = (long) Math.ceil((expectedPaths - processed) / pathsPerSecond);
+        return new Snapshot(
+                path,
+                changedDirectories,
+                changedFiles,
+                failedChanges,
+                batches,
+                pathsPerSecond,
+                expectedPaths,
+                etaSeconds);
+    }
+}
@@ -4,12 +4,23 @@ import io.vavr.control.Either;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public interface AdlsGen2Service {
 
     Either<FailedOperation, Boolean> containerExists(String storageAccount, String containerName);
 
+    /**
+     * Lists the names of all the containers of a storage account, following the pagination of the listing
+     * @param storageAccount Storage account name
+     * @return Set of container names
+     */
+    Either<FailedOperation, Set<String>> listContainerNames(String storageAccount);
+
     Either<FailedOperation, StorageAccountInfo> getStorageAccountInfo(String storageAccount);
 
     Either<FailedOperation, AdlsGen2DirectoryInfo> createDirectory(
@@ -18,6 +29,48 @@ public interface AdlsGen2Service {
     Either<FailedOperation, Void> deleteDirectory(
             String storageAccount, String containerName, String path, boolean removeData);
 
+    /**
+     * Moves a directory to the trash directory of its container, from where it can be removed with
+     * {@link #purgeTrash(String, String, String, int)}
+     * @param storageAccount Storage account name
+     * @param containerName Container name
+     * @param path Directory to be moved
+     * @return The path of the directory in the trash, or empty if the directory doesn't exist
+     */
+    Either<FailedOperation, Optional<String>> moveToTrash(String storageAccount, String containerName, String path);
+
+    /**
+     * Removes a page of the content of a directory in the trash, and the directory itself once it's empty
+     * @param storageAccount Storage account name
+     * @param containerName Container name
+     * @param trashPath Path of the directory in the trash
+     * @param maxPaths Maximum number of direct children of the directory removed by this call. Each child directory is
+     *     removed with its whole subtree by a single recursive deletion, which the client library splits into as many
+     *     requests as the service needs without exposing their continuation token, so a page can't be resumed halfway
+     *     through a child and its duration grows with the size of the largest child
+     * @return The number of direct children removed, zero once the directory is gone
+     */
+    Either<FailedOperation, Integer> purgeTrash(
+            String storageAccount, String containerName, String trashPath, int maxPaths);
+
+    /**
+     * Lists the directories in the trash of a container, following the pagination of the listing
+     * @param storageAccount Storage account name
+     * @param containerName Container name
+     * @return The paths of the directories in the trash mapped to their last modification time, empty if the container
+     *     has no trash directory
+     */
+    Either<FailedOperation, Map<String, OffsetDateTime>> listTrash(String storageAccount, String containerName);
+
+    default Either<FailedOperation, Void> updateAcl(
+            String storageAccount, String containerName, String path, List<String> usersObjectId) {
+        return updateAcl(storageAccount, containerName, path, usersObjectId, AclUpdateProgress.noop());
+    }
+
     Either<FailedOperation, Void> updateAcl(
-            String storageAccount, String containerName, String path, List<String> usersObjectId);
+            String storageAccount,
+            String containerName,
+            String path,
+            List<String> usersObjectId,
+            AclUpdateProgress progress);
 }
@@ -4,20 +4,28 @@ import static io.vavr.control.Either.left;
 import static io.vavr.control.Either.right;
 
 import com.azure.core.credential.TokenCredential;
+import com.azure.core.http.rest.Response;
 import com.azure.resourcemanager.resourcegraph.ResourceGraphManager;
 import com.azure.resourcemanager.resourcegraph.models.QueryRequest;
 import com.azure.resourcemanager.resourcegraph.models.QueryResponse;
 import com.azure.storage.file.datalake.DataLakeServiceClient;
 import com.azure.storage.file.datalake.DataLakeServiceClientBuilder;
 import com.azure.storage.file.datalake.models.*;
+import com.azure.storage.file.datalake.options.PathSetAccessControlRecursiveOptions;
+import com.azure.storage.file.datalake.options.PathUpdateAccessControlRecursiveOptions;
 import io.vavr.control.Either;
 import io.vavr.control.Option;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.OperationCancelledException;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
 import it.agilelab.witboost.provisioning.adlsop.parser.Parser;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -29,25 +37,83 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
 
     private final ResourceGraphManager resourceGraphManager;
 
-    private static final String ADLS_STORAGE_ACCOUNT_URL = "https://%s.dfs.core.windows.net";
+    private final ContainerExistenceCache containerExistenceCache;
+
+    private final ContainerInventory containerInventory;
+
+    private final AdlsGen2Config adlsGen2Config;
+
+    private final AzureCallMetrics azureCallMetrics;
+
+    private final AclProgressHistory aclProgressHistory = new AclProgressHistory(1000);
+
+    /** Lists the containers of the inventory snapshots, see {@link #listContainersThrough(AdlsGen2Service)} */
+    private volatile AdlsGen2Service containerLister = this;
+
+    /** Placeholder SAS of the clients of a local emulator, since token credentials require https */
+    private static final String LOCAL_ENDPOINT_SAS = "sv=local";
+
     private static final String RESOURCE_GRAPH_GET_STORAGE_ACCOUNT_INFO =
             "Resources | where type =~ 'Microsoft.Storage/storageAccounts' | where name == '%s'";
 
     private static final String STORAGE_BROWSER_URL_TEMPLATE = "https://portal.azure.com/#@/resource/%s/storagebrowser";
     private static final String PATH_NOT_FOUND = "PathNotFound";
-
-    public AdlsGen2ServiceImpl(TokenCredential tokenCredential, ResourceGraphManager resourceGraphManager) {
+    private static final Set<String> CONTAINER_NOT_FOUND = Set.of("ContainerNotFound", "FilesystemNotFound");
+
+    public AdlsGen2ServiceImpl(
+            TokenCredential tokenCredential,
+            ResourceGraphManager resourceGraphManager,
+            ContainerExistenceCache containerExistenceCache,
+            ContainerInventory containerInventory,
+            AdlsGen2Config adlsGen2Config,
+            AzureCallMetrics azureCallMetrics) {
+        if (adlsGen2Config.getEndpoint().startsWith("http://") && !adlsGen2Config.isLocalEmulator())
+            throw new IllegalStateException(String.format(
+                    "The DFS endpoint %s isn't secure. Set adlsgen2.localEmulator to run against a local emulator",
+                    adlsGen2Config.getEndpoint()));
         this.tokenCredential = tokenCredential;
         this.resourceGraphManager = resourceGraphManager;
+        this.containerExistenceCache = containerExistenceCache;
+        this.containerInventory = containerInventory;
+        this.adlsGen2Config = adlsGen2Config;
+        this.azureCallMetrics = azureCallMetrics;
+    }
+
+    /**
+     * Loads the container inventory through the given service instead of this one, so that its listings are queued by
+     * the scheduler and recorded in the Azure call metrics like any other operation
+     * @param service The decorated service wrapping this one
+     */
+    public void listContainersThrough(AdlsGen2Service service) {
+        this.containerLister = service;
     }
 
     @Override
     public Either<FailedOperation, Boolean> containerExists(String storageAccount, String containerName) {
+        if (containerExistenceCache.isConfirmed(storageAccount, containerName)) {
+            log.info(
+                    "Container {} in storage account {} was recently confirmed to exist, skipping check",
+                    containerName,
+                    storageAccount);
+            return right(true);
+        }
+        if (containerInventory.contains(storageAccount, containerName)) {
+            log.info(
+                    "Container {} in storage account {} found in the container inventory, skipping check",
+                    containerName,
+                    storageAccount);
+            return right(true);
+        }
+        containerInventory.track(storageAccount, () -> containerLister
+                .listContainerNames(storageAccount)
+                .getOrElseThrow(failure ->
+                        new IllegalStateException(failure.problems().get(0).description())));
         try {
             var dataLakeServiceClient = getDataLakeServiceClient(storageAccount);
             var dataLakeFileSystemClient = dataLakeServiceClient.getFileSystemClient(containerName);
             var response = dataLakeFileSystemClient.exists();
             log.info("Container {} in storage account {} exists?: {}", containerName, storageAccount, response);
+            if (response) containerExistenceCache.confirm(storageAccount, containerName);
             return right(response);
         } catch (Exception e) {
             log.error(
@@ -104,6 +170,7 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
             return left(new FailedOperation(
                     Collections.singletonList(new Problem(getFailedMessage(error, Optional.empty())))));
         } catch (Exception e) {
+            invalidateIfNotFound(storageAccount, containerName, e);
             var error = String.format(
                     "Error while creating directory '%s' on container '%s' in storage account '%s'",
                     path, containerName, storageAccount);
@@ -124,8 +191,19 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
                     storageAccount);
             var dataLakeServiceClient = getDataLakeServiceClient(storageAccount);
             var dataLakeFileSystemClient = dataLakeServiceClient.getFileSystemClient(containerName);
-            var directoryClient = dataLakeFileSystemClient.getDirectoryClient(path);
 
+            if (removeData) {
+                // The ACLs would be removed with the data, so there's no point in walking the tree to reset them
+                log.info(
+                        "removeData is true. Deleting directory '{}' in container '{}' in storage account '{}'",
+                        path,
+                        containerName,
+                        storageAccount);
+                dataLakeFileSystemClient.deleteDirectoryWithResponse(path, true, null, null, null);
+                return right(null);
+            }
+
+            var directoryClient = dataLakeFileSystemClient.getDirectoryClient(path);
             log.info(
                     "Resetting ACLs in directory '{}' in container '{}' in storage account '{}'",
                     path,
@@ -146,17 +224,9 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
                         .toList()));
             }
             log.info("ACLs reset successful");
-
-            if (removeData) {
-                log.info(
-                        "removeData is true. Deleting directory '{}' in container '{}' in storage account '{}'",
-                        path,
-                        containerName,
-                        storageAccount);
-                dataLakeFileSystemClient.deleteDirectoryWithResponse(path, true, null, null, null);
-            }
             return right(null);
         } catch (DataLakeStorageException e) {
+            invalidateIfNotFound(storageAccount, containerName, e);
             if (e.getErrorCode().equals(PATH_NOT_FOUND)) {
                 log.info(
                         "Directory '{}' in container '{}' in storage account '{}' didn't exist in the first place",
@@ -182,11 +252,148 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
         }
     }
 
+    @Override
+    public Either<FailedOperation, Optional<String>> moveToTrash(
+            String storageAccount, String containerName, String path) {
+        var trashDirectory =
+                removeTrailingLeadingSlash(adlsGen2Config.getDataRemoval().getTrashDirectory());
+        var trashPath = String.format(
+                "%s/%s-%s", trashDirectory, removeTrailingLeadingSlash(path).replace('/', '_'), UUID.randomUUID());
+        try {
+            log.info(
+                    "Moving directory '{}' in container '{}' in storage account '{}' to '{}'",
+                    path,
+                    containerName,
+                    storageAccount,
+                    trashPath);
+            var dataLakeFileSystemClient =
+                    getDataLakeServiceClient(storageAccount).getFileSystemClient(containerName);
+            // The trash gets no ACL entries for the users, so they can't traverse it to reach the moved data
+            dataLakeFileSystemClient.createDirectoryIfNotExists(trashDirectory);
+            dataLakeFileSystemClient.getDirectoryClient(path).rename(null, trashPath);
+            return right(Optional.of(trashPath));
+        } catch (DataLakeStorageException e) {
+            invalidateIfNotFound(storageAccount, containerName, e);
+            if (PATH_NOT_FOUND.equals(e.getErrorCode())) {
+                log.info(
+                        "Directory '{}' in container '{}' in storage account '{}' didn't exist in the first place",
+                        path,
+                        containerName,
+                        storageAccount);
+                return right(Optional.empty());
+            }
+            return left(trashFailure("moving directory '%s' to the trash", path, containerName, storageAccount, e));
+        } catch (Exception e) {
+            return left(trashFailure("moving directory '%s' to the trash", path, containerName, storageAccount, e));
+        }
+    }
+
+    @Override
+    public Either<FailedOperation, Integer> purgeTrash(
+            String storageAccount, String containerName, String trashPath, int maxPaths) {
+        try {
+            var dataLakeFileSystemClient =
+                    getDataLakeServiceClient(storageAccount).getFileSystemClient(containerName);
+            var options = new ListPathsOptions()
+                    .setPath(trashPath)
+                    .setRecursive(false)
+                    .setMaxResults(maxPaths);
+            var page = dataLakeFileSystemClient
+                    .listPaths(options, null)
+                    .iterableByPage()
+                    .iterator();
+            List<PathItem> children = page.hasNext() ? page.next().getValue() : List.of();
+
+            if (children.isEmpty()) {
+                log.info(
+                        "Removing emptied directory '{}' in container '{}' in storage account '{}'",
+                        trashPath,
+                        containerName,
+                        storageAccount);
+                dataLakeFileSystemClient.deleteDirectoryIfExists(trashPath);
+                return right(0);
+            }
+
+            // A child directory is removed by one recursive deletion, paginated internally by the client library
+            for (var child : children) {
+                try {
+                    if (child.isDirectory())
+                        dataLakeFileSystemClient.deleteDirectoryWithResponse(child.getName(), true, null, null, null);
+                    else dataLakeFileSystemClient.deleteFileWithResponse(child.getName(), null, null, null);
+                } catch (DataLakeStorageException e) {
+                    // Already removed by a previous attempt
+                    if (!PATH_NOT_FOUND.equals(e.getErrorCode())) throw e;
+                }
+            }
+            log.debug(
+                    "Removed {} paths of '{}' in container '{}' in storage account '{}'",
+                    children.size(),
+                    trashPath,
+                    containerName,
+                    storageAccount);
+            return right(children.size());
+        } catch (DataLakeStorageException e) {
+            invalidateIfNotFound(storageAccount, containerName, e);
+            if (PATH_NOT_FOUND.equals(e.getErrorCode())) return right(0);
+            return left(trashFailure("removing '%s' from the trash", trashPath, containerName, storageAccount, e));
+        } catch (Exception e) {
+            return left(trashFailure("removing '%s' from the trash", trashPath, containerName, storageAccount, e));
+        }
+    }
+
+    @Override
+    public Either<FailedOperation, Map<String, OffsetDateTime>> listTrash(String storageAccount, String containerName) {
+        var trashDirectory =
+                removeTrailingLeadingSlash(adlsGen2Config.getDataRemoval().getTrashDirectory());
+        try {
+            var paths = getDataLakeServiceClient(storageAccount)
+                    .getFileSystemClient(containerName)
+                    .listPaths(new ListPathsOptions().setPath(trashDirectory).setRecursive(false), null);
+            Map<String, OffsetDateTime> entries = new HashMap<>();
+            for (var path : paths) if (path.isDirectory()) entries.put(path.getName(), path.getLastModified());
+            return right(entries);
+        } catch (DataLakeStorageException e) {
+            invalidateIfNotFound(storageAccount, containerName, e);
+            if (PATH_NOT_FOUND.equals(e.getErrorCode())) return right(Map.of());
+            return left(trashFailure("listing '%s'", trashDirectory, containerName, storageAccount, e));
+        } catch (Exception e) {
+            return left(trashFailure("listing '%s'", trashDirectory, containerName, storageAccount, e));
+        }
+    }
+
+    private FailedOperation trashFailure(
+            String operation, String path, String containerName, String storageAccount, Exception e) {
+        var error = String.format(
+                "Error while %s on container '%s' in storage account '%s'",
+                String.format(operation, path), containerName, storageAccount);
+        log.error(error, e);
+        return new FailedOperation(Collections.singletonList(new Problem(getFailedMessage(error, Optional.of(e)), e)));
+    }
+
+    @Override
+    public Either<FailedOperation, Set<String>> listContainerNames(String storageAccount) {
+        try {
+            Set<String> containers = new HashSet<>();
+            getDataLakeServiceClient(storageAccount)
+                    .listFileSystems()
+                    .forEach(fileSystem -> containers.add(fileSystem.getName()));
+            return right(containers);
+        } catch (Exception e) {
+            var error = String.format("Error while listing the containers of storage account '%s'", storageAccount);
+            log.error(error, e);
+            return Either.left(new FailedOperation(
+                    Collections.singletonList(new Problem(getFailedMessage(error, Optional.of(e)), e))));
+        }
+    }
+
     public DataLakeServiceClient getDataLakeServiceClient(String storageAccount) {
-        return new DataLakeServiceClientBuilder()
-                .endpoint(String.format(ADLS_STORAGE_ACCOUNT_URL, storageAccount))
-                .credential(tokenCredential)
-                .buildClient();
+        var endpoint = String.format(adlsGen2Config.getEndpoint(), storageAccount);
+        var builder = new DataLakeServiceClientBuilder()
+                .endpoint(endpoint)
+                .addPolicy(azureCallMetrics.httpPolicy(AzureCallMetrics.DFS));
+        if (adlsGen2Config.isLocalEmulator()) builder.sasToken(LOCAL_ENDPOINT_SAS);
+        else builder.credential(tokenCredential);
+        return builder.buildClient();
     }
 
     @Override
@@ -194,7 +401,10 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
         QueryRequest queryRequest =
                 new QueryRequest().withQuery(String.format(RESOURCE_GRAPH_GET_STORAGE_ACCOUNT_INFO, storageAccount));
         log.debug("Querying Resource Graph with Query \"{}\"", queryRequest.query());
-        QueryResponse response = resourceGraphManager.resourceProviders().resources(queryRequest);
+        QueryResponse response = azureCallMetrics.recordCall(
+                AzureCallMetrics.RESOURCE_GRAPH, "resources", storageAccount, () -> resourceGraphManager
+                        .resourceProviders()
+                        .resources(queryRequest));
         log.debug("Received raw response: {}", response.data());
         return Parser.parseStorageAccountInfoList(response.data()).flatMap(l -> l.stream()
                 .findFirst()
@@ -217,10 +427,15 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
      * @param containerName Container name
      * @param path Directory to grant r-x permissions
      * @param usersObjectId List of users objectIds to grant access
+     * @param progress Progress of the recursive update on the directory
      * @return {@code Either.left(FailedOperation) } on failed attempt
      */
     public Either<FailedOperation, Void> updateAcl(
-            String storageAccount, String containerName, String path, List<String> usersObjectId) {
+            String storageAccount,
+            String containerName,
+            String path,
+            List<String> usersObjectId,
+            AclUpdateProgress progress) {
         var subDirectories = path.split("/");
         String subPath = "";
 
@@ -231,14 +446,22 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
             RolePermissions userPermission = new RolePermissions();
             userPermission.setReadPermission(false).setWritePermission(false).setExecutePermission(true);
             var result = grantACL(
-                    dataLakeServiceClient, containerName, subPath, usersObjectId, userPermission, false, false, false);
+                    dataLakeServiceClient,
+                    containerName,
+                    subPath,
+                    usersObjectId,
+                    userPermission,
+                    false,
+                    false,
+                    false,
+                    progress);
             results.add(result);
             subPath += subDirectory + "/";
         }
         RolePermissions userPermission = new RolePermissions();
         userPermission.setReadPermission(true).setWritePermission(false).setExecutePermission(true);
-        var result =
-                grantACL(dataLakeServiceClient, containerName, path, usersObjectId, userPermission, true, true, true);
+        var result = grantACL(
+                dataLakeServiceClient, containerName, path, usersObjectId, userPermission, true, true, true, progress);
         results.add(result);
 
         return FailedOperation.combineEither(right(null), results, (a, b) -> a);
@@ -254,6 +477,7 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
      * @param grantRecursively Whether to grant the permission recursively on all child paths
      * @param addAsDefaultScope Whether to add the users as default ACL for new child objects of target directory
      * @param overridePermissions Whether to override the existing ACL permissions on target directory
+     * @param progress Progress of the recursive update, fed by the SDK after each batch
      * @return {@code Either.left(FailedOperation) } on failed attempt
      */
     private Either<FailedOperation, Void> grantACL(
@@ -264,7 +488,8 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
             RolePermissions userPermission,
             boolean grantRecursively,
             boolean addAsDefaultScope,
-            boolean overridePermissions) {
+            boolean overridePermissions,
+            AclUpdateProgress progress) {
         try {
             log.info(
                     "Granting ACL to {} on path {} on container {} on storage account {} with configs: grantRecursively={}, addAsDefaultScope={}, overridePermissions={}",
@@ -304,19 +529,66 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
             }
 
             if (grantRecursively) {
-                AccessControlChangeResult result;
-                if (overridePermissions) {
+                String storageAccount = dataLakeServiceClient.getAccountName();
+                String resumeFrom = progress.continuationToken();
+                if (resumeFrom != null) log.info("Resuming the recursive ACL update on path '{}'", path);
+                progress.start(path, aclProgressHistory.get(storageAccount, containerName, path));
+                Consumer<Response<AccessControlChanges>> progressHandler =
+                        changes -> progress.onBatch(changes.getValue());
+                int maxBatchesPerCall = adlsGen2Config.getAclUpdates().getMaxBatchesPerCall();
+                Integer maxBatches = maxBatchesPerCall > 0 ? maxBatchesPerCall : null;
+                if (overridePermissions)
                     log.info("Overriding ACL recursively on path '{}' with entries {}", path, accessControlEntries);
-                    result = directoryClient.setAccessControlRecursive(accessControlEntries);
-                } else {
-                    log.info("Updating ACL recursively on path '{}' with entries {}", path, accessControlEntries);
-                    result = directoryClient.updateAccessControlRecursive(accessControlEntries);
-                }
-
-                if (result.getCounters().getFailedChangesCount() == 0) {
+                else log.info("Updating ACL recursively on path '{}' with entries {}", path, accessControlEntries);
+
+                // The tree is processed a few batches per call, so that a cancelled update stops between them
+                String continuationToken = resumeFrom;
+                long processedPaths = 0;
+                long failedChanges = 0;
+                List<AccessControlChangeFailure> batchFailures = new ArrayList<>();
+                do {
+                    if (progress.isCancellationRequested()) throw aclUpdateCancelled(path, progress);
+                    AccessControlChangeResult result;
+                    if (overridePermissions) {
+                        result = directoryClient
+                                .setAccessControlRecursiveWithResponse(
+                                        new PathSetAccessControlRecursiveOptions(accessControlEntries)
+                                                .setContinuationToken(continuationToken)
+                                                .setMaxBatches(maxBatches)
+                                                .setProgressHandler(progressHandler),
+                                        null,
+                                        null)
+                                .getValue();
+                    } else {
+                        result = directoryClient
+                                .updateAccessControlRecursiveWithResponse(
+                                        new PathUpdateAccessControlRecursiveOptions(accessControlEntries)
+                                                .setContinuationToken(continuationToken)
+                                                .setMaxBatches(maxBatches)
+                                                .setProgressHandler(progressHandler),
+                                        null,
+                                        null)
+                                .getValue();
+                    }
+                    progress.onCallCompleted();
+                    var counters = result.getCounters();
+                    processedPaths += counters.getChangedDirectoriesCount()
+                            + counters.getChangedFilesCount()
+                            + counters.getFailedChangesCount();
+                    failedChanges += counters.getFailedChangesCount();
+                    if (result.getBatchFailures() != null) batchFailures.addAll(result.getBatchFailures());
+                    // Like a single call, the update stops at the first batch with failures
+                    if (counters.getFailedChangesCount() > 0) break;
+                    continuationToken = result.getContinuationToken();
+                } while (continuationToken != null);
+
+                // A resumed update only counts the paths after the checkpoint
+                if (resumeFrom == null) aclProgressHistory.record(storageAccount, containerName, path, processedPaths);
+
+                if (failedChanges == 0) {
                     return right(null);
                 } else {
-                    return left(new FailedOperation(result.getBatchFailures().stream()
+                    return left(new FailedOperation(batchFailures.stream()
                             .map(failure -> new Problem(failure.getErrorMessage()))
                             .toList()));
                 }
@@ -358,7 +630,10 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
                 }
                 return right(null);
             }
+        } catch (OperationCancelledException e) {
+            throw e;
         } catch (Exception e) {
+            invalidateIfNotFound(dataLakeServiceClient.getAccountName(), containerName, e);
             log.error(
                     String.format(
                             "Error while updating the ACLs on the path '%s' of container '%s' in storage account '%s'",
@@ -374,6 +649,15 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
         }
     }
 
+    private OperationCancelledException aclUpdateCancelled(String path, AclUpdateProgress progress) {
+        var snapshot = progress.snapshot();
+        String message = String.format(
+                "The recursive ACL update on path '%s' was cancelled after updating %d directories and %d files, with %d failures. The remaining paths were not updated",
+                path, snapshot.changedDirectories(), snapshot.changedFiles(), snapshot.failedChanges());
+        log.warn(message);
+        return new OperationCancelledException(message);
+    }
+
     public String removeTrailingLeadingSlash(String path) {
         String removed = path;
         if (removed.startsWith("/")) {
@@ -389,6 +673,23 @@ public class AdlsGen2ServiceImpl implements AdlsGen2Service {
         return String.format(STORAGE_BROWSER_URL_TEMPLATE, removeTrailingLeadingSlash(storageAccountInfo.getId()));
     }
 
+    /**
+     * Drops the cached existence of a container when an operation on it fails because the container or the path
+     * doesn't exist, so that the next validation checks the container again. The container is removed from the
+     * inventory snapshot only when the container itself is reported missing
+     */
+    private void invalidateIfNotFound(String storageAccount, String containerName, Exception e) {
+        if (e instanceof DataLakeStorageException dataLakeStorageException) {
+            var errorCode = dataLakeStorageException.getErrorCode();
+            if (CONTAINER_NOT_FOUND.contains(errorCode)) {
+                containerExistenceCache.invalidate(storageAccount, containerName);
+                containerInventory.remove(storageAccount, containerName);
+            } else if (PATH_NOT_FOUND.equals(errorCode)) {
+                containerExistenceCache.invalidate(storageAccount, containerName);
+            }
+        }
+    }
+
     private String getFailedMessage(String baseMessage, Optional<Throwable> ex) {
         if (ex.isPresent()) {
             return String.format(
@@ -0,0 +1,286 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Schedules the operations run against ADLS storage accounts, so that a burst of requests on one storage account
+ * doesn't starve the others.
+ *
+ * <ul>
+ *   <li>Each storage account has a token bucket limiting the rate at which operations are started, and a maximum
+ *       number of operations running at the same time for each lane. The bucket counts operations, not HTTP
+ *       requests: a paginated listing or a recursive ACL update takes a single token.
+ *   <li>Waiting operations are dispatched with start-time fair queuing: each one is tagged with a virtual start time
+ *       that grows with the cost of the operations previously queued on the same storage account, divided by the
+ *       storage account weight. Storage accounts with many queued operations are served at the same pace as the
+ *       others, instead of in arrival order.
+ *   <li>Operations are split in a light and a heavy lane with separate concurrency limits. The light lane is
+ *       dispatched first, so cheap operations are never stuck behind long recursive ACL updates.
+ * </ul>
+ */
+@Component
+@Slf4j
+public class AdlsRequestScheduler {
+
+    public enum Lane {
+        LIGHT,
+        HEAVY
+    }
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int SWEEP_EVERY = 1000;
+    /** Waiters are only woken up early for a token further away than this, so they don't wake each other in turn */
+    private static final long WAKE_UP_TOLERANCE = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AdlsGen2Config.Scheduler config;
+    private final LongSupplier nanoTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, AccountState> accounts = new HashMap<>();
+    private final Map<Lane, PriorityQueue<Ticket>> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> running = new EnumMap<>(Lane.class);
+    private double virtualTime;
+    private long sequence;
+    private long lastSweep;
+
+    @Autowired
+    public AdlsRequestScheduler(AdlsGen2Config adlsGen2Config) {
+        this(adlsGen2Config.getScheduler(), System::nanoTime);
+    }
+
+    AdlsRequestScheduler(AdlsGen2Config.Scheduler config, LongSupplier nanoTime) {
+        this.config = config;
+        this.nanoTime = nanoTime;
+        for (Lane lane : Lane.values()) {
+            queues.put(
+                    lane,
+                    new PriorityQueue<>(Comparator.comparingDouble(Ticket::tag).thenComparingLong(Ticket::seq)));
+            running.put(lane, 0);
+        }
+    }
+
+    /**
+     * Runs an operation on a storage account once the scheduler allows it, blocking the caller until then
+     * @param storageAccount Storage account the operation runs against
+     * @param lane Lane of the operation
+     * @param operation Operation to run
+     * @return The result of the operation
+     * @throws TimeoutException if the operation waited in the queue longer than the configured maximum wait
+     * @throws InterruptedException if the caller is interrupted while waiting
+     */
+    public <T> T execute(String storageAccount, Lane lane, Supplier<T> operation)
+            throws TimeoutException, InterruptedException {
+        if (!config.isEnabled()) return operation.get();
+        acquire(storageAccount, lane);
+        try {
+            return operation.get();
+        } finally {
+            release(storageAccount, lane);
+        }
+    }
+
+    /** Number of operations waiting in the queue of a lane */
+    public int queued(Lane lane) {
+        lock.lock();
+        try {
+            return queues.get(lane).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void acquire(String storageAccount, Lane lane) throws TimeoutException, InterruptedException {
+        lock.lock();
+        try {
+            var account = accounts.computeIfAbsent(storageAccount, this::newAccountState);
+            double start = Math.max(virtualTime, account.lastFinishTag);
+            account.lastFinishTag = start + laneConfig(lane).getCost() / account.weight;
+            account.queued++;
+            var ticket = new Ticket(storageAccount, lane, start, sequence++, lock.newCondition());
+            queues.get(lane).add(ticket);
+
+            ticket.wakeAt = nanoTime.getAsLong();
+            long deadline = ticket.wakeAt + config.getMaxWait().toNanos();
+            while (true) {
+                long nextRefill = dispatch();
+                if (ticket.granted) return;
+                long remaining = deadline - nanoTime.getAsLong();
+                if (remaining <= 0) {
+                    dequeue(ticket);
+                    log.warn(
+                            "Operation on storage account {} waited more than {} in the {} lane",
+                            storageAccount,
+                            config.getMaxWait(),
+                            lane);
+                    throw new TimeoutException(String.format(
+                            "The operation on storage account '%s' couldn't be started within %s",
+                            storageAccount, config.getMaxWait()));
+                }
+                long timeout = Math.min(remaining, nextRefill);
+                ticket.wakeAt = nanoTime.getAsLong() + timeout;
+                try {
+                    ticket.condition.awaitNanos(timeout);
+                } catch (InterruptedException e) {
+                    if (ticket.granted) releaseLocked(storageAccount, lane);
+                    else dequeue(ticket);
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(String storageAccount, Lane lane) {
+        lock.lock();
+        try {
+            releaseLocked(storageAccount, lane);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked(String storageAccount, Lane lane) {
+        var account = accounts.get(storageAccount);
+        account.running.merge(lane, -1, Integer::sum);
+        running.merge(lane, -1, Integer::sum);
+        dispatch();
+    }
+
+    private void dequeue(Ticket ticket) {
+        queues.get(ticket.lane).remove(ticket);
+        accounts.get(ticket.storageAccount).queued--;
+        dispatch();
+    }
+
+    /**
+     * Grants the waiting operations that can start, lane by lane in priority order and in virtual start time order
+     * within a lane. Waiters blocked by the rate limit that would sleep past the next token of their storage account,
+     * like the ones that were last blocked by the concurrency limits, are woken up to wait for that token instead.
+     * Must be called holding the lock
+     * @return Nanoseconds until the next token is available on a storage account with waiting operations, used by
+     *     waiters to wake up when the rate limit allows them to start
+     */
+    private long dispatch() {
+        long now = nanoTime.getAsLong();
+        long nextRefill = Long.MAX_VALUE;
+        for (Lane lane : Lane.values()) {
+            var queue = queues.get(lane);
+            var laneConfig = laneConfig(lane);
+            List<Ticket> blocked = new ArrayList<>();
+            while (!queue.isEmpty() && running.get(lane) < laneConfig.getMaxConcurrency()) {
+                var ticket = queue.poll();
+                var account = accounts.get(ticket.storageAccount);
+                account.refill(now);
+                if (account.running.getOrDefault(lane, 0) >= laneConfig.getMaxConcurrencyPerAccount()) {
+                    blocked.add(ticket);
+                } else if (account.tokens < 1) {
+                    long untilToken = account.nanosUntilToken();
+                    nextRefill = Math.min(nextRefill, untilToken);
+                    if (ticket.wakeAt - now > untilToken + WAKE_UP_TOLERANCE) ticket.condition.signal();
+                    blocked.add(ticket);
+                } else {
+                    account.tokens -= 1;
+                    account.queued--;
+                    account.running.merge(lane, 1, Integer::sum);
+                    running.merge(lane, 1, Integer::sum);
+                    virtualTime = Math.max(virtualTime, ticket.tag);
+                    ticket.granted = true;
+                    ticket.condition.signal();
+                }
+            }
+            queue.addAll(blocked);
+        }
+        if (sequence - lastSweep >= SWEEP_EVERY) {
+            lastSweep = sequence;
+            evictIdleAccounts(now);
+        }
+        return nextRefill;
+    }
+
+    /** Drops the state of storage accounts with no operations whose token bucket is full again */
+    private void evictIdleAccounts(long now) {
+        accounts.values().removeIf(account -> {
+            account.refill(now);
+            return account.queued == 0
+                    && account.running.values().stream().allMatch(count -> count == 0)
+                    && account.tokens >= config.getBurst();
+        });
+    }
+
+    private AdlsGen2Config.Lane laneConfig(Lane lane) {
+        return lane == Lane.LIGHT ? config.getLight() : config.getHeavy();
+    }
+
+    private AccountState newAccountState(String storageAccount) {
+        return new AccountState(config.getWeights().getOrDefault(storageAccount, 1.0), nanoTime.getAsLong());
+    }
+
+    private static final class Ticket {
+        private final String storageAccount;
+        private final Lane lane;
+        private final double tag;
+        private final long seq;
+        private final Condition condition;
+        private boolean granted;
+        /** When the waiter of the ticket wakes up on its own, in {@code nanoTime}. Not waiting yet until then */
+        private long wakeAt;
+
+        Ticket(String storageAccount, Lane lane, double tag, long seq, Condition condition) {
+            this.storageAccount = storageAccount;
+            this.lane = lane;
+            this.tag = tag;
+            this.seq = seq;
+            this.condition = condition;
+        }
+
+        double tag() {
+            return tag;
+        }
+
+        long seq() {
+            return seq;
+        }
+    }
+
+    private final class AccountState {
+        private final double weight;
+        private final Map<Lane, Integer> running = new EnumMap<>(Lane.class);
+        private double tokens;
+        private long lastRefill;
+        private double lastFinishTag;
+        private int queued;
+
+        AccountState(double weight, long now) {
+            this.weight = weight;
+            this.tokens = config.getBurst();
+            this.lastRefill = now;
+        }
+
+        void refill(long now) {
+            tokens = Math.min(
+                    config.getBurst(),
+                    tokens + (now - lastRefill) * config.getOperationsPerSecond() / NANOS_PER_SECOND);
+            lastRefill = now;
+        }
+
+        long nanosUntilToken() {
+            return (long) Math.ceil((1 - tokens) * NANOS_PER_SECOND / config.getOperationsPerSecond());
+        }
+    }
+}
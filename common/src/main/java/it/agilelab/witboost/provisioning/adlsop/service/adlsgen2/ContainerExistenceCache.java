@@ -0,0 +1,93 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.CacheMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived cache of containers confirmed to exist, used to skip repeated existence checks against the DFS
+ * endpoint for containers that were validated a few seconds earlier. Only positive outcomes are cached, so a missing
+ * container is detected as soon as it is created. Entries are invalidated when a later operation on the container
+ * reports that it (or the path within it) doesn't exist.
+ *
+ * <p>Lookups are counted in the {@code cache.gets} counter, tagged with {@code cache=containerExistence} and the
+ * {@code result} of the lookup.
+ */
+@Component
+@Slf4j
+public class ContainerExistenceCache implements MeterBinder {
+
+    static final String CACHE_NAME = "containerExistence";
+
+    private final Duration ttl;
+    private final Clock clock;
+    private final ConcurrentHashMap<String, Instant> confirmedUntil = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public ContainerExistenceCache(AdlsGen2Config adlsGen2Config) {
+        this(adlsGen2Config.getContainerExistsCacheTtl(), Clock.systemUTC());
+    }
+
+    public ContainerExistenceCache(Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the container has been confirmed to exist within the configured time-to-live
+     */
+    public boolean isConfirmed(String storageAccount, String containerName) {
+        if (!isEnabled()) return false;
+        boolean confirmed = lookup(key(storageAccount, containerName));
+        (confirmed ? hits : misses).increment();
+        return confirmed;
+    }
+
+    private boolean lookup(String key) {
+        var expiration = confirmedUntil.get(key);
+        if (expiration == null) return false;
+        if (clock.instant().isBefore(expiration)) return true;
+        confirmedUntil.remove(key, expiration);
+        return false;
+    }
+
+    public void confirm(String storageAccount, String containerName) {
+        if (isEnabled()) {
+            confirmedUntil.put(
+                    key(storageAccount, containerName), clock.instant().plus(ttl));
+        }
+    }
+
+    public void invalidate(String storageAccount, String containerName) {
+        if (confirmedUntil.remove(key(storageAccount, containerName)) != null) {
+            log.info(
+                    "Invalidated cached existence of container '{}' in storage account '{}'",
+                    containerName,
+                    storageAccount);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        CacheMetrics.bind(meterRegistry, CACHE_NAME, hits, misses, confirmedUntil::size);
+    }
+
+    private boolean isEnabled() {
+        return ttl != null && !ttl.isNegative() && !ttl.isZero();
+    }
+
+    private String key(String storageAccount, String containerName) {
+        return storageAccount + "/" + containerName;
+    }
+}
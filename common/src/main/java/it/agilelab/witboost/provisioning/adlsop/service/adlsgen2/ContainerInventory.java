@@ -0,0 +1,186 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.CacheMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a snapshot of the containers (file systems) of every storage account the provisioner works on, so that
+ * validating a container becomes a local set lookup instead of a request to the DFS endpoint.
+ *
+ * <p>A storage account is added to the inventory the first time one of its containers is checked. Its snapshot is
+ * then loaded and refreshed in the background, one storage account at a time, until the account is not queried for
+ * the configured idle timeout. A container missing from the snapshot is reported as unknown rather than missing, as
+ * it may have been created after the last refresh.
+ *
+ * <p>Lookups are counted in the {@code cache.gets} counter, tagged with {@code cache=containerInventory} and the
+ * {@code result} of the lookup, and the storage accounts tracked in the {@code cache.size} gauge.
+ */
+@Component
+@Slf4j
+public class ContainerInventory implements DisposableBean, MeterBinder {
+
+    static final String CACHE_NAME = "containerInventory";
+
+    private final boolean enabled;
+    private final Duration idleTimeout;
+    private final Clock clock;
+    private final ScheduledExecutorService refresher;
+    private final ConcurrentHashMap<String, AccountSnapshot> accounts = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static class AccountSnapshot {
+        private final Supplier<Set<String>> loader;
+        /** Null until the first snapshot is loaded */
+        private final AtomicReference<Set<String>> containers = new AtomicReference<>();
+
+        private volatile Instant lastAccess;
+
+        AccountSnapshot(Supplier<Set<String>> loader, Instant lastAccess) {
+            this.loader = loader;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    @Autowired
+    public ContainerInventory(AdlsGen2Config adlsGen2Config) {
+        this(
+                adlsGen2Config.getInventory(),
+                Clock.systemUTC(),
+                adlsGen2Config.getInventory().isEnabled());
+    }
+
+    ContainerInventory(AdlsGen2Config.Inventory config, Clock clock, boolean scheduleRefresh) {
+        this.enabled = config.isEnabled();
+        this.idleTimeout = config.getIdleTimeout();
+        this.clock = clock;
+        if (scheduleRefresh) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "container-inventory-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = config.getRefreshInterval().toMillis();
+            this.refresher.scheduleWithFixedDelay(this::refreshAll, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    /**
+     * @return true if the container is in the latest snapshot of the storage account, false if the storage account
+     *     has no snapshot yet or the container is not in it
+     */
+    public boolean contains(String storageAccount, String containerName) {
+        if (!enabled) return false;
+        var snapshot = accounts.get(storageAccount);
+        boolean found = false;
+        if (snapshot != null) {
+            snapshot.lastAccess = clock.instant();
+            var containers = snapshot.containers.get();
+            found = containers != null && containers.contains(containerName);
+        }
+        (found ? hits : misses).increment();
+        return found;
+    }
+
+    /**
+     * Adds a storage account to the inventory. The first snapshot is loaded asynchronously, so the caller is expected
+     * to fall back to a direct check for the current request.
+     *
+     * @param storageAccount Storage account name
+     * @param loader Lists the names of all the containers of the storage account
+     */
+    public void track(String storageAccount, Supplier<Set<String>> loader) {
+        if (!enabled) return;
+        accounts.computeIfAbsent(storageAccount, account -> {
+            log.info("Adding storage account '{}' to the container inventory", account);
+            var snapshot = new AccountSnapshot(loader, clock.instant());
+            if (refresher != null) refresher.execute(() -> refresh(account, snapshot));
+            return snapshot;
+        });
+    }
+
+    /** Removes a container from the snapshot, e.g. after an operation reported that it doesn't exist */
+    public void remove(String storageAccount, String containerName) {
+        var snapshot = accounts.get(storageAccount);
+        if (snapshot == null) return;
+        // Compare-and-set, so that a removal racing with a refresh is neither lost nor undone by a stale listing
+        var previous = snapshot.containers.getAndUpdate(containers -> containers == null
+                ? null
+                : containers.stream()
+                        .filter(container -> !container.equals(containerName))
+                        .collect(Collectors.toUnmodifiableSet()));
+        if (previous != null && previous.contains(containerName))
+            log.info(
+                    "Removing container '{}' from the inventory of storage account '{}'",
+                    containerName,
+                    storageAccount);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        CacheMetrics.bind(meterRegistry, CACHE_NAME, hits, misses, accounts::size);
+    }
+
+    void refreshAll() {
+        var idleSince = clock.instant().minus(idleTimeout);
+        accounts.forEach((account, snapshot) -> {
+            if (snapshot.lastAccess.isBefore(idleSince)) {
+                log.info(
+                        "Storage account '{}' was not used since {}, dropping it from the inventory",
+                        account,
+                        idleSince);
+                accounts.remove(account, snapshot);
+            } else {
+                refresh(account, snapshot);
+            }
+        });
+    }
+
+    private void refresh(String storageAccount, AccountSnapshot snapshot) {
+        try {
+            long start = System.nanoTime();
+            var previous = snapshot.containers.get();
+            var containers = Set.copyOf(snapshot.loader.get());
+            if (!snapshot.containers.compareAndSet(previous, containers)) {
+                // A container was removed while listing, the listing may predate it and the next refresh will catch up
+                log.debug(
+                        "Discarding a refresh of the inventory of storage account '{}' raced by a removal",
+                        storageAccount);
+                return;
+            }
+            log.debug(
+                    "Refreshed inventory of storage account '{}': {} containers in {} ms",
+                    storageAccount,
+                    containers.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            // Keep serving the previous snapshot, the next refresh will try again
+            log.warn(String.format("Error while refreshing the inventory of storage account '%s'", storageAccount), e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,150 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import io.micrometer.common.KeyValues;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Records the latency and outcome of the ADLS operations of the wrapped service in {@link AzureCallMetrics}. It wraps
+ * the service directly, so the time spent waiting in the {@link AdlsRequestScheduler} is not attributed to the storage
+ * account. Storage account lookups are recorded by the service itself, as they're also run within other operations.
+ * Each operation is also observed as a phase of {@link ProvisioningPhases}, whose span is the parent of the spans of
+ * its HTTP requests. The paths processed by each batch of a recursive ACL update are counted as they're reported.
+ */
+public class InstrumentedAdlsGen2Service implements AdlsGen2Service {
+
+    private final AdlsGen2Service delegate;
+    private final AzureCallMetrics metrics;
+    private final ProvisioningPhases phases;
+
+    public InstrumentedAdlsGen2Service(AdlsGen2Service delegate, AzureCallMetrics metrics, ProvisioningPhases phases) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.phases = phases;
+    }
+
+    @Override
+    public Either<FailedOperation, Boolean> containerExists(String storageAccount, String containerName) {
+        return record(
+                "containerExists",
+                storageAccount,
+                containerName,
+                null,
+                () -> delegate.containerExists(storageAccount, containerName));
+    }
+
+    @Override
+    public Either<FailedOperation, Set<String>> listContainerNames(String storageAccount) {
+        return record(
+                "listContainerNames", storageAccount, null, null, () -> delegate.listContainerNames(storageAccount));
+    }
+
+    @Override
+    public Either<FailedOperation, StorageAccountInfo> getStorageAccountInfo(String storageAccount) {
+        return delegate.getStorageAccountInfo(storageAccount);
+    }
+
+    @Override
+    public Either<FailedOperation, AdlsGen2DirectoryInfo> createDirectory(
+            String storageAccount, String containerName, String path) {
+        return record(
+                "createDirectory",
+                storageAccount,
+                containerName,
+                path,
+                () -> delegate.createDirectory(storageAccount, containerName, path));
+    }
+
+    @Override
+    public Either<FailedOperation, Void> deleteDirectory(
+            String storageAccount, String containerName, String path, boolean removeData) {
+        return record(
+                "deleteDirectory",
+                storageAccount,
+                containerName,
+                path,
+                () -> delegate.deleteDirectory(storageAccount, containerName, path, removeData));
+    }
+
+    @Override
+    public Either<FailedOperation, Optional<String>> moveToTrash(
+            String storageAccount, String containerName, String path) {
+        return record(
+                "moveToTrash",
+                storageAccount,
+                containerName,
+                path,
+                () -> delegate.moveToTrash(storageAccount, containerName, path));
+    }
+
+    @Override
+    public Either<FailedOperation, Integer> purgeTrash(
+            String storageAccount, String containerName, String trashPath, int maxPaths) {
+        return record(
+                "purgeTrash",
+                storageAccount,
+                containerName,
+                trashPath,
+                () -> delegate.purgeTrash(storageAccount, containerName, trashPath, maxPaths));
+    }
+
+    @Override
+    public Either<FailedOperation, Map<String, OffsetDateTime>> listTrash(String storageAccount, String containerName) {
+        return record(
+                "listTrash",
+                storageAccount,
+                containerName,
+                null,
+                () -> delegate.listTrash(storageAccount, containerName));
+    }
+
+    @Override
+    public Either<FailedOperation, Void> updateAcl(
+            String storageAccount,
+            String containerName,
+            String path,
+            List<String> usersObjectId,
+            AclUpdateProgress progress) {
+        try {
+            return record(
+                    "updateAcl",
+                    storageAccount,
+                    containerName,
+                    path,
+                    () -> delegate.updateAcl(
+                            storageAccount,
+                            containerName,
+                            path,
+                            usersObjectId,
+                            progress.observePaths(metrics::recordAclBatch)));
+        } finally {
+            metrics.recordAclPaths(progress.snapshot().processedPaths());
+        }
+    }
+
+    private <T> Either<FailedOperation, T> record(
+            String operation,
+            String storageAccount,
+            String containerName,
+            String path,
+            Supplier<Either<FailedOperation, T>> call) {
+        var attributes = KeyValues.of(
+                "storage.account", String.valueOf(storageAccount), "storage.container", String.valueOf(containerName));
+        if (path != null) attributes = attributes.and(ProvisioningPhases.pathDepth(path));
+        return phases.observe(
+                ProvisioningPhases.ADLS,
+                operation,
+                attributes,
+                observation -> metrics.record(AzureCallMetrics.DFS, operation, storageAccount, call));
+    }
+}
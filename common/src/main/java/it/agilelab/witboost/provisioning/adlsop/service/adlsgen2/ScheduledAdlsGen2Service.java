@@ -0,0 +1,119 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsRequestScheduler.Lane;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the ADLS operations of the wrapped service through the {@link AdlsRequestScheduler}. Container checks and
+ * directory creations and moves to the trash go in the light lane, while deletions and ACL updates, that can be
+ * recursive, go in the heavy one. Storage account lookups are served by Resource Graph, not by the storage account, and are not scheduled.
+ */
+public class ScheduledAdlsGen2Service implements AdlsGen2Service {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduledAdlsGen2Service.class);
+
+    private final AdlsGen2Service delegate;
+    private final AdlsRequestScheduler scheduler;
+
+    public ScheduledAdlsGen2Service(AdlsGen2Service delegate, AdlsRequestScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Either<FailedOperation, Boolean> containerExists(String storageAccount, String containerName) {
+        return schedule(storageAccount, Lane.LIGHT, () -> delegate.containerExists(storageAccount, containerName));
+    }
+
+    @Override
+    public Either<FailedOperation, Set<String>> listContainerNames(String storageAccount) {
+        return schedule(storageAccount, Lane.LIGHT, () -> delegate.listContainerNames(storageAccount));
+    }
+
+    @Override
+    public Either<FailedOperation, StorageAccountInfo> getStorageAccountInfo(String storageAccount) {
+        return delegate.getStorageAccountInfo(storageAccount);
+    }
+
+    @Override
+    public Either<FailedOperation, AdlsGen2DirectoryInfo> createDirectory(
+            String storageAccount, String containerName, String path) {
+        return schedule(
+                storageAccount, Lane.LIGHT, () -> delegate.createDirectory(storageAccount, containerName, path));
+    }
+
+    @Override
+    public Either<FailedOperation, Void> deleteDirectory(
+            String storageAccount, String containerName, String path, boolean removeData) {
+        return schedule(
+                storageAccount,
+                Lane.HEAVY,
+                () -> delegate.deleteDirectory(storageAccount, containerName, path, removeData));
+    }
+
+    @Override
+    public Either<FailedOperation, Optional<String>> moveToTrash(
+            String storageAccount, String containerName, String path) {
+        return schedule(storageAccount, Lane.LIGHT, () -> delegate.moveToTrash(storageAccount, containerName, path));
+    }
+
+    @Override
+    public Either<FailedOperation, Integer> purgeTrash(
+            String storageAccount, String containerName, String trashPath, int maxPaths) {
+        return schedule(
+                storageAccount,
+                Lane.HEAVY,
+                () -> delegate.purgeTrash(storageAccount, containerName, trashPath, maxPaths));
+    }
+
+    @Override
+    public Either<FailedOperation, Map<String, OffsetDateTime>> listTrash(String storageAccount, String containerName) {
+        return schedule(storageAccount, Lane.LIGHT, () -> delegate.listTrash(storageAccount, containerName));
+    }
+
+    @Override
+    public Either<FailedOperation, Void> updateAcl(
+            String storageAccount,
+            String containerName,
+            String path,
+            List<String> usersObjectId,
+            AclUpdateProgress progress) {
+        return schedule(
+                storageAccount,
+                Lane.HEAVY,
+                () -> delegate.updateAcl(storageAccount, containerName, path, usersObjectId, progress));
+    }
+
+    private <T> Either<FailedOperation, T> schedule(
+            String storageAccount, Lane lane, Supplier<Either<FailedOperation, T>> operation) {
+        try {
+            return scheduler.execute(storageAccount, lane, operation);
+        } catch (TimeoutException e) {
+            String errorMessage = String.format(
+                    "Too many operations are queued on the storage account %s. Please try again later", storageAccount);
+            logger.error(errorMessage, e);
+            return Either.left(new FailedOperation(Collections.singletonList(new Problem(errorMessage, e))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String errorMessage = String.format(
+                    "The operation on the storage account %s was interrupted while waiting to be started",
+                    storageAccount);
+            logger.error(errorMessage, e);
+            return Either.left(new FailedOperation(Collections.singletonList(new Problem(errorMessage, e))));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serializes the ACL updates of the wrapped service per directory, applying only the latest users when requests pile
+ * up.
+ *
+ * <p>While an ACL update is running on a directory, a new request for the same directory waits for its turn. If another
+ * request arrives before the turn comes, the waiting one is superseded: it is never run and its caller receives the
+ * outcome of the newer request, as only the latest users matter. This way overlapping updates don't race on the same
+ * tree, and at most one recursive walk per directory is left waiting during bursts of access requests. The other
+ * operations are passed through.
+ */
+public class SerializedAclAdlsGen2Service implements AdlsGen2Service {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerializedAclAdlsGen2Service.class);
+
+    private record PathKey(String storageAccount, String containerName, String path) {}
+
+    private static final class Request {
+        private final List<String> usersObjectId;
+        /** Completed when the request can run */
+        private final CompletableFuture<Void> turn = new CompletableFuture<>();
+        /** Completed with the outcome of the request, or of the request that superseded it */
+        private final CompletableFuture<Either<FailedOperation, Void>> result = new CompletableFuture<>();
+
+        /** Set when a newer request takes its place, only changed and read within the atomic operations of the map */
+        private boolean superseded;
+
+        Request(List<String> usersObjectId) {
+            this.usersObjectId = usersObjectId;
+        }
+    }
+
+    /** Directory with a running ACL update, and the request waiting to run next, if any */
+    private static final class Slot {
+        private volatile Request pending;
+    }
+
+    private final AdlsGen2Service delegate;
+    /**
+     * Slots are only changed within the atomic operations of the map on their key, so directories don't contend with
+     * each other
+     */
+    private final Map<PathKey, Slot> slots = new ConcurrentHashMap<>();
+
+    public SerializedAclAdlsGen2Service(AdlsGen2Service delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Either<FailedOperation, Boolean> containerExists(String storageAccount, String containerName) {
+        return delegate.containerExists(storageAccount, containerName);
+    }
+
+    @Override
+    public Either<FailedOperation, Set<String>> listContainerNames(String storageAccount) {
+        return delegate.listContainerNames(storageAccount);
+    }
+
+    @Override
+    public Either<FailedOperation, StorageAccountInfo> getStorageAccountInfo(String storageAccount) {
+        return delegate.getStorageAccountInfo(storageAccount);
+    }
+
+    @Override
+    public Either<FailedOperation, AdlsGen2DirectoryInfo> createDirectory(
+            String storageAccount, String containerName, String path) {
+        return delegate.createDirectory(storageAccount, containerName, path);
+    }
+
+    @Override
+    public Either<FailedOperation, Void> deleteDirectory(
+            String storageAccount, String containerName, String path, boolean removeData) {
+        return delegate.deleteDirectory(storageAccount, containerName, path, removeData);
+    }
+
+    @Override
+    public Either<FailedOperation, Optional<String>> moveToTrash(
+            String storageAccount, String containerName, String path) {
+        return delegate.moveToTrash(storageAccount, containerName, path);
+    }
+
+    @Override
+    public Either<FailedOperation, Integer> purgeTrash(
+            String storageAccount, String containerName, String trashPath, int maxPaths) {
+        return delegate.purgeTrash(storageAccount, containerName, trashPath, maxPaths);
+    }
+
+    @Override
+    public Either<FailedOperation, Map<String, OffsetDateTime>> listTrash(String storageAccount, String containerName) {
+        return delegate.listTrash(storageAccount, containerName);
+    }
+
+    @Override
+    public Either<FailedOperation, Void> updateAcl(
+            String storageAccount,
+            String containerName,
+            String path,
+            List<String> usersObjectId,
+            AclUpdateProgress progress) {
+        var key = new PathKey(storageAccount, containerName, path);
+        var request = new Request(usersObjectId);
+        enqueue(key, request);
+
+        try {
+            CompletableFuture.anyOf(request.turn, request.result).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(key, request);
+            String errorMessage = String.format(
+                    "The Access Control List update on %s/%s in the storage account %s was interrupted while waiting for a previous update",
+                    containerName, path, storageAccount);
+            logger.error(errorMessage, e);
+            var failure = Either.<FailedOperation, Void>left(
+                    new FailedOperation(Collections.singletonList(new Problem(errorMessage, e))));
+            request.result.complete(failure);
+            return failure;
+        } catch (ExecutionException e) {
+            // Neither future is ever completed exceptionally
+            throw new IllegalStateException(e);
+        }
+
+        if (!request.turn.isDone()) {
+            logger.info(
+                    "Access Control List update on {}/{} in the storage account {} superseded by a newer request",
+                    containerName,
+                    path,
+                    storageAccount);
+            return request.result.join();
+        }
+
+        try {
+            var result = delegate.updateAcl(storageAccount, containerName, path, usersObjectId, progress);
+            request.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            String errorMessage = String.format(
+                    "Failed to update the Access Control List on %s/%s in the storage account %s. Details: %s",
+                    containerName, path, storageAccount, e.getMessage());
+            request.result.complete(
+                    Either.left(new FailedOperation(Collections.singletonList(new Problem(errorMessage, e)))));
+            throw e;
+        } finally {
+            handOver(key);
+        }
+    }
+
+    /**
+     * Users of the request waiting to run on a directory, for testing purposes
+     * @return The users of the waiting request, or empty if no request is waiting
+     */
+    Optional<List<String>> pendingUsers(String storageAccount, String containerName, String path) {
+        var slot = slots.get(new PathKey(storageAccount, containerName, path));
+        if (slot == null) return Optional.empty();
+        return Optional.ofNullable(slot.pending).map(pending -> pending.usersObjectId);
+    }
+
+    /** Gives the turn to the request if the directory is idle, otherwise makes it the next one to run */
+    private void enqueue(PathKey key, Request request) {
+        var superseded = new Request[1];
+        slots.compute(key, (k, slot) -> {
+            if (slot == null) {
+                request.turn.complete(null);
+                return new Slot();
+            }
+            superseded[0] = slot.pending;
+            if (superseded[0] != null) superseded[0].superseded = true;
+            slot.pending = request;
+            return slot;
+        });
+        if (superseded[0] != null) request.result.thenAccept(superseded[0].result::complete);
+    }
+
+    /** Gives the turn to the waiting request, or marks the directory as idle */
+    private void handOver(PathKey key) {
+        var next = new Request[1];
+        slots.compute(key, (k, slot) -> {
+            if (slot == null) return null;
+            next[0] = slot.pending;
+            slot.pending = null;
+            return next[0] == null ? null : slot;
+        });
+        if (next[0] != null) next[0].turn.complete(null);
+    }
+
+    /** Withdraws a request whose caller stopped waiting, passing the turn on if it was already given */
+    private void abandon(PathKey key, Request request) {
+        var withdrawn = new boolean[1];
+        slots.computeIfPresent(key, (k, slot) -> {
+            if (slot.pending == request) {
+                slot.pending = null;
+                withdrawn[0] = true;
+            } else if (request.superseded) {
+                withdrawn[0] = true;
+            }
+            return slot;
+        });
+        if (!withdrawn[0]) handOver(key);
+    }
+}
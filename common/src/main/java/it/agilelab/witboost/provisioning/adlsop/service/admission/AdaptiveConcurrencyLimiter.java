@@ -0,0 +1,216 @@
+package it.agilelab.witboost.provisioning.adlsop.service.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
+import it.agilelab.witboost.provisioning.adlsop.config.AdmissionConfig;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits the number of provisioning operations running at the same time, adapting the limit to the observed latency
+ * so that the provisioner sheds load instead of piling up work when Azure slows down.
+ *
+ * <p>The limit follows a gradient algorithm: each completed operation compares its latency with the long-term average
+ * latency. While operations are not slower than the average, within the configured tolerance, the limit grows by a few
+ * operations; when they get slower, the limit shrinks proportionally to the slowdown, down to half of its value per
+ * sample. Changes are smoothed and the limit is kept between the configured bounds. The
+ * limit only grows while at least half of it is in use, so an idle provisioner doesn't inflate it.
+ *
+ * <p>Operations over the limit wait in a bounded queue. They are rejected with a {@link
+ * ProvisionerOverloadedException}, carrying a retry delay based on the average latency, when the queue is full or
+ * when they waited too long.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    /** Admission to run one operation, to be released once the operation completes */
+    public interface Permit {
+        void release();
+    }
+
+    private static final Permit NO_OP_PERMIT = () -> {};
+    private static final Duration MIN_RETRY_AFTER = Duration.ofSeconds(1);
+    /** Operations added to the limit at each sample while the latency is stable, before smoothing */
+    private static final int GROWTH = 4;
+
+    private final AdmissionConfig config;
+    private final LongSupplier nanoTime;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<CompletableFuture<Permit>> queue = new ArrayDeque<>();
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    private double limit;
+    private int inFlight;
+    private double longRtt;
+    private long samples;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(AdmissionConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(AdmissionConfig config, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.config = config;
+        this.nanoTime = nanoTime;
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+        Gauge.builder("provisioner.admission.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Provisioning operations that can run at the same time")
+                .register(meterRegistry);
+        Gauge.builder("provisioner.admission.inflight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Provisioning operations running")
+                .register(meterRegistry);
+        Gauge.builder("provisioner.admission.queued", this, AdaptiveConcurrencyLimiter::getQueued)
+                .description("Provisioning operations waiting to be admitted")
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("provisioner.admission.rejected")
+                .description("Provisioning operations rejected because the provisioner is saturated")
+                .tag("reason", "queue_full")
+                .register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("provisioner.admission.rejected")
+                .description("Provisioning operations rejected because the provisioner is saturated")
+                .tag("reason", "timeout")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Requests the admission of an operation without blocking the caller
+     * @return A future completed with the permit once the operation can run, or completed exceptionally with a
+     *     {@link ProvisionerOverloadedException} if the operation is rejected
+     */
+    public CompletableFuture<Permit> acquire() {
+        if (!config.isEnabled()) return CompletableFuture.completedFuture(NO_OP_PERMIT);
+        lock.lock();
+        try {
+            if (inFlight < getLimit() && queue.isEmpty()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(newPermit());
+            }
+            if (queue.size() >= config.getQueueCapacity()) {
+                rejectedQueueFull.increment();
+                return CompletableFuture.failedFuture(overloaded());
+            }
+            var waiter = new CompletableFuture<Permit>();
+            queue.addLast(waiter);
+            CompletableFuture.delayedExecutor(config.getMaxQueueWait().toNanos(), TimeUnit.NANOSECONDS)
+                    .execute(() -> expire(waiter));
+            return waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit newPermit() {
+        long start = nanoTime.getAsLong();
+        int inFlightAtStart = inFlight;
+        var released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) onRelease(nanoTime.getAsLong() - start, inFlightAtStart);
+        };
+    }
+
+    private void onRelease(long rtt, int inFlightAtStart) {
+        List<CompletableFuture<Permit>> admitted = new ArrayList<>();
+        List<Permit> permits = new ArrayList<>();
+        lock.lock();
+        try {
+            // The busiest moment of the operation tells whether the limit was actually in use
+            updateLimit(Math.max(rtt, 1), Math.max(inFlightAtStart, inFlight));
+            inFlight--;
+            while (!queue.isEmpty() && inFlight < getLimit()) {
+                admitted.add(queue.pollFirst());
+                inFlight++;
+                permits.add(newPermit());
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Waiters are completed outside the lock, as completing them runs their dependent stages
+        for (int i = 0; i < admitted.size(); i++) {
+            if (!admitted.get(i).complete(permits.get(i))) permits.get(i).release();
+        }
+    }
+
+    private void updateLimit(double rtt, int inFlightDuringOperation) {
+        samples++;
+        if (samples <= config.getLongWindow()) longRtt += (rtt - longRtt) / samples;
+        else longRtt += (rtt - longRtt) * 2 / (config.getLongWindow() + 1);
+        // Lets the average recover quickly after a period of slow operations
+        if (longRtt / rtt > 2) longRtt *= 0.95;
+
+        if (inFlightDuringOperation < limit / 2) return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, config.getLatencyTolerance() * longRtt / rtt));
+        double estimate = limit * gradient + GROWTH;
+        double smoothed = limit * (1 - config.getSmoothing()) + estimate * config.getSmoothing();
+        double newLimit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), smoothed));
+        if ((int) newLimit != (int) limit)
+            log.debug("Admission limit changed from {} to {} (latency {} ms)", (int) limit, (int) newLimit, (long)
+                    (rtt / 1e6));
+        limit = newLimit;
+    }
+
+    private void expire(CompletableFuture<Permit> waiter) {
+        ProvisionerOverloadedException exception;
+        lock.lock();
+        try {
+            if (!queue.remove(waiter)) return;
+            exception = overloaded();
+        } finally {
+            lock.unlock();
+        }
+        rejectedTimeout.increment();
+        waiter.completeExceptionally(exception);
+    }
+
+    private ProvisionerOverloadedException overloaded() {
+        Duration retryAfter = Duration.ofNanos((long) longRtt);
+        if (retryAfter.compareTo(MIN_RETRY_AFTER) < 0) retryAfter = MIN_RETRY_AFTER;
+        String errorMessage = String.format(
+                "Too many provisioning operations are being processed (limit %d, %d waiting). Please try again later",
+                (int) limit, queue.size());
+        // Logged by the exception handler answering the request
+        return new ProvisionerOverloadedException(errorMessage, retryAfter);
+    }
+}
@@ -0,0 +1,163 @@
+package it.agilelab.witboost.provisioning.adlsop.service.idempotency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.config.IdempotencyConfig;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces duplicate requests, like the retries sent by Witboost when a provisioning request times out.
+ *
+ * <p>A request arriving while an identical one is running is attached to the running one and receives its outcome.
+ * Once completed successfully, the outcome is replayed to identical requests for the configured time, until a different
+ * request on the same component runs, e.g. an unprovisioning after a provisioning. Requests whose descriptor has no
+ * readable component are scoped by their digest, see {@link RequestKey}, so they don't stop such replays. Failures are
+ * not replayed, so that a retry after a failure runs again.
+ */
+@Component
+@Slf4j
+public class RequestCoalescer {
+
+    private static final class Entry {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final Predicate<Object> replayable;
+        private volatile Instant completedAt;
+
+        Entry(Predicate<Object> replayable) {
+            this.replayable = replayable;
+        }
+    }
+
+    private final IdempotencyConfig config;
+    private final Clock clock;
+    private final Map<RequestKey, Entry> entries = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter coalesced;
+    private final Counter replayed;
+
+    @Autowired
+    public RequestCoalescer(IdempotencyConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, Clock.systemUTC());
+    }
+
+    RequestCoalescer(IdempotencyConfig config, MeterRegistry meterRegistry, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+        this.executed = counter(meterRegistry, "executed");
+        this.coalesced = counter(meterRegistry, "coalesced");
+        this.replayed = counter(meterRegistry, "replayed");
+    }
+
+    /**
+     * Runs the operation, unless an identical request is running or has recently completed
+     * @param key Key identifying the request
+     * @param operation Operation to run
+     * @return The future of the running request, the replayed outcome of the completed one, or the future returned by
+     *     the operation
+     */
+    public <T> CompletableFuture<T> execute(RequestKey key, Supplier<CompletableFuture<T>> operation) {
+        return execute(key, operation, result -> true);
+    }
+
+    /**
+     * Runs the operation, unless an identical request is running or has recently completed with a result that can
+     * still be replayed
+     * @param key Key identifying the request
+     * @param operation Operation to run
+     * @param replayable Checks whether a completed result can still be replayed, e.g. whether the task identified by a
+     *     token hasn't failed in the meantime
+     * @return The future of the running request, the replayed outcome of the completed one, or the future returned by
+     *     the operation
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(
+            RequestKey key, Supplier<CompletableFuture<T>> operation, Predicate<T> replayable) {
+        if (!config.isEnabled()) return operation.get();
+        var created = new Entry[1];
+        var entry = entries.compute(key, (k, existing) -> {
+            if (existing != null && isReusable(existing)) return existing;
+            created[0] = new Entry((Predicate<Object>) replayable);
+            return created[0];
+        });
+        if (created[0] == null) {
+            if (entry.future.isDone()) {
+                replayed.increment();
+                log.info("Replaying the outcome of the completed request {}", key);
+            } else {
+                coalesced.increment();
+                log.info("Attaching a duplicate request to the running request {}", key);
+            }
+            return (CompletableFuture<T>) entry.future;
+        }
+        executed.increment();
+        // A new request on the component may change its state, so previous outcomes can't be replayed anymore
+        entries.entrySet()
+                .removeIf(e -> e.getValue().future.isDone()
+                        && !e.getKey().equals(key)
+                        && e.getKey().componentId().equals(key.componentId()));
+        run(key, entry, operation);
+        evictIfFull();
+        return (CompletableFuture<T>) entry.future;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void run(RequestKey key, Entry entry, Supplier<CompletableFuture<T>> operation) {
+        var future = entry.future;
+        CompletableFuture<T> outcome;
+        try {
+            outcome = operation.get();
+        } catch (RuntimeException e) {
+            outcome = CompletableFuture.failedFuture(e);
+        }
+        outcome.whenComplete((result, error) -> {
+            if (error != null) entries.remove(key, entry);
+            else entry.completedAt = clock.instant();
+            if (error != null) future.completeExceptionally(error);
+            else future.complete(result);
+        });
+    }
+
+    private boolean isReusable(Entry entry) {
+        var future = entry.future;
+        if (!future.isDone()) return true;
+        if (future.isCompletedExceptionally()) return false;
+        Instant completedAt = entry.completedAt;
+        if (completedAt == null || !clock.instant().isBefore(completedAt.plus(config.getReplayTtl()))) return false;
+        return entry.replayable.test(future.join());
+    }
+
+    /** Drops expired entries, then the oldest completed ones, when there are more entries than allowed */
+    private void evictIfFull() {
+        if (entries.size() <= config.getMaxEntries()) return;
+        entries.entrySet().removeIf(e -> e.getValue().future.isDone() && !isReusable(e.getValue()));
+        int excess = entries.size() - config.getMaxEntries();
+        if (excess <= 0) return;
+        entries.entrySet().stream()
+                .filter(e -> e.getValue().completedAt != null)
+                .sorted(Comparator.comparing(e -> e.getValue().completedAt))
+                .limit(excess)
+                .toList()
+                .forEach(e -> entries.remove(e.getKey(), e.getValue()));
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("provisioner.idempotency.requests")
+                .description("Provisioning requests by coalescing outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,115 @@
+package it.agilelab.witboost.provisioning.adlsop.service.idempotency;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.UpdateAclRequest;
+import it.agilelab.witboost.provisioning.adlsop.parser.Parser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Identifies a request for coalescing: the component it targets, the operation and the SHA-256 digest of its payload.
+ * Keys are computed from the raw payload on the request thread, without deserializing the descriptor, which is left to
+ * the operation itself: the component is found with a line scan of block YAML descriptors, and by streaming the top
+ * level fields of JSON and flow style ones.
+ *
+ * @param componentId Component targeted by the request. Running a new request on a component stops the replay of the
+ *     previous outcomes on the same component, as they may no longer reflect its state
+ * @param operation Name of the operation
+ * @param digest Digest of the request payload
+ */
+public record RequestKey(String componentId, String operation, String digest) {
+
+    private static final String COMPONENT_ID_FIELD = "componentIdToProvision";
+
+    /** Top level {@code componentIdToProvision} entry of a YAML descriptor, optionally quoted */
+    private static final Pattern COMPONENT_ID = Pattern.compile(
+            "^componentIdToProvision:[ \\t]*([\"']?)([^\"'\\s#]+)\\1[ \\t]*(?:#.*)?$", Pattern.MULTILINE);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final YAMLFactory YAML_FACTORY = new YAMLFactory();
+
+    /** Key of a provisioning or unprovisioning request */
+    public static RequestKey of(String operation, ProvisioningRequest request) {
+        String digest = digest(request.getDescriptorKind(), request.getDescriptor(), request.getRemoveData());
+        return new RequestKey(componentId(request.getDescriptor(), digest), operation, digest);
+    }
+
+    /** Key of an Access Control List update request */
+    public static RequestKey of(String operation, UpdateAclRequest request) {
+        var provisionInfo = request.getProvisionInfo();
+        String descriptor = provisionInfo == null ? null : provisionInfo.getRequest();
+        String digest = digest(request.getRefs(), descriptor, provisionInfo == null ? null : provisionInfo.getResult());
+        return new RequestKey(componentId(descriptor, digest), operation, digest);
+    }
+
+    /**
+     * Computes the digest of the parts of a payload
+     * @param parts Parts of the payload identifying the request. Null parts are allowed
+     * @return The hex encoded SHA-256 digest
+     */
+    static String digest(Object... parts) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                byte[] bytes = String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+                // Length-prefixed, so that moving characters between parts changes the digest
+                sha256.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) ':');
+                sha256.update(bytes);
+            }
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Finds the component to provision of a descriptor. Falls back to the digest when the descriptor can't be read or
+     * has no top level entry, in which case the request is only coalesced with identical requests, and doesn't stop
+     * the replay of the outcomes of other requests on its component. Such a descriptor fails the operation anyway
+     */
+    private static String componentId(String descriptor, String digest) {
+        if (descriptor == null) return digest;
+        if (!Parser.isJsonShaped(descriptor)) {
+            var matcher = COMPONENT_ID.matcher(descriptor);
+            return matcher.find() ? matcher.group(2) : digest;
+        }
+        try {
+            return topLevelField(JSON_FACTORY, descriptor).orElse(digest);
+        } catch (IOException e) {
+            // Flow style YAML looks like JSON but is not
+            try {
+                return topLevelField(YAML_FACTORY, descriptor).orElse(digest);
+            } catch (IOException | RuntimeException yamlError) {
+                return digest;
+            }
+        }
+    }
+
+    /** Streams the top level fields of a document, skipping the nested ones, until the component to provision */
+    private static Optional<String> topLevelField(JsonFactory factory, String descriptor) throws IOException {
+        try (var parser = factory.createParser(descriptor)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return Optional.empty();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean found = COMPONENT_ID_FIELD.equals(parser.currentName());
+                var value = parser.nextToken();
+                if (found) return value == JsonToken.VALUE_STRING ? Optional.of(parser.getText()) : Optional.empty();
+                parser.skipChildren();
+            }
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%s)", operation, componentId, digest.substring(0, Math.min(12, digest.length())));
+    }
+}
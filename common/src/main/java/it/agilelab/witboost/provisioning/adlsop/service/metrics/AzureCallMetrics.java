@@ -0,0 +1,209 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.microsoft.kiota.ApiException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Tracer;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.jfr.AzureCallEvent;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times and counts the calls to the Azure backends, so that the latency of an operation can be attributed to the Data
+ * Lake Storage, Microsoft Graph or Resource Graph.
+ *
+ * <p>Calls are recorded in the {@code provisioner.azure.calls} timer, tagged by backend, operation, storage account and
+ * outcome: {@code success}, {@code failure} when the call returns an error, {@code throttled} when the error is a 429
+ * or 503 response and {@code error} when the call throws. Storage accounts beyond the configured maximum are tagged
+ * as {@code other}, and calls not bound to an account as {@code none}. Retries of failed calls are counted in
+ * {@code provisioner.azure.retries}. The single HTTP requests sent by the SDK clients, including their retries, are
+ * recorded by the {@link AzureHttpTelemetryPolicy} returned by {@link #httpPolicy(String)}. Calls are also accounted to
+ * the running request by the {@link CallAccounting}, and emitted as {@link AzureCallEvent} to the flight recorder
+ * whether or not the metrics are enabled.
+ */
+@Component
+public class AzureCallMetrics {
+
+    public static final String DFS = "dfs";
+    public static final String GRAPH = "graph";
+    public static final String RESOURCE_GRAPH = "resourcegraph";
+
+    static final String NO_ACCOUNT = "none";
+    static final String OTHER_ACCOUNT = "other";
+
+    private final AzureMetricsConfig config;
+    private final MeterRegistry meterRegistry;
+    private final Duration[] slo;
+    private final Set<String> taggedAccounts = ConcurrentHashMap.newKeySet();
+    private final Tracer tracer;
+    private final CallAccounting callAccounting;
+    /** Policies are stateless, so the clients of a backend share the same one */
+    private final Map<String, HttpPipelinePolicy> httpPolicies = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AzureCallMetrics(
+            AzureMetricsConfig config,
+            MeterRegistry meterRegistry,
+            ObjectProvider<Tracer> tracerProvider,
+            CallAccounting callAccounting) {
+        this(config, meterRegistry, tracerProvider.getIfAvailable(() -> Tracer.NOOP), callAccounting);
+    }
+
+    public AzureCallMetrics(AzureMetricsConfig config, MeterRegistry meterRegistry) {
+        this(config, meterRegistry, Tracer.NOOP, new CallAccounting(config, meterRegistry));
+    }
+
+    public AzureCallMetrics(
+            AzureMetricsConfig config, MeterRegistry meterRegistry, Tracer tracer, CallAccounting callAccounting) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
+        this.callAccounting = callAccounting;
+        this.slo = config.getSlo().toArray(Duration[]::new);
+    }
+
+    /**
+     * Creates the policy recording the HTTP requests sent by an Azure SDK client, to be added to its pipeline
+     * @param backend Backend the client calls
+     * @return The policy, which lets the requests through unrecorded when the HTTP request metrics are disabled
+     */
+    public HttpPipelinePolicy httpPolicy(String backend) {
+        return httpPolicies.computeIfAbsent(
+                backend,
+                b -> new AzureHttpTelemetryPolicy(
+                        b,
+                        meterRegistry,
+                        tracer,
+                        slo,
+                        () -> config.isEnabled() && config.isHttpRequests(),
+                        callAccounting));
+    }
+
+    /**
+     * Runs and records a call returning its errors as the left value
+     * @param backend Backend called, one of {@link #DFS}, {@link #GRAPH} or {@link #RESOURCE_GRAPH}
+     * @param operation Name of the operation
+     * @param storageAccount Storage account the call works on, or null
+     * @param call Call to the backend
+     * @return The outcome of the call
+     */
+    public <L, R> Either<L, R> record(
+            String backend, String operation, String storageAccount, Supplier<Either<L, R>> call) {
+        callAccounting.onCall(backend);
+        var event = AzureCallEvent.begin(backend, operation, storageAccount);
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            var result = call.get();
+            outcome = result.isRight() ? "success" : isThrottled(result.getLeft()) ? "throttled" : "failure";
+            return result;
+        } finally {
+            event.end(outcome);
+            if (config.isEnabled())
+                timer(backend, operation, storageAccount, outcome).record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Runs and records a call that throws on errors
+     * @see #record(String, String, String, Supplier)
+     */
+    public <T> T recordCall(String backend, String operation, String storageAccount, Supplier<T> call) {
+        callAccounting.onCall(backend);
+        var event = AzureCallEvent.begin(backend, operation, storageAccount);
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            var result = call.get();
+            outcome = "success";
+            return result;
+        } catch (RuntimeException e) {
+            if (isThrottled(e)) outcome = "throttled";
+            throw e;
+        } finally {
+            event.end(outcome);
+            if (config.isEnabled())
+                timer(backend, operation, storageAccount, outcome).record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /** Counts a retry of a failed call */
+    public void recordRetry(String backend, String operation, String storageAccount) {
+        if (!config.isEnabled()) return;
+        Counter.builder("provisioner.azure.retries")
+                .description("Calls to the Azure backends retried after a failure")
+                .tags(tags(backend, operation, storageAccount))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /** Accounts the paths touched by a recursive ACL update to the running request */
+    public void recordAclPaths(long paths) {
+        callAccounting.onAclPaths(paths);
+    }
+
+    /** Counts the paths processed by a batch of a recursive ACL update, whose rate is the throughput of the updates */
+    public void recordAclBatch(long paths) {
+        if (!config.isEnabled()) return;
+        Counter.builder("provisioner.acl.paths")
+                .description("Paths processed by the recursive ACL updates")
+                .register(meterRegistry)
+                .increment(paths);
+    }
+
+    private Timer timer(String backend, String operation, String storageAccount, String outcome) {
+        return Timer.builder("provisioner.azure.calls")
+                .description("Calls to the Azure backends")
+                .tags(tags(backend, operation, storageAccount).and("outcome", outcome))
+                .serviceLevelObjectives(slo)
+                .register(meterRegistry);
+    }
+
+    private Tags tags(String backend, String operation, String storageAccount) {
+        return Tags.of("backend", backend, "operation", operation, "storage_account", accountTag(storageAccount));
+    }
+
+    String accountTag(String storageAccount) {
+        if (storageAccount == null || storageAccount.isBlank()) return NO_ACCOUNT;
+        if (taggedAccounts.contains(storageAccount)) return storageAccount;
+        synchronized (taggedAccounts) {
+            if (taggedAccounts.size() >= config.getMaxStorageAccountTags()) return OTHER_ACCOUNT;
+            taggedAccounts.add(storageAccount);
+            return storageAccount;
+        }
+    }
+
+    private static boolean isThrottled(Object error) {
+        Stream<Throwable> causes;
+        if (error instanceof FailedOperation failedOperation)
+            causes = failedOperation.problems().stream().flatMap(problem -> problem.cause().stream());
+        else if (error instanceof Throwable throwable) causes = Stream.of(throwable);
+        else causes = Stream.empty();
+        return causes.flatMap(cause -> Stream.iterate(cause, c -> c != null, Throwable::getCause))
+                .map(AzureCallMetrics::statusCode)
+                .flatMap(Optional::stream)
+                .anyMatch(status -> status == 429 || status == 503);
+    }
+
+    private static Optional<Integer> statusCode(Throwable throwable) {
+        if (throwable instanceof HttpResponseException e && e.getResponse() != null)
+            return Optional.of(e.getResponse().getStatusCode());
+        if (throwable instanceof ApiException e) return Optional.of(e.getResponseStatusCode());
+        return Optional.empty();
+    }
+}
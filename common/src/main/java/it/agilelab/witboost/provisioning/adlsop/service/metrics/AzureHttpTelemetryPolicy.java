@@ -0,0 +1,203 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelineNextSyncPolicy;
+import com.azure.core.http.HttpPipelinePosition;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Records every HTTP request sent by an Azure SDK client, including each retry attempt, so that throttling can be told
+ * apart from slow requests.
+ *
+ * <p>Requests are timed in the {@code provisioner.azure.http.requests} timer, tagged by backend, method and status
+ * code, measuring the time until the response headers are received. DNS, connection and TLS times are not exposed by
+ * the SDK HTTP client abstraction and are included in it. Retries are counted in
+ * {@code provisioner.azure.http.retries}, 429 and 503 responses in {@code provisioner.azure.http.throttled}. Each
+ * attempt is also traced as a span, carrying the status code, the attempt number, the throttling flag and the
+ * {@code x-ms-request-id} that Azure support needs to look the request up.
+ *
+ * <p>The policy runs after the retry policy of the client, so it sees every attempt. Attempts are also accounted, with
+ * the bytes they exchange, to the provisioning request sending them by the {@link CallAccounting}, even when the
+ * request metrics are disabled.
+ */
+@Slf4j
+public class AzureHttpTelemetryPolicy implements HttpPipelinePolicy {
+
+    private static final String ATTEMPT_KEY = "provisioner-telemetry-attempt";
+    private static final String IO_ERROR = "IO_ERROR";
+
+    private final String backend;
+    private final MeterRegistry meterRegistry;
+    private final Tracer tracer;
+    private final Duration[] slo;
+    private final BooleanSupplier enabled;
+    private final CallAccounting callAccounting;
+
+    public AzureHttpTelemetryPolicy(
+            String backend,
+            MeterRegistry meterRegistry,
+            Tracer tracer,
+            Duration[] slo,
+            BooleanSupplier enabled,
+            CallAccounting callAccounting) {
+        this.backend = backend;
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
+        this.slo = slo;
+        this.enabled = enabled;
+        this.callAccounting = callAccounting;
+    }
+
+    @Override
+    public HttpPipelinePosition getPipelinePosition() {
+        return HttpPipelinePosition.PER_RETRY;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        var account = account(context);
+        if (!enabled.getAsBoolean())
+            return account == null
+                    ? next.process()
+                    : next.process().doOnSuccess(response -> onResponse(account, response));
+        var attempt = start(context);
+        return next.process()
+                .doOnSuccess(response -> {
+                    onResponse(account, response);
+                    if (response != null) attempt.onResponse(response);
+                })
+                .doOnError(attempt::onError)
+                .doOnCancel(attempt.span::end);
+    }
+
+    @Override
+    public HttpResponse processSync(HttpPipelineCallContext context, HttpPipelineNextSyncPolicy next) {
+        var account = account(context);
+        if (!enabled.getAsBoolean()) {
+            var response = next.processSync();
+            onResponse(account, response);
+            return response;
+        }
+        var attempt = start(context);
+        try {
+            var response = next.processSync();
+            onResponse(account, response);
+            attempt.onResponse(response);
+            return response;
+        } catch (RuntimeException e) {
+            attempt.onError(e);
+            throw e;
+        }
+    }
+
+    /** Accounts the request to the provisioning request sending it, if any */
+    private CallAccounting.Account account(HttpPipelineCallContext context) {
+        var account = callAccounting.attach(context);
+        if (account != null)
+            account.onRequest(
+                    contentLength(context.getHttpRequest().getHeaders().getValue(HttpHeaderName.CONTENT_LENGTH)));
+        return account;
+    }
+
+    private static void onResponse(CallAccounting.Account account, HttpResponse response) {
+        if (account != null && response != null)
+            account.onResponse(contentLength(response.getHeaderValue(HttpHeaderName.CONTENT_LENGTH)));
+    }
+
+    private static long contentLength(String header) {
+        if (header == null) return 0;
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Attempt start(HttpPipelineCallContext context) {
+        int number = (int) context.getData(ATTEMPT_KEY).orElse(0) + 1;
+        context.setData(ATTEMPT_KEY, number);
+        var request = context.getHttpRequest();
+        String method = request.getHttpMethod().name();
+        if (number > 1)
+            Counter.builder("provisioner.azure.http.retries")
+                    .description("HTTP requests to the Azure backends retried by the SDK")
+                    .tags("backend", backend, "method", method)
+                    .register(meterRegistry)
+                    .increment();
+        var span = tracer.nextSpan()
+                .name("azure " + backend + " " + method)
+                .tag("azure.backend", backend)
+                .tag("http.request.method", method)
+                .tag("server.address", request.getUrl().getHost())
+                .tag("azure.attempt", String.valueOf(number))
+                .start();
+        return new Attempt(method, number, span, System.nanoTime());
+    }
+
+    private final class Attempt {
+        private final String method;
+        private final int number;
+        private final Span span;
+        private final long start;
+
+        Attempt(String method, int number, Span span, long start) {
+            this.method = method;
+            this.number = number;
+            this.span = span;
+            this.start = start;
+        }
+
+        void onResponse(HttpResponse response) {
+            int status = response.getStatusCode();
+            String requestId = response.getHeaderValue(HttpHeaderName.X_MS_REQUEST_ID);
+            boolean throttled = status == 429 || status == 503;
+            record(String.valueOf(status));
+            if (throttled) {
+                Counter.builder("provisioner.azure.http.throttled")
+                        .description("HTTP requests to the Azure backends rejected with 429 or 503")
+                        .tags("backend", backend, "method", method, "status", String.valueOf(status))
+                        .register(meterRegistry)
+                        .increment();
+                log.warn(
+                        "{} {} request throttled with status {} at attempt {} (x-ms-request-id {}, retry-after {})",
+                        backend,
+                        method,
+                        status,
+                        number,
+                        requestId,
+                        response.getHeaderValue(HttpHeaderName.RETRY_AFTER));
+            }
+            span.tag("http.response.status_code", String.valueOf(status));
+            span.tag("azure.throttled", String.valueOf(throttled));
+            if (requestId != null) span.tag("az.service_request_id", requestId);
+            span.end();
+        }
+
+        void onError(Throwable error) {
+            record(IO_ERROR);
+            span.error(error);
+            span.end();
+        }
+
+        private void record(String status) {
+            Timer.builder("provisioner.azure.http.requests")
+                    .description("HTTP requests to the Azure backends, until the response headers are received")
+                    .tags("backend", backend, "method", method, "status", status)
+                    .serviceLevelObjectives(slo)
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the caches kept by the provisioner, named like the ones Micrometer binds to the cache libraries so that
+ * the same queries work for all of them: {@code cache.gets} tagged by {@code cache} and {@code result} ({@code hit} or
+ * {@code miss}), and {@code cache.size} tagged by {@code cache}.
+ */
+public final class CacheMetrics {
+
+    private CacheMetrics() {}
+
+    /**
+     * Registers the meters of a cache
+     * @param meterRegistry Registry to register the meters to
+     * @param cacheName Name of the cache, used as the {@code cache} tag
+     * @param hits Lookups that found the entry
+     * @param misses Lookups that didn't find the entry
+     * @param size Number of entries in the cache
+     */
+    public static void bind(
+            MeterRegistry meterRegistry, String cacheName, LongAdder hits, LongAdder misses, Supplier<Number> size) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .description("Lookups of the cache")
+                .tags("cache", cacheName, "result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .description("Lookups of the cache")
+                .tags("cache", cacheName, "result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("cache.size", size)
+                .description("Entries of the cache")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+}
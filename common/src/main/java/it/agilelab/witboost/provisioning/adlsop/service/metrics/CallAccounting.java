@@ -0,0 +1,214 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import com.azure.core.http.HttpPipelineCallContext;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Accounts the Azure calls made by each provisioning request, so that a change adding calls to an operation shows up
+ * as soon as it ships.
+ *
+ * <p>A request runs within an {@link Account} bound to its thread, which counts the calls recorded by
+ * {@link AzureCallMetrics} by backend, the HTTP requests and bytes seen by the {@link AzureHttpTelemetryPolicy} and the
+ * paths touched by recursive ACL updates. Work handed to other threads is accounted when it runs through
+ * {@link #propagating(Executor)}. When the request completes its usage is logged and recorded in the
+ * {@code provisioner.request.azure.*} distribution summaries tagged by operation, whose mean is the usage per request.
+ */
+@Component
+@Slf4j
+public class CallAccounting {
+
+    public static final String HEADER = "X-Azure-Usage";
+
+    private static final String ACCOUNT_KEY = "provisioner-call-account";
+
+    /** Usage of the Azure backends by a request */
+    public record Usage(
+            long dfsCalls,
+            long graphCalls,
+            long resourceGraphCalls,
+            long httpRequests,
+            long bytesSent,
+            long bytesReceived,
+            long aclPaths) {
+
+        /** Value of the {@link #HEADER} response header */
+        public String toHeader() {
+            return String.format(
+                    "dfs=%d, graph=%d, resourcegraph=%d, http=%d, bytesSent=%d, bytesReceived=%d, aclPaths=%d",
+                    dfsCalls, graphCalls, resourceGraphCalls, httpRequests, bytesSent, bytesReceived, aclPaths);
+        }
+    }
+
+    /** Result of a request, with its usage if the accounting is enabled */
+    public record Accounted<T>(T result, Optional<Usage> usage) {}
+
+    /** Counters of a running request */
+    static final class Account {
+        private final LongAdder dfsCalls = new LongAdder();
+        private final LongAdder graphCalls = new LongAdder();
+        private final LongAdder resourceGraphCalls = new LongAdder();
+        private final LongAdder httpRequests = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder aclPaths = new LongAdder();
+
+        void onCall(String backend) {
+            switch (backend) {
+                case AzureCallMetrics.DFS -> dfsCalls.increment();
+                case AzureCallMetrics.GRAPH -> graphCalls.increment();
+                case AzureCallMetrics.RESOURCE_GRAPH -> resourceGraphCalls.increment();
+                default -> {}
+            }
+        }
+
+        void onRequest(long bytes) {
+            httpRequests.increment();
+            bytesSent.add(bytes);
+        }
+
+        void onResponse(long bytes) {
+            bytesReceived.add(bytes);
+        }
+
+        Usage usage() {
+            return new Usage(
+                    dfsCalls.sum(),
+                    graphCalls.sum(),
+                    resourceGraphCalls.sum(),
+                    httpRequests.sum(),
+                    bytesSent.sum(),
+                    bytesReceived.sum(),
+                    aclPaths.sum());
+        }
+    }
+
+    private final AzureMetricsConfig config;
+    private final MeterRegistry meterRegistry;
+    private final ThreadLocal<Account> current = new ThreadLocal<>();
+
+    public CallAccounting(AzureMetricsConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs a request within its own account, then logs and records its usage. The usage is recorded also when the
+     * request fails
+     * @param operation Operation of the request, e.g. {@code provision}
+     * @param request Request to be run
+     * @return The result of the request with its usage
+     */
+    public <T> Accounted<T> account(String operation, Supplier<T> request) {
+        if (!config.isAccounting()) return new Accounted<>(request.get(), Optional.empty());
+        var account = new Account();
+        var previous = current.get();
+        current.set(account);
+        try {
+            return new Accounted<>(request.get(), Optional.of(account.usage()));
+        } finally {
+            restore(previous);
+            record(operation, account.usage());
+        }
+    }
+
+    /** Wraps an executor so that the tasks it runs are accounted to the request submitting them */
+    public Executor propagating(Executor executor) {
+        return command -> {
+            var account = current.get();
+            if (account == null) executor.execute(command);
+            else
+                executor.execute(() -> {
+                    var previous = current.get();
+                    current.set(account);
+                    try {
+                        command.run();
+                    } finally {
+                        restore(previous);
+                    }
+                });
+        };
+    }
+
+    void onCall(String backend) {
+        var account = current.get();
+        if (account != null) account.onCall(backend);
+    }
+
+    void onAclPaths(long paths) {
+        var account = current.get();
+        if (account != null) account.aclPaths.add(paths);
+    }
+
+    /**
+     * Returns the account of an HTTP request. It's taken from the thread sending the first attempt and kept in the
+     * pipeline context, since the retries may be sent from the threads of the SDK
+     */
+    Account attach(HttpPipelineCallContext context) {
+        var attached = context.getData(ACCOUNT_KEY);
+        if (attached.isPresent()) return (Account) attached.get();
+        var account = current.get();
+        if (account != null) context.setData(ACCOUNT_KEY, account);
+        return account;
+    }
+
+    private void restore(Account previous) {
+        if (previous == null) current.remove();
+        else current.set(previous);
+    }
+
+    private void record(String operation, Usage usage) {
+        log.info(
+                "Azure usage of {} request: dfsCalls={} graphCalls={} resourceGraphCalls={} httpRequests={} bytesSent={} bytesReceived={} aclPaths={}",
+                operation,
+                usage.dfsCalls(),
+                usage.graphCalls(),
+                usage.resourceGraphCalls(),
+                usage.httpRequests(),
+                usage.bytesSent(),
+                usage.bytesReceived(),
+                usage.aclPaths());
+        var tags = Tags.of("operation", operation);
+        String calls = "Calls to the Azure backends per request";
+        summary("provisioner.request.azure.calls", calls, tags.and("backend", AzureCallMetrics.DFS), usage.dfsCalls());
+        summary(
+                "provisioner.request.azure.calls",
+                calls,
+                tags.and("backend", AzureCallMetrics.GRAPH),
+                usage.graphCalls());
+        summary(
+                "provisioner.request.azure.calls",
+                calls,
+                tags.and("backend", AzureCallMetrics.RESOURCE_GRAPH),
+                usage.resourceGraphCalls());
+        summary(
+                "provisioner.request.azure.http.requests",
+                "HTTP requests to the Azure backends per request",
+                tags,
+                usage.httpRequests());
+        String bytes = "Bytes exchanged with the Azure backends per request";
+        summary("provisioner.request.azure.bytes", bytes, tags.and("direction", "sent"), usage.bytesSent());
+        summary("provisioner.request.azure.bytes", bytes, tags.and("direction", "received"), usage.bytesReceived());
+        summary(
+                "provisioner.request.acl.paths",
+                "Paths touched by recursive ACL updates per request",
+                tags,
+                usage.aclPaths());
+    }
+
+    private void summary(String name, String description, Tags tags, long value) {
+        DistributionSummary.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(meterRegistry)
+                .record(value);
+    }
+}
@@ -0,0 +1,118 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Observes the phases a request goes through, so that the trace of a request shows which of them dominates its
+ * latency.
+ *
+ * <p>Each phase is an {@link Observation} named {@code provisioner.phase}, which the tracing bridge turns into a span
+ * named after the phase and the operation, and the meter handler into a timer tagged by phase, operation and outcome.
+ * Phases observed while another one is running are nested in it. Phases returning an error are marked as failed,
+ * carrying their problems.
+ */
+@Component
+public class ProvisioningPhases {
+
+    public static final String VALIDATION = "validation";
+    public static final String HANDLER = "handler";
+    public static final String ADLS = "adls";
+    public static final String INFO = "info";
+
+    static final String OBSERVATION_NAME = "provisioner.phase";
+
+    private final ObservationRegistry observationRegistry;
+
+    @Autowired
+    public ProvisioningPhases(ObjectProvider<ObservationRegistry> observationRegistryProvider) {
+        this(observationRegistryProvider.getIfAvailable(() -> ObservationRegistry.NOOP));
+    }
+
+    public ProvisioningPhases(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
+
+    /**
+     * Runs a phase returning its errors as the left value
+     * @param phase Phase, one of {@link #VALIDATION}, {@link #HANDLER}, {@link #ADLS} or {@link #INFO}
+     * @param operation Operation run in the phase
+     * @param attributes Attributes of the span, known before the phase starts
+     * @param call Phase to be run, which can add the attributes known only while running to the observation
+     * @return The outcome of the phase
+     */
+    public <L, R> Either<L, R> observe(
+            String phase, String operation, KeyValues attributes, Function<Observation, Either<L, R>> call) {
+        var observation = start(phase, operation, attributes);
+        try (var scope = observation.openScope()) {
+            var result = call.apply(observation);
+            if (result.isRight()) observation.lowCardinalityKeyValue("outcome", "success");
+            else {
+                observation.lowCardinalityKeyValue("outcome", "failure");
+                if (result.getLeft() instanceof FailedOperation failedOperation)
+                    observation.highCardinalityKeyValue("problems", describe(failedOperation));
+                observation.error(asThrowable(result.getLeft()));
+            }
+            return result;
+        } catch (RuntimeException e) {
+            observation.lowCardinalityKeyValue("outcome", "error");
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    /**
+     * Runs a phase that throws on errors
+     * @see #observe(String, String, KeyValues, Function)
+     */
+    public <T> T observeCall(String phase, String operation, KeyValues attributes, Supplier<T> call) {
+        return observe(phase, operation, attributes, observation -> Either.<RuntimeException, T>right(call.get()))
+                .get();
+    }
+
+    /** Number of segments of a directory path, as an attribute */
+    public static KeyValue pathDepth(String path) {
+        long depth = path == null
+                ? 0
+                : Arrays.stream(path.split("/"))
+                        .filter(segment -> !segment.isBlank())
+                        .count();
+        return KeyValue.of("path.depth", String.valueOf(depth));
+    }
+
+    private Observation start(String phase, String operation, KeyValues attributes) {
+        return Observation.createNotStarted(OBSERVATION_NAME, observationRegistry)
+                .contextualName(phase + " " + operation)
+                .lowCardinalityKeyValue("phase", phase)
+                .lowCardinalityKeyValue("operation", operation)
+                .highCardinalityKeyValues(attributes)
+                .start();
+    }
+
+    private static String describe(FailedOperation failedOperation) {
+        return failedOperation.problems().stream()
+                .map(problem -> problem.description())
+                .collect(Collectors.joining("; "));
+    }
+
+    private static Throwable asThrowable(Object error) {
+        if (error instanceof Throwable throwable) return throwable;
+        if (error instanceof FailedOperation failedOperation)
+            return new SpecificProvisionerValidationException(failedOperation);
+        return new IllegalStateException(String.valueOf(error));
+    }
+}
@@ -3,6 +3,8 @@ package it.agilelab.witboost.provisioning.adlsop.service.provision;
 import static io.vavr.control.Either.left;
 import static io.vavr.control.Either.right;
 
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.Observation;
 import io.vavr.control.Either;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
@@ -10,7 +12,10 @@ import it.agilelab.witboost.provisioning.adlsop.model.*;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningStatus;
 import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureMapper;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AclUpdateProgress;
 import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
+import it.agilelab.witboost.provisioning.adlsop.service.removal.DataRemovalPipeline;
 import jakarta.validation.Valid;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -25,18 +30,36 @@ public class OutputPortHandler {
 
     private final AdlsGen2Service adlsGen2Service;
     private final AzureMapper azureMapper;
-
-    public OutputPortHandler(AdlsGen2Service adlsGen2Service, AzureMapper azureMapper) {
+    private final DataRemovalPipeline dataRemovalPipeline;
+    private final ProvisioningPhases provisioningPhases;
+
+    public OutputPortHandler(
+            AdlsGen2Service adlsGen2Service,
+            AzureMapper azureMapper,
+            DataRemovalPipeline dataRemovalPipeline,
+            ProvisioningPhases provisioningPhases) {
         this.adlsGen2Service = adlsGen2Service;
         this.azureMapper = azureMapper;
+        this.dataRemovalPipeline = dataRemovalPipeline;
+        this.provisioningPhases = provisioningPhases;
     }
 
     public <T extends Specific> Either<FailedOperation, AdlsGen2DirectoryInfo> create(
             ProvisionRequest<T> provisionRequest) {
+        return provisioningPhases.observe(
+                ProvisioningPhases.HANDLER,
+                "create",
+                componentAttributes(provisionRequest),
+                observation -> create(provisionRequest, observation));
+    }
+
+    private <T extends Specific> Either<FailedOperation, AdlsGen2DirectoryInfo> create(
+            ProvisionRequest<T> provisionRequest, Observation observation) {
         if (provisionRequest.component() instanceof OutputPort<T> op) {
             var eitherSpecific = getOutputPortSpecific(provisionRequest);
             if (eitherSpecific.isLeft()) return left(eitherSpecific.getLeft());
             var specific = eitherSpecific.get();
+            observation.highCardinalityKeyValue(ProvisioningPhases.pathDepth(specific.getPath()));
 
             if (op.getDependsOn() != null && !op.getDependsOn().isEmpty()) {
                 String storageComponentId = op.getDependsOn().get(0);
@@ -59,11 +82,28 @@ public class OutputPortHandler {
         }
     }
 
-    public <T extends Specific> Either<FailedOperation, Void> destroy(ProvisionRequest<T> provisionRequest) {
+    /**
+     * Unprovisions the output port. When the data is removed and the background removal is enabled, the directory is
+     * moved to the trash and its content is removed by a background task
+     * @param provisionRequest Request to be unprovisioned
+     * @return The token of the background removal task, if one was started
+     */
+    public <T extends Specific> Either<FailedOperation, Optional<String>> destroy(
+            ProvisionRequest<T> provisionRequest) {
+        return provisioningPhases.observe(
+                ProvisioningPhases.HANDLER,
+                "destroy",
+                componentAttributes(provisionRequest).and("remove_data", String.valueOf(provisionRequest.removeData())),
+                observation -> destroy(provisionRequest, observation));
+    }
+
+    private <T extends Specific> Either<FailedOperation, Optional<String>> destroy(
+            ProvisionRequest<T> provisionRequest, Observation observation) {
         if (provisionRequest.component() instanceof OutputPort<T> op) {
             var eitherSpecific = getOutputPortSpecific(provisionRequest);
             if (eitherSpecific.isLeft()) return left(eitherSpecific.getLeft());
             var specific = eitherSpecific.get();
+            observation.highCardinalityKeyValue(ProvisioningPhases.pathDepth(specific.getPath()));
 
             if (op.getDependsOn() != null && !op.getDependsOn().isEmpty()) {
                 String storageComponentId = op.getDependsOn().get(0);
@@ -71,11 +111,18 @@ public class OutputPortHandler {
                         .dataProduct()
                         .getDeployInfo(storageComponentId, StorageDeployInfo.class)
                         .flatMap(StorageDeployInfo::getStorageAccountName)
-                        .flatMap(storageAccountName -> adlsGen2Service.deleteDirectory(
-                                storageAccountName,
-                                specific.getContainer(),
-                                specific.getPath(),
-                                provisionRequest.removeData()));
+                        .flatMap(storageAccountName -> {
+                            if (provisionRequest.removeData() && dataRemovalPipeline.isEnabled())
+                                return dataRemovalPipeline.remove(
+                                        storageAccountName, specific.getContainer(), specific.getPath());
+                            return adlsGen2Service
+                                    .deleteDirectory(
+                                            storageAccountName,
+                                            specific.getContainer(),
+                                            specific.getPath(),
+                                            provisionRequest.removeData())
+                                    .map(v -> Optional.<String>empty());
+                        });
             } else {
                 return left(missingDependentStorageArea());
             }
@@ -86,11 +133,43 @@ public class OutputPortHandler {
     }
 
     public <T extends Specific> Either<FailedOperation, ProvisioningStatus> updateAcl(
-            Collection<String> refs, ProvisionRequest<T> provisionRequest, @Valid ProvisioningResult result) {
+            Collection<String> refs,
+            ProvisionRequest<T> provisionRequest,
+            @Valid ProvisioningResult result,
+            AclUpdateProgress progress) {
+        return provisioningPhases.observe(
+                ProvisioningPhases.HANDLER,
+                "updateAcl",
+                componentAttributes(provisionRequest).and("acl.refs", String.valueOf(refs.size())),
+                observation -> {
+                    try {
+                        return updateAcl(refs, provisionRequest, result, progress, observation);
+                    } finally {
+                        var snapshot = progress.snapshot();
+                        observation.highCardinalityKeyValues(KeyValues.of(
+                                "acl.changed_directories",
+                                String.valueOf(snapshot.changedDirectories()),
+                                "acl.changed_files",
+                                String.valueOf(snapshot.changedFiles()),
+                                "acl.failed_changes",
+                                String.valueOf(snapshot.failedChanges()),
+                                "acl.batches",
+                                String.valueOf(snapshot.batches())));
+                    }
+                });
+    }
+
+    private <T extends Specific> Either<FailedOperation, ProvisioningStatus> updateAcl(
+            Collection<String> refs,
+            ProvisionRequest<T> provisionRequest,
+            ProvisioningResult result,
+            AclUpdateProgress progress,
+            Observation observation) {
         if (provisionRequest.component() instanceof OutputPort<T>) {
             var eitherSpecific = getOutputPortSpecific(provisionRequest);
             if (eitherSpecific.isLeft()) return left(eitherSpecific.getLeft());
             var specific = eitherSpecific.get();
+            observation.highCardinalityKeyValue(ProvisioningPhases.pathDepth(specific.getPath()));
 
             return result.getInfo().getStorageAccountName().flatMap(storageAccountName -> {
                 Map<String, Either<Throwable, String>> res = azureMapper.map(Set.copyOf(refs));
@@ -103,9 +182,14 @@ public class OutputPortHandler {
                         .filter(Either::isRight)
                         .map(Either::get)
                         .toList();
+                observation.highCardinalityKeyValues(KeyValues.of(
+                        "acl.principals_resolved",
+                        String.valueOf(allIds.size()),
+                        "acl.principals_failed",
+                        String.valueOf(eitherObjectsIds.size() - allIds.size())));
 
                 var updateAclResult = adlsGen2Service.updateAcl(
-                        storageAccountName, specific.getContainer(), specific.getPath(), allIds);
+                        storageAccountName, specific.getContainer(), specific.getPath(), allIds, progress);
 
                 ArrayList<Problem> problems = eitherObjectsIds.stream()
                         .filter(Either::isLeft)
@@ -134,6 +218,11 @@ public class OutputPortHandler {
         }
     }
 
+    private static <T extends Specific> KeyValues componentAttributes(ProvisionRequest<T> provisionRequest) {
+        return KeyValues.of(
+                "component.id", String.valueOf(provisionRequest.component().getId()));
+    }
+
     private <T extends Specific> Either<FailedOperation, OutputPortSpecific> getOutputPortSpecific(
             ProvisionRequest<T> provisionRequest) {
         if (provisionRequest.component().getSpecific() instanceof OutputPortSpecific ss) {
@@ -0,0 +1,285 @@
+package it.agilelab.witboost.provisioning.adlsop.service.removal;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.OperationCancelledException;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
+import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningStatus;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import it.agilelab.witboost.provisioning.adlsop.service.task.Task;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskContext;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskEngine;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes the data of unprovisioned components in the background.
+ *
+ * <p>The directory is first moved to the trash directory of its container, which takes a single call and makes the
+ * data unreachable for the users, so that the unprovisioning can complete right away. The content of the trash
+ * directory is then deleted by a task of the {@link TaskEngine}, a page of children at a time, retrying each page with
+ * an exponential backoff. Removals run on their own pool of workers, and their deletions go through the heavy lane of
+ * the storage account, so a large removal neither holds up the other tasks nor floods the account. A page removes
+ * each child directory with a single recursive deletion, so its duration grows with the size of the largest child.
+ *
+ * <p>Background removals need the file task store, so that the removals interrupted by a restart are resumed. With
+ * the in-memory task store the data is deleted during the unprovisioning instead.
+ *
+ * <p>Directories left in the trash by failed or cancelled removals are swept periodically: those unmodified for the
+ * configured age and with no removal running get a new removal task. The containers where this instance moved data to
+ * the trash since its start are swept, together with the configured ones, which cover the removals that failed before
+ * a restart.
+ */
+@Component
+@Slf4j
+public class DataRemovalPipeline implements DisposableBean {
+
+    public static final String OPERATION = "removedata";
+
+    /** Directory in the trash to be removed */
+    public record RemovalRequest(String storageAccount, String containerName, String trashPath) {}
+
+    /**
+     * Progress of a removal, also saved as checkpoint so that the counters survive a restart. Entries are the direct
+     * children of the directory in the trash, each removed with its whole subtree
+     */
+    public record Progress(@JsonAlias("removedPaths") long removedEntries, long pages) {
+
+        Progress add(int removed) {
+            return new Progress(removedEntries + removed, pages + 1);
+        }
+
+        public String describe() {
+            return String.format("Removed %d entries of the directory in %d pages", removedEntries, pages);
+        }
+    }
+
+    private final AdlsGen2Service adlsGen2Service;
+    private final TaskEngine taskEngine;
+    private final AdlsGen2Config.DataRemoval config;
+    private final AzureCallMetrics azureCallMetrics;
+    private final Clock clock;
+    private final boolean background;
+    private final ScheduledExecutorService sweeper;
+    /** Containers whose trash is swept */
+    private final Set<Container> containers = ConcurrentHashMap.newKeySet();
+    /** Removal tasks known to this instance, by request, to tell the orphaned directories from the ones being removed */
+    private final ConcurrentHashMap<RemovalRequest, String> removals = new ConcurrentHashMap<>();
+
+    private record Container(String storageAccount, String containerName) {}
+
+    @Autowired
+    public DataRemovalPipeline(
+            AdlsGen2Service adlsGen2Service,
+            TaskEngine taskEngine,
+            AdlsGen2Config adlsGen2Config,
+            AzureCallMetrics azureCallMetrics) {
+        this(
+                adlsGen2Service,
+                taskEngine,
+                adlsGen2Config,
+                azureCallMetrics,
+                Clock.systemUTC(),
+                adlsGen2Config.getDataRemoval().getOrphanSweepInterval().compareTo(Duration.ZERO) > 0);
+    }
+
+    DataRemovalPipeline(
+            AdlsGen2Service adlsGen2Service,
+            TaskEngine taskEngine,
+            AdlsGen2Config adlsGen2Config,
+            AzureCallMetrics azureCallMetrics,
+            Clock clock,
+            boolean scheduleSweep) {
+        this.adlsGen2Service = adlsGen2Service;
+        this.taskEngine = taskEngine;
+        this.config = adlsGen2Config.getDataRemoval();
+        this.azureCallMetrics = azureCallMetrics;
+        this.clock = clock;
+        this.background = config.isBackground() && taskEngine.isDurable();
+        if (config.isBackground() && !background)
+            log.warn(
+                    "Data is removed in the background only with the file task store, it's deleted during the unprovisioning");
+        config.getOrphanSweepContainers()
+                .forEach(container ->
+                        containers.add(new Container(container.getStorageAccount(), container.getContainerName())));
+        taskEngine.register(OPERATION, RemovalRequest.class, this::remove, config.getWorkers());
+        if (scheduleSweep) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "trash-sweep");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = config.getOrphanSweepInterval().toMillis();
+            this.sweeper.scheduleWithFixedDelay(this::sweepSafely, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /** Whether the data is removed in the background, otherwise it's deleted during the unprovisioning */
+    public boolean isEnabled() {
+        return background;
+    }
+
+    /**
+     * Moves a directory to the trash and enqueues the removal of its content
+     * @param storageAccount Storage account name
+     * @param containerName Container name
+     * @param path Directory to be removed
+     * @return The token to be used to poll the removal status, or empty if there was nothing to remove in the
+     *     background
+     */
+    public Either<FailedOperation, Optional<String>> remove(String storageAccount, String containerName, String path) {
+        return adlsGen2Service.moveToTrash(storageAccount, containerName, path).flatMap(trashPath -> {
+            if (trashPath.isEmpty()) return right(Optional.empty());
+            var request = new RemovalRequest(storageAccount, containerName, trashPath.get());
+            containers.add(new Container(storageAccount, containerName));
+            try {
+                String token = taskEngine.submit(OPERATION, request);
+                removals.put(request, token);
+                return right(Optional.of(token));
+            } catch (ProvisionerOverloadedException e) {
+                // The data is already in the trash, it must not be left there
+                log.warn("Removal queue full, removing '{}' synchronously", trashPath.get());
+                return removeNow(request);
+            }
+        });
+    }
+
+    private Either<FailedOperation, Optional<String>> removeNow(RemovalRequest request) {
+        try {
+            var progress = remove(request, new Progress(0, 0), () -> false, p -> {});
+            log.info("Removed '{}': {}", request.trashPath(), progress.describe());
+            return right(Optional.empty());
+        } catch (SpecificProvisionerValidationException e) {
+            return left(e.getFailedOperation());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            String errorMessage = String.format(
+                    "The removal of the data moved to '%s' on container '%s' in storage account '%s' was interrupted",
+                    request.trashPath(), request.containerName(), request.storageAccount());
+            log.error(errorMessage, e);
+            return left(new FailedOperation(Collections.singletonList(new Problem(errorMessage, e))));
+        }
+    }
+
+    private ProvisioningStatus remove(RemovalRequest request, TaskContext context) throws InterruptedException {
+        // Also tracked when resumed after a restart
+        removals.put(request, context.taskId());
+        containers.add(new Container(request.storageAccount(), request.containerName()));
+        try {
+            var initial = context.getCheckpoint(Progress.class).orElse(new Progress(0, 0));
+            var progress =
+                    remove(request, initial, context::isCancellationRequested, p -> context.reportProgress(p, p));
+            log.info("Removed '{}': {}", request.trashPath(), progress.describe());
+            return new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, progress.describe());
+        } finally {
+            removals.remove(request, context.taskId());
+        }
+    }
+
+    private Progress remove(
+            RemovalRequest request, Progress progress, BooleanSupplier cancelled, Consumer<Progress> onPage)
+            throws InterruptedException {
+        while (true) {
+            if (cancelled.getAsBoolean())
+                throw new OperationCancelledException(String.format(
+                        "The removal was cancelled after removing %d entries of the directory. The remaining data is left in '%s' on container '%s'",
+                        progress.removedEntries(), request.trashPath(), request.containerName()));
+            int removed = removePage(request);
+            if (removed == 0) return progress;
+            progress = progress.add(removed);
+            onPage.accept(progress);
+        }
+    }
+
+    /**
+     * Submits a removal task for each directory in the swept trash directories unmodified for the configured age and
+     * with no removal task running. Stops at the first full queue, leaving the remaining directories to the next sweep
+     * @return The number of removal tasks submitted
+     */
+    int sweepOrphans() {
+        removals.values().removeIf(token -> taskEngine
+                .getTask(token, OPERATION)
+                .map(Task::isFinished)
+                .orElse(true));
+        var modifiedBefore = clock.instant().minus(config.getOrphanAge());
+        int submitted = 0;
+        for (var container : containers) {
+            var entries = adlsGen2Service.listTrash(container.storageAccount(), container.containerName());
+            if (entries.isLeft()) continue;
+            for (var entry : entries.get().entrySet()) {
+                var request = new RemovalRequest(container.storageAccount(), container.containerName(), entry.getKey());
+                if (removals.containsKey(request)
+                        || entry.getValue().toInstant().isAfter(modifiedBefore)) continue;
+                try {
+                    removals.put(request, taskEngine.submit(OPERATION, request));
+                    submitted++;
+                } catch (ProvisionerOverloadedException e) {
+                    log.info("Removal queue full, the orphaned directories left in the trash are swept later");
+                    return submitted;
+                }
+                log.info(
+                        "Removing orphaned directory '{}' in the trash of container '{}' in storage account '{}'",
+                        entry.getKey(),
+                        container.containerName(),
+                        container.storageAccount());
+            }
+        }
+        return submitted;
+    }
+
+    private void sweepSafely() {
+        try {
+            sweepOrphans();
+        } catch (Exception e) {
+            log.error("Error while sweeping the trash directories", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    /** Removes a page of the directory, retrying with an exponential backoff */
+    private int removePage(RemovalRequest request) throws InterruptedException {
+        Duration backoff = config.getRetryBackoff();
+        for (int attempt = 1; ; attempt++) {
+            var removed = adlsGen2Service.purgeTrash(
+                    request.storageAccount(), request.containerName(), request.trashPath(), config.getPageSize());
+            if (removed.isRight()) return removed.get();
+            if (attempt >= config.getMaxAttempts()) throw new SpecificProvisionerValidationException(removed.getLeft());
+            log.warn(
+                    "Attempt {} of {} to remove a page of '{}' failed, retrying in {}",
+                    attempt,
+                    config.getMaxAttempts(),
+                    request.trashPath(),
+                    backoff);
+            azureCallMetrics.recordRetry(AzureCallMetrics.DFS, "purgeTrash", request.storageAccount());
+            Thread.sleep(backoff.toMillis());
+            backoff = backoff.multipliedBy(2);
+        }
+    }
+}
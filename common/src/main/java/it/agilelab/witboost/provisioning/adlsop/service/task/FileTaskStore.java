@@ -0,0 +1,207 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import it.agilelab.witboost.provisioning.adlsop.config.AsyncConfig;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the status of asynchronous tasks in an append-only journal on the local filesystem, so that tasks survive a
+ * restart of the provisioner.
+ *
+ * <p>Every change of a task appends a JSON line with the task to the journal, while reads are served from an
+ * {@link InMemoryTaskStore} index. The request of a task never changes, so it's only written by the first record of the
+ * task: the following ones, e.g. the progress saved after each step, leave it out and get it back from the index when
+ * the journal is replayed. When enough records have been appended, the journal is compacted by rewriting only
+ * the tasks that are still live. At startup the journal is replayed to rebuild the index; a truncated last line, left
+ * by a crash in the middle of a write, is skipped.
+ */
+@Component
+@ConditionalOnProperty(prefix = "async.store", name = "type", havingValue = "file")
+@Slf4j
+public class FileTaskStore implements TaskStore, DisposableBean {
+
+    static final String JOURNAL_FILE = "tasks.journal";
+    private static final String REMOVED_FIELD = "removed";
+    private static final String ID_FIELD = "id";
+    private static final String REQUEST_FIELD = "request";
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+    private final InMemoryTaskStore index;
+    private final Path journal;
+    private final int compactionThreshold;
+    private final boolean fsync;
+    // A lock rather than synchronized methods, so that virtual threads writing the journal don't pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private FileChannel channel;
+    private int appendedSinceCompaction;
+
+    @Autowired
+    public FileTaskStore(AsyncConfig asyncConfig) {
+        this(
+                Path.of(asyncConfig.getStore().getDirectory()),
+                asyncConfig.getStatusTtl(),
+                asyncConfig.getStore().getCompactionThreshold(),
+                asyncConfig.getStore().isFsync(),
+                Clock.systemUTC());
+    }
+
+    public FileTaskStore(Path directory, Duration ttl, int compactionThreshold, boolean fsync, Clock clock) {
+        this.index = new InMemoryTaskStore(ttl, clock);
+        this.journal = directory.resolve(JOURNAL_FILE);
+        this.compactionThreshold = compactionThreshold;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+            replay();
+            compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to open the task journal %s", journal), e);
+        }
+        log.info(
+                "Task journal {} loaded with {} live tasks",
+                journal,
+                index.liveTasks().size());
+    }
+
+    @Override
+    public void save(Task task) {
+        lock.lock();
+        try {
+            var previous = index.get(task.id());
+            index.save(task);
+            ObjectNode record = objectMapper.valueToTree(task);
+            if (previous.isPresent() && Objects.equals(previous.get().request(), task.request()))
+                record.remove(REQUEST_FIELD);
+            append(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Task> get(String id) {
+        return index.get(id);
+    }
+
+    @Override
+    public void remove(String id) {
+        lock.lock();
+        try {
+            index.remove(id);
+            append(objectMapper.valueToTree(Map.of(ID_FIELD, id, REMOVED_FIELD, true)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Task> runningTasks() {
+        return index.runningTasks();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    private void append(JsonNode record) {
+        try {
+            byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+            var buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            if (fsync) channel.force(false);
+            if (++appendedSinceCompaction >= compactionThreshold) compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to write to the task journal %s", journal), e);
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(journal)) return;
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                try {
+                    JsonNode record = objectMapper.readTree(line);
+                    if (record.path(REMOVED_FIELD).asBoolean(false))
+                        index.remove(record.path(ID_FIELD).asText());
+                    else index.save(withRequest(record));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable record at line {} of the task journal {}", lineNumber, journal, e);
+                }
+            }
+        }
+    }
+
+    /** Reads a task from its record, taking the request from the previous record of the task if left out */
+    private Task withRequest(JsonNode record) throws IOException {
+        if (record instanceof ObjectNode object && !object.has(REQUEST_FIELD))
+            index.get(object.path(ID_FIELD).asText())
+                    .map(Task::request)
+                    .ifPresent(request -> object.set(REQUEST_FIELD, request));
+        return objectMapper.treeToValue(record, Task.class);
+    }
+
+    /** Rewrites the journal with the live tasks only, atomically replacing the previous one */
+    private void compact() throws IOException {
+        if (channel != null) channel.close();
+        Path compacted = journal.resolveSibling(JOURNAL_FILE + ".compacting");
+        try (var writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Task task : index.liveTasks()) {
+                writer.write(objectMapper.writeValueAsString(task));
+                writer.write('\n');
+            }
+        }
+        try (var compactedChannel = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+            compactedChannel.force(true);
+        }
+        Files.move(compacted, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        appendedSinceCompaction = 0;
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        lock.lock();
+        try {
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
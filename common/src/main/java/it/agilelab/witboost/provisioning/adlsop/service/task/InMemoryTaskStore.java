@@ -0,0 +1,81 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import it.agilelab.witboost.provisioning.adlsop.config.AsyncConfig;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the status of asynchronous tasks in memory. Finished tasks expire after the configured time-to-live, while
+ * running tasks are kept until they finish. Tasks are lost on restart.
+ */
+@Component
+@ConditionalOnProperty(prefix = "async.store", name = "type", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class InMemoryTaskStore implements TaskStore {
+
+    private final Duration ttl;
+    private final Clock clock;
+    private final ConcurrentHashMap<String, Task> tasks = new ConcurrentHashMap<>();
+    private final AtomicReference<Instant> lastEviction;
+
+    @Autowired
+    public InMemoryTaskStore(AsyncConfig asyncConfig) {
+        this(asyncConfig.getStatusTtl(), Clock.systemUTC());
+    }
+
+    public InMemoryTaskStore(Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+        this.lastEviction = new AtomicReference<>(clock.instant());
+    }
+
+    @Override
+    public void save(Task task) {
+        tasks.put(task.id(), task);
+        evictExpired();
+    }
+
+    @Override
+    public Optional<Task> get(String id) {
+        return Optional.ofNullable(tasks.get(id)).filter(task -> !isExpired(task, clock.instant()));
+    }
+
+    @Override
+    public void remove(String id) {
+        tasks.remove(id);
+    }
+
+    @Override
+    public List<Task> runningTasks() {
+        return tasks.values().stream().filter(task -> !task.isFinished()).toList();
+    }
+
+    /** Lists the tasks that are not expired yet */
+    List<Task> liveTasks() {
+        var now = clock.instant();
+        return tasks.values().stream().filter(task -> !isExpired(task, now)).toList();
+    }
+
+    private boolean isExpired(Task task, Instant now) {
+        return task.isFinished() && !task.updatedAt().plus(ttl).isAfter(now);
+    }
+
+    /** Drops expired tasks, at most once every tenth of the time-to-live to keep saves cheap */
+    private void evictExpired() {
+        var now = clock.instant();
+        var last = lastEviction.get();
+        if (now.isBefore(last.plus(ttl.dividedBy(10))) || !lastEviction.compareAndSet(last, now)) return;
+        int before = tasks.size();
+        tasks.values().removeIf(task -> isExpired(task, now));
+        log.debug("Evicted {} expired tasks", before - tasks.size());
+    }
+}
@@ -0,0 +1,82 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Snapshot of an asynchronous task. Request, checkpoint, progress and result are kept as JSON trees so that tasks of
+ * different operations can share the same store and be persisted.
+ *
+ * @param id Token identifying the task
+ * @param operation Operation the task performs, e.g. {@code validate}
+ * @param status Current status of the task
+ * @param request Request the task was submitted with, used to resume it after a restart
+ * @param checkpoint Latest checkpoint saved by the task, used to resume it after a restart
+ * @param progress Latest progress reported by the task, if any
+ * @param result Result of the task, only available when the task is completed
+ * @param errors Error messages, only available when the task failed
+ * @param createdAt When the task was submitted
+ * @param updatedAt When the task status last changed
+ */
+public record Task(
+        String id,
+        String operation,
+        TaskStatus status,
+        JsonNode request,
+        JsonNode checkpoint,
+        JsonNode progress,
+        JsonNode result,
+        List<String> errors,
+        Instant createdAt,
+        Instant updatedAt) {
+
+    public Task {
+        Objects.requireNonNull(id);
+        Objects.requireNonNull(operation);
+        Objects.requireNonNull(status);
+        errors = errors == null ? List.of() : List.copyOf(errors);
+        // JSON nulls are read back as NullNode, normalize them so that persisted tasks equal the original ones
+        request = nullIfEmpty(request);
+        checkpoint = nullIfEmpty(checkpoint);
+        progress = nullIfEmpty(progress);
+        result = nullIfEmpty(result);
+    }
+
+    private static JsonNode nullIfEmpty(JsonNode node) {
+        return node == null || node.isNull() || node.isMissingNode() ? null : node;
+    }
+
+    public static Task running(String id, String operation, JsonNode request, Instant now) {
+        return new Task(id, operation, TaskStatus.RUNNING, request, null, null, null, List.of(), now, now);
+    }
+
+    public Task withCheckpoint(JsonNode checkpoint, Instant now) {
+        return new Task(id, operation, status, request, checkpoint, progress, result, errors, createdAt, now);
+    }
+
+    public Task withProgress(JsonNode progress, Instant now) {
+        return new Task(id, operation, status, request, checkpoint, progress, result, errors, createdAt, now);
+    }
+
+    public Task completed(JsonNode result, Instant now) {
+        return new Task(
+                id, operation, TaskStatus.COMPLETED, request, checkpoint, progress, result, List.of(), createdAt, now);
+    }
+
+    public Task failed(List<String> errors, Instant now) {
+        return new Task(id, operation, TaskStatus.FAILED, request, checkpoint, progress, null, errors, createdAt, now);
+    }
+
+    public Task cancelled(List<String> errors, Instant now) {
+        return new Task(
+                id, operation, TaskStatus.CANCELLED, request, checkpoint, progress, null, errors, createdAt, now);
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status != TaskStatus.RUNNING;
+    }
+}
@@ -0,0 +1,44 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import java.util.Optional;
+
+/** Gives a running task access to its own status */
+public interface TaskContext {
+
+    String taskId();
+
+    /**
+     * Publishes the progress of the task, so that it's returned while polling its status
+     * @param progress Progress information, must be serializable to JSON
+     */
+    void reportProgress(Object progress);
+
+    /**
+     * Persists a checkpoint, so that the task can resume from it if it's interrupted by a restart
+     * @param checkpoint Checkpoint, must be serializable to JSON
+     */
+    void saveCheckpoint(Object checkpoint);
+
+    /**
+     * Publishes the progress of the task together with the checkpoint it reached, in a single save. Preferred over
+     * {@link #reportProgress(Object)} followed by {@link #saveCheckpoint(Object)} for tasks checkpointing at each step
+     * @param progress Progress information, must be serializable to JSON
+     * @param checkpoint Checkpoint, must be serializable to JSON
+     */
+    void reportProgress(Object progress, Object checkpoint);
+
+    /**
+     * Retrieves the latest checkpoint saved by the task
+     * @param checkpointClass Type of the checkpoint
+     * @return The checkpoint, or empty if the task never saved one
+     */
+    <T> Optional<T> getCheckpoint(Class<T> checkpointClass);
+
+    /**
+     * Checks whether the cancellation of the task was requested. Long-running operations should check it between
+     * their steps, saving a checkpoint and throwing an
+     * {@link it.agilelab.witboost.provisioning.adlsop.common.OperationCancelledException} to stop
+     * @return true if the task should stop as soon as possible
+     */
+    boolean isCancellationRequested();
+}
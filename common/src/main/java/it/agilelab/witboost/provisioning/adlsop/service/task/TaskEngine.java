@@ -0,0 +1,392 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import it.agilelab.witboost.provisioning.adlsop.common.OperationCancelledException;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
+import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
+import it.agilelab.witboost.provisioning.adlsop.common.ThreadFactories;
+import it.agilelab.witboost.provisioning.adlsop.config.AsyncConfig;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs operations asynchronously on a bounded pool of workers, returning a token that can be used to poll the
+ * operation status from the {@link TaskStore}.
+ *
+ * <p>Operations are registered with {@link #register} and submitted by name together with their request. The request
+ * is stored with the task, so that tasks interrupted by a restart are resumed once the application is ready.
+ *
+ * <p>The queue and workers of each pool are exposed in the {@code provisioner.tasks.*} gauges, tagged by pool: the
+ * {@value #SHARED_POOL} one, or the operation owning a dedicated pool.
+ */
+@Component
+@Slf4j
+public class TaskEngine implements DisposableBean, MeterBinder {
+
+    static final String SHARED_POOL = "shared";
+
+    private record Registration<R>(Class<R> requestClass, TaskHandler<R> handler, ThreadPoolExecutor executor) {}
+
+    private final TaskStore taskStore;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final ThreadFactory threadFactory;
+    private final Map<String, Registration<?>> registrations = new ConcurrentHashMap<>();
+    /** Contexts of the tasks queued or running on this instance, by task id */
+    private final Map<String, StoreTaskContext> activeTasks = new ConcurrentHashMap<>();
+
+    private volatile MeterRegistry meterRegistry;
+
+    @Autowired
+    public TaskEngine(
+            TaskStore taskStore, ObjectMapper objectMapper, AsyncConfig asyncConfig, Environment environment) {
+        this(
+                taskStore,
+                objectMapper,
+                asyncConfig,
+                Clock.systemUTC(),
+                ThreadFactories.create("task-worker-", ThreadFactories.virtualThreadsEnabled(environment)));
+    }
+
+    public TaskEngine(TaskStore taskStore, ObjectMapper objectMapper, AsyncConfig asyncConfig) {
+        this(taskStore, objectMapper, asyncConfig, Clock.systemUTC());
+    }
+
+    public TaskEngine(TaskStore taskStore, ObjectMapper objectMapper, AsyncConfig asyncConfig, Clock clock) {
+        this(taskStore, objectMapper, asyncConfig, clock, ThreadFactories.create("task-worker-", false));
+    }
+
+    public TaskEngine(
+            TaskStore taskStore,
+            ObjectMapper objectMapper,
+            AsyncConfig asyncConfig,
+            Clock clock,
+            ThreadFactory threadFactory) {
+        this.taskStore = taskStore;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.queueCapacity = asyncConfig.getQueueCapacity();
+        this.threadFactory = threadFactory;
+        this.executor = newExecutor(asyncConfig.getWorkers());
+    }
+
+    private ThreadPoolExecutor newExecutor(int workers) {
+        return new ThreadPoolExecutor(
+                workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity), threadFactory);
+    }
+
+    /**
+     * Registers an operation that can be submitted to the engine
+     * @param operation Name of the operation
+     * @param requestClass Type of the operation request, must be serializable to JSON
+     * @param handler Operation to run. Its result must be serializable to JSON. A thrown
+     *                {@link SpecificProvisionerValidationException} marks the task as failed with its problems
+     */
+    public <R> void register(String operation, Class<R> requestClass, TaskHandler<R> handler) {
+        registrations.put(operation, new Registration<>(requestClass, handler, executor));
+        bindPool(SHARED_POOL);
+    }
+
+    /**
+     * Registers an operation run by its own pool of workers, so that its tasks don't hold up the other operations
+     * @param operation Name of the operation
+     * @param requestClass Type of the operation request, must be serializable to JSON
+     * @param handler Operation to run
+     * @param workers Number of tasks of the operation run at the same time
+     * @see #register(String, Class, TaskHandler)
+     */
+    public <R> void register(String operation, Class<R> requestClass, TaskHandler<R> handler, int workers) {
+        var previous = registrations.put(operation, new Registration<>(requestClass, handler, newExecutor(workers)));
+        if (previous != null && previous.executor() != executor)
+            previous.executor().shutdown();
+        bindPool(operation);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        bindPool(SHARED_POOL);
+        registrations.forEach((operation, registration) -> {
+            if (registration.executor() != executor) bindPool(operation);
+        });
+    }
+
+    private void bindPool(String pool) {
+        var registry = meterRegistry;
+        if (registry == null) return;
+        gauge(registry, "provisioner.tasks.queued", "Tasks waiting for a worker", pool, poolExecutor -> poolExecutor
+                .getQueue()
+                .size());
+        gauge(registry, "provisioner.tasks.active", "Tasks being run", pool, ThreadPoolExecutor::getActiveCount);
+        gauge(
+                registry,
+                "provisioner.tasks.workers",
+                "Workers running the tasks",
+                pool,
+                ThreadPoolExecutor::getMaximumPoolSize);
+        gauge(
+                registry,
+                "provisioner.tasks.queue.capacity",
+                "Tasks that can wait for a worker",
+                pool,
+                poolExecutor -> queueCapacity);
+    }
+
+    private void gauge(
+            MeterRegistry registry,
+            String name,
+            String description,
+            String pool,
+            ToDoubleFunction<ThreadPoolExecutor> value) {
+        Gauge.builder(name, this, engine -> engine.pool(pool)
+                        .map(value::applyAsDouble)
+                        .orElse(Double.NaN))
+                .description(description)
+                .tag("pool", pool)
+                .register(registry);
+    }
+
+    /** Executor of a pool, which is a dedicated one unless it's the shared pool */
+    private Optional<ThreadPoolExecutor> pool(String pool) {
+        if (SHARED_POOL.equals(pool)) return Optional.of(executor);
+        return Optional.ofNullable(registrations.get(pool))
+                .map(Registration::executor)
+                .filter(poolExecutor -> poolExecutor != executor);
+    }
+
+    /**
+     * Submits an operation to be run asynchronously
+     * @param operation Name of the operation, used to check that the task is polled from the right endpoint
+     * @param request Request of the operation
+     * @return The token identifying the task
+     * @throws ProvisionerOverloadedException if the task queue is full
+     * @throws IllegalArgumentException if the operation is not registered
+     */
+    public String submit(String operation, Object request) {
+        var registration = registrations.get(operation);
+        if (registration == null)
+            throw new IllegalArgumentException(String.format("The operation '%s' is not registered", operation));
+        String id = UUID.randomUUID().toString();
+        var task = Task.running(id, operation, objectMapper.valueToTree(request), clock.instant());
+        taskStore.save(task);
+        var context = new StoreTaskContext(task);
+        activeTasks.put(id, context);
+        try {
+            registration.executor().execute(() -> run(context, registration, request));
+        } catch (RejectedExecutionException e) {
+            activeTasks.remove(id);
+            taskStore.remove(id);
+            String errorMessage = String.format(
+                    "Too many %s operations are being processed, the request cannot be accepted right now. Please try again later",
+                    operation);
+            log.warn(errorMessage);
+            throw new ProvisionerOverloadedException(errorMessage);
+        }
+        log.info("Submitted {} task {}", operation, id);
+        return id;
+    }
+
+    /** Whether the tasks are kept in a durable store, so that the ones interrupted by a restart are resumed */
+    public boolean isDurable() {
+        return taskStore.isDurable();
+    }
+
+    /**
+     * Retrieves a task, checking it belongs to the expected operation
+     * @param id Token identifying the task
+     * @param operation Expected operation
+     * @return The task, or empty if there is no task for that token and operation or it expired
+     */
+    public Optional<Task> getTask(String id, String operation) {
+        return taskStore.get(id).filter(task -> task.operation().equals(operation));
+    }
+
+    /**
+     * Requests the cancellation of a task. The task stops before starting if it's still queued, otherwise as soon as
+     * its operation checks {@link TaskContext#isCancellationRequested()}, keeping its latest progress and checkpoint
+     * @param id Token identifying the task
+     * @param operation Expected operation
+     * @return The task, or empty if there is no task for that token and operation or it expired. Finished tasks and
+     *     tasks not run by this instance are returned unchanged
+     */
+    public Optional<Task> cancel(String id, String operation) {
+        var task = getTask(id, operation);
+        if (task.isEmpty() || task.get().isFinished()) return task;
+        var context = activeTasks.get(id);
+        if (context == null) {
+            log.warn("Task {} ({}) is not run by this instance and can't be cancelled", id, operation);
+            return task;
+        }
+        context.cancellationRequested = true;
+        log.info("Requested the cancellation of task {} ({})", id, operation);
+        return Optional.of(context.current());
+    }
+
+    /** Converts the result of a completed task back to the type returned by the operation */
+    public <T> T getResult(Task task, Class<T> resultClass) {
+        return objectMapper.convertValue(task.result(), resultClass);
+    }
+
+    /** Converts the latest progress reported by a task back to the type reported by the operation */
+    public <T> Optional<T> getProgress(Task task, Class<T> progressClass) {
+        return Optional.ofNullable(task.progress()).map(progress -> objectMapper.convertValue(progress, progressClass));
+    }
+
+    /**
+     * Resumes the tasks left running by a previous execution. Tasks whose operation is not registered anymore or whose
+     * request can't be read are marked as failed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedTasks() {
+        for (Task task : taskStore.runningTasks()) {
+            var registration = registrations.get(task.operation());
+            try {
+                if (registration == null)
+                    throw new IllegalStateException(
+                            String.format("The operation '%s' is not registered", task.operation()));
+                Object request = objectMapper.treeToValue(task.request(), registration.requestClass());
+                log.info("Resuming {} task {} interrupted by a restart", task.operation(), task.id());
+                var context = new StoreTaskContext(task);
+                activeTasks.put(task.id(), context);
+                registration.executor().execute(() -> run(context, registration, request));
+            } catch (Exception e) {
+                String errorMessage = String.format(
+                        "The %s operation was interrupted by a restart of the provisioner and couldn't be resumed. Please try again. Details: %s",
+                        task.operation(), e.getMessage());
+                log.error(errorMessage, e);
+                taskStore.save(task.failed(List.of(errorMessage), clock.instant()));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> void run(StoreTaskContext context, Registration<R> registration, Object request) {
+        var task = context.current();
+        try {
+            if (context.isCancellationRequested())
+                throw new OperationCancelledException("The operation was cancelled before starting");
+            Object result = registration.handler().run((R) request, context);
+            taskStore.save(context.current().completed(objectMapper.valueToTree(result), clock.instant()));
+            log.info("Task {} ({}) completed", task.id(), task.operation());
+        } catch (SpecificProvisionerValidationException e) {
+            var errors = e.getFailedOperation().problems().stream()
+                    .map(Problem::description)
+                    .toList();
+            log.error("Task {} ({}) failed: {}", task.id(), task.operation(), errors);
+            taskStore.save(context.current().failed(errors, clock.instant()));
+        } catch (OperationCancelledException e) {
+            log.warn("Task {} ({}) cancelled: {}", task.id(), task.operation(), e.getMessage());
+            taskStore.save(context.current().cancelled(List.of(e.getMessage()), clock.instant()));
+        } catch (Exception e) {
+            if (registration.executor().isShutdown()) {
+                // Leave the task running in the store, so that it's resumed on the next start
+                log.warn("Task {} ({}) interrupted by the shutdown", task.id(), task.operation());
+                return;
+            }
+            String errorMessage = String.format(
+                    "An unexpected error occurred while running the %s operation. Please try again later. If the issue still persists, contact the platform team for assistance! Details: %s",
+                    task.operation(), e.getMessage());
+            log.error(errorMessage, e);
+            taskStore.save(context.current().failed(List.of(errorMessage), clock.instant()));
+        } finally {
+            activeTasks.remove(task.id());
+        }
+    }
+
+    /** Context of a running task, saving progress and checkpoints to the task store */
+    private class StoreTaskContext implements TaskContext {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Task current;
+        private volatile boolean cancellationRequested;
+
+        StoreTaskContext(Task task) {
+            this.current = task;
+        }
+
+        Task current() {
+            return current;
+        }
+
+        @Override
+        public String taskId() {
+            return current.id();
+        }
+
+        @Override
+        public void reportProgress(Object progress) {
+            lock.lock();
+            try {
+                current = current.withProgress(objectMapper.valueToTree(progress), clock.instant());
+                taskStore.save(current);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void saveCheckpoint(Object checkpoint) {
+            lock.lock();
+            try {
+                current = current.withCheckpoint(objectMapper.valueToTree(checkpoint), clock.instant());
+                taskStore.save(current);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void reportProgress(Object progress, Object checkpoint) {
+            lock.lock();
+            try {
+                var now = clock.instant();
+                current = current.withProgress(objectMapper.valueToTree(progress), now)
+                        .withCheckpoint(objectMapper.valueToTree(checkpoint), now);
+                taskStore.save(current);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public <T> Optional<T> getCheckpoint(Class<T> checkpointClass) {
+            return Optional.ofNullable(current.checkpoint())
+                    .map(checkpoint -> objectMapper.convertValue(checkpoint, checkpointClass));
+        }
+
+        @Override
+        public boolean isCancellationRequested() {
+            return cancellationRequested;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        registrations.values().forEach(registration -> registration.executor().shutdownNow());
+    }
+}
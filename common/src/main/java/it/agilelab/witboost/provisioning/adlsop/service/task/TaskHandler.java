@@ -0,0 +1,19 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+/**
+ * Runs an operation registered on the {@link TaskEngine}
+ * @param <R> Type of the operation request
+ */
+@FunctionalInterface
+public interface TaskHandler<R> {
+
+    /**
+     * Runs the operation. The same request may be run again after a restart, so the operation should either be
+     * idempotent or resume from the checkpoint saved in the context
+     * @param request Request the task was submitted with
+     * @param context Context of the task running the operation
+     * @return The operation result, must be serializable to JSON
+     * @throws Exception if the operation fails
+     */
+    Object run(R request, TaskContext context) throws Exception;
+}
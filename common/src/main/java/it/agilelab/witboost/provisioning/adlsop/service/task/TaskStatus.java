@@ -0,0 +1,8 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+public enum TaskStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,28 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stores the status of asynchronous tasks. Finished tasks are expected to expire after a configured time-to-live,
+ * while running tasks are kept until they finish.
+ */
+public interface TaskStore {
+
+    void save(Task task);
+
+    Optional<Task> get(String id);
+
+    void remove(String id);
+
+    /**
+     * Lists the tasks that are still running. Called at startup to resume the tasks interrupted by a restart
+     * @return The running tasks
+     */
+    List<Task> runningTasks();
+
+    /** Whether the tasks survive a restart of the provisioner */
+    default boolean isDurable() {
+        return false;
+    }
+}
@@ -3,6 +3,8 @@ package it.agilelab.witboost.provisioning.adlsop.service.validation;
 import static io.vavr.control.Either.left;
 import static io.vavr.control.Either.right;
 
+import io.micrometer.common.KeyValues;
+import io.micrometer.observation.Observation;
 import io.vavr.control.Either;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
@@ -13,6 +15,7 @@ import it.agilelab.witboost.provisioning.adlsop.model.Specific;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.DescriptorKind;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
 import it.agilelab.witboost.provisioning.adlsop.parser.Parser;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
 import java.util.Collections;
 import java.util.Map;
 import org.slf4j.Logger;
@@ -31,14 +34,30 @@ public class ValidationServiceImpl implements ValidationService {
             Map.of(OUTPUTPORT_KIND, OutputPortSpecific.class);
 
     private final OutputPortValidator outputPortValidator;
+    private final ProvisioningPhases provisioningPhases;
 
-    public ValidationServiceImpl(OutputPortValidator outputPortValidator) {
+    public ValidationServiceImpl(OutputPortValidator outputPortValidator, ProvisioningPhases provisioningPhases) {
         this.outputPortValidator = outputPortValidator;
+        this.provisioningPhases = provisioningPhases;
     }
 
     @Override
     public Either<FailedOperation, ProvisionRequest<? extends Specific>> validate(
             ProvisioningRequest provisioningRequest, boolean validateStorageAccountExists) {
+        var descriptor = provisioningRequest.getDescriptor();
+        return provisioningPhases.observe(
+                ProvisioningPhases.VALIDATION,
+                "validate",
+                KeyValues.of(
+                        "descriptor.bytes",
+                        String.valueOf(descriptor == null ? 0 : descriptor.length()),
+                        "validate.storage_account",
+                        String.valueOf(validateStorageAccountExists)),
+                observation -> validate(provisioningRequest, validateStorageAccountExists, observation));
+    }
+
+    private Either<FailedOperation, ProvisionRequest<? extends Specific>> validate(
+            ProvisioningRequest provisioningRequest, boolean validateStorageAccountExists, Observation observation) {
 
         logger.info("Starting Descriptor validation");
         logger.info("Checking Descriptor Kind equals COMPONENT_DESCRIPTOR");
@@ -52,11 +71,16 @@ public class ValidationServiceImpl implements ValidationService {
         }
 
         logger.info("Parsing Descriptor");
-        var eitherDescriptor = Parser.parseDescriptor(provisioningRequest.getDescriptor());
+        var eitherDescriptor = provisioningPhases.observe(
+                ProvisioningPhases.VALIDATION,
+                "parseDescriptor",
+                KeyValues.empty(),
+                o -> Parser.parseDescriptor(provisioningRequest.getDescriptor()));
         if (eitherDescriptor.isLeft()) return left(eitherDescriptor.getLeft());
         var descriptor = eitherDescriptor.get();
 
         var componentId = descriptor.getComponentIdToProvision();
+        observation.highCardinalityKeyValue("component.id", String.valueOf(componentId));
 
         logger.info("Checking component to provision {} is in the descriptor", componentId);
         var optionalComponentToProvision = descriptor.getDataProduct().getComponentToProvision(componentId);
@@ -82,11 +106,20 @@ public class ValidationServiceImpl implements ValidationService {
             case OUTPUTPORT_KIND:
                 var outputPortClass = kindToSpecificClass.get(OUTPUTPORT_KIND);
                 logger.info("Parsing Output Port Component");
-                var eitherOutputPortToProvision = Parser.parseComponent(componentToProvisionAsJson, outputPortClass);
+                var eitherOutputPortToProvision = provisioningPhases.observe(
+                        ProvisioningPhases.VALIDATION,
+                        "parseComponent",
+                        KeyValues.empty(),
+                        o -> Parser.parseComponent(componentToProvisionAsJson, outputPortClass));
                 if (eitherOutputPortToProvision.isLeft()) return left(eitherOutputPortToProvision.getLeft());
                 componentToProvision = eitherOutputPortToProvision.get();
-                var outputPortValidation = outputPortValidator.validate(
-                        descriptor.getDataProduct(), componentToProvision, validateStorageAccountExists);
+                var outputPortToValidate = componentToProvision;
+                var outputPortValidation = provisioningPhases.observe(
+                        ProvisioningPhases.VALIDATION,
+                        "validateOutputPort",
+                        KeyValues.empty(),
+                        o -> outputPortValidator.validate(
+                                descriptor.getDataProduct(), outputPortToValidate, validateStorageAccountExists));
                 if (outputPortValidation.isLeft()) return left(outputPortValidation.getLeft());
                 break;
             default:
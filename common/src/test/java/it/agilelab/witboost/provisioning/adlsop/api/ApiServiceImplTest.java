@@ -4,17 +4,23 @@ import static io.vavr.control.Either.left;
 import static io.vavr.control.Either.right;
 import static it.agilelab.witboost.provisioning.adlsop.common.TestFixtures.buildConstraintViolation;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import io.vavr.control.Either;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
 import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
 import it.agilelab.witboost.provisioning.adlsop.model.*;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.*;
@@ -23,18 +29,28 @@ import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningReques
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningStatus;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.UpdateAclRequest;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationError;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AclUpdateProgress;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.CallAccounting;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
 import it.agilelab.witboost.provisioning.adlsop.service.provision.OutputPortHandler;
+import it.agilelab.witboost.provisioning.adlsop.service.removal.DataRemovalPipeline;
+import it.agilelab.witboost.provisioning.adlsop.service.task.Task;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskEngine;
 import it.agilelab.witboost.provisioning.adlsop.service.validation.ValidationService;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @ExtendWith(MockitoExtension.class)
@@ -46,6 +62,15 @@ public class ApiServiceImplTest {
     @Mock
     OutputPortHandler outputPortHandler;
 
+    @Mock
+    TaskEngine taskEngine;
+
+    @Spy
+    ProvisioningPhases provisioningPhases = new ProvisioningPhases(ObservationRegistry.NOOP);
+
+    @Spy
+    CallAccounting callAccounting = new CallAccounting(new AzureMetricsConfig(), new SimpleMeterRegistry());
+
     @InjectMocks
     private ApiServiceImpl provisionService;
 
@@ -191,7 +216,7 @@ public class ApiServiceImplTest {
         outputPort.setKind("outputport");
         var provisionRequest = new ProvisionRequest<>(null, outputPort, false);
         when(validationService.validate(provisioningRequest, true)).thenReturn(right(provisionRequest));
-        when(outputPortHandler.destroy(provisionRequest)).thenReturn(right(null));
+        when(outputPortHandler.destroy(provisionRequest)).thenReturn(right(Optional.empty()));
         var expectedRes = new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, "");
 
         var actualRes = provisionService.unprovision(provisioningRequest);
@@ -199,6 +224,22 @@ public class ApiServiceImplTest {
         assertEquals(expectedRes, actualRes);
     }
 
+    @Test
+    public void testUnprovisionReturnsDataRemovalToken() {
+        ProvisioningRequest provisioningRequest = new ProvisioningRequest();
+        OutputPort<Specific> outputPort = new OutputPort<>();
+        outputPort.setKind("outputport");
+        var provisionRequest = new ProvisionRequest<>(null, outputPort, true);
+        when(validationService.validate(provisioningRequest, true)).thenReturn(right(provisionRequest));
+        when(outputPortHandler.destroy(provisionRequest)).thenReturn(right(Optional.of("removal-token")));
+
+        var actualRes = provisionService.unprovision(provisioningRequest);
+
+        assertEquals(ProvisioningStatus.StatusEnum.COMPLETED, actualRes.getStatus());
+        assertEquals(
+                Map.of("dataRemovalToken", "removal-token"), actualRes.getInfo().getPrivateInfo());
+    }
+
     @Test
     public void testUnprovisionOutputPortFailHandler() {
         ProvisioningRequest provisioningRequest = new ProvisioningRequest();
@@ -258,7 +299,9 @@ public class ApiServiceImplTest {
         var provisionRequest = new ProvisionRequest<>(null, outputPort, false);
         when(validationService.validate(any(ProvisioningRequest.class), eq(false)))
                 .thenReturn(right(provisionRequest));
-        when(outputPortHandler.updateAcl(users, provisionRequest, storageInfo)).thenReturn(right(expectedRes));
+        when(outputPortHandler.updateAcl(
+                        eq(users), eq(provisionRequest), eq(storageInfo), any(AclUpdateProgress.class)))
+                .thenReturn(right(expectedRes));
 
         var actualRes = provisionService.updateAcl(updateAclRequest);
 
@@ -297,10 +340,251 @@ public class ApiServiceImplTest {
                 .thenReturn(right(provisionRequest));
         String expectedDesc = "Error on ADLS";
         var failedOperation = new FailedOperation(Collections.singletonList(new Problem(expectedDesc)));
-        when(outputPortHandler.updateAcl(users, provisionRequest, storageInfo)).thenReturn(left(failedOperation));
+        when(outputPortHandler.updateAcl(
+                        eq(users), eq(provisionRequest), eq(storageInfo), any(AclUpdateProgress.class)))
+                .thenReturn(left(failedOperation));
 
         var ex = assertThrows(
                 SpecificProvisionerValidationException.class, () -> provisionService.updateAcl(updateAclRequest));
         assertEquals(failedOperation, ex.getFailedOperation());
     }
+
+    @Test
+    public void testAsyncValidateReturnsToken() {
+        ProvisioningRequest provisioningRequest = new ProvisioningRequest();
+        when(taskEngine.submit(eq("validate"), any())).thenReturn("token");
+
+        var actualRes = provisionService.asyncValidate(provisioningRequest);
+
+        assertEquals("token", actualRes);
+    }
+
+    @Test
+    public void testGetValidationStatusRunning() {
+        when(taskEngine.getTask("token", "validate"))
+                .thenReturn(Optional.of(Task.running("token", "validate", null, Instant.now())));
+
+        var actualRes = provisionService.getValidationStatus("token");
+
+        assertEquals(new ValidationStatus(ValidationStatus.StatusEnum.RUNNING), actualRes);
+    }
+
+    @Test
+    public void testGetValidationStatusCompleted() {
+        var task = Task.running("token", "validate", null, Instant.now())
+                .completed(new ObjectMapper().valueToTree(new ValidationResult(true)), Instant.now());
+        when(taskEngine.getTask("token", "validate")).thenReturn(Optional.of(task));
+        when(taskEngine.getResult(task, ValidationResult.class)).thenReturn(new ValidationResult(true));
+        var expectedRes = new ValidationStatus(ValidationStatus.StatusEnum.COMPLETED)
+                .info(new ValidationInfo(new ValidationResult(true)));
+
+        var actualRes = provisionService.getValidationStatus("token");
+
+        assertEquals(expectedRes, actualRes);
+    }
+
+    @Test
+    public void testGetValidationStatusFailed() {
+        var task = Task.running("token", "validate", null, Instant.now()).failed(List.of("error"), Instant.now());
+        when(taskEngine.getTask("token", "validate")).thenReturn(Optional.of(task));
+
+        var actualRes = provisionService.getValidationStatus("token");
+
+        assertEquals(new ValidationStatus(ValidationStatus.StatusEnum.FAILED), actualRes);
+    }
+
+    @Test
+    public void testGetValidationStatusUnknownToken() {
+        when(taskEngine.getTask("token", "validate")).thenReturn(Optional.empty());
+
+        var ex = assertThrows(
+                SpecificProvisionerValidationException.class, () -> provisionService.getValidationStatus("token"));
+
+        assertEquals(
+                "The token 'token' doesn't identify any running or recently completed task. It may be wrong or expired",
+                ex.getFailedOperation().problems().get(0).description());
+    }
+
+    @Test
+    public void testAsyncProvisionReturnsToken() {
+        ProvisioningRequest provisioningRequest = new ProvisioningRequest();
+        when(taskEngine.submit(eq("provision"), any())).thenReturn("token");
+
+        var actualRes = provisionService.asyncProvision(provisioningRequest);
+
+        assertEquals("token", actualRes);
+    }
+
+    @Test
+    public void testAsyncUnprovisionReturnsToken() {
+        ProvisioningRequest provisioningRequest = new ProvisioningRequest();
+        when(taskEngine.submit(eq("unprovision"), any())).thenReturn("token");
+
+        var actualRes = provisionService.asyncUnprovision(provisioningRequest);
+
+        assertEquals("token", actualRes);
+    }
+
+    @Test
+    public void testGetStatusRunning() {
+        when(taskEngine.getTask("token", "provision"))
+                .thenReturn(Optional.of(Task.running("token", "provision", null, Instant.now())));
+
+        var actualRes = provisionService.getStatus("token");
+
+        assertEquals(new ProvisioningStatus(ProvisioningStatus.StatusEnum.RUNNING, ""), actualRes);
+    }
+
+    @Test
+    public void testGetStatusCompletedUnprovision() {
+        var expectedRes = new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, "");
+        var task = Task.running("token", "unprovision", null, Instant.now())
+                .completed(new ObjectMapper().valueToTree(expectedRes), Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "unprovision")).thenReturn(Optional.of(task));
+        when(taskEngine.getResult(task, ProvisioningStatus.class)).thenReturn(expectedRes);
+
+        var actualRes = provisionService.getStatus("token");
+
+        assertEquals(expectedRes, actualRes);
+    }
+
+    @Test
+    public void testGetStatusFailed() {
+        var task = Task.running("token", "provision", null, Instant.now()).failed(List.of("error"), Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.of(task));
+
+        var actualRes = provisionService.getStatus("token");
+
+        assertEquals(ProvisioningStatus.StatusEnum.FAILED, actualRes.getStatus());
+        assertEquals("error", actualRes.getResult());
+        assertEquals(1, actualRes.getLogs().size());
+        assertEquals(Log.LevelEnum.ERROR, actualRes.getLogs().get(0).getLevel());
+        assertEquals("error", actualRes.getLogs().get(0).getMessage());
+    }
+
+    @Test
+    public void testGetStatusUnknownToken() {
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "unprovision")).thenReturn(Optional.empty());
+
+        assertThrows(SpecificProvisionerValidationException.class, () -> provisionService.getStatus("token"));
+    }
+
+    @Test
+    public void testGetStatusRunningDataRemovalReportsProgress() {
+        var progress = new DataRemovalPipeline.Progress(1000, 2);
+        var task = Task.running("token", "removedata", null, Instant.now())
+                .withProgress(new ObjectMapper().valueToTree(progress), Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "unprovision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "updateacl")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "removedata")).thenReturn(Optional.of(task));
+        when(taskEngine.getProgress(task, DataRemovalPipeline.Progress.class)).thenReturn(Optional.of(progress));
+
+        var actualRes = provisionService.getStatus("token");
+
+        assertEquals(ProvisioningStatus.StatusEnum.RUNNING, actualRes.getStatus());
+        assertEquals(Map.of("progress", progress), actualRes.getInfo().getPrivateInfo());
+        assertEquals(
+                "Removed 1000 entries of the directory in 2 pages",
+                actualRes.getLogs().get(0).getMessage());
+    }
+
+    @Test
+    public void testAsyncUpdateAclReturnsToken() {
+        when(taskEngine.submit(eq("updateacl"), any())).thenReturn("token");
+
+        var actualRes = provisionService.asyncUpdateAcl(new UpdateAclRequest());
+
+        assertEquals("token", actualRes);
+    }
+
+    @Test
+    public void testGetStatusRunningUpdateAclReportsProgress() {
+        var progress = new AclUpdateProgress.Snapshot("path", 10, 90, 0, 1, 50.0, 200L, 2L);
+        var task = Task.running("token", "updateacl", null, Instant.now())
+                .withProgress(new ObjectMapper().valueToTree(progress), Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "unprovision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "updateacl")).thenReturn(Optional.of(task));
+        when(taskEngine.getProgress(task, AclUpdateProgress.Snapshot.class)).thenReturn(Optional.of(progress));
+
+        var actualRes = provisionService.getStatus("token");
+
+        assertEquals(ProvisioningStatus.StatusEnum.RUNNING, actualRes.getStatus());
+        assertEquals(Map.of("progress", progress), actualRes.getInfo().getPrivateInfo());
+        assertEquals(
+                "Updating ACLs recursively on path 'path': 10 directories and 90 files updated, 0 failures, 50.0 paths/s, ETA 2s",
+                actualRes.getLogs().get(0).getMessage());
+    }
+
+    @Test
+    public void testIsReplayableTokenForRunningTask() {
+        var task = Task.running("token", "provision", null, Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.of(task));
+
+        assertTrue(provisionService.isReplayableToken("token"));
+    }
+
+    @Test
+    public void testIsReplayableTokenForFailedTask() {
+        var task = Task.running("token", "updateacl", null, Instant.now()).failed(List.of("error"), Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "unprovision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "updateacl")).thenReturn(Optional.of(task));
+
+        assertFalse(provisionService.isReplayableToken("token"));
+    }
+
+    @Test
+    public void testIsReplayableTokenForUnknownToken() {
+        when(taskEngine.getTask(anyString(), anyString())).thenReturn(Optional.empty());
+
+        assertFalse(provisionService.isReplayableToken("token"));
+    }
+
+    @Test
+    public void testCancelReturnsStatus() {
+        var task = Task.running("token", "provision", null, Instant.now());
+        when(taskEngine.cancel("token", "provision")).thenReturn(Optional.of(task));
+
+        var actualRes = provisionService.cancel("token");
+
+        assertEquals(ProvisioningStatus.StatusEnum.RUNNING, actualRes.getStatus());
+    }
+
+    @Test
+    public void testCancelUnknownToken() {
+        when(taskEngine.cancel(anyString(), anyString())).thenReturn(Optional.empty());
+
+        assertThrows(SpecificProvisionerValidationException.class, () -> provisionService.cancel("token"));
+    }
+
+    @Test
+    public void testGetStatusCancelledUpdateAclReportsProgress() {
+        var progress = new AclUpdateProgress.Snapshot("path", 10, 90, 0, 1, 50.0, null, null);
+        var task = Task.running("token", "updateacl", null, Instant.now())
+                .withProgress(new ObjectMapper().valueToTree(progress), Instant.now())
+                .cancelled(List.of("cancelled"), Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "unprovision")).thenReturn(Optional.empty());
+        when(taskEngine.getTask("token", "updateacl")).thenReturn(Optional.of(task));
+        when(taskEngine.getProgress(task, AclUpdateProgress.Snapshot.class)).thenReturn(Optional.of(progress));
+
+        var actualRes = provisionService.getStatus("token");
+
+        assertEquals(ProvisioningStatus.StatusEnum.FAILED, actualRes.getStatus());
+        assertEquals("cancelled", actualRes.getResult());
+        assertEquals(Map.of("progress", progress), actualRes.getInfo().getPrivateInfo());
+    }
+
+    @Test
+    public void testIsReplayableTokenForCancelledTask() {
+        var task =
+                Task.running("token", "provision", null, Instant.now()).cancelled(List.of("cancelled"), Instant.now());
+        when(taskEngine.getTask("token", "provision")).thenReturn(Optional.of(task));
+
+        assertFalse(provisionService.isReplayableToken("token"));
+    }
 }
@@ -0,0 +1,38 @@
+package it.agilelab.witboost.provisioning.adlsop.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+class ThreadFactoriesTest {
+
+    @Test
+    void platformThreadsAreNamedWithPrefix() {
+        var thread = ThreadFactories.create("worker-", false).newThread(() -> {});
+
+        assertEquals("worker-1", thread.getName());
+        assertFalse(thread.isDaemon());
+    }
+
+    @Test
+    void daemonThreadsAreCreated() {
+        var thread = ThreadFactories.createDaemon("worker-", false).newThread(() -> {});
+
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    void virtualThreadsAreDisabledByDefault() {
+        assertFalse(ThreadFactories.virtualThreadsEnabled(new MockEnvironment()));
+    }
+
+    @Test
+    void virtualThreadsRequireJava21() {
+        var environment = new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true");
+
+        assertEquals(Runtime.version().feature() >= 21, ThreadFactories.virtualThreadsEnabled(environment));
+    }
+}
@@ -46,7 +46,7 @@ public class AzurePermissionsConfigTest {
         config.setClientSecret("clientSecret");
 
         String expectedToString =
-                "AzurePermissionsConfig(clientId=clientId, tenantId=tenantId, clientSecret=clientSecret)";
+                "AzurePermissionsConfig(clientId=clientId, tenantId=tenantId, clientSecret=clientSecret, graphEndpoint=https://graph.microsoft.com/v1.0, localEmulator=false)";
         assertEquals(expectedToString, config.toString());
     }
 
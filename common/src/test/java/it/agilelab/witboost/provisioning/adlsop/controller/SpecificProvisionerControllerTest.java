@@ -1,21 +1,45 @@
 package it.agilelab.witboost.provisioning.adlsop.controller;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import it.agilelab.witboost.provisioning.adlsop.api.ApiServiceImpl;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
 import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
+import it.agilelab.witboost.provisioning.adlsop.config.AdmissionConfig;
+import it.agilelab.witboost.provisioning.adlsop.config.AsyncConfig;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.config.IdempotencyConfig;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.*;
+import it.agilelab.witboost.provisioning.adlsop.service.admission.AdaptiveConcurrencyLimiter;
+import it.agilelab.witboost.provisioning.adlsop.service.idempotency.RequestCoalescer;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.CallAccounting;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcProperties;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -28,6 +52,25 @@ public class SpecificProvisionerControllerTest {
     @Mock
     private ApiServiceImpl service;
 
+    @Spy
+    private AsyncConfig asyncConfig = new AsyncConfig();
+
+    @Spy
+    private Executor executor = new SyncTaskExecutor();
+
+    @Spy
+    private AdaptiveConcurrencyLimiter limiter =
+            new AdaptiveConcurrencyLimiter(new AdmissionConfig(), new SimpleMeterRegistry());
+
+    @Spy
+    private RequestCoalescer coalescer = new RequestCoalescer(new IdempotencyConfig(), new SimpleMeterRegistry());
+
+    @Spy
+    private CallAccounting callAccounting = new CallAccounting(new AzureMetricsConfig(), new SimpleMeterRegistry());
+
+    @Spy
+    private WebMvcProperties webMvcProperties = new WebMvcProperties();
+
     @InjectMocks
     private SpecificProvisionerController specificProvisionerController;
 
@@ -43,7 +86,7 @@ public class SpecificProvisionerControllerTest {
         when(service.validate(provisioningRequest)).thenReturn(new ValidationResult(true));
 
         ResponseEntity<it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationResult> actualRes =
-                specificProvisionerController.validate(provisioningRequest);
+                specificProvisionerController.validate(provisioningRequest).join();
 
         Assertions.assertEquals(HttpStatusCode.valueOf(200), actualRes.getStatusCode());
         Assertions.assertTrue(Objects.requireNonNull(actualRes.getBody()).getValid());
@@ -60,7 +103,8 @@ public class SpecificProvisionerControllerTest {
                 .thenReturn(new ValidationResult(false)
                         .error(new ValidationError(Collections.singletonList(expectedError))));
 
-        ResponseEntity<ValidationResult> actualRes = specificProvisionerController.validate(provisioningRequest);
+        ResponseEntity<ValidationResult> actualRes =
+                specificProvisionerController.validate(provisioningRequest).join();
 
         Assertions.assertEquals(HttpStatusCode.valueOf(200), actualRes.getStatusCode());
         Assertions.assertFalse(Objects.requireNonNull(actualRes.getBody()).getValid());
@@ -77,12 +121,16 @@ public class SpecificProvisionerControllerTest {
         when(service.provision(provisioningRequest))
                 .thenReturn(new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, ""));
 
-        ResponseEntity<ProvisioningStatus> actualRes = specificProvisionerController.provision(provisioningRequest);
+        ResponseEntity<ProvisioningStatus> actualRes =
+                specificProvisionerController.provision(provisioningRequest).join();
 
         Assertions.assertEquals(HttpStatusCode.valueOf(200), actualRes.getStatusCode());
         Assertions.assertEquals(
                 ProvisioningStatus.StatusEnum.COMPLETED,
                 Objects.requireNonNull(actualRes.getBody()).getStatus());
+        Assertions.assertEquals(
+                "dfs=0, graph=0, resourcegraph=0, http=0, bytesSent=0, bytesReceived=0, aclPaths=0",
+                actualRes.getHeaders().getFirst(CallAccounting.HEADER));
     }
 
     @Test
@@ -95,10 +143,11 @@ public class SpecificProvisionerControllerTest {
         when(service.provision(provisioningRequest))
                 .thenThrow(new SpecificProvisionerValidationException(failedOperation));
 
-        var ex = Assertions.assertThrows(
-                SpecificProvisionerValidationException.class,
-                () -> specificProvisionerController.provision(provisioningRequest));
-        Assertions.assertEquals(failedOperation, ex.getFailedOperation());
+        var ex = Assertions.assertThrows(CompletionException.class, () -> specificProvisionerController
+                .provision(provisioningRequest)
+                .join());
+        var cause = Assertions.assertInstanceOf(SpecificProvisionerValidationException.class, ex.getCause());
+        Assertions.assertEquals(failedOperation, cause.getFailedOperation());
     }
 
     @Test
@@ -110,7 +159,8 @@ public class SpecificProvisionerControllerTest {
         when(service.unprovision(provisioningRequest))
                 .thenReturn(new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, ""));
 
-        ResponseEntity<ProvisioningStatus> actualRes = specificProvisionerController.unprovision(provisioningRequest);
+        ResponseEntity<ProvisioningStatus> actualRes =
+                specificProvisionerController.unprovision(provisioningRequest).join();
 
         Assertions.assertEquals(HttpStatusCode.valueOf(200), actualRes.getStatusCode());
         Assertions.assertEquals(
@@ -128,9 +178,259 @@ public class SpecificProvisionerControllerTest {
         when(service.unprovision(provisioningRequest))
                 .thenThrow(new SpecificProvisionerValidationException(failedOperation));
 
-        var ex = Assertions.assertThrows(
-                SpecificProvisionerValidationException.class,
-                () -> specificProvisionerController.unprovision(provisioningRequest));
-        Assertions.assertEquals(failedOperation, ex.getFailedOperation());
+        var ex = Assertions.assertThrows(CompletionException.class, () -> specificProvisionerController
+                .unprovision(provisioningRequest)
+                .join());
+        var cause = Assertions.assertInstanceOf(SpecificProvisionerValidationException.class, ex.getCause());
+        Assertions.assertEquals(failedOperation, cause.getFailedOperation());
+    }
+
+    @Test
+    void testAsyncValidateReturnsAccepted() {
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.asyncValidate(provisioningRequest)).thenReturn("token");
+
+        ResponseEntity<String> actualRes =
+                specificProvisionerController.asyncValidate(provisioningRequest).join();
+
+        Assertions.assertEquals(HttpStatusCode.valueOf(202), actualRes.getStatusCode());
+        Assertions.assertEquals("token", actualRes.getBody());
+    }
+
+    @Test
+    void testGetValidationStatusOk() {
+        var expectedRes = new ValidationStatus(ValidationStatus.StatusEnum.RUNNING);
+        when(service.getValidationStatus("token")).thenReturn(expectedRes);
+
+        ResponseEntity<ValidationStatus> actualRes =
+                specificProvisionerController.getValidationStatus("token").join();
+
+        Assertions.assertEquals(HttpStatusCode.valueOf(200), actualRes.getStatusCode());
+        Assertions.assertEquals(expectedRes, actualRes.getBody());
+    }
+
+    @Test
+    void testProvisionAsyncReturnsAccepted() {
+        asyncConfig.getProvisioning().setEnabled(true);
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.asyncProvision(provisioningRequest)).thenReturn("token");
+
+        ResponseEntity<?> actualRes =
+                specificProvisionerController.provision(provisioningRequest).join();
+
+        Assertions.assertEquals(HttpStatusCode.valueOf(202), actualRes.getStatusCode());
+        Assertions.assertEquals("token", actualRes.getBody());
+    }
+
+    @Test
+    void testUnprovisionAsyncReturnsAccepted() {
+        asyncConfig.getProvisioning().setEnabled(true);
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.asyncUnprovision(provisioningRequest)).thenReturn("token");
+
+        ResponseEntity<?> actualRes =
+                specificProvisionerController.unprovision(provisioningRequest).join();
+
+        Assertions.assertEquals(HttpStatusCode.valueOf(202), actualRes.getStatusCode());
+        Assertions.assertEquals("token", actualRes.getBody());
+    }
+
+    @Test
+    void testGetStatusOk() {
+        var expectedRes = new ProvisioningStatus(ProvisioningStatus.StatusEnum.RUNNING, "");
+        when(service.getStatus("token")).thenReturn(expectedRes);
+
+        ResponseEntity<ProvisioningStatus> actualRes =
+                specificProvisionerController.getStatus("token").join();
+
+        Assertions.assertEquals(HttpStatusCode.valueOf(200), actualRes.getStatusCode());
+        Assertions.assertEquals(expectedRes, actualRes.getBody());
+    }
+
+    @Test
+    void testUpdateAclAsyncReturnsAccepted() {
+        asyncConfig.getUpdateAcl().setEnabled(true);
+        UpdateAclRequest updateAclRequest = new UpdateAclRequest();
+        when(service.asyncUpdateAcl(updateAclRequest)).thenReturn("token");
+
+        ResponseEntity<?> actualRes =
+                specificProvisionerController.updateacl(updateAclRequest).join();
+
+        Assertions.assertEquals(HttpStatusCode.valueOf(202), actualRes.getStatusCode());
+        Assertions.assertEquals("token", actualRes.getBody());
+    }
+
+    @Test
+    void testProvisionRunsOnExecutor() {
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.provision(provisioningRequest))
+                .thenReturn(new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, ""));
+
+        specificProvisionerController.provision(provisioningRequest).join();
+
+        verify(executor).execute(any());
+    }
+
+    @Test
+    void testGetStatusDoesNotUseExecutor() {
+        when(service.getStatus("token")).thenReturn(new ProvisioningStatus(ProvisioningStatus.StatusEnum.RUNNING, ""));
+
+        specificProvisionerController.getStatus("token").join();
+
+        verify(executor, never()).execute(any());
+    }
+
+    @Test
+    void testProvisionAsyncOverloadedFailsFuture() {
+        asyncConfig.getProvisioning().setEnabled(true);
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.asyncProvision(provisioningRequest)).thenThrow(new ProvisionerOverloadedException("overloaded"));
+
+        var future = specificProvisionerController.provision(provisioningRequest);
+
+        Assertions.assertTrue(future.isCompletedExceptionally());
+        var ex = Assertions.assertThrows(CompletionException.class, future::join);
+        Assertions.assertInstanceOf(ProvisionerOverloadedException.class, ex.getCause());
+    }
+
+    @Test
+    void testProvisionRejectedByLimiter() {
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        doReturn(CompletableFuture.failedFuture(new ProvisionerOverloadedException("overloaded")))
+                .when(limiter)
+                .acquire();
+
+        var ex = Assertions.assertThrows(CompletionException.class, () -> specificProvisionerController
+                .provision(provisioningRequest)
+                .join());
+
+        Assertions.assertInstanceOf(ProvisionerOverloadedException.class, ex.getCause());
+        verify(service, never()).provision(any());
+    }
+
+    @Test
+    void testProvisionReleasesPermit() {
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.provision(provisioningRequest)).thenThrow(new RuntimeException("failure"));
+
+        Assertions.assertThrows(CompletionException.class, () -> specificProvisionerController
+                .provision(provisioningRequest)
+                .join());
+
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testValidateRejectedByLimiter() {
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        doReturn(CompletableFuture.failedFuture(new ProvisionerOverloadedException("overloaded")))
+                .when(limiter)
+                .acquire();
+
+        var ex = Assertions.assertThrows(CompletionException.class, () -> specificProvisionerController
+                .validate(provisioningRequest)
+                .join());
+
+        Assertions.assertInstanceOf(ProvisionerOverloadedException.class, ex.getCause());
+        verify(service, never()).validate(any());
+    }
+
+    @Test
+    void testProvisionRejectedByExecutorReleasesPermit() {
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        doThrow(new TaskRejectedException("queue full")).when(executor).execute(any());
+
+        var ex = Assertions.assertThrows(CompletionException.class, () -> specificProvisionerController
+                .provision(provisioningRequest)
+                .join());
+
+        Assertions.assertInstanceOf(ProvisionerOverloadedException.class, ex.getCause());
+        Assertions.assertEquals(0, limiter.getInFlight());
+        verify(service, never()).provision(any());
+    }
+
+    @Test
+    void testProvisionWaitingPastRequestTimeoutIsSkipped() throws InterruptedException {
+        webMvcProperties.getAsync().setRequestTimeout(Duration.ofMillis(1));
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        var permit = new CompletableFuture<AdaptiveConcurrencyLimiter.Permit>();
+        doReturn(permit).when(limiter).acquire();
+        var released = new AtomicBoolean();
+
+        var future = specificProvisionerController.provision(provisioningRequest);
+        Thread.sleep(10);
+        permit.complete(() -> released.set(true));
+
+        var ex = Assertions.assertThrows(CompletionException.class, future::join);
+        Assertions.assertInstanceOf(ProvisionerOverloadedException.class, ex.getCause());
+        Assertions.assertTrue(released.get());
+        verify(service, never()).provision(any());
+    }
+
+    @Test
+    void testDuplicateProvisionIsReplayed() {
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        var expectedRes = new ProvisioningStatus(ProvisioningStatus.StatusEnum.COMPLETED, "");
+        when(service.provision(provisioningRequest)).thenReturn(expectedRes);
+
+        specificProvisionerController.provision(provisioningRequest).join();
+        var actualRes =
+                specificProvisionerController.provision(provisioningRequest).join();
+
+        Assertions.assertEquals(expectedRes, actualRes.getBody());
+        verify(service, times(1)).provision(provisioningRequest);
+    }
+
+    @Test
+    void testDuplicateAsyncProvisionReturnsSameToken() {
+        asyncConfig.getProvisioning().setEnabled(true);
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.asyncProvision(provisioningRequest)).thenReturn("token");
+        when(service.isReplayableToken("token")).thenReturn(true);
+
+        specificProvisionerController.provision(provisioningRequest).join();
+        ResponseEntity<?> actualRes =
+                specificProvisionerController.provision(provisioningRequest).join();
+
+        Assertions.assertEquals("token", actualRes.getBody());
+        verify(service, times(1)).asyncProvision(provisioningRequest);
+    }
+
+    @Test
+    void testAsyncProvisionIsResubmittedWhenTaskFailed() {
+        asyncConfig.getProvisioning().setEnabled(true);
+        ProvisioningRequest provisioningRequest =
+                new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "", false);
+        when(service.asyncProvision(provisioningRequest)).thenReturn("token", "new-token");
+        when(service.isReplayableToken("token")).thenReturn(false);
+
+        specificProvisionerController.provision(provisioningRequest).join();
+        ResponseEntity<?> actualRes =
+                specificProvisionerController.provision(provisioningRequest).join();
+
+        Assertions.assertEquals("new-token", actualRes.getBody());
+    }
+
+    @Test
+    void testCancel() {
+        var expectedRes = new ProvisioningStatus(ProvisioningStatus.StatusEnum.RUNNING, "");
+        when(service.cancel("token")).thenReturn(expectedRes);
+
+        var actualRes = specificProvisionerController.cancel("token").join();
+
+        Assertions.assertEquals(HttpStatusCode.valueOf(200), actualRes.getStatusCode());
+        Assertions.assertEquals(expectedRes, actualRes.getBody());
     }
 }
@@ -4,11 +4,13 @@ import static it.agilelab.witboost.provisioning.adlsop.common.TestFixtures.build
 
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
 import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.RequestValidationError;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.SystemError;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Set;
 import org.junit.jupiter.api.Assertions;
@@ -17,6 +19,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 @ExtendWith(MockitoExtension.class)
 @WebMvcTest(SpecificProvisionerExceptionHandler.class)
@@ -36,6 +41,35 @@ public class SpecificProvisionerExceptionHandlerTest {
         Assertions.assertTrue(error.getError().startsWith(expectedError));
     }
 
+    @Test
+    void testHandleOverloadedException() {
+        String expectedError = "Too many requests";
+
+        var response = specificProvisionerExceptionHandler.handleOverloadedException(
+                new ProvisionerOverloadedException(expectedError));
+
+        Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        Assertions.assertEquals(expectedError, response.getBody().getError());
+        Assertions.assertFalse(response.getHeaders().containsKey(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void testHandleOverloadedExceptionWithRetryAfter() {
+        var response = specificProvisionerExceptionHandler.handleOverloadedException(
+                new ProvisionerOverloadedException("Too many requests", Duration.ofMillis(2500)));
+
+        Assertions.assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        Assertions.assertEquals("3", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void testHandleAsyncRequestTimeout() {
+        SystemError error =
+                specificProvisionerExceptionHandler.handleAsyncRequestTimeout(new AsyncRequestTimeoutException());
+
+        Assertions.assertTrue(error.getError().contains("still running"));
+    }
+
     @Test
     void testHandleConflictRequestValidationError() {
         String expectedError = "Validation error";
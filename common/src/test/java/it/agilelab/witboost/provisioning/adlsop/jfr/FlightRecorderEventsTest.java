@@ -0,0 +1,111 @@
+package it.agilelab.witboost.provisioning.adlsop.jfr;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.azure.storage.file.datalake.models.AccessControlChangeCounters;
+import com.azure.storage.file.datalake.models.AccessControlChanges;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.parser.Parser;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AclUpdateProgress;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FlightRecorderEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private List<RecordedEvent> record(String eventName, Runnable action) throws IOException {
+        try (var recording = new Recording()) {
+            recording.enable(eventName).withThreshold(Duration.ZERO);
+            recording.start();
+            action.run();
+            recording.stop();
+            Path file = tempDir.resolve("recording.jfr");
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        }
+    }
+
+    @Test
+    void azureCallsAreRecorded() throws IOException {
+        var metrics = new AzureCallMetrics(new AzureMetricsConfig(), new SimpleMeterRegistry());
+
+        var events = record(
+                AzureCallEvent.NAME,
+                () -> metrics.record(AzureCallMetrics.DFS, "createDirectory", "account", () -> Either.left("failed")));
+
+        assertEquals(1, events.size());
+        var event = events.get(0);
+        assertEquals("dfs", event.getString("backend"));
+        assertEquals("createDirectory", event.getString("operation"));
+        assertEquals("account", event.getString("storageAccount"));
+        assertEquals("failure", event.getString("outcome"));
+    }
+
+    @Test
+    void azureCallsAreRecordedWithMetricsDisabled() throws IOException {
+        var config = new AzureMetricsConfig();
+        config.setEnabled(false);
+        var metrics = new AzureCallMetrics(config, new SimpleMeterRegistry());
+
+        var events = record(
+                AzureCallEvent.NAME,
+                () -> metrics.recordCall(AzureCallMetrics.RESOURCE_GRAPH, "resources", null, () -> 1));
+
+        assertEquals(1, events.size());
+        assertEquals("success", events.get(0).getString("outcome"));
+    }
+
+    @Test
+    void aclBatchesAreRecorded() throws IOException {
+        var progress = AclUpdateProgress.noop();
+
+        var events = record(AclBatchEvent.NAME, () -> {
+            progress.start("path", null);
+            progress.onBatch(changes(2, 10, 0));
+            progress.onBatch(changes(3, 20, 1));
+        });
+
+        assertEquals(2, events.size());
+        var last = events.get(1);
+        assertEquals("path", last.getString("path"));
+        assertEquals(2, last.getLong("batch"));
+        assertEquals(3, last.getLong("changedDirectories"));
+        assertEquals(20, last.getLong("changedFiles"));
+        assertEquals(1, last.getLong("failedChanges"));
+    }
+
+    @Test
+    void descriptorParsingIsRecorded() throws IOException {
+        var events = record(DescriptorParseEvent.NAME, () -> {
+            Parser.parseDescriptor("{\"dataProduct\": {}}");
+            Parser.parseDescriptor("dataProduct: [");
+        });
+
+        assertEquals(2, events.size());
+        assertTrue(events.get(0).getBoolean("json"));
+        assertTrue(events.get(0).getBoolean("success"));
+        assertEquals(19, events.get(0).getLong("length"));
+        assertFalse(events.get(1).getBoolean("json"));
+        assertFalse(events.get(1).getBoolean("success"));
+    }
+
+    private static AccessControlChanges changes(long directories, long files, long failures) {
+        return new AccessControlChanges()
+                .setAggregateCounters(new AccessControlChangeCounters()
+                        .setChangedDirectoriesCount(directories)
+                        .setChangedFilesCount(files)
+                        .setFailedChangesCount(failures));
+    }
+}
@@ -1,12 +1,15 @@
 package it.agilelab.witboost.provisioning.adlsop.parser;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import it.agilelab.witboost.provisioning.adlsop.model.Descriptor;
+import it.agilelab.witboost.provisioning.adlsop.model.ProvisioningResult;
 import it.agilelab.witboost.provisioning.adlsop.model.Specific;
 import it.agilelab.witboost.provisioning.adlsop.model.StorageDeployInfo;
 import it.agilelab.witboost.provisioning.adlsop.util.ResourceUtils;
@@ -138,4 +141,41 @@ public class ParserTest {
         var r = Parser.parseObject(string, StorageDeployInfo.class);
         assertTrue(r.isLeft());
     }
+
+    @Test
+    void testParseJsonDescriptorOk() throws IOException {
+        String ymlDescriptor = ResourceUtils.getContentFromResource("/pr_descriptor_outputport.yml");
+        String jsonDescriptor =
+                new ObjectMapper().writeValueAsString(new ObjectMapper(new YAMLFactory()).readTree(ymlDescriptor));
+
+        var yamlResult = Parser.parseDescriptor(ymlDescriptor);
+        var jsonResult = Parser.parseDescriptor(jsonDescriptor);
+
+        assertTrue(jsonResult.isRight());
+        assertEquals(
+                yamlResult.get().getComponentIdToProvision(), jsonResult.get().getComponentIdToProvision());
+        assertEquals(
+                yamlResult.get().getDataProduct().getComponents(),
+                jsonResult.get().getDataProduct().getComponents());
+    }
+
+    @Test
+    void testParseFlowStyleYamlFallsBackToYamlParser() {
+        String string = "{info: {privateInfo: {outputs: {storage_account_name: {value: an-account}}}}}";
+
+        var r = Parser.parseObject(string, ProvisioningResult.class);
+
+        assertTrue(r.isRight());
+        assertEquals(new ProvisioningResult("an-account"), r.get());
+    }
+
+    @Test
+    void testIsJsonShaped() {
+        assertTrue(Parser.isJsonShaped("{\"a\": 1}"));
+        assertTrue(Parser.isJsonShaped("\uFEFF  \n [1, 2]"));
+        assertFalse(Parser.isJsonShaped("a: 1"));
+        assertFalse(Parser.isJsonShaped("---\n{a: 1}"));
+        assertFalse(Parser.isJsonShaped("   "));
+        assertFalse(Parser.isJsonShaped(null));
+    }
 }
@@ -0,0 +1,72 @@
+package it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.bean.AzureClientConfig;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.config.AzurePermissionsConfig;
+import it.agilelab.witboost.provisioning.adlsop.fake.graph.FakeGraphServer;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Runs the Graph lookups of the provisioner against the fake Graph, instead of mocking the Graph client */
+class AzureGraphClientFakeGraphTest {
+
+    private final FakeGraphServer fake = FakeGraphServer.start().setRetryAfter(Duration.ZERO);
+    private final AzureClient client;
+
+    AzureGraphClientFakeGraphTest() {
+        var config = new AzurePermissionsConfig();
+        config.setGraphEndpoint(fake.endpoint());
+        config.setLocalEmulator(true);
+        client = new AzureClientConfig()
+                .azureClient(config, new AzureCallMetrics(new AzureMetricsConfig(), new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void close() {
+        fake.close();
+    }
+
+    @Test
+    void usersAndGroupsAreResolved() {
+        var userId = fake.addUser("john.doe@agilelab.it");
+        var groupId = fake.addGroup("developers");
+
+        assertEquals(userId, client.getUserId("john.doe@agilelab.it").get());
+        assertEquals(groupId, client.getGroupId("developers").get());
+    }
+
+    @Test
+    void missingPrincipalsAreReported() {
+        assertEquals(
+                "User john.doe@agilelab.it not found on the configured Azure tenant",
+                client.getUserId("john.doe@agilelab.it").getLeft().getMessage());
+        assertEquals(
+                "Group developers not found on the configured Azure tenant",
+                client.getGroupId("developers").getLeft().getMessage());
+    }
+
+    @Test
+    void throttledLookupsAreRetried() {
+        fake.populate(10, 0).setThrottlingRate(0.2);
+
+        for (int i = 0; i < 10; i++)
+            assertTrue(
+                    client.getUserId(String.format("user-%07d@example.com", i)).isRight());
+
+        assertEquals(10, fake.requests("listUsers"));
+    }
+
+    @Test
+    void httpEndpointRequiresLocalEmulator() {
+        var config = new AzurePermissionsConfig();
+        config.setGraphEndpoint(fake.endpoint());
+        var metrics = new AzureCallMetrics(new AzureMetricsConfig(), new SimpleMeterRegistry());
+
+        assertThrows(IllegalStateException.class, () -> new AzureClientConfig().azureClient(config, metrics));
+    }
+}
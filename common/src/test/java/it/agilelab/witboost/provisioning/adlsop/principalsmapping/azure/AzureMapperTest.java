@@ -8,6 +8,9 @@ import io.vavr.control.Either;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -67,4 +70,26 @@ class AzureMapperTest {
                 "The subject wrong:id is neither a Witboost user nor a group",
                 res.values().iterator().next().getLeft().getMessage());
     }
+
+    @Test
+    void testSubjectsAreLookedUpConcurrently() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        var concurrentMapper = new AzureMapper(client, executor);
+        var barrier = new CyclicBarrier(2);
+        when(client.getUserId("name.surname@email.com")).thenAnswer(invocation -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            return Either.right("user-id");
+        });
+        when(client.getGroupId("dev")).thenAnswer(invocation -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            return Either.right("group-id");
+        });
+
+        Map<String, Either<Throwable, String>> res =
+                concurrentMapper.map(Set.of("user:name.surname_email.com", "group:dev"));
+        executor.shutdown();
+
+        assertEquals(Either.right("user-id"), res.get("user:name.surname_email.com"));
+        assertEquals(Either.right("group-id"), res.get("group:dev"));
+    }
 }
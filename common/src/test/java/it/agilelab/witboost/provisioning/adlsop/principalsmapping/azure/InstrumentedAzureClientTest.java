@@ -0,0 +1,52 @@
+package it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class InstrumentedAzureClientTest {
+
+    @Mock
+    private AzureClient delegate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private InstrumentedAzureClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = new InstrumentedAzureClient(delegate, new AzureCallMetrics(new AzureMetricsConfig(), meterRegistry));
+    }
+
+    private long calls(String operation, String outcome) {
+        return meterRegistry
+                .get("provisioner.azure.calls")
+                .tag("backend", "graph")
+                .tag("operation", operation)
+                .tag("storage_account", "none")
+                .tag("outcome", outcome)
+                .timer()
+                .count();
+    }
+
+    @Test
+    void lookupsAreRecorded() {
+        when(delegate.getUserId("user@example.com")).thenReturn(Either.right("user-id"));
+        when(delegate.getGroupId("group")).thenReturn(Either.left(new Throwable("not found")));
+
+        assertEquals(Either.right("user-id"), client.getUserId("user@example.com"));
+        assertEquals("not found", client.getGroupId("group").getLeft().getMessage());
+
+        assertEquals(1, calls("getUserId", "success"));
+        assertEquals(1, calls("getGroupId", "failure"));
+    }
+}
@@ -0,0 +1,151 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.azure.storage.file.datalake.models.AccessControlChangeCounters;
+import com.azure.storage.file.datalake.models.AccessControlChanges;
+import it.agilelab.witboost.provisioning.adlsop.util.MutableClock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class AclUpdateProgressTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final List<AclUpdateProgress.Snapshot> snapshots = new ArrayList<>();
+    private final AclUpdateProgress progress = new AclUpdateProgress(snapshots::add, clock);
+
+    @Test
+    void startResetsCounters() {
+        progress.start("path", null);
+
+        var snapshot = snapshots.get(0);
+        assertEquals("path", snapshot.path());
+        assertEquals(0, snapshot.processedPaths());
+        assertEquals(0, snapshot.batches());
+        assertNull(snapshot.etaSeconds());
+    }
+
+    @Test
+    void batchesUpdateCountersAndThroughput() {
+        progress.start("path", null);
+        clock.advance(Duration.ofSeconds(10));
+
+        progress.onBatch(counters(10, 90, 5));
+
+        var snapshot = snapshots.get(1);
+        assertEquals(10, snapshot.changedDirectories());
+        assertEquals(90, snapshot.changedFiles());
+        assertEquals(5, snapshot.failedChanges());
+        assertEquals(1, snapshot.batches());
+        assertEquals(10.5, snapshot.pathsPerSecond());
+        assertNull(snapshot.etaSeconds());
+    }
+
+    @Test
+    void observerReceivesThePathsOfEachBatch() {
+        List<Long> paths = new ArrayList<>();
+        progress.observePaths(paths::add);
+        progress.start("path", null);
+
+        progress.onBatch(counters(10, 90, 0));
+        progress.onBatch(counters(20, 130, 5));
+        progress.onCallCompleted();
+        progress.onBatch(counters(0, 40, 0));
+
+        assertEquals(List.of(100L, 55L, 40L), paths);
+    }
+
+    @Test
+    void etaIsEstimatedFromExpectedPaths() {
+        progress.start("path", 400L);
+        clock.advance(Duration.ofSeconds(10));
+
+        progress.onBatch(counters(0, 100, 0));
+
+        assertEquals(30L, snapshots.get(1).etaSeconds());
+    }
+
+    @Test
+    void etaIsUnknownWhenExpectedPathsAreExceeded() {
+        progress.start("path", 50L);
+        clock.advance(Duration.ofSeconds(10));
+
+        progress.onBatch(counters(0, 100, 0));
+
+        assertNull(snapshots.get(1).etaSeconds());
+    }
+
+    @Test
+    void describeReportsCountersAndEta() {
+        var snapshot = new AclUpdateProgress.Snapshot("path", 1, 2, 3, 1, 1.5, null, null);
+
+        assertEquals(
+                "Updating ACLs recursively on path 'path': 1 directories and 2 files updated, 3 failures, 1.5 paths/s, ETA unknown",
+                snapshot.describe());
+    }
+
+    @Test
+    void continuationTokenIsCheckpointedAfterEachBatch() {
+        List<String> checkpoints = new ArrayList<>();
+        var checkpointedProgress = new AclUpdateProgress(
+                new AclUpdateProgress.Listener() {
+                    @Override
+                    public void onProgress(AclUpdateProgress.Snapshot snapshot) {}
+
+                    @Override
+                    public void onCheckpoint(AclUpdateProgress.Snapshot snapshot, String continuationToken) {
+                        checkpoints.add(continuationToken);
+                    }
+                },
+                clock);
+        checkpointedProgress.resumeFrom("previous").start("path", null);
+
+        checkpointedProgress.onBatch(counters(0, 100, 0).setContinuationToken("next"));
+        checkpointedProgress.onBatch(counters(0, 150, 0));
+
+        assertEquals(List.of("next"), checkpoints);
+        assertNull(checkpointedProgress.continuationToken());
+    }
+
+    @Test
+    void countersAreSummedAcrossCalls() {
+        progress.start("path", null);
+        progress.onBatch(counters(1, 10, 0));
+        progress.onBatch(counters(2, 20, 1));
+        progress.onCallCompleted();
+
+        progress.onBatch(counters(1, 5, 0));
+
+        var snapshot = progress.snapshot();
+        assertEquals(3, snapshot.changedDirectories());
+        assertEquals(25, snapshot.changedFiles());
+        assertEquals(1, snapshot.failedChanges());
+        assertEquals(3, snapshot.batches());
+    }
+
+    @Test
+    void cancellationIsRequestedByListener() {
+        assertFalse(progress.isCancellationRequested());
+        var cancelledProgress = new AclUpdateProgress(new AclUpdateProgress.Listener() {
+            @Override
+            public void onProgress(AclUpdateProgress.Snapshot snapshot) {}
+
+            @Override
+            public boolean isCancellationRequested() {
+                return true;
+            }
+        });
+
+        assertTrue(cancelledProgress.isCancellationRequested());
+    }
+
+    private AccessControlChanges counters(long directories, long files, long failures) {
+        return new AccessControlChanges()
+                .setAggregateCounters(new AccessControlChangeCounters()
+                        .setChangedDirectoriesCount(directories)
+                        .setChangedFilesCount(files)
+                        .setFailedChangesCount(failures));
+    }
+}
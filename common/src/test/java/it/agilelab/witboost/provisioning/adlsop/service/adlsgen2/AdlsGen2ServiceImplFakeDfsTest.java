@@ -0,0 +1,224 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.credential.TokenCredential;
+import com.azure.resourcemanager.resourcegraph.ResourceGraphManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.bean.ResourceGraphManagerBean;
+import it.agilelab.witboost.provisioning.adlsop.common.OperationCancelledException;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.config.ResourceGraphConfig;
+import it.agilelab.witboost.provisioning.adlsop.fake.dfs.FakeDfsServer;
+import it.agilelab.witboost.provisioning.adlsop.fake.resourcegraph.FakeResourceGraphServer;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the SDK calls of the service against the fake DFS and Resource Graph services, instead of mocking the SDK
+ * clients
+ */
+class AdlsGen2ServiceImplFakeDfsTest {
+
+    private static final String ACCOUNT = "storageaccount";
+    private static final String CONTAINER = "container";
+    private static final List<String> USERS = List.of("oid1", "oid2");
+
+    private final FakeDfsServer fake = FakeDfsServer.start().createFileSystem(ACCOUNT, CONTAINER);
+    private final FakeResourceGraphServer resourceGraph = FakeResourceGraphServer.start();
+    private final AdlsGen2Config config = new AdlsGen2Config();
+    private final ContainerInventory inventory;
+    private final AdlsGen2ServiceImpl service;
+
+    AdlsGen2ServiceImplFakeDfsTest() {
+        config.setEndpoint(fake.endpoint());
+        config.setLocalEmulator(true);
+        config.getInventory().setEnabled(true);
+        inventory = new ContainerInventory(config.getInventory(), Clock.systemUTC(), false);
+        var resourceGraphConfig = new ResourceGraphConfig();
+        resourceGraphConfig.setEndpoint(resourceGraph.endpoint());
+        resourceGraphConfig.setLocalEmulator(true);
+        var metrics = new AzureCallMetrics(new AzureMetricsConfig(), new SimpleMeterRegistry());
+        var tokenCredential = mock(TokenCredential.class);
+        service = new AdlsGen2ServiceImpl(
+                tokenCredential,
+                new ResourceGraphManagerBean().resourceGraphManager(tokenCredential, metrics, resourceGraphConfig),
+                new ContainerExistenceCache(Duration.ZERO, Clock.systemUTC()),
+                inventory,
+                config,
+                metrics);
+    }
+
+    @AfterEach
+    void close() {
+        fake.close();
+        resourceGraph.close();
+    }
+
+    private String acl(String path) {
+        return fake.acl(ACCOUNT, CONTAINER, path).orElseThrow();
+    }
+
+    @Test
+    void containerExistence() {
+        assertEquals(true, service.containerExists(ACCOUNT, CONTAINER).get());
+        assertEquals(false, service.containerExists(ACCOUNT, "missing").get());
+    }
+
+    @Test
+    void directoriesAreCreatedWithTheStorageAccountOfTheResourceGraph() {
+        var id = resourceGraph.addStorageAccount(ACCOUNT);
+
+        var info = service.createDirectory(ACCOUNT, CONTAINER, "path/to/folder").get();
+
+        assertTrue(fake.exists(ACCOUNT, CONTAINER, "path/to/folder"));
+        assertEquals("https://portal.azure.com/#@/resource" + id + "/storagebrowser", info.getStorageExplorerURI());
+        assertTrue(service.createDirectory(ACCOUNT, "other", "folder").isLeft());
+        assertTrue(service.createDirectory("missing", CONTAINER, "folder").isLeft());
+    }
+
+    @Test
+    void aclsAreUpdatedOnTheParentsAndRecursivelyOnTheDirectory() {
+        long paths = fake.populate(ACCOUNT, CONTAINER, "path/to/folder", 2, 10, 40);
+        var progress = AclUpdateProgress.noop();
+
+        assertTrue(service.updateAcl(ACCOUNT, CONTAINER, "path/to/folder", USERS, progress)
+                .isRight());
+
+        assertEquals("user::rwx,group::r-x,other::---,user:oid1:--x,user:oid2:--x", acl("path/to"));
+        assertEquals(
+                "user:oid1:r-x,default:user:oid1:r-x,user:oid2:r-x,default:user:oid2:r-x,user::rwx,group::r-x,other::r--",
+                acl("path/to/folder/dir-000009"));
+        assertEquals(
+                "user:oid1:r-x,user:oid2:r-x,user::rwx,group::r-x,other::r--",
+                acl("path/to/folder/dir-000009/dir-000009/file-000039"));
+        assertEquals(paths, progress.snapshot().processedPaths());
+        // The default batch size of the service is 2000 paths
+        assertEquals((paths + 1999) / 2000, fake.requests("setAccessControlRecursive"));
+    }
+
+    @Test
+    void cancelledAclUpdatesResumeFromTheirCheckpoint() {
+        long paths = fake.populate(ACCOUNT, CONTAINER, "folder", 2, 10, 40);
+        config.getAclUpdates().setMaxBatchesPerCall(1);
+        var checkpoints = new ArrayList<String>();
+        var cancelled = new AclUpdateProgress(new AclUpdateProgress.Listener() {
+            @Override
+            public void onProgress(AclUpdateProgress.Snapshot snapshot) {}
+
+            @Override
+            public void onCheckpoint(AclUpdateProgress.Snapshot snapshot, String continuationToken) {
+                checkpoints.add(continuationToken);
+            }
+
+            @Override
+            public boolean isCancellationRequested() {
+                return !checkpoints.isEmpty();
+            }
+        });
+
+        assertThrows(
+                OperationCancelledException.class,
+                () -> service.updateAcl(ACCOUNT, CONTAINER, "folder", USERS, cancelled));
+        assertEquals(2000, cancelled.snapshot().processedPaths());
+        assertEquals("user::rwx,group::r-x,other::---", acl("folder/file-000039"));
+
+        var resumed = AclUpdateProgress.noop().resumeFrom(checkpoints.get(checkpoints.size() - 1));
+        assertTrue(
+                service.updateAcl(ACCOUNT, CONTAINER, "folder", USERS, resumed).isRight());
+        assertEquals(paths - 2000, resumed.snapshot().processedPaths());
+        assertEquals("user:oid1:r-x,user:oid2:r-x,user::rwx,group::r-x,other::r--", acl("folder/file-000039"));
+    }
+
+    @Test
+    void deletingWithoutRemovingTheDataResetsTheAcls() {
+        fake.populate(ACCOUNT, CONTAINER, "folder", 1, 2, 2);
+        assertTrue(service.updateAcl(ACCOUNT, CONTAINER, "folder", USERS).isRight());
+
+        assertTrue(service.deleteDirectory(ACCOUNT, CONTAINER, "folder", false).isRight());
+
+        assertEquals("user::rwx,group::r-x,other::r--", acl("folder"));
+        assertEquals("user::rwx,group::r-x,other::r--", acl("folder/dir-000001/file-000001"));
+    }
+
+    @Test
+    void deletingAndRemovingTheDataDeletesTheTree() {
+        fake.populate(ACCOUNT, CONTAINER, "folder", 2, 2, 2);
+
+        assertTrue(service.deleteDirectory(ACCOUNT, CONTAINER, "folder", true).isRight());
+        assertFalse(fake.exists(ACCOUNT, CONTAINER, "folder"));
+
+        // Deleting it again is not an error
+        assertTrue(service.deleteDirectory(ACCOUNT, CONTAINER, "folder", true).isRight());
+    }
+
+    @Test
+    void trashedDirectoriesArePurgedPageByPage() {
+        long paths = fake.populate(ACCOUNT, CONTAINER, "folder", 1, 3, 4);
+
+        var trashPath = service.moveToTrash(ACCOUNT, CONTAINER, "folder").get().orElseThrow();
+        assertFalse(fake.exists(ACCOUNT, CONTAINER, "folder"));
+        assertEquals(paths + 1, fake.size(ACCOUNT, CONTAINER));
+
+        assertEquals(5, service.purgeTrash(ACCOUNT, CONTAINER, trashPath, 5).get());
+        assertEquals(2, service.purgeTrash(ACCOUNT, CONTAINER, trashPath, 5).get());
+        assertEquals(0, service.purgeTrash(ACCOUNT, CONTAINER, trashPath, 5).get());
+        assertEquals(Optional.empty(), fake.acl(ACCOUNT, CONTAINER, trashPath));
+        assertEquals(1, fake.size(ACCOUNT, CONTAINER));
+    }
+
+    @Test
+    void containersAreListed() {
+        fake.createFileSystem(ACCOUNT, "other");
+
+        assertEquals(
+                Set.of(CONTAINER, "other"), service.listContainerNames(ACCOUNT).get());
+    }
+
+    @Test
+    void inventoryIsLoadedThroughTheDecoratedService() {
+        var decorated = mock(AdlsGen2Service.class);
+        when(decorated.listContainerNames(ACCOUNT)).thenReturn(Either.right(Set.of(CONTAINER, "other")));
+        service.listContainersThrough(decorated);
+
+        service.containerExists(ACCOUNT, CONTAINER);
+        inventory.refreshAll();
+
+        verify(decorated).listContainerNames(ACCOUNT);
+        assertTrue(inventory.contains(ACCOUNT, "other"));
+    }
+
+    @Test
+    void httpEndpointsRequireLocalEmulator() {
+        var insecure = new AdlsGen2Config();
+        insecure.setEndpoint(fake.endpoint());
+        var resourceGraphConfig = new ResourceGraphConfig();
+        resourceGraphConfig.setEndpoint(resourceGraph.endpoint());
+        var metrics = new AzureCallMetrics(new AzureMetricsConfig(), new SimpleMeterRegistry());
+        var tokenCredential = mock(TokenCredential.class);
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> new AdlsGen2ServiceImpl(
+                        tokenCredential,
+                        mock(ResourceGraphManager.class),
+                        new ContainerExistenceCache(Duration.ZERO, Clock.systemUTC()),
+                        new ContainerInventory(insecure.getInventory(), Clock.systemUTC(), false),
+                        insecure,
+                        metrics));
+        assertThrows(IllegalStateException.class, () -> new ResourceGraphManagerBean()
+                .resourceGraphManager(tokenCredential, metrics, resourceGraphConfig));
+    }
+}
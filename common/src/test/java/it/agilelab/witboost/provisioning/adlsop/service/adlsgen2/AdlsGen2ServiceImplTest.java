@@ -5,6 +5,10 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import com.azure.core.credential.TokenCredential;
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.core.http.rest.SimpleResponse;
+import com.azure.core.util.IterableStream;
 import com.azure.resourcemanager.resourcegraph.ResourceGraphManager;
 import com.azure.resourcemanager.resourcegraph.models.QueryRequest;
 import com.azure.resourcemanager.resourcegraph.models.QueryResponse;
@@ -13,14 +17,27 @@ import com.azure.storage.file.datalake.DataLakeDirectoryClient;
 import com.azure.storage.file.datalake.DataLakeFileSystemClient;
 import com.azure.storage.file.datalake.DataLakeServiceClient;
 import com.azure.storage.file.datalake.models.*;
+import com.azure.storage.file.datalake.options.PathSetAccessControlRecursiveOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.common.OperationCancelledException;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -36,6 +53,20 @@ class AdlsGen2ServiceImplTest {
     @Mock
     ResourceGraphManager resourceGraphManager;
 
+    @Spy
+    ContainerExistenceCache containerExistenceCache =
+            new ContainerExistenceCache(Duration.ofSeconds(30), Clock.systemUTC());
+
+    @Spy
+    ContainerInventory containerInventory =
+            new ContainerInventory(new AdlsGen2Config.Inventory(), Clock.systemUTC(), false);
+
+    @Spy
+    AdlsGen2Config adlsGen2Config = new AdlsGen2Config();
+
+    @Spy
+    AzureCallMetrics azureCallMetrics = new AzureCallMetrics(new AzureMetricsConfig(), new SimpleMeterRegistry());
+
     @InjectMocks
     @Spy
     AdlsGen2ServiceImpl adlsGen2Service;
@@ -93,6 +124,58 @@ class AdlsGen2ServiceImplTest {
         });
     }
 
+    @Test
+    void containerExistsIsCachedAfterConfirmation() {
+
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.exists()).thenReturn(true);
+
+        var first = adlsGen2Service.containerExists("storage-account", "container");
+        var second = adlsGen2Service.containerExists("storage-account", "container");
+
+        assertEquals(right(true), first);
+        assertEquals(right(true), second);
+        verify(dataLakeFileSystemClient, times(1)).exists();
+    }
+
+    @Test
+    void containerExistsDoesntCacheMissingContainer() {
+
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.exists()).thenReturn(false, true);
+
+        assertEquals(right(false), adlsGen2Service.containerExists("storage-account", "container"));
+        assertEquals(right(true), adlsGen2Service.containerExists("storage-account", "container"));
+        verify(dataLakeFileSystemClient, times(2)).exists();
+    }
+
+    @Test
+    void createDirectoryContainerNotFoundInvalidatesCache() {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        DataLakeStorageException error = Mockito.mock(DataLakeStorageException.class);
+        containerExistenceCache.confirm("storage-account", "container");
+
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.createDirectoryIfNotExists("path/to/folder"))
+                .thenThrow(error);
+        when(error.getErrorCode()).thenReturn("FilesystemNotFound");
+
+        var actualResult = adlsGen2Service.createDirectory("storage-account", "container", "path/to/folder");
+
+        assertTrue(actualResult.isLeft());
+        assertFalse(containerExistenceCache.isConfirmed("storage-account", "container"));
+    }
+
     @Test
     void getStorageBrowserOk() {
         String fullId =
@@ -244,29 +327,17 @@ class AdlsGen2ServiceImplTest {
     void deleteDirectoryRemoveDataReturnsOk() {
         DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
         DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
-        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
-
-        AccessControlChangeResult accessControlChangeResult = new AccessControlChangeResult();
-        accessControlChangeResult.setCounters(new AccessControlChangeCounters().setFailedChangesCount(0));
-
-        PathAccessControl pathAccessControl = new PathAccessControl(null, null, "group", "owner");
 
         when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
         when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
-        when(dataLakeFileSystemClient.getDirectoryClient("path/to/folder")).thenReturn(directoryClient);
 
-        when(directoryClient.getAccessControl()).thenReturn(pathAccessControl);
-        when(directoryClient.setAccessControlList(
-                        AccessControlUtils.getDefaultAccessControlEntries(), "group", "owner"))
-                .thenReturn(new PathInfo(null, null));
-        when(directoryClient.setAccessControlRecursive(AccessControlUtils.getDefaultAccessControlEntries()))
-                .thenReturn(accessControlChangeResult);
         when(dataLakeFileSystemClient.deleteDirectoryWithResponse("path/to/folder", true, null, null, null))
                 .thenReturn(null);
 
         var actualResult = adlsGen2Service.deleteDirectory("storage-account", "container", "path/to/folder", true);
 
         assertEquals(right(null), actualResult);
+        verify(dataLakeFileSystemClient, never()).getDirectoryClient(any());
     }
 
     @Test
@@ -274,23 +345,10 @@ class AdlsGen2ServiceImplTest {
         DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
         DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
         DataLakeStorageException error = Mockito.mock(DataLakeStorageException.class);
-        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
-
-        AccessControlChangeResult accessControlChangeResult = new AccessControlChangeResult();
-        accessControlChangeResult.setCounters(new AccessControlChangeCounters().setFailedChangesCount(0));
-
-        PathAccessControl pathAccessControl = new PathAccessControl(null, null, "group", "owner");
 
         when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
         when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
-        when(dataLakeFileSystemClient.getDirectoryClient("path/to/folder")).thenReturn(directoryClient);
 
-        when(directoryClient.getAccessControl()).thenReturn(pathAccessControl);
-        when(directoryClient.setAccessControlList(
-                        AccessControlUtils.getDefaultAccessControlEntries(), "group", "owner"))
-                .thenReturn(new PathInfo(null, null));
-        when(directoryClient.setAccessControlRecursive(AccessControlUtils.getDefaultAccessControlEntries()))
-                .thenReturn(accessControlChangeResult);
         when(dataLakeFileSystemClient.deleteDirectoryWithResponse("path/to/folder", true, null, null, null))
                 .thenThrow(error);
         when(error.getErrorCode()).thenReturn("PathNotFound");
@@ -326,7 +384,7 @@ class AdlsGen2ServiceImplTest {
                 .thenReturn(accessControlChangeResult);
         verify(dataLakeFileSystemClient, never()).deleteDirectoryWithResponse("path/to/folder", true, null, null, null);
 
-        var actualResult = adlsGen2Service.deleteDirectory("storage-account", "container", "path/to/folder", true);
+        var actualResult = adlsGen2Service.deleteDirectory("storage-account", "container", "path/to/folder", false);
 
         var expectedDesc = List.of("Error 1", "Error 2");
 
@@ -344,23 +402,10 @@ class AdlsGen2ServiceImplTest {
         DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
         DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
         DataLakeStorageException error = Mockito.mock(DataLakeStorageException.class);
-        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
-
-        AccessControlChangeResult accessControlChangeResult = new AccessControlChangeResult();
-        accessControlChangeResult.setCounters(new AccessControlChangeCounters().setFailedChangesCount(0));
-
-        PathAccessControl pathAccessControl = new PathAccessControl(null, null, "group", "owner");
 
         when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
         when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
-        when(dataLakeFileSystemClient.getDirectoryClient("path/to/folder")).thenReturn(directoryClient);
 
-        when(directoryClient.getAccessControl()).thenReturn(pathAccessControl);
-        when(directoryClient.setAccessControlList(
-                        AccessControlUtils.getDefaultAccessControlEntries(), "group", "owner"))
-                .thenReturn(new PathInfo(null, null));
-        when(directoryClient.setAccessControlRecursive(AccessControlUtils.getDefaultAccessControlEntries()))
-                .thenReturn(accessControlChangeResult);
         when(dataLakeFileSystemClient.deleteDirectoryWithResponse("path/to/folder", true, null, null, null))
                 .thenThrow(error);
         when(error.getErrorCode()).thenReturn("AuthorizationFailed");
@@ -383,23 +428,10 @@ class AdlsGen2ServiceImplTest {
     void deleteDirectoryRemoveDataReturnsGenericException() {
         DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
         DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
-        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
-
-        AccessControlChangeResult accessControlChangeResult = new AccessControlChangeResult();
-        accessControlChangeResult.setCounters(new AccessControlChangeCounters().setFailedChangesCount(0));
-
-        PathAccessControl pathAccessControl = new PathAccessControl(null, null, "group", "owner");
 
         when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
         when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
-        when(dataLakeFileSystemClient.getDirectoryClient("path/to/folder")).thenReturn(directoryClient);
 
-        when(directoryClient.getAccessControl()).thenReturn(pathAccessControl);
-        when(directoryClient.setAccessControlList(
-                        AccessControlUtils.getDefaultAccessControlEntries(), "group", "owner"))
-                .thenReturn(new PathInfo(null, null));
-        when(directoryClient.setAccessControlRecursive(AccessControlUtils.getDefaultAccessControlEntries()))
-                .thenReturn(accessControlChangeResult);
         when(dataLakeFileSystemClient.deleteDirectoryWithResponse("path/to/folder", true, null, null, null))
                 .thenThrow(new RuntimeException("Error!"));
 
@@ -460,7 +492,9 @@ class AdlsGen2ServiceImplTest {
         AccessControlChangeResult accessControlChangeResult = new AccessControlChangeResult();
         accessControlChangeResult.setCounters(new AccessControlChangeCounters().setFailedChangesCount(0));
 
-        when(childDirectoryClient.setAccessControlRecursive(childEntries)).thenReturn(accessControlChangeResult);
+        when(childDirectoryClient.setAccessControlRecursiveWithResponse(
+                        argThat(options -> options.getAccessControlList().equals(childEntries)), isNull(), isNull()))
+                .thenReturn(new SimpleResponse<>(null, 200, null, accessControlChangeResult));
 
         var actual = adlsGen2Service.updateAcl("storage-account", "container", "parentFolder/childFolder", users);
 
@@ -514,7 +548,9 @@ class AdlsGen2ServiceImplTest {
                 .setCounters(new AccessControlChangeCounters().setFailedChangesCount(1))
                 .setBatchFailures(List.of(new AccessControlChangeFailure().setErrorMessage(expectedDesc)));
 
-        when(childDirectoryClient.setAccessControlRecursive(childEntries)).thenReturn(accessControlChangeResult);
+        when(childDirectoryClient.setAccessControlRecursiveWithResponse(
+                        argThat(options -> options.getAccessControlList().equals(childEntries)), isNull(), isNull()))
+                .thenReturn(new SimpleResponse<>(null, 200, null, accessControlChangeResult));
 
         var actualResult = adlsGen2Service.updateAcl("storage-account", "container", "parentFolder/childFolder", users);
 
@@ -526,6 +562,259 @@ class AdlsGen2ServiceImplTest {
         });
     }
 
+    @Test
+    void updateAclReportsRecursiveProgress() {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        DataLakeDirectoryClient rootDirectoryClient = Mockito.mock(DataLakeDirectoryClient.class);
+        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
+
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getAccountName()).thenReturn("storage-account");
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.getDirectoryClient("")).thenReturn(rootDirectoryClient);
+        when(dataLakeFileSystemClient.getDirectoryClient("folder")).thenReturn(directoryClient);
+        when(rootDirectoryClient.getAccessControl())
+                .thenReturn(new PathAccessControl(new ArrayList<>(), null, "group", "owner"));
+
+        var aggregateCounters = new AccessControlChangeCounters()
+                .setChangedDirectoriesCount(2)
+                .setChangedFilesCount(8)
+                .setFailedChangesCount(0);
+        when(directoryClient.setAccessControlRecursiveWithResponse(
+                        any(PathSetAccessControlRecursiveOptions.class), isNull(), isNull()))
+                .thenAnswer(invocation -> {
+                    PathSetAccessControlRecursiveOptions options = invocation.getArgument(0);
+                    options.getProgressHandler()
+                            .accept(new SimpleResponse<>(
+                                    null,
+                                    200,
+                                    null,
+                                    new AccessControlChanges().setAggregateCounters(aggregateCounters)));
+                    return new SimpleResponse<>(
+                            null, 200, null, new AccessControlChangeResult().setCounters(aggregateCounters));
+                });
+
+        List<AclUpdateProgress.Snapshot> snapshots = new ArrayList<>();
+        var first = adlsGen2Service.updateAcl(
+                "storage-account", "container", "folder", List.of("1234-abcd"), new AclUpdateProgress(snapshots::add));
+        var second = adlsGen2Service.updateAcl(
+                "storage-account", "container", "folder", List.of("1234-abcd"), new AclUpdateProgress(snapshots::add));
+
+        assertTrue(first.isRight());
+        assertTrue(second.isRight());
+        assertEquals(4, snapshots.size());
+        assertNull(snapshots.get(0).expectedPaths());
+        assertEquals(2, snapshots.get(1).changedDirectories());
+        assertEquals(8, snapshots.get(1).changedFiles());
+        assertEquals(1, snapshots.get(1).batches());
+        // The second update of the same directory knows how many paths to expect
+        assertEquals(10L, snapshots.get(2).expectedPaths());
+    }
+
+    @Test
+    void updateAclProcessesTreeInSeveralCalls() {
+        var directoryClient = mockRecursiveAclUpdate();
+        var firstCall = new AccessControlChangeResult()
+                .setCounters(new AccessControlChangeCounters().setChangedFilesCount(10))
+                .setContinuationToken("next");
+        var secondCall =
+                new AccessControlChangeResult().setCounters(new AccessControlChangeCounters().setChangedFilesCount(5));
+        when(directoryClient.setAccessControlRecursiveWithResponse(
+                        any(PathSetAccessControlRecursiveOptions.class), isNull(), isNull()))
+                .thenReturn(new SimpleResponse<>(null, 200, null, firstCall))
+                .thenReturn(new SimpleResponse<>(null, 200, null, secondCall));
+
+        var actual = adlsGen2Service.updateAcl("storage-account", "container", "folder", List.of("1234-abcd"));
+
+        assertTrue(actual.isRight());
+        var options = ArgumentCaptor.forClass(PathSetAccessControlRecursiveOptions.class);
+        verify(directoryClient, times(2)).setAccessControlRecursiveWithResponse(options.capture(), isNull(), isNull());
+        assertNull(options.getAllValues().get(0).getContinuationToken());
+        assertEquals("next", options.getAllValues().get(1).getContinuationToken());
+        assertEquals(10, options.getAllValues().get(0).getMaxBatches());
+    }
+
+    @Test
+    void updateAclStopsBetweenCallsWhenCancelled() {
+        var directoryClient = mockRecursiveAclUpdate();
+        var cancelled = new AtomicBoolean();
+        when(directoryClient.setAccessControlRecursiveWithResponse(
+                        any(PathSetAccessControlRecursiveOptions.class), isNull(), isNull()))
+                .thenAnswer(invocation -> {
+                    cancelled.set(true);
+                    return new SimpleResponse<>(
+                            null,
+                            200,
+                            null,
+                            new AccessControlChangeResult()
+                                    .setCounters(new AccessControlChangeCounters().setChangedFilesCount(10))
+                                    .setContinuationToken("next"));
+                });
+        var progress = new AclUpdateProgress(new AclUpdateProgress.Listener() {
+            @Override
+            public void onProgress(AclUpdateProgress.Snapshot snapshot) {}
+
+            @Override
+            public boolean isCancellationRequested() {
+                return cancelled.get();
+            }
+        });
+
+        var ex = assertThrows(
+                OperationCancelledException.class,
+                () -> adlsGen2Service.updateAcl(
+                        "storage-account", "container", "folder", List.of("1234-abcd"), progress));
+
+        assertTrue(ex.getMessage().startsWith("The recursive ACL update on path 'folder' was cancelled"));
+        verify(directoryClient, times(1))
+                .setAccessControlRecursiveWithResponse(
+                        any(PathSetAccessControlRecursiveOptions.class), isNull(), isNull());
+    }
+
+    @Test
+    void moveToTrashRenamesDirectory() {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.getDirectoryClient("path/to/folder")).thenReturn(directoryClient);
+
+        var actualResult = adlsGen2Service.moveToTrash("storage-account", "container", "path/to/folder");
+
+        assertTrue(actualResult.isRight());
+        var trashPath = actualResult.get().orElseThrow();
+        assertTrue(trashPath.startsWith(".trash/path_to_folder-"));
+        verify(dataLakeFileSystemClient).createDirectoryIfNotExists(".trash");
+        verify(directoryClient).rename(null, trashPath);
+    }
+
+    @Test
+    void moveToTrashInexistentDirectoryReturnsEmpty() {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
+        DataLakeStorageException error = Mockito.mock(DataLakeStorageException.class);
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.getDirectoryClient("path/to/folder")).thenReturn(directoryClient);
+        when(directoryClient.rename(any(), any())).thenThrow(error);
+        when(error.getErrorCode()).thenReturn("PathNotFound");
+
+        var actualResult = adlsGen2Service.moveToTrash("storage-account", "container", "path/to/folder");
+
+        assertEquals(right(Optional.empty()), actualResult);
+    }
+
+    @Test
+    void purgeTrashRemovesPageOfChildren() {
+        var dataLakeFileSystemClient = mockTrashListing(List.of(
+                new PathItem(null, null, 0, null, true, ".trash/dir/sub", null, null),
+                new PathItem(null, null, 0, null, false, ".trash/dir/file", null, null)));
+
+        var actualResult = adlsGen2Service.purgeTrash("storage-account", "container", ".trash/dir", 2);
+
+        assertEquals(right(2), actualResult);
+        verify(dataLakeFileSystemClient).deleteDirectoryWithResponse(".trash/dir/sub", true, null, null, null);
+        verify(dataLakeFileSystemClient).deleteFileWithResponse(".trash/dir/file", null, null, null);
+        verify(dataLakeFileSystemClient, never()).deleteDirectoryIfExists(any());
+    }
+
+    @Test
+    void purgeTrashRemovesEmptiedDirectory() {
+        var dataLakeFileSystemClient = mockTrashListing(List.of());
+
+        var actualResult = adlsGen2Service.purgeTrash("storage-account", "container", ".trash/dir", 2);
+
+        assertEquals(right(0), actualResult);
+        verify(dataLakeFileSystemClient).deleteDirectoryIfExists(".trash/dir");
+    }
+
+    @Test
+    void purgeTrashReturnsError() {
+        var dataLakeFileSystemClient =
+                mockTrashListing(List.of(new PathItem(null, null, 0, null, false, ".trash/dir/file", null, null)));
+        when(dataLakeFileSystemClient.deleteFileWithResponse(".trash/dir/file", null, null, null))
+                .thenThrow(new RuntimeException("Error!"));
+
+        var actualResult = adlsGen2Service.purgeTrash("storage-account", "container", ".trash/dir", 2);
+
+        assertTrue(actualResult.isLeft());
+        assertEquals(
+                "Error while removing '.trash/dir' from the trash on container 'container' in storage account 'storage-account'. Please try again and if the issue persists contact the platform team. Details: Error!",
+                actualResult.getLeft().problems().get(0).description());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void listTrashReturnsDirectories() {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        PagedIterable<PathItem> listing = Mockito.mock(PagedIterable.class);
+        var lastModified = OffsetDateTime.parse("2024-01-01T00:00:00Z");
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.listPaths(any(ListPathsOptions.class), isNull()))
+                .thenReturn(listing);
+        when(listing.iterator())
+                .thenReturn(List.of(
+                                new PathItem(null, lastModified, 0, null, true, ".trash/dir", null, null),
+                                new PathItem(null, lastModified, 0, null, false, ".trash/file", null, null))
+                        .iterator());
+
+        var actualResult = adlsGen2Service.listTrash("storage-account", "container");
+
+        assertEquals(right(Map.of(".trash/dir", lastModified)), actualResult);
+    }
+
+    @Test
+    void listTrashWithoutTrashDirectoryReturnsEmpty() {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        DataLakeStorageException error = Mockito.mock(DataLakeStorageException.class);
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.listPaths(any(ListPathsOptions.class), isNull()))
+                .thenThrow(error);
+        when(error.getErrorCode()).thenReturn("PathNotFound");
+
+        assertEquals(right(Map.of()), adlsGen2Service.listTrash("storage-account", "container"));
+    }
+
+    /** Mocks a listing of the direct children of the trash directory returning a single page */
+    @SuppressWarnings("unchecked")
+    private DataLakeFileSystemClient mockTrashListing(List<PathItem> children) {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        PagedIterable<PathItem> listing = Mockito.mock(PagedIterable.class);
+        PagedResponse<PathItem> page = Mockito.mock(PagedResponse.class);
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.listPaths(any(ListPathsOptions.class), isNull()))
+                .thenReturn(listing);
+        when(listing.iterableByPage()).thenReturn(IterableStream.of(List.of(page)));
+        when(page.getValue()).thenReturn(children);
+        return dataLakeFileSystemClient;
+    }
+
+    /** Mocks the clients of a recursive ACL update on the "folder" directory, returning the directory client */
+    private DataLakeDirectoryClient mockRecursiveAclUpdate() {
+        DataLakeServiceClient dataLakeServiceClient = Mockito.mock(DataLakeServiceClient.class);
+        DataLakeFileSystemClient dataLakeFileSystemClient = Mockito.mock(DataLakeFileSystemClient.class);
+        DataLakeDirectoryClient rootDirectoryClient = Mockito.mock(DataLakeDirectoryClient.class);
+        DataLakeDirectoryClient directoryClient = Mockito.mock(DataLakeDirectoryClient.class);
+
+        when(adlsGen2Service.getDataLakeServiceClient("storage-account")).thenReturn(dataLakeServiceClient);
+        when(dataLakeServiceClient.getAccountName()).thenReturn("storage-account");
+        when(dataLakeServiceClient.getFileSystemClient("container")).thenReturn(dataLakeFileSystemClient);
+        when(dataLakeFileSystemClient.getDirectoryClient("")).thenReturn(rootDirectoryClient);
+        when(dataLakeFileSystemClient.getDirectoryClient("folder")).thenReturn(directoryClient);
+        when(rootDirectoryClient.getAccessControl())
+                .thenReturn(new PathAccessControl(new ArrayList<>(), null, "group", "owner"));
+        return directoryClient;
+    }
+
     // Azure SDK doesn't perform any actual operations against the Azure env when creating the clients, so this is still
     // part of unit-test
     @Test
@@ -0,0 +1,226 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsRequestScheduler.Lane;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+class AdlsRequestSchedulerTest {
+
+    private AdlsGen2Config.Scheduler config() {
+        var config = new AdlsGen2Config.Scheduler();
+        config.setMaxWait(Duration.ofSeconds(10));
+        config.setOperationsPerSecond(1000);
+        config.setBurst(1000);
+        return config;
+    }
+
+    private AdlsRequestScheduler scheduler(AdlsGen2Config.Scheduler config) {
+        return new AdlsRequestScheduler(config, System::nanoTime);
+    }
+
+    private Thread runAsync(AdlsRequestScheduler scheduler, String account, Lane lane, Runnable operation) {
+        var thread = new Thread(() -> {
+            try {
+                scheduler.execute(account, lane, () -> {
+                    operation.run();
+                    return null;
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void awaitQueued(AdlsRequestScheduler scheduler, Lane lane, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.queued(lane) != expected) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Operations were not queued");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void operationIsRunImmediatelyWhenIdle() throws Exception {
+        var scheduler = scheduler(config());
+
+        assertEquals("result", scheduler.execute("account", Lane.LIGHT, () -> "result"));
+        assertEquals(0, scheduler.queued(Lane.LIGHT));
+    }
+
+    @Test
+    void operationIsRunDirectlyWhenDisabled() throws Exception {
+        var config = config();
+        config.setEnabled(false);
+        config.setBurst(0);
+        var scheduler = scheduler(config);
+
+        assertEquals("result", scheduler.execute("account", Lane.HEAVY, () -> "result"));
+    }
+
+    @Test
+    void concurrencyIsLimitedPerAccount() throws Exception {
+        var config = config();
+        config.getHeavy().setMaxConcurrencyPerAccount(1);
+        var scheduler = scheduler(config);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        var first = runAsync(scheduler, "account", Lane.HEAVY, () -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        var second = runAsync(scheduler, "account", Lane.HEAVY, () -> {});
+        awaitQueued(scheduler, Lane.HEAVY, 1);
+
+        assertEquals("other", scheduler.execute("other-account", Lane.HEAVY, () -> "other"));
+
+        release.countDown();
+        first.join(5000);
+        second.join(5000);
+        assertEquals(0, scheduler.queued(Lane.HEAVY));
+    }
+
+    @Test
+    void lightOperationsAreNotBlockedByHeavyOnes() throws Exception {
+        var config = config();
+        config.getHeavy().setMaxConcurrency(1);
+        var scheduler = scheduler(config);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        var heavy = runAsync(scheduler, "account", Lane.HEAVY, () -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        var queuedHeavy = runAsync(scheduler, "account", Lane.HEAVY, () -> {});
+        awaitQueued(scheduler, Lane.HEAVY, 1);
+
+        assertEquals("light", scheduler.execute("account", Lane.LIGHT, () -> "light"));
+
+        release.countDown();
+        heavy.join(5000);
+        queuedHeavy.join(5000);
+    }
+
+    @Test
+    void accountsAreServedFairly() throws Exception {
+        var config = config();
+        config.getHeavy().setMaxConcurrency(1);
+        var scheduler = scheduler(config);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        var blocker = runAsync(scheduler, "blocker", Lane.HEAVY, () -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            int n = i;
+            threads.add(runAsync(scheduler, "busy", Lane.HEAVY, () -> order.add("busy-" + n)));
+            awaitQueued(scheduler, Lane.HEAVY, i + 1);
+        }
+        threads.add(runAsync(scheduler, "quiet", Lane.HEAVY, () -> order.add("quiet")));
+        awaitQueued(scheduler, Lane.HEAVY, 4);
+
+        release.countDown();
+        blocker.join(5000);
+        for (var thread : threads) thread.join(5000);
+
+        assertEquals(List.of("busy-0", "quiet", "busy-1", "busy-2"), order);
+    }
+
+    @Test
+    void operationTimesOutWhenRateLimited() {
+        var config = config();
+        config.setBurst(1);
+        config.setOperationsPerSecond(0.001);
+        config.setMaxWait(Duration.ofMillis(50));
+        var scheduler = scheduler(config);
+
+        assertThrows(TimeoutException.class, () -> {
+            scheduler.execute("account", Lane.LIGHT, () -> null);
+            scheduler.execute("account", Lane.LIGHT, () -> null);
+        });
+        assertEquals(0, scheduler.queued(Lane.LIGHT));
+    }
+
+    @Test
+    void rateLimitedOperationStartsWhenTokenIsAvailable() throws Exception {
+        var config = config();
+        config.setBurst(1);
+        config.setOperationsPerSecond(20);
+        var scheduler = scheduler(config);
+
+        long start = System.nanoTime();
+        scheduler.execute("account", Lane.LIGHT, () -> null);
+        scheduler.execute("account", Lane.LIGHT, () -> null);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    void operationBlockedByConcurrencyThenRateStartsWhenTokenIsAvailable() throws Exception {
+        var config = config();
+        config.setBurst(1);
+        config.setOperationsPerSecond(20);
+        config.setMaxWait(Duration.ofSeconds(30));
+        config.getHeavy().setMaxConcurrencyPerAccount(1);
+        var scheduler = scheduler(config);
+        var release = new CountDownLatch(1);
+        var started = new CountDownLatch(1);
+        var first = runAsync(scheduler, "account", Lane.HEAVY, () -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        var completed = new CountDownLatch(1);
+        runAsync(scheduler, "account", Lane.HEAVY, completed::countDown);
+        awaitQueued(scheduler, Lane.HEAVY, 1);
+
+        // Released before the next token, so the waiter is then blocked by the rate limit
+        release.countDown();
+        first.join(5000);
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void slotIsReleasedWhenOperationFails() throws Exception {
+        var config = config();
+        config.getLight().setMaxConcurrencyPerAccount(1);
+        var scheduler = scheduler(config);
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> scheduler.execute("account", Lane.LIGHT, () -> {
+                    throw new IllegalStateException("failure");
+                }));
+
+        assertEquals("result", scheduler.execute("account", Lane.LIGHT, () -> "result"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
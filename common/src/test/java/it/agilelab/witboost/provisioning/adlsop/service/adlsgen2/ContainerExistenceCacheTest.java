@@ -0,0 +1,80 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.util.MutableClock;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class ContainerExistenceCacheTest {
+
+    @Test
+    void confirmedContainerExpiresAfterTtl() {
+        var clock = new MutableClock();
+        var cache = new ContainerExistenceCache(Duration.ofSeconds(30), clock);
+
+        cache.confirm("account", "container");
+        assertTrue(cache.isConfirmed("account", "container"));
+        assertFalse(cache.isConfirmed("account", "other-container"));
+        assertFalse(cache.isConfirmed("other-account", "container"));
+
+        clock.advance(Duration.ofSeconds(30));
+        assertFalse(cache.isConfirmed("account", "container"));
+    }
+
+    @Test
+    void invalidateRemovesConfirmation() {
+        var cache = new ContainerExistenceCache(Duration.ofSeconds(30), new MutableClock());
+
+        cache.confirm("account", "container");
+        cache.invalidate("account", "container");
+
+        assertFalse(cache.isConfirmed("account", "container"));
+    }
+
+    @Test
+    void lookupsAreCounted() {
+        var cache = new ContainerExistenceCache(Duration.ofSeconds(30), new MutableClock());
+        var meterRegistry = new SimpleMeterRegistry();
+        cache.bindTo(meterRegistry);
+
+        cache.confirm("account", "container");
+        cache.isConfirmed("account", "container");
+        cache.isConfirmed("account", "container");
+        cache.isConfirmed("account", "other-container");
+
+        assertEquals(2, gets(meterRegistry, "hit"));
+        assertEquals(1, gets(meterRegistry, "miss"));
+        assertEquals(
+                1,
+                meterRegistry
+                        .get("cache.size")
+                        .tag("cache", "containerExistence")
+                        .gauge()
+                        .value());
+    }
+
+    private double gets(SimpleMeterRegistry meterRegistry, String result) {
+        return meterRegistry
+                .get("cache.gets")
+                .tag("cache", "containerExistence")
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+
+    @Test
+    void zeroTtlDisablesCache() {
+        var config = new AdlsGen2Config();
+        config.setContainerExistsCacheTtl(Duration.ZERO);
+        var cache = new ContainerExistenceCache(config);
+
+        cache.confirm("account", "container");
+
+        assertFalse(cache.isConfirmed("account", "container"));
+    }
+}
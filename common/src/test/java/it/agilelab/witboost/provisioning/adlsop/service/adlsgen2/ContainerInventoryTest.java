@@ -0,0 +1,158 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.util.MutableClock;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class ContainerInventoryTest {
+
+    private AdlsGen2Config.Inventory enabledConfig() {
+        var config = new AdlsGen2Config.Inventory();
+        config.setEnabled(true);
+        config.setIdleTimeout(Duration.ofMinutes(30));
+        return config;
+    }
+
+    @Test
+    void containerIsFoundAfterRefresh() {
+        var inventory = new ContainerInventory(enabledConfig(), Clock.systemUTC(), false);
+
+        inventory.track("account", () -> Set.of("container", "other-container"));
+        assertFalse(inventory.contains("account", "container"));
+
+        inventory.refreshAll();
+
+        assertTrue(inventory.contains("account", "container"));
+        assertTrue(inventory.contains("account", "other-container"));
+        assertFalse(inventory.contains("account", "missing-container"));
+        assertFalse(inventory.contains("other-account", "container"));
+    }
+
+    @Test
+    void lookupsAreCounted() {
+        var inventory = new ContainerInventory(enabledConfig(), Clock.systemUTC(), false);
+        var meterRegistry = new SimpleMeterRegistry();
+        inventory.bindTo(meterRegistry);
+
+        inventory.track("account", () -> Set.of("container"));
+        inventory.refreshAll();
+        inventory.contains("account", "container");
+        inventory.contains("account", "missing-container");
+        inventory.contains("other-account", "container");
+
+        assertEquals(1, gets(meterRegistry, "hit"));
+        assertEquals(2, gets(meterRegistry, "miss"));
+        assertEquals(
+                1,
+                meterRegistry
+                        .get("cache.size")
+                        .tag("cache", "containerInventory")
+                        .gauge()
+                        .value());
+    }
+
+    private double gets(SimpleMeterRegistry meterRegistry, String result) {
+        return meterRegistry
+                .get("cache.gets")
+                .tag("cache", "containerInventory")
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+
+    @Test
+    void refreshPicksUpNewContainers() {
+        var inventory = new ContainerInventory(enabledConfig(), Clock.systemUTC(), false);
+        AtomicReference<Set<String>> containers = new AtomicReference<>(Set.of("container"));
+
+        inventory.track("account", containers::get);
+        inventory.refreshAll();
+        assertFalse(inventory.contains("account", "new-container"));
+
+        containers.set(Set.of("container", "new-container"));
+        inventory.refreshAll();
+        assertTrue(inventory.contains("account", "new-container"));
+    }
+
+    @Test
+    void failedRefreshKeepsPreviousSnapshot() {
+        var inventory = new ContainerInventory(enabledConfig(), Clock.systemUTC(), false);
+        AtomicInteger calls = new AtomicInteger();
+
+        inventory.track("account", () -> {
+            if (calls.getAndIncrement() > 0) throw new RuntimeException("Error!");
+            return Set.of("container");
+        });
+        inventory.refreshAll();
+        inventory.refreshAll();
+
+        assertTrue(inventory.contains("account", "container"));
+    }
+
+    @Test
+    void removeDropsContainerFromSnapshot() {
+        var inventory = new ContainerInventory(enabledConfig(), Clock.systemUTC(), false);
+
+        inventory.track("account", () -> Set.of("container"));
+        inventory.refreshAll();
+        inventory.remove("account", "container");
+
+        assertFalse(inventory.contains("account", "container"));
+    }
+
+    @Test
+    void removeDuringRefreshIsNotUndone() {
+        var inventory = new ContainerInventory(enabledConfig(), Clock.systemUTC(), false);
+        var removeWhileListing = new AtomicReference<Runnable>(() -> {});
+
+        inventory.track("account", () -> {
+            removeWhileListing.get().run();
+            return Set.of("container", "other");
+        });
+        inventory.refreshAll();
+        removeWhileListing.set(() -> inventory.remove("account", "container"));
+        inventory.refreshAll();
+
+        assertFalse(inventory.contains("account", "container"));
+        assertTrue(inventory.contains("account", "other"));
+    }
+
+    @Test
+    void idleAccountsAreEvicted() {
+        var clock = new MutableClock();
+        var inventory = new ContainerInventory(enabledConfig(), clock, false);
+        AtomicInteger loads = new AtomicInteger();
+        inventory.track("account", () -> {
+            loads.incrementAndGet();
+            return Set.of("container");
+        });
+        inventory.refreshAll();
+        assertTrue(inventory.contains("account", "container"));
+
+        clock.advance(Duration.ofMinutes(31));
+        inventory.refreshAll();
+
+        assertFalse(inventory.contains("account", "container"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void disabledInventoryNeverTracks() {
+        var inventory = new ContainerInventory(new AdlsGen2Config.Inventory(), Clock.systemUTC(), false);
+
+        inventory.track("account", () -> Set.of("container"));
+        inventory.refreshAll();
+
+        assertFalse(inventory.contains("account", "container"));
+    }
+}
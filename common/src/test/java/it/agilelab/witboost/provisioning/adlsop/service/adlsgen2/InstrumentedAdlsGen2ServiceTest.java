@@ -0,0 +1,92 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import com.azure.storage.file.datalake.models.AccessControlChangeCounters;
+import com.azure.storage.file.datalake.models.AccessControlChanges;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class InstrumentedAdlsGen2ServiceTest {
+
+    private static final Either<FailedOperation, Void> SUCCESS = Either.right(null);
+
+    @Mock
+    private AdlsGen2Service delegate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private InstrumentedAdlsGen2Service service;
+
+    @BeforeEach
+    void setUp() {
+        service = new InstrumentedAdlsGen2Service(
+                delegate,
+                new AzureCallMetrics(new AzureMetricsConfig(), meterRegistry),
+                new ProvisioningPhases(ObservationRegistry.NOOP));
+    }
+
+    private long calls(String operation) {
+        return meterRegistry
+                .get("provisioner.azure.calls")
+                .tag("backend", "dfs")
+                .tag("operation", operation)
+                .tag("storage_account", "account")
+                .timer()
+                .count();
+    }
+
+    @Test
+    void operationsAreRecorded() {
+        when(delegate.deleteDirectory("account", "container", "path", true)).thenReturn(SUCCESS);
+        var progress = AclUpdateProgress.noop();
+        when(delegate.updateAcl("account", "container", "path", List.of("user"), progress))
+                .thenReturn(SUCCESS);
+
+        assertEquals(SUCCESS, service.deleteDirectory("account", "container", "path", true));
+        assertEquals(SUCCESS, service.updateAcl("account", "container", "path", List.of("user"), progress));
+
+        assertEquals(1, calls("deleteDirectory"));
+        assertEquals(1, calls("updateAcl"));
+    }
+
+    @Test
+    void pathsOfTheAclBatchesAreCounted() {
+        var progress = AclUpdateProgress.noop();
+        when(delegate.updateAcl("account", "container", "path", List.of("user"), progress))
+                .thenAnswer(invocation -> {
+                    progress.start("path", null);
+                    progress.onBatch(new AccessControlChanges()
+                            .setAggregateCounters(new AccessControlChangeCounters()
+                                    .setChangedDirectoriesCount(2)
+                                    .setChangedFilesCount(40)));
+                    return SUCCESS;
+                });
+
+        service.updateAcl("account", "container", "path", List.of("user"), progress);
+
+        assertEquals(42, meterRegistry.get("provisioner.acl.paths").counter().count());
+    }
+
+    @Test
+    void storageAccountLookupsArePassedThrough() {
+        var info = new StorageAccountInfo();
+        when(delegate.getStorageAccountInfo("account")).thenReturn(Either.right(info));
+
+        assertEquals(Either.right(info), service.getStorageAccountInfo("account"));
+        assertEquals(List.of(), meterRegistry.getMeters());
+    }
+}
@@ -0,0 +1,144 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsRequestScheduler.Lane;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ScheduledAdlsGen2ServiceTest {
+
+    @Mock
+    private AdlsGen2Service delegate;
+
+    @Mock
+    private AdlsRequestScheduler scheduler;
+
+    @InjectMocks
+    private ScheduledAdlsGen2Service service;
+
+    @SuppressWarnings("unchecked")
+    private void runScheduledOperations() throws Exception {
+        when(scheduler.execute(any(), any(), any()))
+                .thenAnswer(
+                        invocation -> invocation.getArgument(2, Supplier.class).get());
+    }
+
+    @Test
+    void containerExistsRunsInLightLane() throws Exception {
+        runScheduledOperations();
+        when(delegate.containerExists("account", "container")).thenReturn(Either.right(true));
+
+        var actualRes = service.containerExists("account", "container");
+
+        assertEquals(Either.right(true), actualRes);
+        verify(scheduler).execute(eq("account"), eq(Lane.LIGHT), any());
+    }
+
+    @Test
+    void createDirectoryRunsInLightLane() throws Exception {
+        runScheduledOperations();
+        when(delegate.createDirectory("account", "container", "path")).thenReturn(Either.right(null));
+
+        var actualRes = service.createDirectory("account", "container", "path");
+
+        assertTrue(actualRes.isRight());
+        verify(scheduler).execute(eq("account"), eq(Lane.LIGHT), any());
+    }
+
+    @Test
+    void deleteDirectoryRunsInHeavyLane() throws Exception {
+        runScheduledOperations();
+        when(delegate.deleteDirectory("account", "container", "path", true)).thenReturn(Either.right(null));
+
+        var actualRes = service.deleteDirectory("account", "container", "path", true);
+
+        assertTrue(actualRes.isRight());
+        verify(scheduler).execute(eq("account"), eq(Lane.HEAVY), any());
+    }
+
+    @Test
+    void moveToTrashRunsInLightLane() throws Exception {
+        runScheduledOperations();
+        when(delegate.moveToTrash("account", "container", "path")).thenReturn(Either.right(Optional.of("trash")));
+
+        var actualRes = service.moveToTrash("account", "container", "path");
+
+        assertEquals(Either.right(Optional.of("trash")), actualRes);
+        verify(scheduler).execute(eq("account"), eq(Lane.LIGHT), any());
+    }
+
+    @Test
+    void purgeTrashRunsInHeavyLane() throws Exception {
+        runScheduledOperations();
+        when(delegate.purgeTrash("account", "container", "trash", 10)).thenReturn(Either.right(10));
+
+        var actualRes = service.purgeTrash("account", "container", "trash", 10);
+
+        assertEquals(Either.right(10), actualRes);
+        verify(scheduler).execute(eq("account"), eq(Lane.HEAVY), any());
+    }
+
+    @Test
+    void updateAclRunsInHeavyLane() throws Exception {
+        runScheduledOperations();
+        var progress = AclUpdateProgress.noop();
+        when(delegate.updateAcl("account", "container", "path", List.of("user"), progress))
+                .thenReturn(Either.right(null));
+
+        var actualRes = service.updateAcl("account", "container", "path", List.of("user"), progress);
+
+        assertTrue(actualRes.isRight());
+        verify(scheduler).execute(eq("account"), eq(Lane.HEAVY), any());
+    }
+
+    @Test
+    void getStorageAccountInfoIsNotScheduled() throws Exception {
+        var info = new StorageAccountInfo();
+        when(delegate.getStorageAccountInfo("account")).thenReturn(Either.right(info));
+
+        var actualRes = service.getStorageAccountInfo("account");
+
+        assertEquals(Either.right(info), actualRes);
+        verify(scheduler, never()).execute(any(), any(), any());
+    }
+
+    @Test
+    void timeoutIsReturnedAsFailedOperation() throws Exception {
+        when(scheduler.execute(any(), any(), any())).thenThrow(new TimeoutException("timeout"));
+
+        var actualRes = service.containerExists("account", "container");
+
+        assertTrue(actualRes.isLeft());
+        assertEquals(
+                "Too many operations are queued on the storage account account. Please try again later",
+                actualRes.getLeft().problems().get(0).description());
+        verify(delegate, never()).containerExists(any(), any());
+    }
+
+    @Test
+    void interruptionIsReturnedAsFailedOperation() throws Exception {
+        when(scheduler.execute(any(), any(), any())).thenThrow(new InterruptedException());
+
+        var actualRes = service.createDirectory("account", "container", "path");
+
+        assertTrue(actualRes.isLeft());
+        assertTrue(Thread.interrupted());
+    }
+}
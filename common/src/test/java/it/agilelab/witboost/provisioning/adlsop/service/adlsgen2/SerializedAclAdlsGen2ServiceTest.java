@@ -0,0 +1,188 @@
+package it.agilelab.witboost.provisioning.adlsop.service.adlsgen2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.model.azure.StorageAccountInfo;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SerializedAclAdlsGen2ServiceTest {
+
+    private static final Either<FailedOperation, Void> SUCCESS = Either.right(null);
+
+    @Mock
+    private AdlsGen2Service delegate;
+
+    @InjectMocks
+    private SerializedAclAdlsGen2Service service;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Future<Either<FailedOperation, Void>> updateAclAsync(String path, List<String> users) {
+        return executor.submit(() -> service.updateAcl("account", "container", path, users, AclUpdateProgress.noop()));
+    }
+
+    /** Blocks the updates of the delegate on the given users until the returned latch is released */
+    private CountDownLatch blockUpdate(List<String> users, CountDownLatch started) {
+        var release = new CountDownLatch(1);
+        when(delegate.updateAcl(any(), any(), any(), eq(users), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return SUCCESS;
+        });
+        return release;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("Condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void sequentialUpdatesAreAllApplied() {
+        when(delegate.updateAcl(any(), any(), any(), any(), any())).thenReturn(SUCCESS);
+
+        service.updateAcl("account", "container", "path", List.of("a"));
+        service.updateAcl("account", "container", "path", List.of("b"));
+
+        verify(delegate).updateAcl(eq("account"), eq("container"), eq("path"), eq(List.of("a")), any());
+        verify(delegate).updateAcl(eq("account"), eq("container"), eq("path"), eq(List.of("b")), any());
+    }
+
+    @Test
+    void waitingUpdateIsSupersededByNewerOne() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = blockUpdate(List.of("a"), started);
+        var latest = Either.<FailedOperation, Void>left(new FailedOperation(List.of(new Problem("latest"))));
+        when(delegate.updateAcl(any(), any(), any(), eq(List.of("c")), any())).thenReturn(latest);
+
+        var first = updateAclAsync("path", List.of("a"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        var second = updateAclAsync("path", List.of("b"));
+        await(() -> service.pendingUsers("account", "container", "path").equals(Optional.of(List.of("b"))));
+        var third = updateAclAsync("path", List.of("c"));
+        await(() -> service.pendingUsers("account", "container", "path").equals(Optional.of(List.of("c"))));
+        release.countDown();
+
+        assertEquals(SUCCESS, first.get(10, TimeUnit.SECONDS));
+        assertEquals(latest, third.get(10, TimeUnit.SECONDS));
+        assertEquals(latest, second.get(10, TimeUnit.SECONDS));
+        verify(delegate, never()).updateAcl(any(), any(), any(), eq(List.of("b")), any());
+        verify(delegate, times(2)).updateAcl(any(), any(), any(), any(), any());
+        assertEquals(Optional.empty(), service.pendingUsers("account", "container", "path"));
+    }
+
+    @Test
+    void updatesOnDifferentDirectoriesRunConcurrently() throws Exception {
+        var started = new CountDownLatch(2);
+        var release = blockUpdate(List.of("a"), started);
+
+        var first = updateAclAsync("path1", List.of("a"));
+        var second = updateAclAsync("path2", List.of("a"));
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals(SUCCESS, first.get(10, TimeUnit.SECONDS));
+        assertEquals(SUCCESS, second.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void nextUpdateRunsAfterFailingOne() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(delegate.updateAcl(any(), any(), any(), eq(List.of("a")), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            throw new IllegalStateException("failure");
+        });
+        when(delegate.updateAcl(any(), any(), any(), eq(List.of("b")), any())).thenReturn(SUCCESS);
+
+        var first = updateAclAsync("path", List.of("a"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        var second = updateAclAsync("path", List.of("b"));
+        await(() -> service.pendingUsers("account", "container", "path").isPresent());
+        release.countDown();
+
+        var exception = assertThrows(Exception.class, () -> first.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+        assertEquals(SUCCESS, second.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void interruptedWaitingUpdateIsWithdrawn() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = blockUpdate(List.of("a"), started);
+        var first = updateAclAsync("path", List.of("a"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        var waiting = new CompletableFuture<Thread>();
+        var second = executor.submit(() -> {
+            waiting.complete(Thread.currentThread());
+            return service.updateAcl("account", "container", "path", List.of("b"), AclUpdateProgress.noop());
+        });
+        await(() -> service.pendingUsers("account", "container", "path").isPresent());
+        waiting.get().interrupt();
+
+        assertTrue(second.get(10, TimeUnit.SECONDS).isLeft());
+        assertEquals(Optional.empty(), service.pendingUsers("account", "container", "path"));
+        release.countDown();
+        assertEquals(SUCCESS, first.get(10, TimeUnit.SECONDS));
+        verify(delegate, never()).updateAcl(any(), any(), any(), eq(List.of("b")), any());
+
+        when(delegate.updateAcl(any(), any(), any(), eq(List.of("c")), any())).thenReturn(SUCCESS);
+        assertEquals(SUCCESS, service.updateAcl("account", "container", "path", List.of("c")));
+    }
+
+    @Test
+    void otherOperationsArePassedThrough() {
+        var info = new StorageAccountInfo();
+        when(delegate.getStorageAccountInfo("account")).thenReturn(Either.right(info));
+        when(delegate.containerExists("account", "container")).thenReturn(Either.right(true));
+        when(delegate.deleteDirectory("account", "container", "path", true)).thenReturn(SUCCESS);
+
+        assertEquals(Either.right(info), service.getStorageAccountInfo("account"));
+        assertEquals(Either.right(true), service.containerExists("account", "container"));
+        assertEquals(SUCCESS, service.deleteDirectory("account", "container", "path", true));
+        when(delegate.moveToTrash("account", "container", "path")).thenReturn(Either.right(Optional.of("trash")));
+        assertEquals(Either.right(Optional.of("trash")), service.moveToTrash("account", "container", "path"));
+        when(delegate.purgeTrash("account", "container", "trash", 10)).thenReturn(Either.right(10));
+        assertEquals(Either.right(10), service.purgeTrash("account", "container", "trash", 10));
+        when(delegate.listTrash("account", "container")).thenReturn(Either.right(Map.of()));
+        assertEquals(Either.right(Map.of()), service.listTrash("account", "container"));
+    }
+}
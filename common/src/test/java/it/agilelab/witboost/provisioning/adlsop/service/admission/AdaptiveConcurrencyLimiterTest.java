@@ -0,0 +1,187 @@
+package it.agilelab.witboost.provisioning.adlsop.service.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
+import it.agilelab.witboost.provisioning.adlsop.config.AdmissionConfig;
+import it.agilelab.witboost.provisioning.adlsop.service.admission.AdaptiveConcurrencyLimiter.Permit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AdmissionConfig config(int initialLimit) {
+        var config = new AdmissionConfig();
+        config.setInitialLimit(initialLimit);
+        config.setMinLimit(1);
+        config.setMaxLimit(100);
+        config.setQueueCapacity(1);
+        config.setMaxQueueWait(Duration.ofMinutes(1));
+        return config;
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(AdmissionConfig config) {
+        return new AdaptiveConcurrencyLimiter(config, meterRegistry, nanoTime::get);
+    }
+
+    /** Runs a round of operations saturating the limit, all taking the given latency */
+    private void runRound(AdaptiveConcurrencyLimiter limiter, long latencyMillis) {
+        List<Permit> permits = new ArrayList<>();
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) permits.add(limiter.acquire().join());
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        permits.forEach(Permit::release);
+    }
+
+    @Test
+    void operationsOverLimitAreQueuedThenRejected() {
+        var limiter = limiter(config(2));
+
+        var first = limiter.acquire();
+        var second = limiter.acquire();
+        var queued = limiter.acquire();
+        var rejected = limiter.acquire();
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(queued.isDone());
+        assertTrue(rejected.isCompletedExceptionally());
+        var ex = assertThrows(CompletionException.class, rejected::join);
+        var overloaded = assertInstanceOf(ProvisionerOverloadedException.class, ex.getCause());
+        assertEquals(Duration.ofSeconds(1), overloaded.getRetryAfter().orElseThrow());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getQueued());
+        assertEquals(
+                1.0,
+                meterRegistry
+                        .get("provisioner.admission.rejected")
+                        .tag("reason", "queue_full")
+                        .counter()
+                        .count());
+    }
+
+    @Test
+    void releaseAdmitsQueuedOperation() {
+        var limiter = limiter(config(1));
+        var permit = limiter.acquire().join();
+        var queued = limiter.acquire();
+
+        permit.release();
+
+        assertTrue(queued.isDone());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void permitIsReleasedOnlyOnce() {
+        var limiter = limiter(config(2));
+        var permit = limiter.acquire().join();
+        limiter.acquire().join();
+
+        permit.release();
+        permit.release();
+
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void queuedOperationIsRejectedAfterMaxWait() {
+        var config = config(1);
+        config.setMaxQueueWait(Duration.ofMillis(20));
+        var limiter = limiter(config);
+        limiter.acquire().join();
+
+        CompletableFuture<Permit> queued = limiter.acquire();
+
+        var ex = assertThrows(CompletionException.class, queued::join);
+        assertInstanceOf(ProvisionerOverloadedException.class, ex.getCause());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsStable() {
+        var limiter = limiter(config(10));
+
+        for (int i = 0; i < 10; i++) runRound(limiter, 100);
+
+        assertTrue(limiter.getLimit() > 10);
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRises() {
+        var limiter = limiter(config(10));
+        for (int i = 0; i < 5; i++) runRound(limiter, 100);
+        int limitBefore = limiter.getLimit();
+
+        runRound(limiter, 2000);
+
+        assertTrue(limiter.getLimit() < limitBefore);
+    }
+
+    @Test
+    void limitDoesNotGrowWhenUnderused() {
+        var limiter = limiter(config(10));
+
+        for (int i = 0; i < 20; i++) {
+            var permit = limiter.acquire().join();
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+            permit.release();
+        }
+
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void limitStaysWithinBounds() {
+        var config = config(10);
+        config.setMaxLimit(12);
+        config.setMinLimit(8);
+        var limiter = limiter(config);
+
+        for (int i = 0; i < 20; i++) runRound(limiter, 100);
+        assertEquals(12, limiter.getLimit());
+
+        for (int i = 0; i < 2; i++) runRound(limiter, 5000);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void everythingIsAdmittedWhenDisabled() {
+        var config = config(1);
+        config.setEnabled(false);
+        var limiter = limiter(config);
+
+        for (int i = 0; i < 10; i++) assertTrue(limiter.acquire().isDone());
+
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void metricsAreExposed() {
+        var limiter = limiter(config(5));
+        limiter.acquire().join();
+
+        assertEquals(
+                5.0, meterRegistry.get("provisioner.admission.limit").gauge().value());
+        assertEquals(
+                1.0, meterRegistry.get("provisioner.admission.inflight").gauge().value());
+        assertEquals(
+                0.0, meterRegistry.get("provisioner.admission.queued").gauge().value());
+    }
+}
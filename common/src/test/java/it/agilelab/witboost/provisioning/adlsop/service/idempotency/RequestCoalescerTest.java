@@ -0,0 +1,186 @@
+package it.agilelab.witboost.provisioning.adlsop.service.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.config.IdempotencyConfig;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.DescriptorKind;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
+import it.agilelab.witboost.provisioning.adlsop.util.MutableClock;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class RequestCoalescerTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IdempotencyConfig config = new IdempotencyConfig();
+    private final RequestCoalescer coalescer = new RequestCoalescer(config, meterRegistry, clock);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private final RequestKey key = new RequestKey("component", "provision", "digest");
+
+    private <T> Supplier<CompletableFuture<T>> counting(CompletableFuture<T> outcome) {
+        return () -> {
+            runs.incrementAndGet();
+            return outcome;
+        };
+    }
+
+    private double count(String outcome) {
+        return meterRegistry
+                .get("provisioner.idempotency.requests")
+                .tag("outcome", outcome)
+                .counter()
+                .count();
+    }
+
+    @Test
+    void duplicateIsAttachedToRunningRequest() {
+        var outcome = new CompletableFuture<String>();
+
+        var first = coalescer.execute(key, counting(outcome));
+        var duplicate = coalescer.execute(key, counting(new CompletableFuture<>()));
+        outcome.complete("result");
+
+        assertSame(first, duplicate);
+        assertEquals("result", duplicate.join());
+        assertEquals(1, runs.get());
+        assertEquals(1.0, count("coalesced"));
+    }
+
+    @Test
+    void completedResultIsReplayedWithinTtl() {
+        coalescer.execute(key, counting(CompletableFuture.completedFuture("result")));
+        clock.advance(Duration.ofMinutes(4));
+
+        var replayed = coalescer.execute(key, counting(CompletableFuture.completedFuture("other")));
+
+        assertEquals("result", replayed.join());
+        assertEquals(1, runs.get());
+        assertEquals(1.0, count("replayed"));
+    }
+
+    @Test
+    void completedResultIsNotReplayedAfterTtl() {
+        coalescer.execute(key, counting(CompletableFuture.completedFuture("result")));
+        clock.advance(Duration.ofMinutes(5));
+
+        var actual = coalescer.execute(key, counting(CompletableFuture.completedFuture("other")));
+
+        assertEquals("other", actual.join());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void failureIsNotReplayed() {
+        var failed = coalescer.execute(key, counting(CompletableFuture.failedFuture(new IllegalStateException())));
+        assertThrows(CompletionException.class, failed::join);
+
+        var retried = coalescer.execute(key, counting(CompletableFuture.completedFuture("result")));
+
+        assertEquals("result", retried.join());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void exceptionThrownByOperationFailsFuture() {
+        var actual = coalescer.<String>execute(key, () -> {
+            throw new IllegalStateException("failure");
+        });
+
+        assertTrue(actual.isCompletedExceptionally());
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    void resultIsNotReplayedWhenNoLongerReplayable() {
+        var replayable = new AtomicBoolean(true);
+        coalescer.execute(key, counting(CompletableFuture.completedFuture("token")), token -> replayable.get());
+        replayable.set(false);
+
+        var actual = coalescer.execute(
+                key, counting(CompletableFuture.completedFuture("new-token")), token -> replayable.get());
+
+        assertEquals("new-token", actual.join());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void differentRequestOnSameComponentStopsReplay() {
+        var otherRequest = new RequestKey("component", "unprovision", "digest");
+        coalescer.execute(key, counting(CompletableFuture.completedFuture("provisioned")));
+        coalescer.execute(otherRequest, counting(CompletableFuture.completedFuture("unprovisioned")));
+
+        var actual = coalescer.execute(key, counting(CompletableFuture.completedFuture("provisioned again")));
+
+        assertEquals("provisioned again", actual.join());
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void unprovisionOfJsonDescriptorStopsReplayOfItsProvision() {
+        String descriptor = "{\"componentIdToProvision\": \"urn:dmb:cmp:domain:dp:0:outputport\"}";
+        var provision = RequestKey.of(
+                "provision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, descriptor, false));
+        var unprovision = RequestKey.of(
+                "unprovision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, descriptor, false));
+        coalescer.execute(provision, counting(CompletableFuture.completedFuture("provisioned")));
+        coalescer.execute(unprovision, counting(CompletableFuture.completedFuture("unprovisioned")));
+
+        var actual = coalescer.execute(provision, counting(CompletableFuture.completedFuture("provisioned again")));
+
+        assertEquals("provisioned again", actual.join());
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void requestsOnOtherComponentsAreReplayed() {
+        coalescer.execute(key, counting(CompletableFuture.completedFuture("result")));
+        coalescer.execute(
+                new RequestKey("other-component", "provision", "digest"),
+                counting(CompletableFuture.completedFuture("other")));
+
+        var actual = coalescer.execute(key, counting(CompletableFuture.completedFuture("new")));
+
+        assertEquals("result", actual.join());
+    }
+
+    @Test
+    void oldestCompletedEntriesAreEvicted() {
+        config.setMaxEntries(2);
+        for (int i = 0; i < 3; i++) {
+            coalescer.execute(
+                    new RequestKey("component-" + i, "provision", "digest"),
+                    counting(CompletableFuture.completedFuture("result")));
+            clock.advance(Duration.ofSeconds(1));
+        }
+
+        assertEquals(2, coalescer.size());
+        var actual = coalescer.execute(
+                new RequestKey("component-0", "provision", "digest"),
+                counting(CompletableFuture.completedFuture("new")));
+        assertEquals("new", actual.join());
+    }
+
+    @Test
+    void everythingRunsWhenDisabled() {
+        config.setEnabled(false);
+        var outcome = new CompletableFuture<String>();
+
+        var first = coalescer.execute(key, counting(outcome));
+        var second = coalescer.execute(key, counting(new CompletableFuture<String>()));
+
+        assertNotSame(first, second);
+        assertEquals(2, runs.get());
+    }
+}
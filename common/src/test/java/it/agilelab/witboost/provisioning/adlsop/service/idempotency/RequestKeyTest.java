@@ -0,0 +1,109 @@
+package it.agilelab.witboost.provisioning.adlsop.service.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.DescriptorKind;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisionInfo;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.UpdateAclRequest;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RequestKeyTest {
+
+    private static final String DESCRIPTOR = "componentIdToProvision: urn:dmb:cmp:domain:dp:0:outputport\n";
+
+    @Test
+    void identicalRequestsHaveSameKey() {
+        var first = RequestKey.of(
+                "provision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, DESCRIPTOR, false));
+        var second = RequestKey.of(
+                "provision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, DESCRIPTOR, false));
+
+        assertEquals(first, second);
+        assertEquals("urn:dmb:cmp:domain:dp:0:outputport", first.componentId());
+    }
+
+    @Test
+    void payloadChangesKey() {
+        var first = RequestKey.of(
+                "provision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, DESCRIPTOR, false));
+        var second = RequestKey.of(
+                "provision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, DESCRIPTOR, true));
+
+        assertNotEquals(first, second);
+        assertEquals(first.componentId(), second.componentId());
+    }
+
+    @Test
+    void updateAclKeyDependsOnRefs() {
+        var provisionInfo = new ProvisionInfo(DESCRIPTOR, "{}");
+        var first = RequestKey.of("updateacl", new UpdateAclRequest(List.of("user:a"), provisionInfo));
+        var second = RequestKey.of("updateacl", new UpdateAclRequest(List.of("user:b"), provisionInfo));
+
+        assertNotEquals(first, second);
+        assertEquals("urn:dmb:cmp:domain:dp:0:outputport", first.componentId());
+    }
+
+    @Test
+    void unparsableDescriptorIsScopedByDigest() {
+        var key = RequestKey.of(
+                "provision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, "not: [valid", false));
+
+        assertEquals(key.digest(), key.componentId());
+    }
+
+    @Test
+    void quotedComponentIdIsFound() {
+        var key = RequestKey.of(
+                "provision",
+                new ProvisioningRequest(
+                        DescriptorKind.COMPONENT_DESCRIPTOR,
+                        "dataProduct:\n  componentIdToProvision: nested\ncomponentIdToProvision: \"urn:dmb:cmp:c\"\n",
+                        false));
+
+        assertEquals("urn:dmb:cmp:c", key.componentId());
+    }
+
+    @Test
+    void componentIdOfJsonDescriptorIsFound() {
+        var key = RequestKey.of(
+                "provision",
+                new ProvisioningRequest(
+                        DescriptorKind.COMPONENT_DESCRIPTOR,
+                        "{\"dataProduct\": {\"componentIdToProvision\": \"nested\", \"components\": [{}]},"
+                                + " \"componentIdToProvision\": \"urn:dmb:cmp:domain:dp:0:outputport\"}",
+                        false));
+
+        assertEquals("urn:dmb:cmp:domain:dp:0:outputport", key.componentId());
+    }
+
+    @Test
+    void componentIdOfFlowStyleDescriptorIsFound() {
+        var key = RequestKey.of(
+                "provision",
+                new ProvisioningRequest(
+                        DescriptorKind.COMPONENT_DESCRIPTOR,
+                        "{dataProduct: {id: dp}, componentIdToProvision: 'urn:dmb:cmp:domain:dp:0:outputport'}",
+                        false));
+
+        assertEquals("urn:dmb:cmp:domain:dp:0:outputport", key.componentId());
+    }
+
+    @Test
+    void provisionAndUnprovisionOfJsonDescriptorTargetSameComponent() {
+        String descriptor = "{\"componentIdToProvision\": \"urn:dmb:cmp:domain:dp:0:outputport\"}";
+        var provision = RequestKey.of(
+                "provision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, descriptor, false));
+        var unprovision = RequestKey.of(
+                "unprovision", new ProvisioningRequest(DescriptorKind.COMPONENT_DESCRIPTOR, descriptor, true));
+
+        assertEquals(provision.componentId(), unprovision.componentId());
+    }
+
+    @Test
+    void digestDistinguishesPartBoundaries() {
+        assertNotEquals(RequestKey.digest("ab", "c"), RequestKey.digest("a", "bc"));
+    }
+}
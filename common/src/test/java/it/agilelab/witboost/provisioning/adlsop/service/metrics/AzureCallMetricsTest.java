@@ -0,0 +1,106 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.storage.file.datalake.models.DataLakeStorageException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class AzureCallMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AzureMetricsConfig config = new AzureMetricsConfig();
+    private final AzureCallMetrics metrics = new AzureCallMetrics(config, meterRegistry);
+
+    private long calls(String outcome) {
+        return meterRegistry
+                .get("provisioner.azure.calls")
+                .tag("backend", "dfs")
+                .tag("operation", "createDirectory")
+                .tag("storage_account", "account")
+                .tag("outcome", outcome)
+                .timer()
+                .count();
+    }
+
+    @Test
+    void outcomesAreRecorded() {
+        metrics.record("dfs", "createDirectory", "account", () -> Either.right("ok"));
+        metrics.record(
+                "dfs",
+                "createDirectory",
+                "account",
+                () -> Either.left(new FailedOperation(List.of(new Problem("error")))));
+        assertThrows(
+                IllegalStateException.class,
+                () -> metrics.record("dfs", "createDirectory", "account", () -> {
+                    throw new IllegalStateException("error");
+                }));
+
+        assertEquals(1, calls("success"));
+        assertEquals(1, calls("failure"));
+        assertEquals(1, calls("error"));
+    }
+
+    @Test
+    void throttledResponsesAreRecorded() {
+        var response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(429);
+        var throttled = new DataLakeStorageException("Too many requests", response, null);
+
+        metrics.record(
+                "dfs",
+                "createDirectory",
+                "account",
+                () -> Either.left(new FailedOperation(List.of(new Problem("throttled", throttled)))));
+        assertThrows(
+                DataLakeStorageException.class,
+                () -> metrics.recordCall("dfs", "createDirectory", "account", () -> {
+                    throw throttled;
+                }));
+
+        assertEquals(2, calls("throttled"));
+    }
+
+    @Test
+    void storageAccountTagsAreBounded() {
+        config.setMaxStorageAccountTags(2);
+
+        assertEquals("first", metrics.accountTag("first"));
+        assertEquals("second", metrics.accountTag("second"));
+        assertEquals(AzureCallMetrics.OTHER_ACCOUNT, metrics.accountTag("third"));
+        assertEquals("first", metrics.accountTag("first"));
+        assertEquals(AzureCallMetrics.NO_ACCOUNT, metrics.accountTag(null));
+    }
+
+    @Test
+    void retriesAreCounted() {
+        metrics.recordRetry("dfs", "purgeTrash", "account");
+
+        assertEquals(
+                1.0,
+                meterRegistry
+                        .get("provisioner.azure.retries")
+                        .tag("operation", "purgeTrash")
+                        .counter()
+                        .count());
+    }
+
+    @Test
+    void nothingIsRecordedWhenDisabled() {
+        config.setEnabled(false);
+
+        assertEquals(Either.right("ok"), metrics.record("dfs", "createDirectory", "account", () -> Either.right("ok")));
+        metrics.recordRetry("dfs", "purgeTrash", "account");
+
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+}
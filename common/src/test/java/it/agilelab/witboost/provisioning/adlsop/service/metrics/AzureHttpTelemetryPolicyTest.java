@@ -0,0 +1,131 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.FixedDelay;
+import com.azure.core.http.policy.RetryPolicy;
+import com.azure.core.util.Context;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class AzureHttpTelemetryPolicyTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AzureMetricsConfig config = new AzureMetricsConfig();
+    private final CallAccounting callAccounting = new CallAccounting(config, meterRegistry);
+    private final AzureCallMetrics metrics = new AzureCallMetrics(config, meterRegistry, Tracer.NOOP, callAccounting);
+
+    /** Builds a pipeline retrying up to twice, whose client answers with the given outcomes in order */
+    private HttpPipeline pipeline(List<Object> outcomes) {
+        Deque<Object> remaining = new ArrayDeque<>(outcomes);
+        return new HttpPipelineBuilder()
+                .policies(new RetryPolicy(new FixedDelay(2, Duration.ofMillis(1))), metrics.httpPolicy("dfs"))
+                .httpClient(request -> {
+                    var outcome = remaining.poll();
+                    if (outcome instanceof Throwable error) return Mono.error(error);
+                    return Mono.just(response((Integer) outcome, request));
+                })
+                .build();
+    }
+
+    private static HttpResponse response(int status, HttpRequest request) {
+        var response = mock(HttpResponse.class);
+        lenient().when(response.getStatusCode()).thenReturn(status);
+        lenient().when(response.getRequest()).thenReturn(request);
+        lenient().when(response.getHeaderValue(HttpHeaderName.X_MS_REQUEST_ID)).thenReturn("request-id");
+        lenient().when(response.getHeaderValue(HttpHeaderName.CONTENT_LENGTH)).thenReturn("100");
+        return response;
+    }
+
+    private static HttpRequest request() {
+        return new HttpRequest(HttpMethod.GET, "https://account.dfs.core.windows.net/container");
+    }
+
+    private long requests(String status) {
+        var timer = meterRegistry
+                .find("provisioner.azure.http.requests")
+                .tags("backend", "dfs", "method", "GET", "status", status)
+                .timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private double counter(String name) {
+        return meterRegistry.find(name).tags("backend", "dfs").counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    @Test
+    void everyAttemptIsRecorded() {
+        var response = pipeline(List.of(503, 429, 200)).send(request()).block();
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(1, requests("503"));
+        assertEquals(1, requests("200"));
+        assertEquals(2, counter("provisioner.azure.http.throttled"));
+        assertEquals(2, counter("provisioner.azure.http.retries"));
+    }
+
+    @Test
+    void synchronousRequestsAreRecorded() {
+        var response = pipeline(List.of(201)).sendSync(request(), Context.NONE);
+
+        assertEquals(201, response.getStatusCode());
+        assertEquals(1, requests("201"));
+        assertEquals(0, counter("provisioner.azure.http.retries"));
+    }
+
+    @Test
+    void connectionErrorsAreRecorded() {
+        var response = pipeline(List.of(new UncheckedIOException(new IOException("reset")), 200))
+                .send(request())
+                .block();
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(1, requests("IO_ERROR"));
+        assertEquals(1, counter("provisioner.azure.http.retries"));
+    }
+
+    @Test
+    void everyAttemptIsAccountedToTheRequestSendingIt() {
+        var request = request().setHeader(HttpHeaderName.CONTENT_LENGTH, "10");
+
+        var usage = callAccounting
+                .account(
+                        "provision",
+                        () -> pipeline(List.of(503, 200)).send(request).block())
+                .usage()
+                .orElseThrow();
+
+        assertEquals(2, usage.httpRequests());
+        assertEquals(20, usage.bytesSent());
+        assertEquals(200, usage.bytesReceived());
+    }
+
+    @Test
+    void nothingIsRecordedWhenDisabled() {
+        config.setHttpRequests(false);
+
+        pipeline(List.of(200)).send(request()).block();
+
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+class CallAccountingTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AzureMetricsConfig config = new AzureMetricsConfig();
+    private final CallAccounting accounting = new CallAccounting(config, meterRegistry);
+
+    private double total(String name, String tag, String value) {
+        return meterRegistry
+                .get(name)
+                .tag("operation", "provision")
+                .tag(tag, value)
+                .summary()
+                .totalAmount();
+    }
+
+    @Test
+    void callsAreAccountedToTheRunningRequest() {
+        var accounted = accounting.account("provision", () -> {
+            accounting.onCall(AzureCallMetrics.DFS);
+            accounting.onCall(AzureCallMetrics.DFS);
+            accounting.onCall(AzureCallMetrics.RESOURCE_GRAPH);
+            accounting.onAclPaths(42);
+            return "done";
+        });
+
+        assertEquals("done", accounted.result());
+        var usage = accounted.usage().orElseThrow();
+        assertEquals(2, usage.dfsCalls());
+        assertEquals(0, usage.graphCalls());
+        assertEquals(1, usage.resourceGraphCalls());
+        assertEquals(42, usage.aclPaths());
+        assertEquals(
+                "dfs=2, graph=0, resourcegraph=1, http=0, bytesSent=0, bytesReceived=0, aclPaths=42", usage.toHeader());
+        assertEquals(2, total("provisioner.request.azure.calls", "backend", "dfs"));
+        assertEquals(1, total("provisioner.request.azure.calls", "backend", "resourcegraph"));
+        assertEquals(
+                42,
+                meterRegistry
+                        .get("provisioner.request.acl.paths")
+                        .tag("operation", "provision")
+                        .summary()
+                        .totalAmount());
+    }
+
+    @Test
+    void callsOutsideRequestsAreNotAccounted() {
+        accounting.onCall(AzureCallMetrics.DFS);
+
+        var accounted = accounting.account("provision", () -> "done");
+
+        assertEquals(0, accounted.usage().orElseThrow().dfsCalls());
+    }
+
+    @Test
+    void failedRequestsAreRecorded() {
+        assertThrows(
+                IllegalStateException.class,
+                () -> accounting.account("provision", () -> {
+                    accounting.onCall(AzureCallMetrics.DFS);
+                    throw new IllegalStateException("boom");
+                }));
+
+        assertEquals(1, total("provisioner.request.azure.calls", "backend", "dfs"));
+        accounting.onCall(AzureCallMetrics.DFS);
+        assertEquals(1, total("provisioner.request.azure.calls", "backend", "dfs"));
+    }
+
+    @Test
+    void propagatingExecutorAccountsTheTasksToTheSubmittingRequest() {
+        var pool = Executors.newSingleThreadExecutor();
+        try {
+            var executor = accounting.propagating(pool);
+
+            var accounted = accounting.account("provision", () -> CompletableFuture.runAsync(
+                            () -> accounting.onCall(AzureCallMetrics.GRAPH), executor)
+                    .join());
+
+            assertEquals(1, accounted.usage().orElseThrow().graphCalls());
+            // The worker doesn't keep the account once the task completes
+            CompletableFuture.runAsync(() -> accounting.onCall(AzureCallMetrics.GRAPH), executor)
+                    .join();
+            assertEquals(1, total("provisioner.request.azure.calls", "backend", "graph"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void nothingIsAccountedWhenDisabled() {
+        config.setAccounting(false);
+
+        var accounted = accounting.account("provision", () -> {
+            accounting.onCall(AzureCallMetrics.DFS);
+            return "done";
+        });
+
+        assertEquals("done", accounted.result());
+        assertTrue(accounted.usage().isEmpty());
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+}
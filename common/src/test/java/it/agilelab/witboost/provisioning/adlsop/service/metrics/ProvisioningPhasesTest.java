@@ -0,0 +1,130 @@
+package it.agilelab.witboost.provisioning.adlsop.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.vavr.control.Either;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ProvisioningPhasesTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Observation.Context> stopped = new ArrayList<>();
+    private ProvisioningPhases phases;
+
+    @BeforeEach
+    void setUp() {
+        var observationRegistry = ObservationRegistry.create();
+        observationRegistry
+                .observationConfig()
+                .observationHandler(new DefaultMeterObservationHandler(meterRegistry))
+                .observationHandler(new ObservationHandler<>() {
+                    @Override
+                    public void onStop(Observation.Context context) {
+                        stopped.add(context);
+                    }
+
+                    @Override
+                    public boolean supportsContext(Observation.Context context) {
+                        return true;
+                    }
+                });
+        phases = new ProvisioningPhases(observationRegistry);
+    }
+
+    private long timed(String phase, String operation, String outcome) {
+        return meterRegistry
+                .get("provisioner.phase")
+                .tag("phase", phase)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .timer()
+                .count();
+    }
+
+    @Test
+    void successfulPhaseIsObservedWithItsAttributes() {
+        var result = phases.observe(
+                ProvisioningPhases.HANDLER, "create", KeyValues.of("component.id", "my-component"), observation -> {
+                    observation.highCardinalityKeyValue("acl.refs", "3");
+                    return Either.right("done");
+                });
+
+        assertEquals(Either.right("done"), result);
+        assertEquals(1, timed("handler", "create", "success"));
+        var context = stopped.get(0);
+        assertEquals("handler create", context.getContextualName());
+        assertEquals(
+                "my-component",
+                context.getHighCardinalityKeyValue("component.id").getValue());
+        assertEquals("3", context.getHighCardinalityKeyValue("acl.refs").getValue());
+    }
+
+    @Test
+    void failedPhaseCarriesItsProblems() {
+        var failedOperation = new FailedOperation(List.of(new Problem("first"), new Problem("second")));
+
+        var result = phases.observe(
+                ProvisioningPhases.VALIDATION,
+                "validate",
+                KeyValues.empty(),
+                observation -> Either.left(failedOperation));
+
+        assertEquals(Either.left(failedOperation), result);
+        assertEquals(1, timed("validation", "validate", "failure"));
+        var context = stopped.get(0);
+        assertEquals(
+                "first; second", context.getHighCardinalityKeyValue("problems").getValue());
+        var error = assertInstanceOf(SpecificProvisionerValidationException.class, context.getError());
+        assertEquals(failedOperation, error.getFailedOperation());
+    }
+
+    @Test
+    void thrownErrorIsRecordedAndRethrown() {
+        var exception = new IllegalStateException("boom");
+
+        var thrown = assertThrows(
+                IllegalStateException.class,
+                () -> phases.observeCall(ProvisioningPhases.INFO, "createDeployInfo", KeyValues.empty(), () -> {
+                    throw exception;
+                }));
+
+        assertSame(exception, thrown);
+        assertEquals(1, timed("info", "createDeployInfo", "error"));
+        assertSame(exception, stopped.get(0).getError());
+    }
+
+    @Test
+    void nestedPhasesHaveTheOuterOneAsParent() {
+        phases.observe(
+                ProvisioningPhases.HANDLER,
+                "create",
+                KeyValues.empty(),
+                outer -> phases.observe(
+                        ProvisioningPhases.ADLS, "createDirectory", KeyValues.empty(), inner -> Either.right(1)));
+
+        assertEquals(2, stopped.size());
+        var inner = stopped.get(0);
+        var outer = stopped.get(1);
+        assertEquals("adls createDirectory", inner.getContextualName());
+        assertSame(outer, inner.getParentObservation().getContextView());
+    }
+
+    @Test
+    void pathDepthCountsTheSegments() {
+        assertEquals(KeyValue.of("path.depth", "3"), ProvisioningPhases.pathDepth("/a/b//c/"));
+        assertEquals(KeyValue.of("path.depth", "0"), ProvisioningPhases.pathDepth(null));
+    }
+}
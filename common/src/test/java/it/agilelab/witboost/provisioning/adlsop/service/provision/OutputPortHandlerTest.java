@@ -3,23 +3,33 @@ package it.agilelab.witboost.provisioning.adlsop.service.provision;
 import static io.vavr.control.Either.left;
 import static io.vavr.control.Either.right;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.micrometer.observation.ObservationRegistry;
 import io.vavr.control.Either;
 import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
 import it.agilelab.witboost.provisioning.adlsop.common.Problem;
 import it.agilelab.witboost.provisioning.adlsop.model.*;
 import it.agilelab.witboost.provisioning.adlsop.model.azure.AdlsGen2DirectoryInfo;
 import it.agilelab.witboost.provisioning.adlsop.principalsmapping.azure.AzureMapper;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AclUpdateProgress;
 import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
+import it.agilelab.witboost.provisioning.adlsop.service.removal.DataRemovalPipeline;
 import java.util.*;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +41,12 @@ class OutputPortHandlerTest {
     @Mock
     private AzureMapper azureMapper;
 
+    @Mock
+    private DataRemovalPipeline dataRemovalPipeline;
+
+    @Spy
+    private ProvisioningPhases provisioningPhases = new ProvisioningPhases(ObservationRegistry.NOOP);
+
     @InjectMocks
     private OutputPortHandler outputPortHandler;
 
@@ -183,11 +199,33 @@ class OutputPortHandlerTest {
 
     @Test
     void testDestroyOk() {
+        when(dataRemovalPipeline.isEnabled()).thenReturn(false);
         when(adlsGen2Service.deleteDirectory("storageAccount", "containerName", "path", true))
                 .thenReturn(right(null));
         var actualRes = outputPortHandler.destroy(new ProvisionRequest<>(dataProduct, outputPort, true));
 
-        assertTrue(actualRes.isRight());
+        assertEquals(right(Optional.empty()), actualRes);
+    }
+
+    @Test
+    void testDestroyRemovesDataInBackground() {
+        when(dataRemovalPipeline.isEnabled()).thenReturn(true);
+        when(dataRemovalPipeline.remove("storageAccount", "containerName", "path"))
+                .thenReturn(right(Optional.of("token")));
+        var actualRes = outputPortHandler.destroy(new ProvisionRequest<>(dataProduct, outputPort, true));
+
+        assertEquals(right(Optional.of("token")), actualRes);
+        verify(adlsGen2Service, never()).deleteDirectory(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    void testDestroyKeepingDataResetsAcl() {
+        when(adlsGen2Service.deleteDirectory("storageAccount", "containerName", "path", false))
+                .thenReturn(right(null));
+        var actualRes = outputPortHandler.destroy(new ProvisionRequest<>(dataProduct, outputPort, false));
+
+        assertEquals(right(Optional.empty()), actualRes);
+        verify(dataRemovalPipeline, never()).remove(any(), any(), any());
     }
 
     @Test
@@ -267,10 +305,15 @@ class OutputPortHandlerTest {
                 users.get(0), right(mappedUsers.get(0)),
                 users.get(1), right(mappedUsers.get(1)));
         when(azureMapper.map(Set.copyOf(users))).thenReturn(mapResult);
-        when(adlsGen2Service.updateAcl("storageAccount", "containerName", "path", mappedUsers))
+        when(adlsGen2Service.updateAcl(
+                        eq("storageAccount"),
+                        eq("containerName"),
+                        eq("path"),
+                        eq(mappedUsers),
+                        any(AclUpdateProgress.class)))
                 .thenReturn(right(null));
-        var actualRes =
-                outputPortHandler.updateAcl(users, new ProvisionRequest<>(dataProduct, outputPort, true), storageInfo);
+        var actualRes = outputPortHandler.updateAcl(
+                users, new ProvisionRequest<>(dataProduct, outputPort, true), storageInfo, AclUpdateProgress.noop());
 
         assertTrue(actualRes.isRight());
     }
@@ -286,10 +329,15 @@ class OutputPortHandlerTest {
         var storageInfo = new ProvisioningResult("storageAccount");
 
         when(azureMapper.map(Set.copyOf(users))).thenReturn(mapResult);
-        when(adlsGen2Service.updateAcl("storageAccount", "containerName", "path", mappedUsers))
+        when(adlsGen2Service.updateAcl(
+                        eq("storageAccount"),
+                        eq("containerName"),
+                        eq("path"),
+                        eq(mappedUsers),
+                        any(AclUpdateProgress.class)))
                 .thenReturn(right(null));
-        var actualRes =
-                outputPortHandler.updateAcl(users, new ProvisionRequest<>(dataProduct, outputPort, true), storageInfo);
+        var actualRes = outputPortHandler.updateAcl(
+                users, new ProvisionRequest<>(dataProduct, outputPort, true), storageInfo, AclUpdateProgress.noop());
 
         assertTrue(actualRes.isLeft());
         actualRes.getLeft().problems().forEach(p -> {
@@ -308,10 +356,15 @@ class OutputPortHandlerTest {
         var storageInfo = new ProvisioningResult("storageAccount");
 
         when(azureMapper.map(Set.copyOf(users))).thenReturn(mapResult);
-        when(adlsGen2Service.updateAcl("storageAccount", "containerName", "path", mappedUsers))
+        when(adlsGen2Service.updateAcl(
+                        eq("storageAccount"),
+                        eq("containerName"),
+                        eq("path"),
+                        eq(mappedUsers),
+                        any(AclUpdateProgress.class)))
                 .thenReturn(left(new FailedOperation(Collections.singletonList(new Problem("Error!")))));
-        var actualRes =
-                outputPortHandler.updateAcl(users, new ProvisionRequest<>(dataProduct, outputPort, true), storageInfo);
+        var actualRes = outputPortHandler.updateAcl(
+                users, new ProvisionRequest<>(dataProduct, outputPort, true), storageInfo, AclUpdateProgress.noop());
 
         var expectedError = "Error!";
         assertTrue(actualRes.isLeft());
@@ -332,7 +385,10 @@ class OutputPortHandlerTest {
         var storageInfo = new ProvisioningResult("storageAccount");
 
         var actualRes = outputPortHandler.updateAcl(
-                users, new ProvisionRequest<>(new DataProduct(), storageArea, true), storageInfo);
+                users,
+                new ProvisionRequest<>(new DataProduct(), storageArea, true),
+                storageInfo,
+                AclUpdateProgress.noop());
 
         var expectedError = "The component type is not of expected type OutputPort";
         assertTrue(actualRes.isLeft());
@@ -354,7 +410,10 @@ class OutputPortHandlerTest {
         var storageInfo = new ProvisioningResult("storageAccount");
 
         var actualRes = outputPortHandler.updateAcl(
-                users, new ProvisionRequest<>(new DataProduct(), outputPort, true), storageInfo);
+                users,
+                new ProvisionRequest<>(new DataProduct(), outputPort, true),
+                storageInfo,
+                AclUpdateProgress.noop());
 
         var expectedError = "The specific section of the component outputport-id is not of type OutputPortSpecific";
         assertTrue(actualRes.isLeft());
@@ -374,7 +433,8 @@ class OutputPortHandlerTest {
 
         var users = List.of("user:john.doe_agilelab.it", "user:alice_agilelab.it");
         var storageInfo = new ProvisioningResult((String) null);
-        var actualRes = outputPortHandler.updateAcl(users, new ProvisionRequest<>(dp, outputPort, true), storageInfo);
+        var actualRes = outputPortHandler.updateAcl(
+                users, new ProvisionRequest<>(dp, outputPort, true), storageInfo, AclUpdateProgress.noop());
 
         var error = new FailedOperation(Collections.singletonList(
                 new Problem("Failed retrieving Storage Account name from deploy private info")));
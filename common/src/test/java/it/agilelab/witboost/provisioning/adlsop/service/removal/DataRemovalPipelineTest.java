@@ -0,0 +1,236 @@
+package it.agilelab.witboost.provisioning.adlsop.service.removal;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.config.AdlsGen2Config;
+import it.agilelab.witboost.provisioning.adlsop.config.AsyncConfig;
+import it.agilelab.witboost.provisioning.adlsop.config.AzureMetricsConfig;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningStatus;
+import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2Service;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.AzureCallMetrics;
+import it.agilelab.witboost.provisioning.adlsop.service.task.InMemoryTaskStore;
+import it.agilelab.witboost.provisioning.adlsop.service.task.Task;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskEngine;
+import it.agilelab.witboost.provisioning.adlsop.service.task.TaskStatus;
+import it.agilelab.witboost.provisioning.adlsop.util.MutableClock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class DataRemovalPipelineTest {
+
+    private static final FailedOperation FAILURE = new FailedOperation(List.of(new Problem("Error on ADLS")));
+
+    @Mock
+    private AdlsGen2Service adlsGen2Service;
+
+    private final AdlsGen2Config adlsGen2Config = new AdlsGen2Config();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AzureCallMetrics azureCallMetrics = new AzureCallMetrics(new AzureMetricsConfig(), meterRegistry);
+    private final TaskEngine taskEngine =
+            new TaskEngine(new InMemoryTaskStore(new AsyncConfig()), new ObjectMapper(), new AsyncConfig());
+    private final MutableClock clock = new MutableClock();
+    private DataRemovalPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        adlsGen2Config.getDataRemoval().setPageSize(2);
+        adlsGen2Config.getDataRemoval().setMaxAttempts(2);
+        adlsGen2Config.getDataRemoval().setRetryBackoff(Duration.ofMillis(1));
+        pipeline = new DataRemovalPipeline(adlsGen2Service, taskEngine, adlsGen2Config, azureCallMetrics, clock, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskEngine.destroy();
+    }
+
+    @Test
+    void directoryIsMovedToTrashAndRemovedInBackground() throws InterruptedException {
+        when(adlsGen2Service.moveToTrash("account", "container", "path")).thenReturn(right(Optional.of("trash")));
+        when(adlsGen2Service.purgeTrash("account", "container", "trash", 2)).thenReturn(right(2), right(1), right(0));
+
+        var token = pipeline.remove("account", "container", "path").get().orElseThrow();
+
+        var task = awaitFinished(token);
+        assertEquals(TaskStatus.COMPLETED, task.status());
+        assertEquals(
+                "Removed 3 entries of the directory in 2 pages",
+                taskEngine.getResult(task, ProvisioningStatus.class).getResult());
+        assertEquals(
+                Optional.of(new DataRemovalPipeline.Progress(3, 2)),
+                taskEngine.getProgress(task, DataRemovalPipeline.Progress.class));
+    }
+
+    @Test
+    void missingDirectoryIsNotRemoved() {
+        when(adlsGen2Service.moveToTrash("account", "container", "path")).thenReturn(right(Optional.empty()));
+
+        assertEquals(right(Optional.empty()), pipeline.remove("account", "container", "path"));
+        verify(adlsGen2Service, never()).purgeTrash("account", "container", "trash", 2);
+    }
+
+    @Test
+    void moveToTrashFailureIsReturned() {
+        when(adlsGen2Service.moveToTrash("account", "container", "path")).thenReturn(left(FAILURE));
+
+        assertEquals(left(FAILURE), pipeline.remove("account", "container", "path"));
+    }
+
+    @Test
+    void failedPageIsRetried() throws InterruptedException {
+        when(adlsGen2Service.moveToTrash("account", "container", "path")).thenReturn(right(Optional.of("trash")));
+        when(adlsGen2Service.purgeTrash("account", "container", "trash", 2))
+                .thenReturn(left(FAILURE), right(1), right(0));
+
+        var token = pipeline.remove("account", "container", "path").get().orElseThrow();
+
+        assertEquals(TaskStatus.COMPLETED, awaitFinished(token).status());
+        verify(adlsGen2Service, times(3)).purgeTrash("account", "container", "trash", 2);
+        assertEquals(
+                1.0,
+                meterRegistry
+                        .get("provisioner.azure.retries")
+                        .tag("operation", "purgeTrash")
+                        .counter()
+                        .count());
+    }
+
+    @Test
+    void removalFailsAfterMaxAttempts() throws InterruptedException {
+        when(adlsGen2Service.moveToTrash("account", "container", "path")).thenReturn(right(Optional.of("trash")));
+        when(adlsGen2Service.purgeTrash("account", "container", "trash", 2)).thenReturn(left(FAILURE));
+
+        var token = pipeline.remove("account", "container", "path").get().orElseThrow();
+
+        var task = awaitFinished(token);
+        assertEquals(TaskStatus.FAILED, task.status());
+        assertEquals(List.of("Error on ADLS"), task.errors());
+        verify(adlsGen2Service, times(2)).purgeTrash("account", "container", "trash", 2);
+    }
+
+    @Test
+    void orphanedTrashDirectoriesAreSwept() throws InterruptedException {
+        when(adlsGen2Service.moveToTrash("account", "container", "path")).thenReturn(right(Optional.of("trash")));
+        when(adlsGen2Service.purgeTrash("account", "container", "trash", 2))
+                .thenReturn(left(FAILURE), left(FAILURE), right(1), right(0));
+        var token = pipeline.remove("account", "container", "path").get().orElseThrow();
+        assertEquals(TaskStatus.FAILED, awaitFinished(token).status());
+        var lastModified = clock.instant().atOffset(ZoneOffset.UTC);
+        when(adlsGen2Service.listTrash("account", "container"))
+                .thenReturn(right(Map.of("trash", lastModified, "recent", lastModified.plusHours(1))));
+
+        assertEquals(0, pipeline.sweepOrphans());
+
+        clock.advance(Duration.ofHours(1).plusMinutes(1));
+        assertEquals(1, pipeline.sweepOrphans());
+        verify(adlsGen2Service, timeout(10000).times(4)).purgeTrash("account", "container", "trash", 2);
+        verify(adlsGen2Service, never()).purgeTrash("account", "container", "recent", 2);
+    }
+
+    @Test
+    void runningRemovalIsNotSwept() throws InterruptedException {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(adlsGen2Service.moveToTrash("account", "container", "path")).thenReturn(right(Optional.of("trash")));
+        when(adlsGen2Service.purgeTrash("account", "container", "trash", 2)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return right(0);
+        });
+        when(adlsGen2Service.listTrash("account", "container"))
+                .thenReturn(right(Map.of("trash", clock.instant().atOffset(ZoneOffset.UTC))));
+        var token = pipeline.remove("account", "container", "path").get().orElseThrow();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        clock.advance(Duration.ofHours(2));
+
+        assertEquals(0, pipeline.sweepOrphans());
+
+        release.countDown();
+        assertEquals(TaskStatus.COMPLETED, awaitFinished(token).status());
+    }
+
+    @Test
+    void containersWithoutRemovalsAreNotSwept() {
+        assertEquals(0, pipeline.sweepOrphans());
+        verify(adlsGen2Service, never()).listTrash(any(), any());
+    }
+
+    @Test
+    void checkpointSavedBeforeTheRenameOfTheCounterIsRead() throws Exception {
+        assertEquals(
+                new DataRemovalPipeline.Progress(5, 1),
+                new ObjectMapper().readValue("{\"removedPaths\":5,\"pages\":1}", DataRemovalPipeline.Progress.class));
+    }
+
+    @Test
+    void configuredContainersAreSwept() {
+        adlsGen2Config
+                .getDataRemoval()
+                .getOrphanSweepContainers()
+                .add(new AdlsGen2Config.Container("account", "container"));
+        var pipeline =
+                new DataRemovalPipeline(adlsGen2Service, taskEngine, adlsGen2Config, azureCallMetrics, clock, false);
+        when(adlsGen2Service.listTrash("account", "container")).thenReturn(right(Map.of()));
+
+        assertEquals(0, pipeline.sweepOrphans());
+        verify(adlsGen2Service).listTrash("account", "container");
+    }
+
+    @Test
+    void backgroundRemovalNeedsDurableTaskStore() {
+        assertFalse(pipeline.isEnabled());
+
+        var durableStore = new InMemoryTaskStore(new AsyncConfig()) {
+            @Override
+            public boolean isDurable() {
+                return true;
+            }
+        };
+        var durableEngine = new TaskEngine(durableStore, new ObjectMapper(), new AsyncConfig());
+        try {
+            assertTrue(new DataRemovalPipeline(
+                            adlsGen2Service, durableEngine, adlsGen2Config, azureCallMetrics, clock, false)
+                    .isEnabled());
+            adlsGen2Config.getDataRemoval().setBackground(false);
+            assertFalse(new DataRemovalPipeline(
+                            adlsGen2Service, durableEngine, adlsGen2Config, azureCallMetrics, clock, false)
+                    .isEnabled());
+        } finally {
+            durableEngine.destroy();
+        }
+    }
+
+    private Task awaitFinished(String token) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            var task = taskEngine.getTask(token, DataRemovalPipeline.OPERATION).orElseThrow();
+            if (task.isFinished()) return task;
+            Thread.sleep(10);
+        }
+        return fail("Task " + token + " didn't finish in time");
+    }
+}
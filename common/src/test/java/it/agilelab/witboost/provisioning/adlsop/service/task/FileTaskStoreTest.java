@@ -0,0 +1,128 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import it.agilelab.witboost.provisioning.adlsop.util.MutableClock;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileTaskStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock();
+    private FileTaskStore taskStore;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (taskStore != null) taskStore.destroy();
+    }
+
+    @Test
+    void tasksSurviveRestart() throws IOException {
+        taskStore = open(100);
+        var request = JsonNodeFactory.instance.objectNode().put("descriptor", "a descriptor");
+        var running = Task.running("running", "provision", request, clock.instant())
+                .withCheckpoint(JsonNodeFactory.instance.textNode("checkpoint"), clock.instant());
+        var completed = Task.running("completed", "validate", null, clock.instant())
+                .completed(JsonNodeFactory.instance.booleanNode(true), clock.instant());
+        taskStore.save(running);
+        taskStore.save(completed);
+
+        taskStore.destroy();
+        taskStore = open(100);
+
+        assertEquals(running, taskStore.get("running").orElseThrow());
+        assertEquals(completed, taskStore.get("completed").orElseThrow());
+        assertEquals(List.of(running), taskStore.runningTasks());
+    }
+
+    @Test
+    void latestVersionOfTaskIsRecovered() throws IOException {
+        taskStore = open(100);
+        var running = Task.running("id", "provision", null, clock.instant());
+        taskStore.save(running);
+        var failed = running.failed(List.of("error"), clock.instant());
+        taskStore.save(failed);
+
+        taskStore.destroy();
+        taskStore = open(100);
+
+        assertEquals(failed, taskStore.get("id").orElseThrow());
+        assertTrue(taskStore.runningTasks().isEmpty());
+    }
+
+    @Test
+    void requestIsOnlyJournaledOnce() throws IOException {
+        taskStore = open(100);
+        var request = JsonNodeFactory.instance.objectNode().put("descriptor", "a descriptor");
+        var running = Task.running("id", "provision", request, clock.instant());
+        taskStore.save(running);
+        var progressed = running.withProgress(JsonNodeFactory.instance.numberNode(1), clock.instant())
+                .withCheckpoint(JsonNodeFactory.instance.textNode("checkpoint"), clock.instant());
+        taskStore.save(progressed);
+
+        var records = Files.readAllLines(journal());
+        assertTrue(records.get(0).contains("a descriptor"));
+        assertFalse(records.get(1).contains("a descriptor"));
+
+        taskStore.destroy();
+        taskStore = open(100);
+
+        assertEquals(progressed, taskStore.get("id").orElseThrow());
+    }
+
+    @Test
+    void removedTaskIsNotRecovered() throws IOException {
+        taskStore = open(100);
+        taskStore.save(Task.running("id", "provision", null, clock.instant()));
+        taskStore.remove("id");
+
+        taskStore.destroy();
+        taskStore = open(100);
+
+        assertTrue(taskStore.get("id").isEmpty());
+    }
+
+    @Test
+    void expiredTasksAreDroppedOnCompaction() throws IOException {
+        taskStore = open(3);
+        taskStore.save(Task.running("old", "validate", null, clock.instant()).failed(List.of(), clock.instant()));
+        clock.advance(Duration.ofHours(2));
+        taskStore.save(Task.running("a", "validate", null, clock.instant()));
+        taskStore.save(Task.running("b", "validate", null, clock.instant()));
+
+        assertEquals(2, Files.readAllLines(journal()).size());
+    }
+
+    @Test
+    void truncatedLastRecordIsSkipped() throws IOException {
+        taskStore = open(100);
+        taskStore.save(Task.running("id", "provision", null, clock.instant()));
+        taskStore.destroy();
+        Files.writeString(journal(), "{\"id\":\"trunc", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        taskStore = open(100);
+
+        assertTrue(taskStore.get("id").isPresent());
+        assertEquals(1, taskStore.runningTasks().size());
+    }
+
+    private FileTaskStore open(int compactionThreshold) {
+        return new FileTaskStore(directory, Duration.ofHours(1), compactionThreshold, false, clock);
+    }
+
+    private Path journal() {
+        return directory.resolve(FileTaskStore.JOURNAL_FILE);
+    }
+}
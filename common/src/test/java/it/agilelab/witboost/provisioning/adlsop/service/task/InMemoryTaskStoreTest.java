@@ -0,0 +1,62 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import it.agilelab.witboost.provisioning.adlsop.util.MutableClock;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryTaskStoreTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final InMemoryTaskStore taskStore = new InMemoryTaskStore(Duration.ofMinutes(10), clock);
+
+    @Test
+    void savedTaskIsReturned() {
+        var task = Task.running("id", "validate", null, clock.instant());
+
+        taskStore.save(task);
+
+        assertEquals(task, taskStore.get("id").orElseThrow());
+    }
+
+    @Test
+    void unknownTaskIsEmpty() {
+        assertTrue(taskStore.get("unknown").isEmpty());
+    }
+
+    @Test
+    void finishedTaskExpiresAfterTtl() {
+        var task = Task.running("id", "validate", null, clock.instant());
+        taskStore.save(task.failed(List.of("error"), clock.instant()));
+
+        clock.advance(Duration.ofMinutes(9));
+        assertTrue(taskStore.get("id").isPresent());
+
+        clock.advance(Duration.ofMinutes(1));
+        assertTrue(taskStore.get("id").isEmpty());
+    }
+
+    @Test
+    void runningTaskDoesntExpire() {
+        taskStore.save(Task.running("id", "validate", null, clock.instant()));
+
+        clock.advance(Duration.ofHours(1));
+
+        assertTrue(taskStore.get("id").isPresent());
+    }
+
+    @Test
+    void expiredTasksAreEvictedOnSave() {
+        taskStore.save(Task.running("old", "validate", null, clock.instant()).failed(List.of(), clock.instant()));
+        clock.advance(Duration.ofMinutes(10));
+
+        taskStore.save(Task.running("new", "validate", null, clock.instant()));
+        // Go back in time so that the old task would still be valid if it wasn't evicted
+        clock.advance(Duration.ofMinutes(-10));
+
+        assertTrue(taskStore.get("old").isEmpty());
+        assertTrue(taskStore.get("new").isPresent());
+    }
+}
@@ -0,0 +1,296 @@
+package it.agilelab.witboost.provisioning.adlsop.service.task;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.agilelab.witboost.provisioning.adlsop.common.FailedOperation;
+import it.agilelab.witboost.provisioning.adlsop.common.OperationCancelledException;
+import it.agilelab.witboost.provisioning.adlsop.common.Problem;
+import it.agilelab.witboost.provisioning.adlsop.common.ProvisionerOverloadedException;
+import it.agilelab.witboost.provisioning.adlsop.common.SpecificProvisionerValidationException;
+import it.agilelab.witboost.provisioning.adlsop.config.AsyncConfig;
+import it.agilelab.witboost.provisioning.adlsop.openapi.model.ValidationResult;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TaskEngineTest {
+
+    private final InMemoryTaskStore taskStore = new InMemoryTaskStore(new AsyncConfig());
+    private TaskEngine taskEngine = new TaskEngine(taskStore, new ObjectMapper(), new AsyncConfig());
+
+    @AfterEach
+    void tearDown() {
+        taskEngine.destroy();
+    }
+
+    @Test
+    void completedTaskHasResult() throws InterruptedException {
+        taskEngine.register("validate", Boolean.class, (request, context) -> new ValidationResult(request));
+        String id = taskEngine.submit("validate", true);
+
+        var task = awaitFinished(id, "validate");
+
+        assertEquals(TaskStatus.COMPLETED, task.status());
+        assertEquals(new ValidationResult(true), taskEngine.getResult(task, ValidationResult.class));
+        assertEquals(true, task.request().asBoolean());
+    }
+
+    @Test
+    void validationExceptionFailsTaskWithProblems() throws InterruptedException {
+        taskEngine.register("validate", Boolean.class, (request, context) -> {
+            throw new SpecificProvisionerValidationException(
+                    new FailedOperation(List.of(new Problem("first"), new Problem("second"))));
+        });
+        String id = taskEngine.submit("validate", true);
+
+        var task = awaitFinished(id, "validate");
+
+        assertEquals(TaskStatus.FAILED, task.status());
+        assertEquals(List.of("first", "second"), task.errors());
+    }
+
+    @Test
+    void unexpectedExceptionFailsTask() throws InterruptedException {
+        taskEngine.register("validate", Boolean.class, (request, context) -> {
+            throw new IllegalStateException("boom");
+        });
+        String id = taskEngine.submit("validate", true);
+
+        var task = awaitFinished(id, "validate");
+
+        assertEquals(TaskStatus.FAILED, task.status());
+        assertTrue(task.errors().get(0).endsWith("Details: boom"));
+    }
+
+    @Test
+    void reportedProgressAndCheckpointAreSaved() throws InterruptedException {
+        taskEngine.register("updateacl", Boolean.class, (request, context) -> {
+            context.reportProgress(List.of(42));
+            context.saveCheckpoint("token");
+            return context.getCheckpoint(String.class).orElseThrow();
+        });
+        String id = taskEngine.submit("updateacl", true);
+
+        var task = awaitFinished(id, "updateacl");
+
+        assertEquals(TaskStatus.COMPLETED, task.status());
+        assertEquals(List.of(42), taskEngine.getProgress(task, List.class).orElseThrow());
+        assertEquals(new TextNode("token"), task.checkpoint());
+        assertEquals("token", taskEngine.getResult(task, String.class));
+    }
+
+    @Test
+    void progressAndCheckpointAreSavedTogether() throws InterruptedException {
+        var saves = new AtomicInteger();
+        var countingStore = new InMemoryTaskStore(new AsyncConfig()) {
+            @Override
+            public void save(Task task) {
+                saves.incrementAndGet();
+                super.save(task);
+            }
+        };
+        taskEngine.destroy();
+        taskEngine = new TaskEngine(countingStore, new ObjectMapper(), new AsyncConfig());
+        taskEngine.register("removedata", Boolean.class, (request, context) -> {
+            context.reportProgress(List.of(42), "checkpoint");
+            return true;
+        });
+        String id = taskEngine.submit("removedata", true);
+
+        var task = awaitFinished(id, "removedata");
+
+        assertEquals(List.of(42), taskEngine.getProgress(task, List.class).orElseThrow());
+        assertEquals(new TextNode("checkpoint"), task.checkpoint());
+        // Submission, progress and completion
+        assertEquals(3, saves.get());
+    }
+
+    @Test
+    void taskOfAnotherOperationIsNotReturned() {
+        taskEngine.register("validate", Boolean.class, (request, context) -> request);
+        String id = taskEngine.submit("validate", true);
+
+        assertTrue(taskEngine.getTask(id, "provision").isEmpty());
+    }
+
+    @Test
+    void submitOfUnregisteredOperationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> taskEngine.submit("validate", true));
+    }
+
+    @Test
+    void submitIsRejectedWhenQueueIsFull() {
+        var asyncConfig = new AsyncConfig();
+        asyncConfig.setWorkers(1);
+        asyncConfig.setQueueCapacity(1);
+        taskEngine.destroy();
+        taskEngine = new TaskEngine(taskStore, new ObjectMapper(), asyncConfig);
+        var latch = new CountDownLatch(1);
+        taskEngine.register("validate", Boolean.class, (request, context) -> latch.await(10, TimeUnit.SECONDS));
+
+        taskEngine.submit("validate", true);
+        taskEngine.submit("validate", true);
+        var ex = assertThrows(ProvisionerOverloadedException.class, () -> taskEngine.submit("validate", true));
+
+        latch.countDown();
+        assertTrue(ex.getMessage().startsWith("Too many validate operations are being processed"));
+    }
+
+    @Test
+    void gaugesReportTheQueueAndWorkersOfEachPool() throws InterruptedException {
+        var asyncConfig = new AsyncConfig();
+        asyncConfig.setWorkers(1);
+        asyncConfig.setQueueCapacity(5);
+        taskEngine.destroy();
+        taskEngine = new TaskEngine(taskStore, new ObjectMapper(), asyncConfig);
+        var meterRegistry = new SimpleMeterRegistry();
+        var started = new CountDownLatch(1);
+        var latch = new CountDownLatch(1);
+        taskEngine.register("validate", Boolean.class, (request, context) -> {
+            started.countDown();
+            return latch.await(10, TimeUnit.SECONDS);
+        });
+        taskEngine.bindTo(meterRegistry);
+        taskEngine.register("removedata", Boolean.class, (request, context) -> request, 2);
+
+        taskEngine.submit("validate", true);
+        taskEngine.submit("validate", true);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        try {
+            assertEquals(1, gauge(meterRegistry, "provisioner.tasks.queued", "shared"));
+            assertEquals(1, gauge(meterRegistry, "provisioner.tasks.active", "shared"));
+            assertEquals(1, gauge(meterRegistry, "provisioner.tasks.workers", "shared"));
+            assertEquals(5, gauge(meterRegistry, "provisioner.tasks.queue.capacity", "shared"));
+            assertEquals(0, gauge(meterRegistry, "provisioner.tasks.queued", "removedata"));
+            assertEquals(2, gauge(meterRegistry, "provisioner.tasks.workers", "removedata"));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private double gauge(SimpleMeterRegistry meterRegistry, String name, String pool) {
+        return meterRegistry.get(name).tag("pool", pool).gauge().value();
+    }
+
+    @Test
+    void operationWithOwnWorkersDoesntWaitForOtherTasks() throws InterruptedException {
+        var asyncConfig = new AsyncConfig();
+        asyncConfig.setWorkers(1);
+        taskEngine.destroy();
+        taskEngine = new TaskEngine(taskStore, new ObjectMapper(), asyncConfig);
+        var latch = new CountDownLatch(1);
+        taskEngine.register("validate", Boolean.class, (request, context) -> latch.await(10, TimeUnit.SECONDS));
+        taskEngine.register("removedata", Boolean.class, (request, context) -> request, 1);
+
+        String blocking = taskEngine.submit("validate", true);
+        String removal = taskEngine.submit("removedata", true);
+
+        assertEquals(TaskStatus.COMPLETED, awaitFinished(removal, "removedata").status());
+        assertEquals(TaskStatus.RUNNING, taskStore.get(blocking).orElseThrow().status());
+        latch.countDown();
+        assertEquals(TaskStatus.COMPLETED, awaitFinished(blocking, "validate").status());
+    }
+
+    @Test
+    void interruptedTasksAreResumedFromTheirCheckpoint() throws InterruptedException {
+        var objectMapper = new ObjectMapper();
+        taskStore.save(Task.running("id", "updateacl", objectMapper.valueToTree("request"), Instant.now())
+                .withCheckpoint(new TextNode("checkpoint"), Instant.now()));
+        taskEngine.register(
+                "updateacl",
+                String.class,
+                (request, context) ->
+                        request + "-" + context.getCheckpoint(String.class).orElseThrow());
+
+        taskEngine.resumeInterruptedTasks();
+
+        var task = awaitFinished("id", "updateacl");
+        assertEquals(TaskStatus.COMPLETED, task.status());
+        assertEquals("request-checkpoint", taskEngine.getResult(task, String.class));
+    }
+
+    @Test
+    void interruptedTasksOfUnknownOperationsFail() {
+        taskStore.save(Task.running("id", "unknown", null, Instant.now()));
+
+        taskEngine.resumeInterruptedTasks();
+
+        var task = taskStore.get("id").orElseThrow();
+        assertEquals(TaskStatus.FAILED, task.status());
+        assertTrue(task.errors().get(0).startsWith("The unknown operation was interrupted by a restart"));
+    }
+
+    @Test
+    void runningTaskStopsWhenCancelled() throws InterruptedException {
+        var started = new CountDownLatch(1);
+        taskEngine.register("updateacl", Boolean.class, (request, context) -> {
+            context.saveCheckpoint("checkpoint");
+            started.countDown();
+            while (!context.isCancellationRequested()) Thread.sleep(5);
+            throw new OperationCancelledException("cancelled");
+        });
+        String id = taskEngine.submit("updateacl", true);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        var cancelled = taskEngine.cancel(id, "updateacl").orElseThrow();
+        var task = awaitFinished(id, "updateacl");
+
+        assertEquals(TaskStatus.RUNNING, cancelled.status());
+        assertEquals(TaskStatus.CANCELLED, task.status());
+        assertEquals(List.of("cancelled"), task.errors());
+        assertEquals(new TextNode("checkpoint"), task.checkpoint());
+    }
+
+    @Test
+    void queuedTaskIsNotStartedWhenCancelled() throws InterruptedException {
+        var asyncConfig = new AsyncConfig();
+        asyncConfig.setWorkers(1);
+        taskEngine.destroy();
+        taskEngine = new TaskEngine(taskStore, new ObjectMapper(), asyncConfig);
+        var latch = new CountDownLatch(1);
+        var runs = new AtomicInteger();
+        taskEngine.register("validate", Boolean.class, (request, context) -> {
+            runs.incrementAndGet();
+            return latch.await(10, TimeUnit.SECONDS);
+        });
+        String running = taskEngine.submit("validate", true);
+        String queued = taskEngine.submit("validate", true);
+
+        taskEngine.cancel(queued, "validate");
+        latch.countDown();
+
+        assertEquals(TaskStatus.CANCELLED, awaitFinished(queued, "validate").status());
+        assertEquals(TaskStatus.COMPLETED, awaitFinished(running, "validate").status());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void cancelLeavesFinishedTasksUnchanged() throws InterruptedException {
+        taskEngine.register("validate", Boolean.class, (request, context) -> request);
+        String id = taskEngine.submit("validate", true);
+        var completed = awaitFinished(id, "validate");
+
+        assertEquals(completed, taskEngine.cancel(id, "validate").orElseThrow());
+        assertTrue(taskEngine.cancel(id, "provision").isEmpty());
+        assertTrue(taskEngine.cancel("unknown", "validate").isEmpty());
+    }
+
+    private Task awaitFinished(String id, String operation) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            var task = taskEngine.getTask(id, operation).orElseThrow();
+            if (task.isFinished()) return task;
+            Thread.sleep(10);
+        }
+        return fail("Task " + id + " didn't finish in time");
+    }
+}
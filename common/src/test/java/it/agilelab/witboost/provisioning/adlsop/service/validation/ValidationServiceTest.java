@@ -9,6 +9,7 @@ import it.agilelab.witboost.provisioning.adlsop.common.Problem;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.DescriptorKind;
 import it.agilelab.witboost.provisioning.adlsop.openapi.model.ProvisioningRequest;
 import it.agilelab.witboost.provisioning.adlsop.service.adlsgen2.AdlsGen2ServiceImpl;
+import it.agilelab.witboost.provisioning.adlsop.service.metrics.ProvisioningPhases;
 import it.agilelab.witboost.provisioning.adlsop.util.ResourceUtils;
 import java.io.IOException;
 import java.util.Collections;
@@ -21,7 +22,13 @@ import org.springframework.boot.autoconfigure.validation.ValidationAutoConfigura
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 
-@SpringBootTest(classes = {ValidationServiceImpl.class, OutputPortValidator.class, ValidationAutoConfiguration.class})
+@SpringBootTest(
+        classes = {
+            ValidationServiceImpl.class,
+            OutputPortValidator.class,
+            ProvisioningPhases.class,
+            ValidationAutoConfiguration.class
+        })
 @ExtendWith(MockitoExtension.class)
 public class ValidationServiceTest {
 
@@ -0,0 +1,192 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Samples the heap, GC and CPU metrics of the provisioner from its Prometheus endpoint every second during the
+ * measurement, so that they're measured the same way against a local or a remote provisioner
+ */
+@Slf4j
+final class JvmStatsSampler implements AutoCloseable {
+
+    private static final Duration INTERVAL = Duration.ofSeconds(1);
+
+    private final HttpClient client =
+            HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final HttpRequest request;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "jvm-stats-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Sample first;
+    private Sample last;
+    private int samples;
+    private double heapUsedMax;
+    private double heapUsedSum;
+    private double liveDataMax;
+    private double gcPauseMax;
+    private double cpuSum;
+    private double cpuMax;
+    private double threadsMax;
+    private boolean failed;
+
+    /**
+     * @param samples Number of samples
+     * @param heapUsedAverage Average heap used, in bytes
+     * @param heapUsedMax Highest heap used, in bytes
+     * @param heapMax Maximum heap size, in bytes
+     * @param liveDataMax Highest size of the old generation after a full GC, in bytes
+     * @param gcPauses GC pauses during the measurement
+     * @param gcPauseTotalSeconds Time spent in GC pauses during the measurement
+     * @param gcPauseMaxSeconds Longest GC pause during the measurement
+     * @param gcOverhead Share of the measurement spent in GC pauses, between 0 and 1
+     * @param allocationRate Bytes allocated per second
+     * @param cpuAverage Average CPU usage of the process, between 0 and 1 of the available processors
+     * @param cpuMax Highest CPU usage of the process
+     * @param threadsMax Highest number of live threads
+     */
+    record JvmStats(
+            int samples,
+            double heapUsedAverage,
+            double heapUsedMax,
+            double heapMax,
+            double liveDataMax,
+            double gcPauses,
+            double gcPauseTotalSeconds,
+            double gcPauseMaxSeconds,
+            double gcOverhead,
+            double allocationRate,
+            double cpuAverage,
+            double cpuMax,
+            double threadsMax) {}
+
+    /** Cumulative and current metrics scraped at once */
+    private record Sample(
+            long nanoTime,
+            double heapUsed,
+            double heapMax,
+            double liveData,
+            double gcPauseCount,
+            double gcPauseSum,
+            double gcPauseMax,
+            double allocated,
+            double cpu,
+            double threads) {}
+
+    JvmStatsSampler(String baseUrl) {
+        request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/prometheus"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+    }
+
+    void start() {
+        scheduler.scheduleAtFixedRate(this::sample, 0, INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops sampling, and returns the stats unless the metrics couldn't be scraped */
+    synchronized Optional<JvmStats> stop() {
+        scheduler.shutdownNow();
+        if (samples < 2) return Optional.empty();
+        double seconds = (last.nanoTime() - first.nanoTime()) / 1e9;
+        double gcPauseTotal = last.gcPauseSum() - first.gcPauseSum();
+        return Optional.of(new JvmStats(
+                samples,
+                heapUsedSum / samples,
+                heapUsedMax,
+                last.heapMax(),
+                liveDataMax,
+                last.gcPauseCount() - first.gcPauseCount(),
+                gcPauseTotal,
+                gcPauseMax,
+                gcPauseTotal / seconds,
+                (last.allocated() - first.allocated()) / seconds,
+                cpuSum / samples,
+                cpuMax,
+                threadsMax));
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void sample() {
+        try {
+            var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) throw new IOException("Status " + response.statusCode());
+            add(parse(response.body()));
+        } catch (IOException e) {
+            if (!failed) log.warn("Could not scrape the metrics of the provisioner: {}", e.getMessage());
+            failed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void add(Sample sample) {
+        if (first == null) first = sample;
+        last = sample;
+        samples++;
+        heapUsedSum += sample.heapUsed();
+        heapUsedMax = Math.max(heapUsedMax, sample.heapUsed());
+        liveDataMax = Math.max(liveDataMax, sample.liveData());
+        gcPauseMax = Math.max(gcPauseMax, sample.gcPauseMax());
+        cpuSum += sample.cpu();
+        cpuMax = Math.max(cpuMax, sample.cpu());
+        threadsMax = Math.max(threadsMax, sample.threads());
+    }
+
+    /** Sums the series of the metrics of a Prometheus text exposition, like the heap used by all the heap pools */
+    private static Sample parse(String exposition) {
+        double heapUsed = 0, heapMax = 0, liveData = 0, gcPauseCount = 0, gcPauseSum = 0, gcPauseMax = 0;
+        double allocated = 0, cpu = 0, threads = 0;
+        for (var line : exposition.split("\n")) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int nameEnd = line.indexOf('{') >= 0 ? line.indexOf('{') : line.indexOf(' ');
+            if (nameEnd < 0) continue;
+            var name = line.substring(0, nameEnd);
+            double value;
+            try {
+                value = Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            boolean heap = line.contains("area=\"heap\"");
+            switch (name) {
+                case "jvm_memory_used_bytes" -> heapUsed += heap ? value : 0;
+                case "jvm_memory_max_bytes" -> heapMax += heap && value > 0 ? value : 0;
+                case "jvm_gc_live_data_size_bytes" -> liveData = value;
+                case "jvm_gc_pause_seconds_count" -> gcPauseCount += value;
+                case "jvm_gc_pause_seconds_sum" -> gcPauseSum += value;
+                case "jvm_gc_pause_seconds_max" -> gcPauseMax = Math.max(gcPauseMax, value);
+                case "jvm_gc_memory_allocated_bytes_total" -> allocated = value;
+                case "process_cpu_usage" -> cpu = value;
+                case "jvm_threads_live_threads" -> threads = value;
+                default -> {}
+            }
+        }
+        return new Sample(
+                System.nanoTime(),
+                heapUsed,
+                heapMax,
+                liveData,
+                gcPauseCount,
+                gcPauseSum,
+                gcPauseMax,
+                allocated,
+                cpu,
+                threads);
+    }
+}
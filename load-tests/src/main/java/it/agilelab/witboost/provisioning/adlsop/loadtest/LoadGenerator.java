@@ -0,0 +1,198 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends the requests of the workload at the configured arrival rate, whether or not the previous ones completed, like
+ * the independent users of the platform do. A closed loop of clients waiting for their responses would slow down with
+ * the provisioner and underestimate its latencies. Asynchronous operations are followed through their status polls, so
+ * their latency is the time until their task completes
+ */
+@Slf4j
+final class LoadGenerator {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(10);
+
+    private final LoadTestConfig config;
+    private final Workload workload;
+    private final String baseUrl;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Semaphore inFlight;
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicLong maxSendDelayNanos = new AtomicLong();
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final Executor pollDelay;
+
+    LoadGenerator(LoadTestConfig config, Workload workload, String baseUrl) {
+        this.config = config;
+        this.workload = workload;
+        this.baseUrl = baseUrl;
+        for (var operation : Operation.values()) stats.put(operation, new OperationStats(operation));
+        inFlight = new Semaphore(config.maxInFlight());
+        var threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "load-generator-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        pollDelay = CompletableFuture.delayedExecutor(config.pollInterval().toNanos(), TimeUnit.NANOSECONDS, executor);
+    }
+
+    Map<Operation, OperationStats> stats() {
+        return stats;
+    }
+
+    /** Highest number of requests in flight at the same time */
+    int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Longest delay between the time a request was scheduled and the time it was sent. Delays close to the latencies
+     * mean that the load generator, not the provisioner, is the bottleneck
+     */
+    double maxSendDelayMillis() {
+        return maxSendDelayNanos.get() / 1e6;
+    }
+
+    /**
+     * Sends requests during the warm-up and the measurement, then waits for the ones in flight
+     * @param onMeasurementStart Called when the warm-up ends
+     * @return Whether all the requests completed
+     */
+    boolean run(Runnable onMeasurementStart) throws InterruptedException {
+        var random = new Random(config.seed());
+        long start = System.nanoTime();
+        long measurementStart = start + config.warmup().toNanos();
+        long end = measurementStart + config.duration().toNanos();
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / config.rate();
+        boolean measuring = false;
+        long scheduled = start;
+        while (scheduled < end) {
+            long now = System.nanoTime();
+            if (scheduled > now) LockSupport.parkNanos(scheduled - now);
+            if (!measuring && scheduled >= measurementStart) {
+                measuring = true;
+                onMeasurementStart.run();
+                log.info("Warm-up completed, measuring for {}", config.duration());
+            }
+            var operation = config.mix().pick(random);
+            send(operation, workload.body(operation, random), scheduled, measuring);
+            scheduled += config.poisson()
+                    ? (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos)
+                    : (long) meanIntervalNanos;
+        }
+        log.info("Waiting for the {} requests in flight", config.maxInFlight() - inFlight.availablePermits());
+        boolean completed = inFlight.tryAcquire(
+                config.maxInFlight(), REQUEST_TIMEOUT.plusMinutes(1).toSeconds(), TimeUnit.SECONDS);
+        executor.shutdownNow();
+        return completed;
+    }
+
+    private void send(Operation operation, String body, long scheduled, boolean measured) {
+        var operationStats = stats.get(operation);
+        if (!inFlight.tryAcquire()) {
+            if (measured) operationStats.drop();
+            return;
+        }
+        maxInFlight.accumulateAndGet(config.maxInFlight() - inFlight.availablePermits(), Math::max);
+        maxSendDelayNanos.accumulateAndGet(System.nanoTime() - scheduled, Math::max);
+        var request = HttpRequest.newBuilder(URI.create(baseUrl + operation.path()))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenCompose(response -> outcome(operation, response))
+                .whenComplete((outcome, error) -> {
+                    inFlight.release();
+                    if (!measured) return;
+                    long latency = System.nanoTime() - scheduled;
+                    if (error != null) operationStats.failed(OperationStats.NO_RESPONSE, latency);
+                    else if (outcome == 200 || outcome == 202) operationStats.succeeded(latency);
+                    else operationStats.failed(outcome, latency);
+                });
+    }
+
+    /**
+     * Follows a response to the end of its operation
+     * @return The HTTP status of the operation, which is turned from {@code 200} into {@code 422} for the operations
+     *     completing with a failed status or an invalid descriptor, so that they count as failed
+     */
+    private CompletableFuture<Integer> outcome(Operation operation, HttpResponse<String> response) {
+        return switch (response.statusCode()) {
+            case 200 -> CompletableFuture.completedFuture(succeeded(operation, response.body()) ? 200 : 422);
+            case 202 -> poll(unquote(response.body()));
+            default -> CompletableFuture.completedFuture(response.statusCode());
+        };
+    }
+
+    private CompletableFuture<Integer> poll(String token) {
+        var request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1/provision/" + token + "/status"))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+        return CompletableFuture.supplyAsync(() -> request, pollDelay)
+                .thenCompose(r -> client.sendAsync(r, HttpResponse.BodyHandlers.ofString()))
+                .thenCompose(response -> {
+                    if (response.statusCode() != 200) return CompletableFuture.completedFuture(response.statusCode());
+                    return switch (status(response.body())) {
+                        case "COMPLETED" -> CompletableFuture.completedFuture(202);
+                        case "FAILED" -> CompletableFuture.completedFuture(422);
+                        default -> poll(token);
+                    };
+                });
+    }
+
+    private boolean succeeded(Operation operation, String body) {
+        try {
+            var json = objectMapper.readTree(body);
+            return operation == Operation.VALIDATE
+                    ? json.path("valid").asBoolean()
+                    : "COMPLETED".equals(json.path("status").asText());
+        } catch (JsonProcessingException e) {
+            return false;
+        }
+    }
+
+    private String status(String body) {
+        try {
+            return objectMapper.readTree(body).path("status").asText();
+        } catch (JsonProcessingException e) {
+            return "FAILED";
+        }
+    }
+
+    /** The tokens of the 202 responses are plain strings, which may be returned as JSON strings */
+    private static String unquote(String token) {
+        var trimmed = token.trim();
+        return trimmed.startsWith("\"") && trimmed.endsWith("\"")
+                ? trimmed.substring(1, trimmed.length() - 1)
+                : trimmed;
+    }
+}
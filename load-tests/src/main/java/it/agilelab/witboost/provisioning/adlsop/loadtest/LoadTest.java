@@ -0,0 +1,92 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drives the validation, provisioning, unprovisioning and ACL update APIs of the provisioner with a mix of descriptors
+ * at a configured arrival rate, and reports their throughput, latency percentiles and error rates with the heap, GC
+ * and CPU usage of the provisioner.
+ *
+ * <p>By default the provisioner is started in its own JVM against the local stand-ins of the Azure services, whose
+ * output port directories are populated with trees of files upfront, so that provisioning and ACL updates walk
+ * realistic trees. With {@code --target} an already running provisioner is load-tested instead, whose storage accounts
+ * must have the data product directories of the workload.
+ *
+ * <p>The load test exits with status 1 when an operation exceeds {@code --maxP99} or {@code --maxErrorRate}, so that it
+ * can gate releases, and with status 2 on invalid options. See {@link LoadTestConfig} for the options
+ */
+@Slf4j
+public final class LoadTest {
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config;
+        try {
+            config = LoadTestConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.exit(run(config));
+    }
+
+    static int run(LoadTestConfig config) throws Exception {
+        var workload = new Workload(config);
+        log.info(
+                "Built {} data products with {} output ports",
+                workload.dataProductCount(),
+                workload.outputPorts().size());
+        LocalEnvironment environment = null;
+        try {
+            String baseUrl = config.target();
+            if (config.local()) {
+                environment = LocalEnvironment.start(config);
+                baseUrl = environment.baseUrl();
+                log.info("Provisioner listening on {}", baseUrl);
+                log.info("Populated the output ports with {} paths", environment.populate(workload, config));
+            }
+            var generator = new LoadGenerator(config, workload, baseUrl);
+            boolean completed;
+            Optional<JvmStatsSampler.JvmStats> jvmStats;
+            Optional<Duration> serviceCpu = Optional.empty();
+            try (var sampler = new JvmStatsSampler(baseUrl)) {
+                var cpuBefore = environment == null ? Optional.<Duration>empty() : cpu(environment);
+                completed = generator.run(sampler::start);
+                jvmStats = sampler.stop();
+                if (environment != null) serviceCpu = cpu(environment).flatMap(after -> cpuBefore.map(after::minus));
+            }
+
+            var notes = new ArrayList<String>();
+            notes.add(String.format(
+                    "Load generator: %d requests in flight at most, sent %.1f ms late at most%s",
+                    generator.maxInFlight(),
+                    generator.maxSendDelayMillis(),
+                    completed ? "" : ", some requests didn't complete"));
+            serviceCpu.ifPresent(cpu -> notes.add(String.format(
+                    "Provisioner CPU time: %.1f s from the warm-up to the last response", cpu.toMillis() / 1000.0)));
+            if (environment != null) {
+                notes.addAll(environment.fakeRequests());
+                notes.add("Provisioner logs: " + config.reportDirectory().resolve("service.log"));
+            }
+            notes.add("Report: " + config.reportDirectory().resolve("report.json"));
+
+            var report = new Report(config, generator.stats().values(), jvmStats, notes);
+            report.print(System.out);
+            report.write();
+            var violations = report.violations();
+            violations.forEach(violation -> System.out.println("FAILED: " + violation));
+            return violations.isEmpty() ? 0 : 1;
+        } finally {
+            if (environment != null) environment.close();
+        }
+    }
+
+    private static Optional<Duration> cpu(LocalEnvironment environment) {
+        return environment.serviceProcess().info().totalCpuDuration();
+    }
+}
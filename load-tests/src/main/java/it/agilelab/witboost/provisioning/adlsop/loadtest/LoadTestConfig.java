@@ -0,0 +1,175 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Settings of a load test, parsed from {@code --<name>=<value>} arguments. Arguments like
+ * {@code --service.<setting>=<value>} are passed on to the provisioner started by the load test as
+ * {@code --<setting>=<value>}, e.g. {@code --service.async.provisioning.enabled=true}
+ *
+ * @param target Base URL of a provisioner already running, or {@code null} to start one against the local stand-ins
+ * @param rate Requests started per second, whether or not the previous ones completed
+ * @param poisson Whether the requests arrive at random with exponential inter-arrival times, or at a constant pace
+ * @param duration How long the requests are measured, after the warm-up
+ * @param warmup How long requests are sent before being measured, for the JIT and the caches to settle
+ * @param mix Weights of the operations
+ * @param dataProducts Data products of the workload, each with one storage component and some output ports
+ * @param outputPorts Weights of the number of output ports of the data products
+ * @param subjects Weights of the number of users and groups of the ACL updates
+ * @param tenantUsers Users of the tenant of the fake Graph, which the subjects are picked from
+ * @param tenantGroups Groups of the tenant of the fake Graph, which the subjects are picked from
+ * @param storageAccounts Storage accounts the output ports are spread on
+ * @param treeDepth Levels of subdirectories created under each output port directory
+ * @param treeFanOut Subdirectories of each directory of an output port tree
+ * @param treeFiles Files of each directory of an output port tree
+ * @param removeData Share of the unprovisioning requests removing the data. Their output ports are provisioned again
+ *     by the next provisioning requests, but ACL updates on them fail until then
+ * @param dfsLatency Latency of the fake DFS service
+ * @param graphLatency Latency of the fake Microsoft Graph
+ * @param resourceGraphLatency Latency of the fake Resource Graph
+ * @param throttlingRate Share of the requests to the fake Graph and Resource Graph answered with a 429
+ * @param graphRequestsPerSecond Requests per second served by the fake Graph before throttling, {@code 0} for no limit
+ * @param maxInFlight Requests in flight above which new requests are dropped, so that a saturated provisioner doesn't
+ *     exhaust the load generator
+ * @param pollInterval Interval of the status polls of the asynchronous operations
+ * @param serviceJvmArgs JVM options of the provisioner started by the load test
+ * @param serviceArgs Settings passed on to the provisioner started by the load test
+ * @param reportDirectory Directory of the report, the latency distributions and the logs of the provisioner
+ * @param maxP99 99th percentile latency of an operation above which the load test fails, if set
+ * @param maxErrorRate Error rate of an operation above which the load test fails, if set
+ * @param seed Seed of the random generator building the workload, so that runs are reproducible
+ */
+record LoadTestConfig(
+        String target,
+        double rate,
+        boolean poisson,
+        Duration duration,
+        Duration warmup,
+        Weighted<Operation> mix,
+        int dataProducts,
+        Weighted<Integer> outputPorts,
+        Weighted<Integer> subjects,
+        int tenantUsers,
+        int tenantGroups,
+        int storageAccounts,
+        int treeDepth,
+        int treeFanOut,
+        int treeFiles,
+        double removeData,
+        Duration dfsLatency,
+        Duration graphLatency,
+        Duration resourceGraphLatency,
+        double throttlingRate,
+        int graphRequestsPerSecond,
+        int maxInFlight,
+        Duration pollInterval,
+        String serviceJvmArgs,
+        List<String> serviceArgs,
+        Path reportDirectory,
+        Duration maxP99,
+        Double maxErrorRate,
+        long seed) {
+
+    private static final String SERVICE_PREFIX = "service.";
+
+    static LoadTestConfig parse(String... args) {
+        var options = new Options(args);
+        var config = new LoadTestConfig(
+                options.get("target", Function.identity(), null),
+                options.get("rate", Double::parseDouble, 20.0),
+                options.get("arrival", LoadTestConfig::isPoisson, true),
+                options.get("duration", Duration::parse, Duration.ofMinutes(1)),
+                options.get("warmup", Duration::parse, Duration.ofSeconds(15)),
+                Weighted.parse(
+                        options.get("mix", Function.identity(), "validate:40,provision:25,updateacl:25,unprovision:10"),
+                        Operation::of),
+                options.get("dataProducts", Integer::parseInt, 200),
+                Weighted.parse(options.get("outputPorts", Function.identity(), "1:60,5:30,50:10"), Integer::parseInt),
+                Weighted.parse(options.get("subjects", Function.identity(), "1:50,5:40,20:10"), Integer::parseInt),
+                options.get("tenantUsers", Integer::parseInt, 10_000),
+                options.get("tenantGroups", Integer::parseInt, 1_000),
+                options.get("storageAccounts", Integer::parseInt, 10),
+                options.get("treeDepth", Integer::parseInt, 2),
+                options.get("treeFanOut", Integer::parseInt, 5),
+                options.get("treeFiles", Integer::parseInt, 10),
+                options.get("removeData", Double::parseDouble, 0.0),
+                options.get("dfsLatency", Duration::parse, Duration.ofMillis(10)),
+                options.get("graphLatency", Duration::parse, Duration.ofMillis(50)),
+                options.get("resourceGraphLatency", Duration::parse, Duration.ofMillis(100)),
+                options.get("throttlingRate", Double::parseDouble, 0.0),
+                options.get("graphRequestsPerSecond", Integer::parseInt, 0),
+                options.get("maxInFlight", Integer::parseInt, 2_000),
+                options.get("pollInterval", Duration::parse, Duration.ofMillis(200)),
+                options.get("serviceJvmArgs", Function.identity(), "-Xmx1g -XX:+UseG1GC"),
+                options.serviceArgs(),
+                options.get("reportDirectory", Path::of, Path.of("target", "load-test")),
+                options.get("maxP99", Duration::parse, null),
+                options.get("maxErrorRate", Double::parseDouble, null),
+                options.get("seed", Long::parseLong, 42L));
+        options.checkAllUsed();
+        return config;
+    }
+
+    /** Whether the load test starts the provisioner and the local stand-ins of Azure */
+    boolean local() {
+        return target == null;
+    }
+
+    private static boolean isPoisson(String arrival) {
+        return switch (arrival) {
+            case "poisson" -> true;
+            case "constant" -> false;
+            default -> throw new IllegalArgumentException("The arrival must be poisson or constant");
+        };
+    }
+
+    private static final class Options {
+
+        private final Map<String, String> values = new HashMap<>();
+        private final List<String> serviceArgs = new ArrayList<>();
+        private final Set<String> used = new TreeSet<>();
+
+        Options(String... args) {
+            for (var arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("="))
+                    throw new IllegalArgumentException(
+                            String.format("Expected arguments like --<name>=<value>, found '%s'", arg));
+                var pair = arg.substring(2).split("=", 2);
+                if (pair[0].startsWith(SERVICE_PREFIX))
+                    serviceArgs.add("--" + pair[0].substring(SERVICE_PREFIX.length()) + "=" + pair[1]);
+                else values.put(pair[0], pair[1]);
+            }
+        }
+
+        <T> T get(String name, Function<String, T> parser, T defaultValue) {
+            used.add(name);
+            try {
+                return Optional.ofNullable(values.get(name)).map(parser).orElse(defaultValue);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid value '%s' of --%s: %s", values.get(name), name, e.getMessage()), e);
+            }
+        }
+
+        List<String> serviceArgs() {
+            return List.copyOf(serviceArgs);
+        }
+
+        void checkAllUsed() {
+            var unknown = new TreeSet<>(values.keySet());
+            unknown.removeAll(used);
+            if (!unknown.isEmpty())
+                throw new IllegalArgumentException(
+                        String.format("Unknown arguments %s, the known ones are %s", unknown, used));
+        }
+    }
+}
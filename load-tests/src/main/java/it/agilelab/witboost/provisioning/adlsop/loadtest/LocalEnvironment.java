@@ -0,0 +1,189 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import it.agilelab.witboost.provisioning.adlsop.Main;
+import it.agilelab.witboost.provisioning.adlsop.fake.dfs.FakeDfsServer;
+import it.agilelab.witboost.provisioning.adlsop.fake.graph.FakeGraphServer;
+import it.agilelab.witboost.provisioning.adlsop.fake.resourcegraph.FakeResourceGraphServer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The provisioner under test, started in its own JVM from the classpath of the load test so that its heap and GC are
+ * measured on their own, pointed at the fake DFS service, Microsoft Graph and Resource Graph running in the load test
+ * JVM. The fakes create the file systems, principals and storage accounts on first use, so any request of the workload
+ * finds them
+ */
+final class LocalEnvironment implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final FakeDfsServer dfs;
+    private final FakeGraphServer graph;
+    private final FakeResourceGraphServer resourceGraph;
+    private Process service;
+    private String baseUrl;
+
+    private LocalEnvironment(FakeDfsServer dfs, FakeGraphServer graph, FakeResourceGraphServer resourceGraph) {
+        this.dfs = dfs;
+        this.graph = graph;
+        this.resourceGraph = resourceGraph;
+    }
+
+    static LocalEnvironment start(LoadTestConfig config) throws IOException, InterruptedException {
+        var dfs = FakeDfsServer.start().setAutoCreateFileSystems(true).setLatency(config.dfsLatency());
+        var graph = FakeGraphServer.start()
+                .populate(config.tenantUsers(), config.tenantGroups())
+                .setAutoCreatePrincipals(true)
+                .setLatency(config.graphLatency())
+                .setThrottlingRate(config.throttlingRate())
+                .setRequestsPerSecond(config.graphRequestsPerSecond());
+        var resourceGraph = FakeResourceGraphServer.start()
+                .setAutoCreateStorageAccounts(true)
+                .setLatency(config.resourceGraphLatency())
+                .setThrottlingRate(config.throttlingRate());
+        for (int i = 0; i < config.storageAccounts(); i++) resourceGraph.addStorageAccount(Workload.storageAccount(i));
+        var environment = new LocalEnvironment(dfs, graph, resourceGraph);
+        try {
+            environment.startService(config);
+            return environment;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            environment.close();
+            throw e;
+        }
+    }
+
+    String baseUrl() {
+        return baseUrl;
+    }
+
+    /** Process of the provisioner, whose CPU time is reported */
+    ProcessHandle serviceProcess() {
+        return service.toHandle();
+    }
+
+    /** Builds the tree of files of the output ports, whose ACLs are updated recursively */
+    long populate(Workload workload, LoadTestConfig config) {
+        return workload.outputPorts().stream()
+                .mapToLong(outputPort -> dfs.populate(
+                        outputPort.storageAccount(),
+                        Workload.CONTAINER,
+                        outputPort.path(),
+                        config.treeDepth(),
+                        config.treeFanOut(),
+                        config.treeFiles()))
+                .sum();
+    }
+
+    /** Requests served by the fakes, by operation */
+    List<String> fakeRequests() {
+        return List.of(
+                String.format(
+                        "DFS: %,d ACL updates, %,d recursive ACL updates, %,d directory creations, %,d throttled",
+                        dfs.requests("setAccessControl"),
+                        dfs.requests("setAccessControlRecursive"),
+                        dfs.requests("createDirectory"),
+                        dfs.throttledRequests()),
+                String.format(
+                        "Graph: %,d user lookups, %,d group lookups, %,d batches, %,d throttled",
+                        graph.requests("listUsers"),
+                        graph.requests("listGroups"),
+                        graph.requests("batch"),
+                        graph.throttledRequests()),
+                String.format(
+                        "Resource Graph: %,d queries, %,d throttled",
+                        resourceGraph.requests("resources"), resourceGraph.throttledRequests()));
+    }
+
+    private void startService(LoadTestConfig config) throws IOException, InterruptedException {
+        int port = freePort();
+        Files.createDirectories(config.reportDirectory());
+        var log = config.reportDirectory().resolve("service.log");
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(config.serviceJvmArgs().trim().split("\\s+")));
+        command.addAll(List.of(
+                "-cp",
+                System.getProperty("java.class.path"),
+                Main.class.getName(),
+                "--server.port=" + port,
+                "--adlsgen2.endpoint=" + dfs.endpoint(),
+                "--adlsgen2.localEmulator=true",
+                "--azure.permissions.graphEndpoint=" + graph.endpoint(),
+                "--azure.permissions.localEmulator=true",
+                "--azure.resourceGraph.endpoint=" + resourceGraph.endpoint(),
+                "--azure.resourceGraph.localEmulator=true",
+                // The credentials are required by the settings, but not used with local emulators
+                "--azure.permissions.clientId=fake",
+                "--azure.permissions.tenantId=" + FakeResourceGraphServer.TENANT_ID,
+                "--azure.permissions.clientSecret=fake",
+                "--async.store.type=file",
+                "--async.store.directory="
+                        + config.reportDirectory().resolve("tasks").toAbsolutePath()));
+        command.addAll(config.serviceArgs());
+        command.removeIf(String::isEmpty);
+        service = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        baseUrl = "http://127.0.0.1:" + port;
+        awaitHealthy(log);
+    }
+
+    private void awaitHealthy(Path log) throws InterruptedException {
+        var client = HttpClient.newHttpClient();
+        var health = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health"))
+                .timeout(Duration.ofSeconds(5))
+                .build();
+        var deadline = Instant.now().plus(STARTUP_TIMEOUT);
+        while (Instant.now().isBefore(deadline)) {
+            if (!service.isAlive())
+                throw new IllegalStateException(String.format(
+                        "The provisioner exited with code %d at startup, see %s", service.exitValue(), log));
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) return;
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException(
+                String.format("The provisioner didn't start within %s, see %s", STARTUP_TIMEOUT, log));
+    }
+
+    private static int freePort() {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (service != null) {
+            service.destroy();
+            try {
+                if (!service.waitFor(30, TimeUnit.SECONDS)) service.destroyForcibly();
+            } catch (InterruptedException e) {
+                service.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        dfs.close();
+        graph.close();
+        resourceGraph.close();
+    }
+}
@@ -0,0 +1,37 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import java.util.Arrays;
+
+/** Operations of the provisioner API driven by the load test */
+enum Operation {
+    VALIDATE("validate", "/v1/validate"),
+    PROVISION("provision", "/v1/provision"),
+    UNPROVISION("unprovision", "/v1/unprovision"),
+    UPDATE_ACL("updateacl", "/v1/updateacl");
+
+    private final String label;
+    private final String path;
+
+    Operation(String label, String path) {
+        this.label = label;
+        this.path = path;
+    }
+
+    /** Name of the operation in the options and the report */
+    String label() {
+        return label;
+    }
+
+    String path() {
+        return path;
+    }
+
+    static Operation of(String label) {
+        return Arrays.stream(values())
+                .filter(operation -> operation.label.equals(label))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(String.format(
+                        "Unknown operation '%s', expected one of validate, provision, unprovision or updateacl",
+                        label)));
+    }
+}
@@ -0,0 +1,104 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Outcomes of the measured requests of an operation. Latencies are recorded in microseconds from the time the request
+ * was scheduled to start, not from the time it was sent, so that a provisioner stalling the load generator can't hide
+ * its queueing delay, and include the status polls of the asynchronous operations
+ */
+final class OperationStats {
+
+    /** Pseudo status of the requests failing without a response, like connection errors and timeouts */
+    static final int NO_RESPONSE = 0;
+
+    private final Operation operation;
+    private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(30), 3);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Map<Integer, LongAdder> failedByStatus = new ConcurrentHashMap<>();
+
+    OperationStats(Operation operation) {
+        this.operation = operation;
+    }
+
+    Operation operation() {
+        return operation;
+    }
+
+    void succeeded(long latencyNanos) {
+        record(latencyNanos);
+        succeeded.increment();
+    }
+
+    /**
+     * @param status HTTP status of the response, which is {@code 422} for operations completing with a failed status
+     *     or an invalid descriptor, or {@link #NO_RESPONSE}
+     */
+    void failed(int status, long latencyNanos) {
+        record(latencyNanos);
+        failedByStatus.computeIfAbsent(status, k -> new LongAdder()).increment();
+    }
+
+    /** Counts a request that wasn't sent because too many were in flight */
+    void drop() {
+        dropped.increment();
+    }
+
+    long requests() {
+        return succeeded.sum() + failed() + dropped.sum();
+    }
+
+    long succeeded() {
+        return succeeded.sum();
+    }
+
+    long failed() {
+        return failedByStatus.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /** Requests rejected by the admission control of the provisioner with {@code 429 Too Many Requests} */
+    long rejected() {
+        return failedByStatus.getOrDefault(429, new LongAdder()).sum();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /** Failed and dropped requests over all the requests, between 0 and 1 */
+    double errorRate() {
+        long requests = requests();
+        return requests == 0 ? 0 : (double) (failed() + dropped()) / requests;
+    }
+
+    Map<Integer, Long> failedByStatus() {
+        var counts = new TreeMap<Integer, Long>();
+        failedByStatus.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    /** Latency percentile in milliseconds */
+    double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    double maxMillis() {
+        return latencies.getMaxValue() / 1000.0;
+    }
+
+    Histogram latencies() {
+        return latencies;
+    }
+
+    private void record(long latencyNanos) {
+        latencies.recordValue(
+                Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), latencies.getHighestTrackableValue()));
+    }
+}
@@ -0,0 +1,172 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.agilelab.witboost.provisioning.adlsop.loadtest.JvmStatsSampler.JvmStats;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Results of a load test: throughput, latency percentiles and outcomes by operation, and the JVM stats of the
+ * provisioner. They're printed as a table, and written to {@code report.json} with the latency distribution of each
+ * operation in the {@code .hgrm} format of HdrHistogram, which its online plotter and most dashboards read
+ */
+final class Report {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LoadTestConfig config;
+    private final Collection<OperationStats> operations;
+    private final Optional<JvmStats> jvmStats;
+    private final List<String> notes;
+
+    /**
+     * @param notes Lines printed after the results, like the requests served by the fakes or the behaviour of the load
+     *     generator
+     */
+    Report(
+            LoadTestConfig config,
+            Collection<OperationStats> operations,
+            Optional<JvmStats> jvmStats,
+            List<String> notes) {
+        this.config = config;
+        this.operations = operations;
+        this.jvmStats = jvmStats;
+        this.notes = notes;
+    }
+
+    void print(PrintStream out) {
+        double seconds = config.duration().toMillis() / 1000.0;
+        out.printf(
+                "%nLoad test of %s: %.1f requests/s (%s arrivals) for %s after a warm-up of %s%n%n",
+                config.local() ? "the local provisioner" : config.target(),
+                config.rate(),
+                config.poisson() ? "poisson" : "constant",
+                config.duration(),
+                config.warmup());
+        out.printf(
+                "%-12s %9s %9s %8s %6s %8s %10s %10s %10s %10s %10s %10s%n",
+                "operation",
+                "requests",
+                "succeeded",
+                "failed",
+                "429",
+                "dropped",
+                "per second",
+                "p50 ms",
+                "p90 ms",
+                "p99 ms",
+                "p99.9 ms",
+                "max ms");
+        for (var stats : operations) {
+            if (stats.requests() == 0) continue;
+            out.printf(
+                    "%-12s %9d %9d %8d %6d %8d %10.2f",
+                    stats.operation().label(),
+                    stats.requests(),
+                    stats.succeeded(),
+                    stats.failed(),
+                    stats.rejected(),
+                    stats.dropped(),
+                    (stats.succeeded() + stats.failed()) / seconds);
+            for (double percentile : PERCENTILES) out.printf(" %10.1f", stats.percentileMillis(percentile));
+            out.printf(" %10.1f%n", stats.maxMillis());
+            if (!stats.failedByStatus().isEmpty())
+                out.printf("%-12s failed by status: %s%n", "", stats.failedByStatus());
+        }
+        jvmStats.ifPresentOrElse(
+                jvm -> {
+                    // G1 reports the live data only after a concurrent cycle or a full GC
+                    out.printf(
+                            "%nHeap: %s used on average, %s at most%s, of %s%n",
+                            bytes(jvm.heapUsedAverage()),
+                            bytes(jvm.heapUsedMax()),
+                            jvm.liveDataMax() > 0 ? ", " + bytes(jvm.liveDataMax()) + " live after GC at most" : "",
+                            bytes(jvm.heapMax()));
+                    out.printf(
+                            "GC: %.0f pauses, %.0f ms in total (%.2f%% of the time), %.0f ms at most, %s/s allocated%n",
+                            jvm.gcPauses(),
+                            jvm.gcPauseTotalSeconds() * 1000,
+                            jvm.gcOverhead() * 100,
+                            jvm.gcPauseMaxSeconds() * 1000,
+                            bytes(jvm.allocationRate()));
+                    out.printf(
+                            "CPU: %.0f%% on average, %.0f%% at most, %.0f live threads at most%n",
+                            jvm.cpuAverage() * 100, jvm.cpuMax() * 100, jvm.threadsMax());
+                },
+                () -> out.printf("%nNo JVM stats, the Prometheus endpoint of the provisioner couldn't be scraped%n"));
+        out.println();
+        notes.forEach(out::println);
+    }
+
+    /** Writes {@code report.json} and the {@code <operation>.hgrm} latency distributions */
+    void write() throws IOException {
+        Files.createDirectories(config.reportDirectory());
+        var mapper = new ObjectMapper();
+        var json = mapper.createObjectNode();
+        var settings = json.putObject("config");
+        settings.put("target", config.local() ? "local" : config.target());
+        settings.put("rate", config.rate());
+        settings.put("arrival", config.poisson() ? "poisson" : "constant");
+        settings.put("duration", config.duration().toString());
+        settings.put("warmup", config.warmup().toString());
+        settings.put("dataProducts", config.dataProducts());
+        settings.put("seed", config.seed());
+        var results = json.putObject("operations");
+        double seconds = config.duration().toMillis() / 1000.0;
+        for (var stats : operations) {
+            if (stats.requests() == 0) continue;
+            var result = results.putObject(stats.operation().label());
+            result.put("requests", stats.requests());
+            result.put("succeeded", stats.succeeded());
+            result.put("failed", stats.failed());
+            result.put("rejected", stats.rejected());
+            result.put("dropped", stats.dropped());
+            result.put("errorRate", stats.errorRate());
+            result.put("throughput", (stats.succeeded() + stats.failed()) / seconds);
+            var failedByStatus = result.putObject("failedByStatus");
+            stats.failedByStatus().forEach((status, count) -> failedByStatus.put(String.valueOf(status), count));
+            var latency = result.putObject("latencyMillis");
+            for (double percentile : PERCENTILES)
+                latency.put("p" + String.valueOf(percentile).replace(".0", ""), stats.percentileMillis(percentile));
+            latency.put("max", stats.maxMillis());
+            try (var out = new PrintStream(Files.newOutputStream(
+                    config.reportDirectory().resolve(stats.operation().label() + ".hgrm")))) {
+                // Recorded in microseconds, written in milliseconds
+                stats.latencies().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        jvmStats.ifPresent(jvm -> json.set("jvm", mapper.valueToTree(jvm)));
+        mapper.writerWithDefaultPrettyPrinter()
+                .writeValue(config.reportDirectory().resolve("report.json").toFile(), json);
+    }
+
+    /** Operations whose 99th percentile latency or error rate exceed the configured limits */
+    List<String> violations() {
+        var violations = new ArrayList<String>();
+        for (var stats : operations) {
+            if (stats.requests() == 0) continue;
+            if (config.maxP99() != null
+                    && stats.percentileMillis(99) > config.maxP99().toMillis())
+                violations.add(String.format(
+                        "The p99 latency of %s is %.1f ms, above %d ms",
+                        stats.operation().label(),
+                        stats.percentileMillis(99),
+                        config.maxP99().toMillis()));
+            if (config.maxErrorRate() != null && stats.errorRate() > config.maxErrorRate())
+                violations.add(String.format(
+                        "The error rate of %s is %.4f, above %.4f",
+                        stats.operation().label(), stats.errorRate(), config.maxErrorRate()));
+        }
+        return violations;
+    }
+
+    private static String bytes(double bytes) {
+        if (bytes >= 1 << 30) return String.format("%.2f GiB", bytes / (1 << 30));
+        return String.format("%.1f MiB", bytes / (1 << 20));
+    }
+}
@@ -0,0 +1,44 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/** Values picked at random according to their weights, parsed from options like {@code validate:40,provision:25} */
+final class Weighted<T> {
+
+    private final List<T> values = new ArrayList<>();
+    private final double[] cumulative;
+
+    private Weighted(Map<T, Double> weights) {
+        cumulative = new double[weights.size()];
+        double total = 0;
+        for (var entry : weights.entrySet()) {
+            if (entry.getValue() < 0) throw new IllegalArgumentException("Weights can't be negative");
+            total += entry.getValue();
+            cumulative[values.size()] = total;
+            values.add(entry.getKey());
+        }
+        if (total <= 0) throw new IllegalArgumentException("At least one weight must be positive");
+    }
+
+    static <T> Weighted<T> parse(String spec, Function<String, T> valueParser) {
+        var weights = new LinkedHashMap<T, Double>();
+        for (var item : spec.split(",")) {
+            var pair = item.trim().split(":", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException(String.format("Expected <value>:<weight> items, found '%s'", item));
+            weights.merge(valueParser.apply(pair[0].trim()), Double.parseDouble(pair[1].trim()), Double::sum);
+        }
+        return new Weighted<>(weights);
+    }
+
+    T pick(Random random) {
+        double point = random.nextDouble() * cumulative[cumulative.length - 1];
+        for (int i = 0; i < cumulative.length; i++) if (point < cumulative[i]) return values.get(i);
+        return values.get(values.size() - 1);
+    }
+}
@@ -0,0 +1,179 @@
+package it.agilelab.witboost.provisioning.adlsop.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Data products built from {@code pr_descriptor_outputport.yml}, each with a storage component on one of the storage
+ * accounts and a number of output ports picked from the configured weights, and the requests of the provisioner API on
+ * their output ports. The workload only depends on the seed, so that runs with the same options send the same requests
+ */
+final class Workload {
+
+    static final String CONTAINER = "container";
+
+    private static final ObjectMapper yamlMapper = new ObjectMapper(new YAMLFactory());
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final LoadTestConfig config;
+    private final List<DataProduct> dataProducts = new ArrayList<>();
+    private final List<OutputPort> outputPorts = new ArrayList<>();
+
+    /**
+     * @param id Id of the output port component
+     * @param storageAccount Storage account of the data product
+     * @param path Directory of the output port in the container
+     * @param dataProduct Data product of the output port
+     */
+    record OutputPort(String id, String storageAccount, String path, DataProduct dataProduct) {}
+
+    /**
+     * @param descriptor YAML descriptor of the data product, without the component to provision
+     * @param provisioningResult Result of the provisioning of the storage component, as sent back by the platform in the
+     *     ACL updates
+     */
+    record DataProduct(String descriptor, String provisioningResult) {}
+
+    Workload(LoadTestConfig config) {
+        this.config = config;
+        var random = new Random(config.seed());
+        var template = template();
+        for (int i = 0; i < config.dataProducts(); i++)
+            build(template, i, config.outputPorts().pick(random));
+    }
+
+    List<OutputPort> outputPorts() {
+        return outputPorts;
+    }
+
+    int dataProductCount() {
+        return dataProducts.size();
+    }
+
+    /** Name of the storage account of the data product, following the naming of the fake Resource Graph */
+    static String storageAccount(int index) {
+        return String.format("account%06d", index);
+    }
+
+    /** Body of a request of an operation on a random output port */
+    String body(Operation operation, Random random) {
+        var outputPort = outputPorts.get(random.nextInt(outputPorts.size()));
+        return switch (operation) {
+            case VALIDATE, PROVISION -> provisioningRequest(outputPort, false);
+            case UNPROVISION -> provisioningRequest(outputPort, random.nextDouble() < config.removeData());
+            case UPDATE_ACL -> updateAclRequest(outputPort, random);
+        };
+    }
+
+    /** Body of the provisioning request of an output port */
+    String provisioningRequest(OutputPort outputPort, boolean removeData) {
+        var body = jsonMapper.createObjectNode();
+        body.put("descriptorKind", "COMPONENT_DESCRIPTOR");
+        body.put("descriptor", descriptor(outputPort));
+        body.put("removeData", removeData);
+        return json(body);
+    }
+
+    private String updateAclRequest(OutputPort outputPort, Random random) {
+        var body = jsonMapper.createObjectNode();
+        var refs = body.putArray("refs");
+        // Users and groups of the tenant of the fake Graph, e.g. user-0000042@example.com and group-0000007
+        var subjects = new LinkedHashSet<String>();
+        int count = config.subjects().pick(random);
+        while (subjects.size() < Math.min(count, config.tenantUsers() + config.tenantGroups())) {
+            int index = random.nextInt(config.tenantUsers() + config.tenantGroups());
+            subjects.add(
+                    index < config.tenantUsers()
+                            ? String.format("user:user-%07d_example.com", index)
+                            : String.format("group:group-%07d", index - config.tenantUsers()));
+        }
+        subjects.forEach(refs::add);
+        var provisionInfo = body.putObject("provisionInfo");
+        provisionInfo.put("request", descriptor(outputPort));
+        provisionInfo.put("result", outputPort.dataProduct().provisioningResult());
+        return json(body);
+    }
+
+    private static String descriptor(OutputPort outputPort) {
+        return outputPort.dataProduct().descriptor() + "componentIdToProvision: " + outputPort.id() + "\n";
+    }
+
+    private void build(ObjectNode template, int index, int outputPortCount) {
+        var descriptor = template.deepCopy();
+        var dataProduct = (ObjectNode) descriptor.get("dataProduct");
+        var dataProductId = "urn:dmb:dp:loadtest:dp-" + index + ":0";
+        dataProduct.put("id", dataProductId);
+        dataProduct.put("name", "Data Product " + index);
+        var components = (ArrayNode) dataProduct.get("components");
+        var storage = (ObjectNode) components.get(0);
+        var outputPort = (ObjectNode) components.get(1);
+        var storageId = "urn:dmb:cmp:loadtest:dp-" + index + ":0:storage";
+        var storageAccount = storageAccount(index % config.storageAccounts());
+        var info = jsonMapper.createObjectNode();
+        info.putObject("privateInfo")
+                .putObject("outputs")
+                .putObject("storage_account_name")
+                .put("value", storageAccount);
+        storage.put("id", storageId);
+        storage.set("info", info);
+        components.removeAll();
+        components.add(storage);
+        var ids = new ArrayList<String>();
+        for (int i = 0; i < outputPortCount; i++) {
+            var copy = outputPort.deepCopy();
+            var id = "urn:dmb:cmp:loadtest:dp-" + index + ":0:output-port-" + i;
+            copy.put("id", id);
+            copy.put("name", "Output Port " + i);
+            copy.putArray("dependsOn").add(storageId);
+            ((ObjectNode) copy.get("specific")).put("container", CONTAINER).put("path", outputPortPath(index, i));
+            components.add(copy);
+            ids.add(id);
+        }
+        var result = jsonMapper.createObjectNode();
+        result.set("info", info);
+        var built = new DataProduct(yaml(descriptor), json(result));
+        dataProducts.add(built);
+        for (int i = 0; i < ids.size(); i++)
+            outputPorts.add(new OutputPort(ids.get(i), storageAccount, outputPortPath(index, i), built));
+    }
+
+    private static String outputPortPath(int dataProduct, int outputPort) {
+        return "dp-" + dataProduct + "/port-" + outputPort + "/";
+    }
+
+    private static ObjectNode template() {
+        try (var in = Workload.class.getResourceAsStream("/pr_descriptor_outputport.yml")) {
+            var template = (ObjectNode) yamlMapper.readTree(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            template.remove("componentIdToProvision");
+            return template;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String yaml(Object node) {
+        try {
+            return yamlMapper.writeValueAsString(node);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String json(Object node) {
+        try {
+            return jsonMapper.writeValueAsString(node);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,3 +1,10 @@
 #!/bin/bash
 
-exec java -javaagent:opentelemetry-javaagent.jar -jar adls-op-specific-provisioner.jar
\ No newline at end of file
+JAVA_OPTS=()
+
+# Continuous flight recording of the JDK default events and of the provisioner ones, see docs/jfr.md
+if [ "${JFR_ENABLED:-false}" = "true" ]; then
+  JAVA_OPTS+=("-XX:StartFlightRecording=name=provisioner,settings=default,settings=provisioner.jfc,disk=true,maxage=${JFR_MAX_AGE:-6h},maxsize=${JFR_MAX_SIZE:-250m},dumponexit=true,filename=${JFR_DIRECTORY:-/tmp}/provisioner.jfr")
+fi
+
+exec java "${JAVA_OPTS[@]}" -javaagent:opentelemetry-javaagent.jar -jar adls-op-specific-provisioner.jar